@@ -22,14 +22,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.ClauseStatistics;
 import org.logic2j.core.api.TermAdapter;
 import org.logic2j.core.api.model.Clause;
 import org.logic2j.core.api.model.exception.PrologNonSpecificError;
 import org.logic2j.core.api.model.symbol.TermApi;
 import org.logic2j.core.api.model.var.TermBindings;
 import org.logic2j.core.impl.PrologImplementation;
+import org.logic2j.core.impl.theory.FactStatistics;
 
-public class TabularDataClauseProvider implements ClauseProvider {
+public class TabularDataClauseProvider implements ClauseProvider, ClauseStatistics {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TabularDataClauseProvider.class);
     private static final String EAVT = "eavt";
     private static final String EAVT_4 = EAVT + "/4";
@@ -40,6 +42,8 @@ public class TabularDataClauseProvider implements ClauseProvider {
 
     private final ArrayList<Clause> clauses = new ArrayList<Clause>();
 
+    private volatile FactStatistics statistics = null;
+
     public TabularDataClauseProvider(PrologImplementation theProlog, TabularData theTabularData, TermAdapter.AssertionMode theMode) {
         this.prolog = theProlog;
         this.tabularData = theTabularData;
@@ -56,27 +60,41 @@ public class TabularDataClauseProvider implements ClauseProvider {
         logger.debug("Finished to init clauses");
     }
 
-    @Override
-    public Iterable<Clause> listMatchingClauses(Object theGoal, TermBindings theGoalBindings) {
-        final String predicateSignature = TermApi.getPredicateSignature(theGoal);
+    /**
+     * @return The signature of the predicate of the clauses provided.
+     */
+    private String predicateSignature() {
         switch (this.mode) {
         case EAV_NAMED:
-            if (!predicateSignature.equals(this.tabularData.getDataSetName() + "/3")) {
-                return null;
-            }
-            return this.clauses;
+            return this.tabularData.getDataSetName() + "/3";
         case EAVT:
-            if (!predicateSignature.equals(EAVT_4)) {
-                return null;
-            }
-            return this.clauses;
+            return EAVT_4;
         case RECORD:
-            if (!predicateSignature.equals(this.tabularData.getDataSetName() + '/' + this.tabularData.getNbColumns())) {
-                return null;
-            }
-            return this.clauses;
+            return this.tabularData.getDataSetName() + '/' + this.tabularData.getNbColumns();
         default:
             throw new PrologNonSpecificError("Unknown mode " + this.mode);
         }
     }
+
+    @Override
+    public Iterable<Clause> listMatchingClauses(Object theGoal, TermBindings theGoalBindings) {
+        final String predicateSignature = TermApi.getPredicateSignature(theGoal);
+        if (!predicateSignature.equals(predicateSignature())) {
+            return null;
+        }
+        return this.clauses;
+    }
+
+    @Override
+    public double estimateSolutions(String thePredicateSignature, Object[] theArgumentKeys, boolean[] theBoundArguments) {
+        if (!thePredicateSignature.equals(predicateSignature())) {
+            return 0;
+        }
+        FactStatistics current = this.statistics;
+        if (current == null) {
+            current = new FactStatistics(this.clauses, theBoundArguments.length);
+            this.statistics = current;
+        }
+        return current.estimateSolutions(theArgumentKeys, theBoundArguments);
+    }
 }
@@ -25,6 +25,7 @@ import org.logic2j.core.api.DataFactProvider;
 import org.logic2j.core.api.TermAdapter.AssertionMode;
 import org.logic2j.core.api.model.DataFact;
 import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+import org.logic2j.core.api.model.var.TermBindings;
 
 public class TabularDataFactProvider implements DataFactProvider {
     private final TabularData tabularData;
@@ -95,7 +96,7 @@ public class TabularDataFactProvider implements DataFactProvider {
      * codebase
      */
     @Override
-    public Iterable<DataFact> listMatchingDataFacts(Object theGoal) {
+    public Iterable<DataFact> listMatchingDataFacts(Object theGoal, TermBindings theGoalBindings) {
         return this.dataFacts;
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import org.logic2j.core.api.model.var.Binding;
+
+/**
+ * The constraint that all variables take distinct values: the value of a bound variable is removed from the domains of all others.
+ */
+final class AllDifferentPropagator extends Propagator {
+
+    AllDifferentPropagator(Binding[] theVariables) {
+        super(theVariables);
+    }
+
+    @Override
+    boolean propagate(Propagation thePropagation) {
+        for (int i = 0; i < this.variables.length; i++) {
+            if (thePropagation.isFixed(this.variables[i])) {
+                final long value = thePropagation.valueOf(this.variables[i]);
+                for (int j = 0; j < this.variables.length; j++) {
+                    if (j != i && !thePropagation.remove(this.variables[j], value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+}
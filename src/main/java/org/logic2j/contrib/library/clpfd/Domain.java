@@ -0,0 +1,284 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import java.util.Arrays;
+
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+
+/**
+ * The immutable set of integer values that a constrained variable may take, as a sorted list of disjoint intervals. Values are 32-bit
+ * integers; {@link #INF} and {@link #SUP} stand for the unbounded ends. Operations return the same instance when nothing changes, so that
+ * changes can be detected by reference.
+ */
+final class Domain {
+
+    static final int INF = Integer.MIN_VALUE;
+
+    static final int SUP = Integer.MAX_VALUE;
+
+    static final Domain ALL = new Domain(new int[] { INF, SUP });
+
+    static final Domain EMPTY = new Domain(new int[0]);
+
+    /**
+     * Pairs of (low, high) bounds of intervals, sorted, disjoint and not adjacent.
+     */
+    private final int[] intervals;
+
+    private Domain(int[] theIntervals) {
+        this.intervals = theIntervals;
+    }
+
+    /**
+     * @param theLow
+     * @param theHigh
+     * @return The Domain of all values from theLow to theHigh included, clipped to the range of 32-bit integers.
+     */
+    static Domain range(long theLow, long theHigh) {
+        final int low = (int) Math.max(theLow, INF);
+        final int high = (int) Math.min(theHigh, SUP);
+        if (low > high) {
+            return EMPTY;
+        }
+        return new Domain(new int[] { low, high });
+    }
+
+    static Domain singleton(long theValue) {
+        return range(theValue, theValue);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------------------
+
+    boolean isEmpty() {
+        return this.intervals.length == 0;
+    }
+
+    boolean isSingleton() {
+        return this.intervals.length == 2 && this.intervals[0] == this.intervals[1];
+    }
+
+    /**
+     * @return true when both ends are bounded.
+     */
+    boolean isFinite() {
+        return !isEmpty() && min() != INF && max() != SUP;
+    }
+
+    int min() {
+        return this.intervals[0];
+    }
+
+    int max() {
+        return this.intervals[this.intervals.length - 1];
+    }
+
+    boolean contains(long theValue) {
+        for (int i = 0; i < this.intervals.length; i += 2) {
+            if (theValue < this.intervals[i]) {
+                return false;
+            }
+            if (theValue <= this.intervals[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getNbIntervals() {
+        return this.intervals.length / 2;
+    }
+
+    int lowOf(int theInterval) {
+        return this.intervals[2 * theInterval];
+    }
+
+    int highOf(int theInterval) {
+        return this.intervals[2 * theInterval + 1];
+    }
+
+    // ---------------------------------------------------------------------------
+    // Operations
+    // ---------------------------------------------------------------------------
+
+    Domain intersect(Domain that) {
+        if (this == that || that == ALL) {
+            return this;
+        }
+        if (this == ALL) {
+            return that;
+        }
+        final int[] result = new int[this.intervals.length + that.intervals.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.intervals.length && j < that.intervals.length) {
+            final int low = Math.max(this.intervals[i], that.intervals[j]);
+            final int high = Math.min(this.intervals[i + 1], that.intervals[j + 1]);
+            if (low <= high) {
+                result[size++] = low;
+                result[size++] = high;
+            }
+            // Advance on the interval that ends first
+            if (this.intervals[i + 1] < that.intervals[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return sameOrNew(result, size);
+    }
+
+    Domain union(Domain that) {
+        final int[] all = new int[this.intervals.length + that.intervals.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        // Merge both lists by increasing low bounds
+        while (i < this.intervals.length || j < that.intervals.length) {
+            final boolean fromThis = j >= that.intervals.length || (i < this.intervals.length && this.intervals[i] <= that.intervals[j]);
+            final int low = fromThis ? this.intervals[i] : that.intervals[j];
+            final int high = fromThis ? this.intervals[i + 1] : that.intervals[j + 1];
+            if (fromThis) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+            if (size > 0 && (long) low <= (long) all[size - 1] + 1) {
+                all[size - 1] = Math.max(all[size - 1], high);
+            } else {
+                all[size++] = low;
+                all[size++] = high;
+            }
+        }
+        return sameOrNew(all, size);
+    }
+
+    /**
+     * @param theLow
+     * @param theHigh
+     * @return This Domain restricted to the values from theLow to theHigh included.
+     */
+    Domain restrict(long theLow, long theHigh) {
+        if (isEmpty() || (theLow <= min() && theHigh >= max())) {
+            return this;
+        }
+        return intersect(range(theLow, theHigh));
+    }
+
+    Domain remove(long theValue) {
+        for (int i = 0; i < this.intervals.length; i += 2) {
+            final int low = this.intervals[i];
+            final int high = this.intervals[i + 1];
+            if (theValue < low) {
+                return this;
+            }
+            if (theValue <= high) {
+                final int value = (int) theValue;
+                final int[] result = new int[this.intervals.length + 2];
+                System.arraycopy(this.intervals, 0, result, 0, i);
+                int size = i;
+                if (low < value) {
+                    result[size++] = low;
+                    result[size++] = value - 1;
+                }
+                if (value < high) {
+                    result[size++] = value + 1;
+                    result[size++] = high;
+                }
+                System.arraycopy(this.intervals, i + 2, result, size, this.intervals.length - i - 2);
+                size += this.intervals.length - i - 2;
+                return new Domain(Arrays.copyOf(result, size));
+            }
+        }
+        return this;
+    }
+
+    private Domain sameOrNew(int[] theIntervals, int theSize) {
+        if (theSize == this.intervals.length && Arrays.equals(this.intervals, Arrays.copyOf(theIntervals, theSize))) {
+            return this;
+        }
+        if (theSize == 0) {
+            return EMPTY;
+        }
+        return new Domain(Arrays.copyOf(theIntervals, theSize));
+    }
+
+    // ---------------------------------------------------------------------------
+    // Conversion from and to terms
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @param theTerm A domain expression: an integer, Low..High where the bounds may be inf and sup, or D1\/D2
+     * @return The Domain described by theTerm.
+     * @throws InvalidTermException If theTerm is not a domain expression
+     */
+    static Domain fromTerm(Object theTerm) {
+        if (theTerm instanceof Struct) {
+            final Struct struct = (Struct) theTerm;
+            if (struct.getArity() == 2 && FiniteDomainLibrary.FUNCTOR_RANGE == struct.getName()) {
+                return range(bound(struct.getArg(0), "inf", INF), bound(struct.getArg(1), "sup", SUP));
+            }
+            if (struct.getArity() == 2 && FiniteDomainLibrary.FUNCTOR_UNION == struct.getName()) {
+                return fromTerm(struct.getArg(0)).union(fromTerm(struct.getArg(1)));
+            }
+        }
+        final Long value = FiniteDomainLibrary.integerValue(theTerm);
+        if (value == null) {
+            throw new InvalidTermException("Domain expression must be an integer, Low..High or D1\\/D2, was " + theTerm);
+        }
+        return singleton(value.longValue());
+    }
+
+    private static long bound(Object theTerm, String theUnboundedName, int theUnboundedValue) {
+        if (theUnboundedName.equals(theTerm) || (theTerm instanceof Struct && theUnboundedName.equals(((Struct) theTerm).getName()))) {
+            return theUnboundedValue;
+        }
+        final Long value = FiniteDomainLibrary.integerValue(theTerm);
+        if (value == null) {
+            throw new InvalidTermException("Bound of a domain must be an integer or " + theUnboundedName + ", was " + theTerm);
+        }
+        return value.longValue();
+    }
+
+    /**
+     * @return The domain expression describing this Domain, see {@link #fromTerm(Object)}.
+     */
+    Object toTerm() {
+        if (isEmpty()) {
+            return new Struct(FiniteDomainLibrary.FUNCTOR_RANGE, Long.valueOf(1), Long.valueOf(0));
+        }
+        Object result = null;
+        for (int i = 0; i < getNbIntervals(); i++) {
+            final Object low = lowOf(i) == INF ? "inf" : (Object) Long.valueOf(lowOf(i));
+            final Object high = highOf(i) == SUP ? "sup" : (Object) Long.valueOf(highOf(i));
+            final Struct interval = new Struct(FiniteDomainLibrary.FUNCTOR_RANGE, low, high);
+            result = result == null ? interval : new Struct(FiniteDomainLibrary.FUNCTOR_UNION, result, interval);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(toTerm());
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
+
+/**
+ * The {@link BindingAttribute} of a constrained variable: its {@link Domain}, and the {@link Propagator}s that constrain it. Instances are
+ * immutable, a change is done by attaching a new instance, see {@link Propagation#narrow(Binding, Domain)}.
+ */
+final class FdVariable implements BindingAttribute {
+
+    static final Propagator[] NO_PROPAGATORS = new Propagator[0];
+
+    final Domain domain;
+
+    final Propagator[] propagators;
+
+    FdVariable(Domain theDomain, Propagator[] thePropagators) {
+        this.domain = theDomain;
+        this.propagators = thePropagators;
+    }
+
+    /**
+     * Check the value bound, or merge with the variable linked to, then propagate.
+     */
+    @Override
+    public boolean onBind(Binding theBinding) {
+        final Propagation propagation = new Propagation();
+        return propagation.bound(theBinding, this) && propagation.run();
+    }
+
+    @Override
+    public String toString() {
+        return this.domain + "/" + this.propagators.length;
+    }
+
+}
@@ -0,0 +1,375 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.OperatorManager;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.impl.DefaultSolver;
+import org.logic2j.core.impl.PrologImplementation;
+import org.logic2j.core.impl.io.operator.Operator;
+import org.logic2j.core.impl.unify.BindingTrail;
+import org.logic2j.core.library.impl.LibraryBase;
+import org.logic2j.core.library.mgmt.Primitive;
+
+/**
+ * Constraints over finite domains of integers (CLP(FD)), to prune the search while it proceeds rather than generating and testing.
+ * <p/>
+ * A constrained variable carries its {@link Domain} and its constraints as a {@link BindingAttribute}. Posting a constraint, or binding a
+ * constrained variable by unification, propagates the constraints until no domain changes; all changes are recorded on the
+ * {@link BindingTrail} so that backtracking undoes them. Primitives:
+ * <ul>
+ * <li>X in Domain, Xs ins Domain: where Domain is Low..High (bounds may be inf and sup), an integer, or D1\/D2</li>
+ * <li>A #= B, A #\= B, A #&lt; B, A #&gt; B, A #=&lt; B, A #&gt;= B: where A and B are linear integer expressions</li>
+ * <li>all_different(Xs)</li>
+ * <li>label(Xs): enumerate the values of the variables in increasing order, propagating after each binding</li>
+ * <li>fd_dom(X, Domain): the current domain of X</li>
+ * </ul>
+ * Values are 32-bit integers. Constraints require a solver that binds through the {@link org.logic2j.core.api.Unifier}, such as the
+ * {@link DefaultSolver}.
+ */
+public class FiniteDomainLibrary extends LibraryBase {
+
+    static final String FUNCTOR_RANGE = "..";
+
+    static final String FUNCTOR_UNION = "\\/";
+
+    public FiniteDomainLibrary(PrologImplementation theProlog) {
+        super(theProlog);
+        final OperatorManager operatorManager = theProlog.getOperatorManager();
+        operatorManager.addOperator("#=", Operator.XFX, 700);
+        operatorManager.addOperator("#\\=", Operator.XFX, 700);
+        operatorManager.addOperator("#<", Operator.XFX, 700);
+        operatorManager.addOperator("#>", Operator.XFX, 700);
+        operatorManager.addOperator("#=<", Operator.XFX, 700);
+        operatorManager.addOperator("#>=", Operator.XFX, 700);
+        operatorManager.addOperator("in", Operator.XFX, 700);
+        operatorManager.addOperator("ins", Operator.XFX, 700);
+        operatorManager.addOperator(FUNCTOR_RANGE, Operator.XFX, 450);
+    }
+
+    @Override
+    public Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener,
+            SolverSession theSession) {
+        final Object result;
+        // Argument methodName is {@link String#intern()}alized so OK to check by reference
+        final int arity = theGoalStruct.getArity();
+        if (arity == 1) {
+            final Object arg0 = theGoalStruct.getArg(0);
+            if (theMethodName == "label") {
+                result = label(theListener, theTermBindings, arg0);
+            } else if (theMethodName == "all_different") {
+                result = all_different(theListener, theTermBindings, arg0);
+            } else {
+                result = NO_DIRECT_INVOCATION_USE_REFLECTION;
+            }
+        } else if (arity == 2) {
+            final Object arg0 = theGoalStruct.getArg(0);
+            final Object arg1 = theGoalStruct.getArg(1);
+            if (theMethodName == "fd_not_equals") {
+                result = fd_not_equals(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_equals") {
+                result = fd_equals(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_lower_than") {
+                result = fd_lower_than(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_lower_equal_than") {
+                result = fd_lower_equal_than(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_greater_than") {
+                result = fd_greater_than(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_greater_equal_than") {
+                result = fd_greater_equal_than(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "in") {
+                result = in(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "ins") {
+                result = ins(theListener, theTermBindings, arg0, arg1);
+            } else if (theMethodName == "fd_dom") {
+                result = fd_dom(theListener, theTermBindings, arg0, arg1);
+            } else {
+                result = NO_DIRECT_INVOCATION_USE_REFLECTION;
+            }
+        } else {
+            result = NO_DIRECT_INVOCATION_USE_REFLECTION;
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Domains
+    // ---------------------------------------------------------------------------
+
+    @Primitive
+    public Continuation in(SolutionListener theListener, TermBindings theTermBindings, Object theVariable, Object theDomain) {
+        final List<Binding> variables = new ArrayList<Binding>();
+        variables.add(variableOf(theVariable, theTermBindings, "in/2"));
+        return restrictAndNotify(theListener, variables, domainOf(theDomain, theTermBindings));
+    }
+
+    @Primitive
+    public Continuation ins(SolutionListener theListener, TermBindings theTermBindings, Object theVariables, Object theDomain) {
+        final List<Binding> variables = variablesOf(theVariables, theTermBindings, "ins/2");
+        return restrictAndNotify(theListener, variables, domainOf(theDomain, theTermBindings));
+    }
+
+    @Primitive
+    public Continuation fd_dom(SolutionListener theListener, TermBindings theTermBindings, Object theVariable, Object theDomain) {
+        final Binding binding = variableOf(theVariable, theTermBindings, "fd_dom/2");
+        final Object domain = new Propagation().domainOf(binding).toTerm();
+        final boolean unified = unify(domain, theTermBindings, theDomain, theTermBindings);
+        return notifyIfUnified(unified, theListener);
+    }
+
+    private Continuation restrictAndNotify(SolutionListener theListener, List<Binding> theVariables, Domain theDomain) {
+        BindingTrail.markBeforeAddingBindings();
+        try {
+            final Propagation propagation = new Propagation();
+            for (final Binding variable : theVariables) {
+                if (!propagation.narrow(variable, theDomain)) {
+                    return Continuation.CONTINUE;
+                }
+            }
+            if (!propagation.run()) {
+                return Continuation.CONTINUE;
+            }
+            return notifySolution(theListener);
+        } finally {
+            BindingTrail.undoBindingsUntilPreviousMark();
+        }
+    }
+
+    private static Domain domainOf(Object theDomain, TermBindings theTermBindings) {
+        // Bounds may be given by bound variables, such as in "X in 1..N"
+        return Domain.fromTerm(TermApi.substitute(theDomain, theTermBindings));
+    }
+
+    // ---------------------------------------------------------------------------
+    // Arithmetic constraints
+    // ---------------------------------------------------------------------------
+
+    @Primitive(name = "#=")
+    public Continuation fd_equals(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return constrainAndNotify(theListener, theTermBindings, t1, t2, 0, LinearPropagator.Relation.EQUAL);
+    }
+
+    @Primitive(name = "#\\=")
+    public Continuation fd_not_equals(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return constrainAndNotify(theListener, theTermBindings, t1, t2, 0, LinearPropagator.Relation.NOT_EQUAL);
+    }
+
+    @Primitive(name = "#<")
+    public Continuation fd_lower_than(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        // t1 - t2 + 1 =< 0
+        return constrainAndNotify(theListener, theTermBindings, t1, t2, 1, LinearPropagator.Relation.LOWER_EQUAL);
+    }
+
+    @Primitive(name = "#=<")
+    public Continuation fd_lower_equal_than(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return constrainAndNotify(theListener, theTermBindings, t1, t2, 0, LinearPropagator.Relation.LOWER_EQUAL);
+    }
+
+    @Primitive(name = "#>")
+    public Continuation fd_greater_than(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return constrainAndNotify(theListener, theTermBindings, t2, t1, 1, LinearPropagator.Relation.LOWER_EQUAL);
+    }
+
+    @Primitive(name = "#>=")
+    public Continuation fd_greater_equal_than(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return constrainAndNotify(theListener, theTermBindings, t2, t1, 0, LinearPropagator.Relation.LOWER_EQUAL);
+    }
+
+    /**
+     * Post the constraint t1 - t2 + theOffset R 0.
+     */
+    private Continuation constrainAndNotify(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2, long theOffset,
+            LinearPropagator.Relation theRelation) {
+        final LinearSum sum = LinearSum.valueOf(t1, theTermBindings);
+        sum.add(t2, theTermBindings, -1);
+        sum.add(Long.valueOf(theOffset), theTermBindings, 1);
+        return postAndNotify(theListener, sum.toPropagator(theRelation));
+    }
+
+    // ---------------------------------------------------------------------------
+    // Global constraints and labeling
+    // ---------------------------------------------------------------------------
+
+    @Primitive
+    public Continuation all_different(SolutionListener theListener, TermBindings theTermBindings, Object theVariables) {
+        final List<Binding> variables = variablesOf(theVariables, theTermBindings, "all_different/1");
+        return postAndNotify(theListener, new AllDifferentPropagator(variables.toArray(new Binding[variables.size()])));
+    }
+
+    @Primitive
+    public Continuation label(SolutionListener theListener, TermBindings theTermBindings, Object theVariables) {
+        final List<Binding> variables = variablesOf(theVariables, theTermBindings, "label/1");
+        return labelFrom(theListener, variables, 0);
+    }
+
+    /**
+     * Enumerate the values of the leftmost variable not yet bound from theIndex, and recurse to the next ones.
+     */
+    private Continuation labelFrom(SolutionListener theListener, List<Binding> theVariables, int theIndex) {
+        int index = theIndex;
+        while (index < theVariables.size() && theVariables.get(index).followLinks().isLiteral()) {
+            index++;
+        }
+        if (index == theVariables.size()) {
+            return notifySolution(theListener);
+        }
+        final Binding binding = theVariables.get(index).followLinks();
+        final Domain domain = Propagation.attributeOf(binding).domain;
+        if (!domain.isFinite()) {
+            throw new InvalidTermException("Cannot label variable " + binding.getReferrer() + " with infinite domain " + domain);
+        }
+        for (int i = 0; i < domain.getNbIntervals(); i++) {
+            for (long value = domain.lowOf(i); value <= domain.highOf(i); value++) {
+                if (bindValue(binding, value)) {
+                    final Continuation continuation;
+                    try {
+                        continuation = labelFrom(theListener, theVariables, index + 1);
+                    } finally {
+                        BindingTrail.undoBindingsUntilPreviousMark();
+                    }
+                    if (continuation != Continuation.CONTINUE) {
+                        return continuation;
+                    }
+                }
+            }
+        }
+        return Continuation.CONTINUE;
+    }
+
+    /**
+     * Bind a free variable as the {@link org.logic2j.core.api.Unifier} does, and propagate.
+     * 
+     * @return true if bound, then the caller must undo the bindings until the previous mark.
+     */
+    private static boolean bindValue(Binding theFreeBinding, long theValue) {
+        final Long value = Long.valueOf(theValue);
+        BindingTrail.markBeforeAddingBindings();
+        theFreeBinding.bindTo(value, new TermBindings(value));
+        BindingTrail.addBinding(theFreeBinding);
+        final BindingAttribute attribute = theFreeBinding.getAttribute();
+        if (attribute != null && !attribute.onBind(theFreeBinding)) {
+            BindingTrail.undoBindingsUntilPreviousMark();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Post a constraint, propagate, and notify a solution if no domain became empty.
+     */
+    private Continuation postAndNotify(SolutionListener theListener, Propagator thePropagator) {
+        BindingTrail.markBeforeAddingBindings();
+        try {
+            final Propagation propagation = new Propagation();
+            propagation.post(thePropagator);
+            if (!propagation.run()) {
+                return Continuation.CONTINUE;
+            }
+            return notifySolution(theListener);
+        } finally {
+            BindingTrail.undoBindingsUntilPreviousMark();
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Access to arguments
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @param theTerm
+     * @return The value of theTerm if it is an integer, or null.
+     */
+    static Long integerValue(Object theTerm) {
+        if (theTerm instanceof Long) {
+            return (Long) theTerm;
+        }
+        if (theTerm instanceof Integer || theTerm instanceof Short || theTerm instanceof Byte) {
+            return Long.valueOf(((Number) theTerm).longValue());
+        }
+        return null;
+    }
+
+    /**
+     * @param theTerm A variable or an integer
+     * @param theTermBindings
+     * @param thePrimitive Name of the primitive, only for reporting errors
+     * @return The final {@link Binding} of the variable, or a literal {@link Binding} to the integer.
+     */
+    private static Binding variableOf(Object theTerm, TermBindings theTermBindings, String thePrimitive) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                return Binding.newFree();
+            }
+            final Binding binding = var.bindingWithin(theTermBindings).followLinks();
+            if (binding.isFree()) {
+                return binding;
+            }
+            return variableOf(binding.getTerm(), binding.getTermBindings(), thePrimitive);
+        }
+        final Long value = integerValue(theTerm);
+        if (value == null) {
+            throw new InvalidTermException("Arguments of " + thePrimitive + " must be variables or integers, was " + theTerm);
+        }
+        return Binding.newLiteral(value, theTermBindings);
+    }
+
+    /**
+     * @param theList A Prolog list of variables or integers
+     * @param theTermBindings
+     * @param thePrimitive Name of the primitive, only for reporting errors
+     * @return The {@link Binding}s of the elements, see {@link #variableOf(Object, TermBindings, String)}.
+     */
+    private static List<Binding> variablesOf(Object theList, TermBindings theTermBindings, String thePrimitive) {
+        final List<Binding> result = new ArrayList<Binding>();
+        Object term = theList;
+        TermBindings bindings = theTermBindings;
+        while (true) {
+            if (term instanceof Var && !((Var) term).isAnonymous()) {
+                final Binding binding = ((Var) term).bindingWithin(bindings).followLinks();
+                if (binding.isLiteral()) {
+                    term = binding.getTerm();
+                    bindings = binding.getTermBindings();
+                    continue;
+                }
+            }
+            if (Struct.FUNCTOR_LIST_EMPTY.equals(term) || (term instanceof Struct && ((Struct) term).isEmptyList())) {
+                return result;
+            }
+            if (!(term instanceof Struct && ((Struct) term).getName() == Struct.FUNCTOR_LIST && ((Struct) term).getArity() == 2)) {
+                throw new InvalidTermException("A Prolog list is required for " + thePrimitive + ", was " + term);
+            }
+            final Struct cell = (Struct) term;
+            result.add(variableOf(cell.getArg(0), bindings, thePrimitive));
+            term = cell.getArg(1);
+        }
+    }
+
+}
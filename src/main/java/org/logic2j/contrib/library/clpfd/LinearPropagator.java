@@ -0,0 +1,168 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import org.logic2j.core.api.model.var.Binding;
+
+/**
+ * The constraint sum(coefficient[i] * variable[i]) + constant R 0, where the relation R is =, \= or =&lt;. Equalities and inequalities
+ * propagate the bounds of the domains; disequalities remove a value once all their variables but one are bound.
+ */
+final class LinearPropagator extends Propagator {
+
+    enum Relation {
+        EQUAL, NOT_EQUAL, LOWER_EQUAL
+    }
+
+    /**
+     * Larger than any sum of products: coefficients add up to at most {@link LinearSum#MAX_COEFFICIENTS} and values are 32-bit integers.
+     */
+    private static final long UNBOUNDED = Long.MAX_VALUE / 2;
+
+    private final long[] coefficients;
+
+    private final long constant;
+
+    private final Relation relation;
+
+    LinearPropagator(Binding[] theVariables, long[] theCoefficients, long theConstant, Relation theRelation) {
+        super(theVariables);
+        this.coefficients = theCoefficients;
+        this.constant = theConstant;
+        this.relation = theRelation;
+    }
+
+    @Override
+    boolean propagate(Propagation thePropagation) {
+        switch (this.relation) {
+        case EQUAL:
+            return propagateEqual(thePropagation);
+        case LOWER_EQUAL:
+            return propagateLowerEqual(thePropagation);
+        default:
+            return propagateNotEqual(thePropagation);
+        }
+    }
+
+    private boolean propagateEqual(Propagation thePropagation) {
+        final int nbVariables = this.variables.length;
+        final long[] lows = new long[nbVariables];
+        final long[] highs = new long[nbVariables];
+        long sumLow = this.constant;
+        long sumHigh = this.constant;
+        for (int i = 0; i < nbVariables; i++) {
+            boundsOfProduct(thePropagation, i, lows, highs);
+            sumLow += lows[i];
+            sumHigh += highs[i];
+        }
+        if (sumLow > 0 || sumHigh < 0) {
+            return false;
+        }
+        for (int i = 0; i < nbVariables; i++) {
+            // The product must compensate the sum of all others
+            if (!restrictProduct(thePropagation, i, highs[i] - sumHigh, lows[i] - sumLow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean propagateLowerEqual(Propagation thePropagation) {
+        final int nbVariables = this.variables.length;
+        final long[] lows = new long[nbVariables];
+        final long[] highs = new long[nbVariables];
+        long sumLow = this.constant;
+        for (int i = 0; i < nbVariables; i++) {
+            boundsOfProduct(thePropagation, i, lows, highs);
+            sumLow += lows[i];
+        }
+        if (sumLow > 0) {
+            return false;
+        }
+        for (int i = 0; i < nbVariables; i++) {
+            if (!restrictProduct(thePropagation, i, -UNBOUNDED, lows[i] - sumLow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean propagateNotEqual(Propagation thePropagation) {
+        int unfixed = -1;
+        long sum = this.constant;
+        for (int i = 0; i < this.variables.length; i++) {
+            if (thePropagation.isFixed(this.variables[i])) {
+                sum += this.coefficients[i] * thePropagation.valueOf(this.variables[i]);
+            } else if (unfixed >= 0) {
+                // At least two variables are still free, nothing to remove yet
+                return true;
+            } else {
+                unfixed = i;
+            }
+        }
+        if (unfixed < 0) {
+            return sum != 0;
+        }
+        final long coefficient = this.coefficients[unfixed];
+        if (sum % coefficient != 0) {
+            return true;
+        }
+        return thePropagation.remove(this.variables[unfixed], -sum / coefficient);
+    }
+
+    private void boundsOfProduct(Propagation thePropagation, int theIndex, long[] theLows, long[] theHighs) {
+        final long coefficient = this.coefficients[theIndex];
+        final long min = thePropagation.min(this.variables[theIndex]);
+        final long max = thePropagation.max(this.variables[theIndex]);
+        if (coefficient > 0) {
+            theLows[theIndex] = coefficient * min;
+            theHighs[theIndex] = coefficient * max;
+        } else {
+            theLows[theIndex] = coefficient * max;
+            theHighs[theIndex] = coefficient * min;
+        }
+    }
+
+    /**
+     * Restrict the variable at theIndex so that its product with its coefficient lies from theLow to theHigh.
+     */
+    private boolean restrictProduct(Propagation thePropagation, int theIndex, long theLow, long theHigh) {
+        final long coefficient = this.coefficients[theIndex];
+        if (coefficient > 0) {
+            return thePropagation.restrict(this.variables[theIndex], ceilDiv(theLow, coefficient), floorDiv(theHigh, coefficient));
+        }
+        return thePropagation.restrict(this.variables[theIndex], ceilDiv(theHigh, coefficient), floorDiv(theLow, coefficient));
+    }
+
+    static long floorDiv(long theDividend, long theDivisor) {
+        final long quotient = theDividend / theDivisor;
+        if (theDividend % theDivisor != 0 && (theDividend < 0) != (theDivisor < 0)) {
+            return quotient - 1;
+        }
+        return quotient;
+    }
+
+    static long ceilDiv(long theDividend, long theDivisor) {
+        final long quotient = theDividend / theDivisor;
+        if (theDividend % theDivisor != 0 && (theDividend < 0) == (theDivisor < 0)) {
+            return quotient + 1;
+        }
+        return quotient;
+    }
+
+}
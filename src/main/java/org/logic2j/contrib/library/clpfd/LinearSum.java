@@ -0,0 +1,185 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * A linear expression sum(coefficient[i] * variable[i]) + constant, obtained from an arithmetic term with integers, free variables, +, -
+ * and * (when one of its operands is constant).
+ */
+final class LinearSum {
+
+    /**
+     * Limit of the sum of the absolute values of coefficients, so that sums of products with 32-bit values cannot overflow.
+     */
+    static final long MAX_COEFFICIENTS = 1L << 30;
+
+    /**
+     * Limit of the absolute value of the constant.
+     */
+    private static final long MAX_CONSTANT = 1L << 61;
+
+    private final List<Binding> variables = new ArrayList<Binding>();
+
+    private final List<Long> coefficients = new ArrayList<Long>();
+
+    private long constant = 0;
+
+    /**
+     * @param theTerm
+     * @param theBindings
+     * @return The linear expression of theTerm.
+     * @throws InvalidTermException If theTerm is not a linear integer expression
+     */
+    static LinearSum valueOf(Object theTerm, TermBindings theBindings) {
+        final LinearSum sum = new LinearSum();
+        sum.add(theTerm, theBindings, 1);
+        return sum;
+    }
+
+    /**
+     * Add theTerm multiplied by theFactor to this sum.
+     */
+    void add(Object theTerm, TermBindings theBindings, long theFactor) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                throw new InvalidTermException("Anonymous variable cannot be constrained");
+            }
+            final Binding binding = var.bindingWithin(theBindings).followLinks();
+            if (binding.isFree()) {
+                addVariable(binding, theFactor);
+            } else {
+                add(binding.getTerm(), binding.getTermBindings(), theFactor);
+            }
+            return;
+        }
+        final Long value = FiniteDomainLibrary.integerValue(theTerm);
+        if (value != null) {
+            this.constant = checked(this.constant + times(value.longValue(), theFactor), MAX_CONSTANT);
+            return;
+        }
+        if (theTerm instanceof Struct) {
+            final Struct struct = (Struct) theTerm;
+            final String name = struct.getName();
+            if (struct.getArity() == 2 && "+".equals(name)) {
+                add(struct.getArg(0), theBindings, theFactor);
+                add(struct.getArg(1), theBindings, theFactor);
+                return;
+            }
+            if (struct.getArity() == 2 && "-".equals(name)) {
+                add(struct.getArg(0), theBindings, theFactor);
+                add(struct.getArg(1), theBindings, -theFactor);
+                return;
+            }
+            if (struct.getArity() == 1 && "-".equals(name)) {
+                add(struct.getArg(0), theBindings, -theFactor);
+                return;
+            }
+            if (struct.getArity() == 2 && "*".equals(name)) {
+                final LinearSum left = valueOf(struct.getArg(0), theBindings);
+                final LinearSum right = valueOf(struct.getArg(1), theBindings);
+                if (left.isConstant()) {
+                    addAll(right, times(left.constant, theFactor));
+                } else if (right.isConstant()) {
+                    addAll(left, times(right.constant, theFactor));
+                } else {
+                    throw new InvalidTermException("Only linear constraints are supported, cannot multiply variables in " + theTerm);
+                }
+                return;
+            }
+        }
+        throw new InvalidTermException("Constraint expression must be made of integers, variables, +, - and *, was " + theTerm);
+    }
+
+    private void addAll(LinearSum theSum, long theFactor) {
+        for (int i = 0; i < theSum.variables.size(); i++) {
+            addVariable(theSum.variables.get(i), times(theSum.coefficients.get(i).longValue(), theFactor));
+        }
+        this.constant = checked(this.constant + times(theSum.constant, theFactor), MAX_CONSTANT);
+    }
+
+    private void addVariable(Binding theFreeBinding, long theCoefficient) {
+        final int index = this.variables.indexOf(theFreeBinding);
+        if (index < 0) {
+            this.variables.add(theFreeBinding);
+            this.coefficients.add(Long.valueOf(theCoefficient));
+        } else {
+            this.coefficients.set(index, Long.valueOf(this.coefficients.get(index).longValue() + theCoefficient));
+        }
+    }
+
+    boolean isConstant() {
+        for (final Long coefficient : this.coefficients) {
+            if (coefficient.longValue() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getConstant() {
+        return this.constant;
+    }
+
+    /**
+     * @param theRelation
+     * @return The constraint that this sum is in theRelation with 0, on the variables with a non-zero coefficient.
+     */
+    LinearPropagator toPropagator(LinearPropagator.Relation theRelation) {
+        final List<Binding> nonZeroVariables = new ArrayList<Binding>();
+        final List<Long> nonZeroCoefficients = new ArrayList<Long>();
+        long total = 0;
+        for (int i = 0; i < this.variables.size(); i++) {
+            final long coefficient = this.coefficients.get(i).longValue();
+            if (coefficient != 0) {
+                nonZeroVariables.add(this.variables.get(i));
+                nonZeroCoefficients.add(Long.valueOf(coefficient));
+                total = checked(total + Math.abs(coefficient), MAX_COEFFICIENTS);
+            }
+        }
+        final long[] coefficientArray = new long[nonZeroCoefficients.size()];
+        for (int i = 0; i < coefficientArray.length; i++) {
+            coefficientArray[i] = nonZeroCoefficients.get(i).longValue();
+        }
+        return new LinearPropagator(nonZeroVariables.toArray(new Binding[nonZeroVariables.size()]), coefficientArray, this.constant, theRelation);
+    }
+
+    private static long times(long theFirst, long theSecond) {
+        if (theFirst != 0 && Math.abs(theSecond) > MAX_CONSTANT / Math.abs(theFirst)) {
+            throw new InvalidTermException("Integer overflow in constraint: " + theFirst + " * " + theSecond);
+        }
+        return theFirst * theSecond;
+    }
+
+    private static long checked(long theValue, long theLimit) {
+        if (Math.abs(theValue) > theLimit) {
+            throw new InvalidTermException("Integer overflow in constraint, " + theValue + " exceeds " + theLimit);
+        }
+        return theValue;
+    }
+
+}
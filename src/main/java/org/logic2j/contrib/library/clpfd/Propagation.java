@@ -0,0 +1,258 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.unify.BindingTrail;
+
+/**
+ * Run {@link Propagator}s until no domain changes any more. All changes to variables are recorded on the {@link BindingTrail}, within the
+ * current mark, so that they are undone by backtracking. A variable whose domain is narrowed to a single value is bound to it.
+ */
+final class Propagation {
+
+    private final ArrayDeque<Propagator> queue = new ArrayDeque<Propagator>();
+
+    private final Set<Propagator> queued = Collections.newSetFromMap(new IdentityHashMap<Propagator, Boolean>());
+
+    /**
+     * Post a new constraint: attach it to its free variables, and schedule it.
+     * 
+     * @param thePropagator
+     */
+    void post(Propagator thePropagator) {
+        for (final Binding variable : thePropagator.variables) {
+            final Binding binding = variable.followLinks();
+            if (binding.isFree()) {
+                final FdVariable current = attributeOf(binding);
+                final Propagator[] propagators = append(current.propagators, thePropagator);
+                BindingTrail.setAttribute(binding, new FdVariable(current.domain, propagators));
+            }
+        }
+        schedule(thePropagator);
+    }
+
+    /**
+     * Handle the binding of a constrained variable, see {@link FdVariable#onBind(Binding)}.
+     * 
+     * @param theBinding Was free, carrying theVariable, and has just been bound or linked
+     * @param theVariable
+     * @return false if the binding violates the domain.
+     */
+    boolean bound(Binding theBinding, FdVariable theVariable) {
+        final Binding target = theBinding.followLinks();
+        if (target.isLiteral()) {
+            final Long value = FiniteDomainLibrary.integerValue(target.getTerm());
+            if (value == null || !theVariable.domain.contains(value.longValue())) {
+                return false;
+            }
+            schedule(theVariable.propagators);
+            return true;
+        }
+        // Linked to another free variable: it takes over the domain and the propagators
+        final FdVariable other = attributeOf(target);
+        final Domain merged = other.domain.intersect(theVariable.domain);
+        if (merged.isEmpty()) {
+            return false;
+        }
+        final Propagator[] propagators = append(other.propagators, theVariable.propagators);
+        BindingTrail.setAttribute(target, new FdVariable(merged, propagators));
+        schedule(propagators);
+        if (merged.isSingleton()) {
+            bindTo(target, merged.min());
+        }
+        return true;
+    }
+
+    /**
+     * @return false if a constraint cannot be satisfied.
+     */
+    boolean run() {
+        Propagator propagator;
+        while ((propagator = this.queue.poll()) != null) {
+            this.queued.remove(propagator);
+            if (!propagator.propagate(this)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void schedule(Propagator thePropagator) {
+        if (this.queued.add(thePropagator)) {
+            this.queue.add(thePropagator);
+        }
+    }
+
+    private void schedule(Propagator[] thePropagators) {
+        for (final Propagator propagator : thePropagators) {
+            schedule(propagator);
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Access to the domains of variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @param theVariable
+     * @return The current domain of theVariable, a singleton if it is bound.
+     */
+    Domain domainOf(Binding theVariable) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            return Domain.singleton(fixedValue(binding));
+        }
+        return attributeOf(binding).domain;
+    }
+
+    long min(Binding theVariable) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            return fixedValue(binding);
+        }
+        return attributeOf(binding).domain.min();
+    }
+
+    long max(Binding theVariable) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            return fixedValue(binding);
+        }
+        return attributeOf(binding).domain.max();
+    }
+
+    /**
+     * @param theVariable
+     * @return true if theVariable is bound.
+     */
+    boolean isFixed(Binding theVariable) {
+        return theVariable.followLinks().isLiteral();
+    }
+
+    /**
+     * @param theVariable Must be fixed, see {@link #isFixed(Binding)}
+     * @return The value of theVariable.
+     */
+    long valueOf(Binding theVariable) {
+        return fixedValue(theVariable.followLinks());
+    }
+
+    /**
+     * Restrict the domain of a variable, binding it if a single value remains, and schedule its propagators if it changed.
+     * 
+     * @param theVariable
+     * @param theDomain
+     * @return false if no value remains.
+     */
+    boolean narrow(Binding theVariable, Domain theDomain) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            final Long value = FiniteDomainLibrary.integerValue(binding.getTerm());
+            return value != null && theDomain.contains(value.longValue());
+        }
+        final FdVariable current = attributeOf(binding);
+        return update(binding, current, current.domain.intersect(theDomain));
+    }
+
+    /**
+     * Same as {@link #narrow(Binding, Domain)} with the values from theLow to theHigh.
+     */
+    boolean restrict(Binding theVariable, long theLow, long theHigh) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            final long value = fixedValue(binding);
+            return theLow <= value && value <= theHigh;
+        }
+        final FdVariable current = attributeOf(binding);
+        return update(binding, current, current.domain.restrict(theLow, theHigh));
+    }
+
+    /**
+     * Same as {@link #narrow(Binding, Domain)} with all values but theValue.
+     */
+    boolean remove(Binding theVariable, long theValue) {
+        final Binding binding = theVariable.followLinks();
+        if (binding.isLiteral()) {
+            return fixedValue(binding) != theValue;
+        }
+        final FdVariable current = attributeOf(binding);
+        return update(binding, current, current.domain.remove(theValue));
+    }
+
+    private boolean update(Binding theFreeBinding, FdVariable theCurrent, Domain theNewDomain) {
+        if (theNewDomain == theCurrent.domain) {
+            return true;
+        }
+        if (theNewDomain.isEmpty()) {
+            return false;
+        }
+        BindingTrail.setAttribute(theFreeBinding, new FdVariable(theNewDomain, theCurrent.propagators));
+        schedule(theCurrent.propagators);
+        if (theNewDomain.isSingleton()) {
+            bindTo(theFreeBinding, theNewDomain.min());
+        }
+        return true;
+    }
+
+    /**
+     * Bind without invoking the attribute: its propagators are already scheduled.
+     */
+    private static void bindTo(Binding theFreeBinding, long theValue) {
+        final Long value = Long.valueOf(theValue);
+        theFreeBinding.bindTo(value, new TermBindings(value));
+        BindingTrail.addBinding(theFreeBinding);
+    }
+
+    /**
+     * @param theFreeBinding
+     * @return The {@link FdVariable} of theFreeBinding; a variable that was never constrained has the domain {@link Domain#ALL}.
+     */
+    static FdVariable attributeOf(Binding theFreeBinding) {
+        final BindingAttribute attribute = theFreeBinding.getAttribute();
+        if (attribute instanceof FdVariable) {
+            return (FdVariable) attribute;
+        }
+        return new FdVariable(Domain.ALL, FdVariable.NO_PROPAGATORS);
+    }
+
+    private static long fixedValue(Binding theLiteralBinding) {
+        final Long value = FiniteDomainLibrary.integerValue(theLiteralBinding.getTerm());
+        if (value == null) {
+            // Only possible when bound by a solver that does not invoke attributes
+            throw new InvalidTermException("Constrained variable bound to a non-integer value: " + theLiteralBinding.getTerm());
+        }
+        return value.longValue();
+    }
+
+    private static Propagator[] append(Propagator[] theFirst, Propagator... theSecond) {
+        final Propagator[] result = new Propagator[theFirst.length + theSecond.length];
+        System.arraycopy(theFirst, 0, result, 0, theFirst.length);
+        System.arraycopy(theSecond, 0, result, theFirst.length, theSecond.length);
+        return result;
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import org.logic2j.core.api.model.var.Binding;
+
+/**
+ * A constraint between variables, which removes from their {@link Domain}s the values that cannot satisfy it. A Propagator is attached to
+ * all its variables, and is run again by the {@link Propagation} whenever the domain of one of them changes. Propagators are immutable:
+ * the state of the search lies only in the variables.
+ */
+abstract class Propagator {
+
+    /**
+     * The {@link Binding}s of the variables constrained; the variables may have been bound or linked since the constraint was posted.
+     */
+    final Binding[] variables;
+
+    Propagator(Binding[] theVariables) {
+        this.variables = theVariables;
+    }
+
+    /**
+     * Narrow the domains of the variables.
+     * 
+     * @param thePropagation To query and narrow the domains
+     * @return false if the constraint cannot be satisfied.
+     */
+    abstract boolean propagate(Propagation thePropagation);
+
+}
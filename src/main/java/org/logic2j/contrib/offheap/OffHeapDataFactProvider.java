@@ -0,0 +1,473 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.logic2j.core.api.DataFactProvider;
+import org.logic2j.core.api.TermAdapter.FactoryMode;
+import org.logic2j.core.api.model.DataFact;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.util.ReportUtils;
+
+/**
+ * A {@link DataFactProvider} for very large numbers of ground facts with atomic arguments, stored outside of the Java heap so that they
+ * cost neither heap nor garbage collection time.
+ * <p/>
+ * The facts of each predicate are stored by column, one direct {@link ByteBuffer} per argument, each value encoded in a long: integers
+ * inline, other values (atoms, floating point numbers) as the index of their single on-heap instance. The arguments of a goal that are
+ * bound select the facts through indexes also stored off-heap, built on first use for each column and dropped when facts are added. A
+ * {@link DataFact} is only created for the facts that match all the bound arguments of the goal.
+ * <p/>
+ * A direct {@link ByteBuffer} holds at most {@link Integer#MAX_VALUE} bytes: since the index of a column needs 32 bytes per fact, a
+ * predicate may have at most {@link #MAX_FACTS_PER_PREDICATE} facts. Facts must not be added while goals are being solved.
+ */
+public class OffHeapDataFactProvider implements DataFactProvider {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * So that the slots of a {@link ColumnIndex}, two per fact rounded up to a power of two, fit in one {@link ByteBuffer}.
+     */
+    public static final int MAX_FACTS_PER_PREDICATE = 1 << 25;
+
+    /**
+     * Value of {@link #lookup(Object)} for values that no fact contains.
+     */
+    private static final long NO_CELL = -2;
+
+    /**
+     * The values not encoded inline, indexed by the cell that encodes them.
+     */
+    final List<Object> values = new ArrayList<Object>();
+    private final Map<Object, Integer> valueIds = new HashMap<Object, Integer>();
+
+    /**
+     * By predicate signature.
+     */
+    private final Map<String, Table> tables = new HashMap<String, Table>();
+
+    /**
+     * Add one fact.
+     * 
+     * @param theElements The functor followed by the arguments, as for {@link DataFact#DataFact(Object...)}
+     */
+    public void addFact(Object... theElements) {
+        if (theElements == null || theElements.length < 2) {
+            throw new PrologNonSpecificError("Dubious fact with null record, or arity < 1");
+        }
+        final String functor = Symbols.name((String) theElements[0]);
+        final int arity = theElements.length - 1;
+        final String signature = Symbols.signature(functor, arity);
+        Table table = this.tables.get(signature);
+        if (table == null) {
+            table = new Table(functor, arity);
+            this.tables.put(signature, table);
+        }
+        final long[] cells = new long[arity];
+        for (int i = 0; i < arity; i++) {
+            cells[i] = encode(TermApi.valueOf(theElements[i + 1], FactoryMode.ATOM));
+        }
+        table.add(cells);
+    }
+
+    @Override
+    public Iterable<DataFact> listMatchingDataFacts(Object theGoal, TermBindings theGoalBindings) {
+        if (!(theGoal instanceof Struct)) {
+            return Collections.emptyList();
+        }
+        final Struct goal = (Struct) theGoal;
+        final Table table = this.tables.get(goal.getPredicateSignature());
+        if (table == null) {
+            return Collections.emptyList();
+        }
+        final int arity = goal.getArity();
+        final boolean[] isBound = new boolean[arity];
+        final long[] boundCells = new long[arity];
+        for (int i = 0; i < arity; i++) {
+            final Object value = dereference(goal.getArg(i), theGoalBindings);
+            if (value != null) {
+                final long cell = lookup(value);
+                if (cell == NO_CELL) {
+                    // No fact has this value
+                    return Collections.emptyList();
+                }
+                isBound[i] = true;
+                boundCells[i] = cell;
+            }
+        }
+        return new Selection(table, isBound, boundCells);
+    }
+
+    /**
+     * @return The total number of facts.
+     */
+    public int getNbFacts() {
+        int nbFacts = 0;
+        for (final Table table : this.tables.values()) {
+            nbFacts += table.nbRows;
+        }
+        return nbFacts;
+    }
+
+    /**
+     * @return The number of bytes allocated outside of the heap for the facts and their indexes.
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (final Table table : this.tables.values()) {
+            bytes += table.offHeapBytes();
+        }
+        return bytes;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Encoding of values
+    // ---------------------------------------------------------------------------
+
+    private long encode(Object theValue) {
+        if (theValue instanceof Long) {
+            final long value = ((Long) theValue).longValue();
+            if ((value << 1) >> 1 == value) {
+                return (value << 1) | 1;
+            }
+        } else if (theValue instanceof Var || (theValue instanceof Struct && ((Struct) theValue).getArity() > 0)) {
+            throw new InvalidTermException("Off-heap facts may only have atomic arguments, was " + theValue);
+        }
+        Integer id = this.valueIds.get(theValue);
+        if (id == null) {
+            id = this.values.size();
+            this.values.add(theValue);
+            this.valueIds.put(theValue, id);
+        }
+        return ((long) id) << 1;
+    }
+
+    /**
+     * @param theValue
+     * @return The cell encoding theValue, or {@link #NO_CELL} when no fact has theValue.
+     */
+    private long lookup(Object theValue) {
+        if (theValue instanceof Long) {
+            final long value = ((Long) theValue).longValue();
+            if ((value << 1) >> 1 == value) {
+                return (value << 1) | 1;
+            }
+        }
+        final Integer id = this.valueIds.get(theValue);
+        if (id == null) {
+            return NO_CELL;
+        }
+        return ((long) id) << 1;
+    }
+
+    Object decode(long theCell) {
+        if ((theCell & 1) != 0) {
+            return Long.valueOf(theCell >> 1);
+        }
+        return this.values.get((int) (theCell >>> 1));
+    }
+
+    /**
+     * @return The value of theArg, or null if it is a free variable.
+     */
+    private static Object dereference(Object theArg, TermBindings theBindings) {
+        if (!(theArg instanceof Var)) {
+            return theArg;
+        }
+        final Var var = (Var) theArg;
+        if (var.isAnonymous()) {
+            return null;
+        }
+        final Binding binding = var.bindingWithin(theBindings).followLinks();
+        return binding.isLiteral() ? binding.getTerm() : null;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Storage
+    // ---------------------------------------------------------------------------
+
+    /**
+     * The facts of one predicate, one {@link LongBuffer} per argument.
+     */
+    static final class Table {
+        final String functor;
+        final int arity;
+        final LongBuffer[] columns;
+        final ColumnIndex[] indexes;
+        int capacity = 0;
+        int nbRows = 0;
+
+        Table(String theFunctor, int theArity) {
+            this.functor = theFunctor;
+            this.arity = theArity;
+            this.columns = new LongBuffer[theArity];
+            this.indexes = new ColumnIndex[theArity];
+        }
+
+        void add(long[] theCells) {
+            if (this.nbRows == MAX_FACTS_PER_PREDICATE) {
+                throw new PrologNonSpecificError("Cannot add more than " + MAX_FACTS_PER_PREDICATE + " off-heap facts to " + this.functor + '/'
+                        + this.arity);
+            }
+            if (this.nbRows == this.capacity) {
+                grow();
+            }
+            for (int c = 0; c < this.arity; c++) {
+                this.columns[c].put(this.nbRows, theCells[c]);
+            }
+            this.nbRows++;
+            Arrays.fill(this.indexes, null);
+        }
+
+        private void grow() {
+            final int newCapacity = this.capacity == 0 ? INITIAL_CAPACITY : Math.min(this.capacity * 2, MAX_FACTS_PER_PREDICATE);
+            for (int c = 0; c < this.arity; c++) {
+                final LongBuffer column = ByteBuffer.allocateDirect(bufferSize(newCapacity, 8)).asLongBuffer();
+                if (this.columns[c] != null) {
+                    final LongBuffer previous = this.columns[c].duplicate();
+                    previous.rewind();
+                    column.put(previous);
+                }
+                this.columns[c] = column;
+            }
+            this.capacity = newCapacity;
+        }
+
+        /**
+         * Synchronized since concurrent solves may need the same index first.
+         */
+        synchronized ColumnIndex index(int theColumn) {
+            ColumnIndex index = this.indexes[theColumn];
+            if (index == null) {
+                index = new ColumnIndex(this.columns[theColumn], this.nbRows);
+                this.indexes[theColumn] = index;
+            }
+            return index;
+        }
+
+        long offHeapBytes() {
+            long bytes = (long) this.capacity * 8 * this.arity;
+            for (final ColumnIndex index : this.indexes) {
+                if (index != null) {
+                    bytes += index.offHeapBytes();
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * A hash index of the rows of one column: open addressing slots of 16 bytes (the cell, the first row plus one, the number of rows),
+     * and for each row the next row plus one with the same cell.
+     */
+    static final class ColumnIndex {
+        private static final int SLOT_SIZE = 16;
+
+        private final ByteBuffer slots;
+        private final int mask;
+        private final IntBuffer next;
+
+        ColumnIndex(LongBuffer theColumn, int theNbRows) {
+            int nbSlots = 2;
+            while (nbSlots < (long) theNbRows * 2) {
+                nbSlots <<= 1;
+            }
+            this.slots = ByteBuffer.allocateDirect(bufferSize(nbSlots, SLOT_SIZE));
+            this.mask = nbSlots - 1;
+            this.next = ByteBuffer.allocateDirect(bufferSize(Math.max(theNbRows, 1), 4)).asIntBuffer();
+            // From the last row so that chains are in the order of rows
+            for (int row = theNbRows - 1; row >= 0; row--) {
+                final long cell = theColumn.get(row);
+                int slot = hash(cell) & this.mask;
+                while (this.slots.getInt(slot * SLOT_SIZE + 8) != 0 && this.slots.getLong(slot * SLOT_SIZE) != cell) {
+                    slot = (slot + 1) & this.mask;
+                }
+                final int position = slot * SLOT_SIZE;
+                this.slots.putLong(position, cell);
+                this.next.put(row, this.slots.getInt(position + 8));
+                this.slots.putInt(position + 8, row + 1);
+                this.slots.putInt(position + 12, this.slots.getInt(position + 12) + 1);
+            }
+        }
+
+        private static int hash(long theCell) {
+            final long h = theCell * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        /**
+         * @return The position of the slot of theCell, or -1 if no row has theCell.
+         */
+        int find(long theCell) {
+            int slot = hash(theCell) & this.mask;
+            while (this.slots.getInt(slot * SLOT_SIZE + 8) != 0) {
+                if (this.slots.getLong(slot * SLOT_SIZE) == theCell) {
+                    return slot * SLOT_SIZE;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            return -1;
+        }
+
+        int count(int thePosition) {
+            return this.slots.getInt(thePosition + 12);
+        }
+
+        int firstRow(int thePosition) {
+            return this.slots.getInt(thePosition + 8) - 1;
+        }
+
+        int nextRow(int theRow) {
+            return this.next.get(theRow) - 1;
+        }
+
+        long offHeapBytes() {
+            return this.slots.capacity() + this.next.capacity() * 4L;
+        }
+    }
+
+    /**
+     * @return The size in bytes of a buffer of theNbElements of theElementSize bytes.
+     */
+    static int bufferSize(int theNbElements, int theElementSize) {
+        final long size = (long) theNbElements * theElementSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new PrologNonSpecificError("Cannot allocate " + size + " bytes in a direct ByteBuffer");
+        }
+        return (int) size;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Selection of the facts matching a goal
+    // ---------------------------------------------------------------------------
+
+    /**
+     * The facts of a {@link Table} whose bound columns have the values of a goal. Follows the index of the most selective bound column, or
+     * scans all rows when the goal has no bound argument.
+     */
+    final class Selection implements Iterable<DataFact> {
+        private final Table table;
+        private final boolean[] isBound;
+        private final long[] boundCells;
+
+        Selection(Table theTable, boolean[] theIsBound, long[] theBoundCells) {
+            this.table = theTable;
+            this.isBound = theIsBound;
+            this.boundCells = theBoundCells;
+        }
+
+        @Override
+        public Iterator<DataFact> iterator() {
+            ColumnIndex driver = null;
+            int driverPosition = -1;
+            for (int c = 0; c < this.table.arity; c++) {
+                if (this.isBound[c]) {
+                    final ColumnIndex index = this.table.index(c);
+                    final int position = index.find(this.boundCells[c]);
+                    if (position < 0) {
+                        return Collections.<DataFact> emptyList().iterator();
+                    }
+                    if (driver == null || index.count(position) < driver.count(driverPosition)) {
+                        driver = index;
+                        driverPosition = position;
+                    }
+                }
+            }
+            final ColumnIndex index = driver;
+            final int firstRow = driver != null ? driver.firstRow(driverPosition) : 0;
+            final int nbRows = this.table.nbRows;
+            return new Iterator<DataFact>() {
+                private int row = matching(firstRow);
+
+                private int matching(int theRow) {
+                    int candidate = theRow;
+                    while (candidate >= 0 && candidate < nbRows && !matches(candidate)) {
+                        candidate = index != null ? index.nextRow(candidate) : candidate + 1;
+                    }
+                    return candidate < nbRows ? candidate : -1;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return this.row >= 0;
+                }
+
+                @Override
+                public DataFact next() {
+                    if (this.row < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    final DataFact fact = materialize(this.row);
+                    this.row = matching(index != null ? index.nextRow(this.row) : this.row + 1);
+                    return fact;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Facts cannot be removed");
+                }
+            };
+        }
+
+        boolean matches(int theRow) {
+            for (int c = 0; c < this.table.arity; c++) {
+                if (this.isBound[c] && this.table.columns[c].get(theRow) != this.boundCells[c]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        DataFact materialize(int theRow) {
+            final Object[] elements = new Object[this.table.arity + 1];
+            elements[0] = this.table.functor;
+            for (int c = 0; c < this.table.arity; c++) {
+                elements[c + 1] = decode(this.table.columns[c].get(theRow));
+            }
+            return new DataFact(elements);
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return ReportUtils.shortDescription(this) + "(facts=" + getNbFacts() + ", offHeapBytes=" + getOffHeapBytes() + ')';
+    }
+
+}
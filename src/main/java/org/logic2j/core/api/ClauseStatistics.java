@@ -0,0 +1,46 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api;
+
+/**
+ * Optionally implemented by {@link ClauseProvider}s that can estimate, without listing them, how many solutions their {@link org.logic2j.core.api.model.Clause}s
+ * yield for a goal. The {@link Solver} uses these estimates to reorder conjunctions of facts, see
+ * {@link org.logic2j.core.impl.DefaultSolver#setGoalReorderingEnabled(boolean)}.
+ */
+public interface ClauseStatistics {
+
+    /**
+     * Returned by {@link #estimateSolutions(String, Object[], boolean[])} when no estimate can be made.
+     */
+    double UNKNOWN = -1;
+
+    /**
+     * Estimate the number of solutions of a goal.
+     * 
+     * @param thePredicateSignature Signature of the goal, such as "name/2"
+     * @param theArgumentKeys The index keys of the arguments of the goal that are currently bound, see
+     *            {@link org.logic2j.core.api.model.symbol.TermApi#dereferencedArgumentKeys(Object, org.logic2j.core.api.model.var.TermBindings)}; may be null when none
+     *            is bound.
+     * @param theBoundArguments For each argument of the goal, true if it will be bound when the goal is solved, although its value is
+     *            not known yet.
+     * @return The estimated number of solutions, 0 if this provider has no clause for thePredicateSignature, or {@link #UNKNOWN} when
+     *         some of these clauses are rules, or cannot be estimated.
+     */
+    double estimateSolutions(String thePredicateSignature, Object[] theArgumentKeys, boolean[] theBoundArguments);
+
+}
@@ -19,12 +19,21 @@
 package org.logic2j.core.api;
 
 import org.logic2j.core.api.model.DataFact;
+import org.logic2j.core.api.model.var.TermBindings;
 
 /**
  * Provide {@link DataFact}s.
  */
 public interface DataFactProvider {
 
-    Iterable<DataFact> listMatchingDataFacts(Object theGoal);
+    /**
+     * Provide the {@link DataFact}s potentially matching theGoal, as for {@link ClauseProvider#listMatchingClauses(Object, TermBindings)}
+     * the {@link Solver} will determine by unification which ones actually match.
+     * 
+     * @param theGoal
+     * @param theGoalBindings The current values of theGoal's variables, may be used to select fewer {@link DataFact}s
+     * @return An ordered {@link Iterable} of {@link DataFact}s that are candidates for unifying with theGoal.
+     */
+    Iterable<DataFact> listMatchingDataFacts(Object theGoal, TermBindings theGoalBindings);
 
 }
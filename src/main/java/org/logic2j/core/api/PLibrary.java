@@ -19,6 +19,7 @@ package org.logic2j.core.api;
 
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 
 /**
  * A library of Prolog primitives implemented in Java, as methods of a single class. Usually {@link PLibrary}es come together with an
@@ -29,6 +30,14 @@ public interface PLibrary {
 
     static final String NO_DIRECT_INVOCATION_USE_REFLECTION = "no-direct-invocation-use-reflection";
 
-    Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener);
+    /**
+     * Invoke a primitive directly, rather than by reflection.
+     * 
+     * @param theSession The session of the solver invoking the primitive; primitives invoked by reflection, or without passing it, work
+     *            within the session current for the thread.
+     * @return The result of the primitive, or {@link #NO_DIRECT_INVOCATION_USE_REFLECTION}.
+     */
+    Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener,
+            SolverSession theSession);
 
 }
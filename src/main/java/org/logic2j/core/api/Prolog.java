@@ -20,6 +20,7 @@ package org.logic2j.core.api;
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.solver.holder.SolutionHolder;
+import org.logic2j.core.impl.PredicateStatistics;
 import org.logic2j.core.impl.theory.TheoryManager;
 
 /**
@@ -72,4 +73,12 @@ public interface Prolog {
      */
     TheoryManager getTheoryManager();
 
+    /**
+     * The counters of the predicates solved by this engine, see {@link PredicateStatistics#snapshot()}; they are only collected when
+     * {@link PredicateStatistics#isEnabled}.
+     * 
+     * @return Our {@link PredicateStatistics}
+     */
+    PredicateStatistics getPredicateStatistics();
+
 }
@@ -21,6 +21,7 @@ import org.logic2j.core.api.model.Continuation;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 
 /**
  * Interface to access the inference engine algorithm, in order to solve goals.
@@ -38,4 +39,16 @@ public interface Solver {
      */
     Continuation solveGoal(TermBindings theGoal, SolutionListener theSolutionListener);
 
+    /**
+     * Same as {@link #solveGoal(TermBindings, SolutionListener)}, within theSession rather than the session current for this thread.
+     * Implementations make theSession current while solving (see {@link SolverSession#activate(SolverSession)}), so that primitives
+     * looking up the current session trail their bindings within theSession.
+     * 
+     * @param theSession Where the bindings are trailed.
+     * @param theGoal Defines the {@link Term} and the {@link Var} values we are trying to solve.
+     * @param theSolutionListener Where solutions should be called back.
+     * @return Indicate how the solving has completed.
+     */
+    Continuation solveGoal(SolverSession theSession, TermBindings theGoal, SolutionListener theSolutionListener);
+
 }
@@ -19,6 +19,7 @@ package org.logic2j.core.api;
 
 import org.logic2j.core.api.model.DataFact;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 
 /**
  * Functionality to unify terms together. Various implementations possible.
@@ -51,4 +52,34 @@ public interface Unifier {
      */
     void deunify();
 
+    /**
+     * Same as {@link #unify(Object, TermBindings, Object, TermBindings)}, recording bindings on the trail of theSession rather than of the
+     * session current for this thread.
+     * 
+     * @param theSession
+     * @param term1
+     * @param theBindings1
+     * @param term2
+     * @param theBindings2
+     * @return true if term1 and term2 could be unified together.
+     */
+    boolean unify(SolverSession theSession, Object term1, TermBindings theBindings1, Object term2, TermBindings theBindings2);
+
+    /**
+     * Same as {@link #unify(Object, TermBindings, DataFact)} within theSession.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalBindings
+     * @param dataFact
+     */
+    boolean unify(SolverSession theSession, Object goalTerm, TermBindings theGoalBindings, DataFact dataFact);
+
+    /**
+     * Same as {@link #deunify()} within theSession.
+     * 
+     * @param theSession
+     */
+    void deunify(SolverSession theSession);
+
 }
@@ -17,12 +17,18 @@
  */
 package org.logic2j.core.api.model;
 
+import org.logic2j.core.api.model.symbol.GroundTermTable;
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.DefaultSolver;
+import org.logic2j.core.impl.GoalNode;
 import org.logic2j.core.impl.PrologImplementation;
 import org.logic2j.core.impl.theory.TheoryManager;
+import org.logic2j.core.impl.unify.BindingTrail;
 
 /**
  * Represents a fact or a rule in a Theory; this is described by a {@link Struct}. This class provides extra features for efficient lookup
@@ -52,6 +58,18 @@ public class Clause {
     private final Object head;
     private final Object body;
 
+    /**
+     * The signature of the head, and the index key of each argument of the head (null for a {@link Var}), see
+     * {@link TermApi#indexKey(Object)}. Used to discard the clause before allocating anything to unify it.
+     */
+    private final String headSignature;
+    private final Object[] headArgumentKeys;
+
+    /**
+     * The body compiled for the {@link DefaultSolver}, null for facts.
+     */
+    private final GoalNode compiledBody;
+
     /**
      * Make a Term (must be a Struct) read for inference, this requires to normalize it.
      * 
@@ -59,16 +77,31 @@ public class Clause {
      * @param theClauseTerm
      */
     public Clause(PrologImplementation theProlog, Object theClauseTerm) {
+        this(theProlog, theClauseTerm, null);
+    }
+
+    /**
+     * Same as {@link #Clause(PrologImplementation, Object)}, and share the ground subterms of the clause with other clauses.
+     * 
+     * @param theProlog Required to normalize theClauseTerm according to the current libraries.
+     * @param theClauseTerm
+     * @param theGroundTerms The table of the ground subterms to share, or null not to share them.
+     */
+    public Clause(PrologImplementation theProlog, Object theClauseTerm, GroundTermTable theGroundTerms) {
         // if (!(theClauseTerm instanceof Struct)) {
         // throw new InvalidTermException("Need a Struct to build a clause, not " + theClauseTerm);
         // }
         // Any Clause must be normalized otherwise we won't be able to infer on it!
-        this.content = TermApi.normalize(theClauseTerm, theProlog.getLibraryManager().wholeContent());
+        final Object normalized = TermApi.normalize(theClauseTerm, theProlog.getLibraryManager().wholeContent());
+        this.content = theGroundTerms != null ? theGroundTerms.share(normalized) : normalized;
         this.termBindings = new TermBindings(this.content);
         this.isFact = evaluateIsFact();
         this.isWithClauseFunctor = evaluateIsWithClauseFunctor();
         this.head = evaluateHead();
         this.body = evaluateBody();
+        this.headSignature = TermApi.getPredicateSignature(this.head);
+        this.headArgumentKeys = evaluateHeadArgumentKeys();
+        this.compiledBody = this.isFact ? null : GoalNode.compile(this.body);
     }
 
     /**
@@ -89,6 +122,9 @@ public class Clause {
         this.isWithClauseFunctor = theOriginal.isWithClauseFunctor;
         this.head = theOriginal.head;
         this.body = theOriginal.body;
+        this.headSignature = theOriginal.headSignature;
+        this.headArgumentKeys = theOriginal.headArgumentKeys;
+        this.compiledBody = theOriginal.compiledBody;
     }
 
     // ---------------------------------------------------------------------------
@@ -150,6 +186,47 @@ public class Clause {
         return Struct.ATOM_TRUE;
     }
 
+    private Object[] evaluateHeadArgumentKeys() {
+        if (!(this.head instanceof Struct)) {
+            return new Object[0];
+        }
+        final Struct headStruct = (Struct) this.head;
+        final Object[] keys = new Object[headStruct.getArity()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = TermApi.indexKey(headStruct.getArg(i));
+        }
+        return keys;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Matching
+    // ---------------------------------------------------------------------------
+
+    /**
+     * A cheap check made before unification: compare functor, arity, and the arguments bound to atomic values or structures of different
+     * functors. No memory is allocated.
+     * 
+     * @param theGoalSignature The predicate signature of the goal, must be {@link String#intern()}alized
+     * @param theGoalArgumentKeys As per {@link TermApi#dereferencedArgumentKeys(Object, TermBindings)}, may be null
+     * @return false if the head of this clause can certainly not unify with the goal, true if it may.
+     */
+    public boolean mayUnifyWith(String theGoalSignature, Object[] theGoalArgumentKeys) {
+        if (theGoalSignature != this.headSignature) {
+            return false;
+        }
+        if (theGoalArgumentKeys == null) {
+            return true;
+        }
+        for (int i = 0; i < this.headArgumentKeys.length; i++) {
+            final Object clauseKey = this.headArgumentKeys[i];
+            final Object goalKey = theGoalArgumentKeys[i];
+            if (clauseKey != null && goalKey != null && !clauseKey.equals(goalKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // ---------------------------------------------------------------------------
     // Accessors
     // ---------------------------------------------------------------------------
@@ -178,6 +255,13 @@ public class Clause {
         return this.body;
     }
 
+    /**
+     * @return The body compiled once for all, null if this clause is a fact.
+     */
+    public GoalNode getCompiledBody() {
+        return this.compiledBody;
+    }
+
     /**
      * @return The key that uniquely identifies the family of the {@link Clause}'s head predicate.
      */
@@ -192,6 +276,31 @@ public class Clause {
         return this.termBindings;
     }
 
+    /**
+     * @return Bindings to unify this clause with a goal: a fresh copy of {@link #getTermBindings()}, or these very bindings when the clause
+     *         has no variable (nothing could ever be bound in them).
+     */
+    public TermBindings newUnificationBindings() {
+        if (this.termBindings.isEmpty()) {
+            return this.termBindings;
+        }
+        return TermBindings.deepCopyWithSameReferrer(this.termBindings);
+    }
+
+    /**
+     * Same as {@link #newUnificationBindings()}, for bindings that will be discarded when the mark that follows theTrailDepth is undone:
+     * they need not be recorded on the trail when bound under that mark, see {@link BindingTrail#addBindingIfOlder(BindingTrail.StepInfo, Binding)}.
+     * 
+     * @param theTrailDepth The current depth of the trail
+     * @return Bindings to unify this clause with a goal.
+     */
+    public TermBindings newUnificationBindings(int theTrailDepth) {
+        if (this.termBindings.isEmpty()) {
+            return this.termBindings;
+        }
+        return TermBindings.deepCopyWithSameReferrer(this.termBindings, theTrailDepth);
+    }
+
     // ---------------------------------------------------------------------------
     // Methods of java.lang.Object
     // ---------------------------------------------------------------------------
@@ -23,6 +23,7 @@ import java.util.Arrays;
 import org.logic2j.core.api.TermAdapter;
 import org.logic2j.core.api.model.exception.PrologNonSpecificError;
 import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
 import org.logic2j.core.api.model.symbol.TermApi;
 
 /**
@@ -38,7 +39,7 @@ public final class DataFact {
             throw new PrologNonSpecificError("Dubious instantiation of DataFact with null record, or arity < 1");
         }
         this.elements = new Object[arguments.length];
-        this.elements[0] = ((String) arguments[0]).intern();
+        this.elements[0] = Symbols.name((String) arguments[0]);
         // Internalize all strings
         for (int i = 1; i < arguments.length; i++) {
             this.elements[i] = TermApi.valueOf(arguments[i], TermAdapter.FactoryMode.ATOM);
@@ -0,0 +1,152 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.model.symbol;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A table of canonical instances of ground {@link Struct}s (without any {@link Var}), to share equal ground subterms between clauses:
+ * {@link TermApi#normalize(Object, org.logic2j.core.api.library.LibraryContent)} only shares them within one term. Sharing saves memory
+ * when many facts repeat the same compound values, and equal ground terms then unify by identity.
+ * <p/>
+ * Canonical instances are only weakly referenced by the table: they are removed when no more term refers to them. The table may be
+ * shared by several threads, looking up a term does not lock.
+ */
+public final class GroundTermTable {
+
+    private final ConcurrentMap<Key, Key> table = new ConcurrentHashMap<Key, Key>();
+
+    /**
+     * Receives the keys whose term was collected, to remove them from {@link #table}.
+     */
+    private final ReferenceQueue<Struct> collected = new ReferenceQueue<Struct>();
+
+    /**
+     * Replace the ground subterms of theNormalizedTerm by their canonical instance. Sharing must be done after normalization, and the term
+     * must not be normalized again afterwards, since normalization resets the indexes of all its subterms.
+     * 
+     * @param theNormalizedTerm
+     * @return theNormalizedTerm itself, only its arguments are replaced.
+     */
+    public Object share(Object theNormalizedTerm) {
+        if (theNormalizedTerm instanceof Struct) {
+            ((Struct) theNormalizedTerm).shareGroundArguments(this);
+        }
+        return theNormalizedTerm;
+    }
+
+    /**
+     * @param theGroundStruct Whose {@link Struct} arguments are already canonical instances
+     * @return The canonical instance equal to theGroundStruct, theGroundStruct itself if it is the first one.
+     */
+    Struct canonical(Struct theGroundStruct) {
+        removeCollected();
+        final Key probe = new Key(theGroundStruct, null);
+        while (true) {
+            Key existing = this.table.get(probe);
+            if (existing == null) {
+                // No variable: the index must be 0 whatever the term it is shared by
+                theGroundStruct.index = 0;
+                final Key created = new Key(theGroundStruct, this.collected);
+                existing = this.table.putIfAbsent(created, created);
+                if (existing == null) {
+                    return theGroundStruct;
+                }
+            }
+            final Struct struct = existing.get();
+            if (struct != null) {
+                return struct;
+            }
+            // Collected meanwhile
+            this.table.remove(existing, existing);
+        }
+    }
+
+    private void removeCollected() {
+        Reference<? extends Struct> reference;
+        while ((reference = this.collected.poll()) != null) {
+            this.table.remove(reference, reference);
+        }
+    }
+
+    /**
+     * @return The number of canonical instances.
+     */
+    public int size() {
+        removeCollected();
+        return this.table.size();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + '(' + size() + ')';
+    }
+
+    // ---------------------------------------------------------------------------
+    // Keys
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Refers weakly to a ground {@link Struct}, hashed by its name and the sequence of its arguments. {@link Struct#hashCode()} would do,
+     * but it ignores the order of arguments and cancels out equal arguments, so that f(a,b) and f(b,a), or all g(X,X), would collide.
+     * Since canonical instances are shared bottom-up, the {@link Struct} arguments of the keys are canonical: they are hashed by identity,
+     * so that hashing a deep term does not traverse it.
+     */
+    private static final class Key extends WeakReference<Struct> {
+        private final int hash;
+
+        Key(Struct theStruct, ReferenceQueue<Struct> theQueue) {
+            super(theStruct, theQueue);
+            int h = theStruct.getName().hashCode() * 31 + theStruct.getArity();
+            for (int i = 0; i < theStruct.getArity(); i++) {
+                final Object arg = theStruct.getArg(i);
+                h = 31 * h + (arg instanceof Struct ? System.identityHashCode(arg) : arg.hashCode());
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        /**
+         * Once its term is collected, a key is only equal to itself.
+         */
+        @Override
+        public boolean equals(Object theOther) {
+            if (this == theOther) {
+                return true;
+            }
+            if (!(theOther instanceof Key) || ((Key) theOther).hash != this.hash) {
+                return false;
+            }
+            final Struct struct = get();
+            return struct != null && struct.equals(((Key) theOther).get());
+        }
+    }
+
+}
@@ -86,6 +86,21 @@ public final class Struct extends Term {
     // TODO Findbugs found that PrimitiveInfo should be serializable too :-(
     private PrimitiveInfo primitiveInfo;
 
+    /**
+     * True when this {@link Struct} contains no {@link Var}, determined when its indexes are assigned, see {@link #isGround()}.
+     */
+    private boolean isGround = false;
+
+    /**
+     * The variables table of all ground {@link Struct}s, see {@link #getVarTable()}.
+     */
+    private static final Var[] EMPTY_VAR_TABLE = new Var[0];
+
+    /**
+     * The variables within this {@link Struct} by their index, see {@link #getVarTable()}.
+     */
+    private volatile Var[] varTable = null;
+
     /**
      * Low-level constructor.
      * 
@@ -156,7 +171,7 @@ public final class Struct extends Term {
      */
     public static Object atom(String theFunctor) {
         // Search in the catalog of atoms for exact match
-        final String functor = theFunctor.intern();
+        final String functor = Symbols.name(theFunctor);
         final boolean specialAtomRequiresStruct = functor == Struct.FUNCTOR_CUT || functor == Struct.FUNCTOR_TRUE || functor == Struct.FUNCTOR_FALSE;
         if (!specialAtomRequiresStruct) {
             // We can return an internalized String
@@ -212,7 +227,7 @@ public final class Struct extends Term {
     /**
      * Write major properties of the Struct, and also store read-only fields for efficient access.
      * 
-     * @param theFunctor whose named is internalized by {@link String#intern()}
+     * @param theFunctor whose named is internalized by {@link Symbols#name(String)}
      * @param theArity
      */
     private void setNameAndArity(String theFunctor, int theArity) {
@@ -222,9 +237,9 @@ public final class Struct extends Term {
         if (theFunctor.isEmpty() && theArity > 0) {
             throw new InvalidTermException("The functor of a non-atom Struct cannot be an empty string");
         }
-        this.name = theFunctor.intern();
+        this.name = Symbols.name(theFunctor);
         this.arity = theArity;
-        this.signature = (this.name + '/' + this.arity).intern();
+        this.signature = Symbols.signature(this.name, this.arity);
     }
 
     /**
@@ -301,6 +316,55 @@ public final class Struct extends Term {
         return this.primitiveInfo;
     }
 
+    /**
+     * @return true if this {@link Struct} contains no {@link Var}, at any depth. Only known once its indexes are assigned (see
+     *         {@link TermApi#normalize(Object, LibraryContent)}): false until then.
+     */
+    public boolean isGround() {
+        return this.isGround;
+    }
+
+    /**
+     * The variables of this {@link Struct}, so that a {@link TermBindings} can be allocated without traversing it. Computed once, by
+     * {@link TermApi#normalize(Object, LibraryContent)} for the root of a term, or when first needed.
+     * 
+     * @return An array of length {@link #getIndex()}, where each {@link Var} is at its index; null at the indexes of the variables that
+     *         are not within this {@link Struct}. The array must not be modified.
+     */
+    public Var[] getVarTable() {
+        final Var[] table = this.varTable;
+        // The index of a shared ground Struct may have changed, see GroundTermTable
+        if (table != null && table.length == this.index) {
+            return table;
+        }
+        if (this.index == NO_INDEX) {
+            throw new InvalidTermException("Index of Term '" + this + "' is not yet initialized, cannot determine its variables. Normalize it first.");
+        }
+        if (this.index == 0) {
+            this.varTable = EMPTY_VAR_TABLE;
+            return EMPTY_VAR_TABLE;
+        }
+        final Var[] computed = new Var[this.index];
+        collectVarsInto(computed);
+        this.varTable = computed;
+        return computed;
+    }
+
+    private void collectVarsInto(Var[] theTable) {
+        for (int i = 0; i < this.arity; i++) {
+            final Object child = this.args[i];
+            if (child instanceof Var) {
+                final int varIndex = ((Var) child).getIndex();
+                // The anonymous variable has a negative index
+                if (varIndex >= 0 && varIndex < theTable.length && theTable[varIndex] == null) {
+                    theTable[varIndex] = (Var) child;
+                }
+            } else if (child instanceof Struct && !((Struct) child).isGround) {
+                ((Struct) child).collectVarsInto(theTable);
+            }
+        }
+    }
+
     /**
      * @param theContent
      */
@@ -319,6 +383,28 @@ public final class Struct extends Term {
         }
     }
 
+    /**
+     * Replace the ground arguments of this {@link Struct} by their canonical instance, recursively. This {@link Struct} must be normalized.
+     *
+     * @param theTable
+     */
+    void shareGroundArguments(GroundTermTable theTable) {
+        for (int i = 0; i < this.arity; i++) {
+            final Object child = this.args[i];
+            if (child instanceof Struct) {
+                final Struct struct = (Struct) child;
+                struct.shareGroundArguments(theTable);
+                if (struct.isGround) {
+                    final Struct shared = theTable.canonical(struct);
+                    // Canonical instances may be read by other threads, never write to them
+                    if (shared != struct) {
+                        this.args[i] = shared;
+                    }
+                }
+            }
+        }
+    }
+
     public void avoidCycle(List<Term> visited) {
         for (final Term term : visited) {
             if (term == this) {
@@ -345,6 +431,8 @@ public final class Struct extends Term {
      */
     void collectTermsInto(Collection<Object> theCollectedTerms) {
         this.index = NO_INDEX;
+        this.isGround = false;
+        this.varTable = null;
         for (int i = 0; i < this.arity; i++) {
             final Object child = this.args[i];
             TermApi.collectTermsInto(child, theCollectedTerms);
@@ -425,10 +513,16 @@ public final class Struct extends Term {
         }
         // Recursive assignment
         int runningCounter = theIndexOfNextNonIndexedVar;
+        boolean ground = true;
         for (int i = 0; i < this.arity; i++) {
-            runningCounter = TermApi.assignIndexes(this.args[i], runningCounter);
+            final Object child = this.args[i];
+            runningCounter = TermApi.assignIndexes(child, runningCounter);
+            if (child instanceof Var || (child instanceof Struct && !((Struct) child).isGround)) {
+                ground = false;
+            }
         }
         this.index = (short)runningCounter;
+        this.isGround = ground;
         return runningCounter;
     }
 
@@ -600,6 +694,9 @@ public final class Struct extends Term {
      */
     @Override
     public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
         if (!(other instanceof Struct)) {
             return false;
         }
@@ -0,0 +1,146 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.model.symbol;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The table of the names of atoms, functors and variables, and of the predicate signatures such as "foo/3". Names are compared by
+ * reference throughout the engine, this table returns their canonical instance.
+ * <p/>
+ * Looking up a name does not lock and does not go through the JVM's table of interned strings: only the first occurrence of a name calls
+ * {@link String#intern()}, so that canonical names remain the same instances as Java literals (such as {@link Struct#FUNCTOR_TRUE}, or the
+ * method names compared by the libraries). The signatures of a functor are kept with its name, so they are not built again for every
+ * {@link Struct} created.
+ * <p/>
+ * The table is shared by all engines of the JVM, and only refers weakly to canonical names: a name is removed once no term, clause or
+ * signature refers to it anymore, so that reading ever new atoms (such as identifiers of records) does not leak memory. The trade-off is
+ * an indirection through a {@link WeakReference} on each lookup, and a name that is collected then read again costs another call to
+ * {@link String#intern()}. The JVM's table of interned strings does not retain strings either.
+ */
+public final class Symbols {
+
+    private static final ConcurrentMap<String, Symbol> symbols = new ConcurrentHashMap<String, Symbol>(4096, 0.75f, 16);
+
+    /**
+     * Receives the symbols whose name was collected, to remove them from {@link #symbols}.
+     */
+    private static final ReferenceQueue<String> collected = new ReferenceQueue<String>();
+
+    /**
+     * A canonical name, and its signatures indexed by arity.
+     */
+    private static final class Symbol extends WeakReference<String> {
+        /**
+         * Key of this symbol in {@link #symbols}, equal to the canonical name but another instance, which would otherwise never be
+         * collected.
+         */
+        final String key;
+        volatile String[] signatures = null;
+
+        Symbol(String theName) {
+            super(theName, collected);
+            this.key = new String(theName);
+        }
+    }
+
+    private Symbols() {
+        // Forbid instantiation
+    }
+
+    /**
+     * @param theName
+     * @return The symbol of theName, whose name may be collected as soon as returned: callers check {@link Symbol#get()}.
+     */
+    private static Symbol symbol(String theName) {
+        final Symbol existing = symbols.get(theName);
+        if (existing != null) {
+            if (existing.get() != null) {
+                return existing;
+            }
+            symbols.remove(existing.key, existing);
+        }
+        removeCollected();
+        final Symbol created = new Symbol(theName.intern());
+        final Symbol raced = symbols.putIfAbsent(created.key, created);
+        return raced != null ? raced : created;
+    }
+
+    private static void removeCollected() {
+        Reference<? extends String> reference;
+        while ((reference = collected.poll()) != null) {
+            final Symbol symbol = (Symbol) reference;
+            symbols.remove(symbol.key, symbol);
+        }
+    }
+
+    /**
+     * @param theName
+     * @return The canonical instance of theName, equal to theName.intern().
+     */
+    public static String name(String theName) {
+        String name;
+        do {
+            name = symbol(theName).get();
+        } while (name == null);
+        return name;
+    }
+
+    /**
+     * @param theName
+     * @param theArity
+     * @return The canonical predicate signature theName/theArity.
+     */
+    public static String signature(String theName, int theArity) {
+        Symbol symbol;
+        String name;
+        do {
+            symbol = symbol(theName);
+            name = symbol.get();
+        } while (name == null);
+        final String[] signatures = symbol.signatures;
+        if (signatures != null && theArity < signatures.length) {
+            final String signature = signatures[theArity];
+            if (signature != null) {
+                return signature;
+            }
+        }
+        final String signature = name(name + '/' + theArity);
+        // Concurrent updates may lose a signature, it would just be looked up again
+        final String[] updated = new String[Math.max(theArity + 1, signatures != null ? signatures.length : 0)];
+        if (signatures != null) {
+            System.arraycopy(signatures, 0, updated, 0, signatures.length);
+        }
+        updated[theArity] = signature;
+        symbol.signatures = updated;
+        return signature;
+    }
+
+    /**
+     * @return The number of names and signatures in the table.
+     */
+    public static int size() {
+        removeCollected();
+        return symbols.size();
+    }
+
+}
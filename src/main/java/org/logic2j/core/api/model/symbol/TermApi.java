@@ -235,7 +235,75 @@ public class TermApi {
         if (thePredicate instanceof Struct) {
             return ((Struct) thePredicate).getPredicateSignature();
         }
-        return String.valueOf(thePredicate) + "/0";
+        return Symbols.signature(String.valueOf(thePredicate), 0);
+    }
+
+    /**
+     * Determine the key under which a (dereferenced) argument of a predicate is indexed: a {@link Struct} is keyed by its predicate
+     * signature, atoms, numbers and any other Java object are their own key. Two terms that may unify always have the same key (or a
+     * null key).
+     *
+     * @param theTerm Should have been dereferenced already
+     * @return The index key, or null when theTerm is a {@link Var}.
+     */
+    public static Object indexKey(Object theTerm) {
+        if (theTerm instanceof Struct) {
+            return ((Struct) theTerm).getPredicateSignature();
+        }
+        if (theTerm instanceof Var) {
+            return null;
+        }
+        return theTerm;
+    }
+
+    /**
+     * Obtain the index key of theTerm's current value.
+     *
+     * @param theTerm
+     * @param theBindings To dereference theTerm if it is a {@link Var}
+     * @return The index key (see {@link #indexKey(Object)}), or null if theTerm is (or is bound to) a free {@link Var}.
+     */
+    public static Object dereferencedIndexKey(Object theTerm, TermBindings theBindings) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                return null;
+            }
+            final Binding binding = var.bindingWithin(theBindings).followLinks();
+            if (!binding.isLiteral()) {
+                return null;
+            }
+            return indexKey(binding.getTerm());
+        }
+        return indexKey(theTerm);
+    }
+
+    /**
+     * Obtain the index keys of all arguments of a goal, to quickly discard the clauses whose head cannot unify, see
+     * {@link org.logic2j.core.api.model.Clause#mayUnifyWith(String, Object[])}.
+     *
+     * @param theGoal
+     * @param theBindings
+     * @return One key per argument as per {@link #dereferencedIndexKey(Object, TermBindings)}, or null if theGoal has no argument bound
+     *         (no clause could be discarded based on its arguments).
+     */
+    public static Object[] dereferencedArgumentKeys(Object theGoal, TermBindings theBindings) {
+        if (!(theGoal instanceof Struct)) {
+            return null;
+        }
+        final Struct goal = (Struct) theGoal;
+        final int arity = goal.getArity();
+        Object[] keys = null;
+        for (int i = 0; i < arity; i++) {
+            final Object key = dereferencedIndexKey(goal.getArg(i), theBindings);
+            if (key != null) {
+                if (keys == null) {
+                    keys = new Object[arity];
+                }
+                keys[i] = key;
+            }
+        }
+        return keys;
     }
 
     //---------------------------------------------------------------------------
@@ -302,8 +370,12 @@ public class TermApi {
     public static Object normalize(Object theTerm, LibraryContent theLibraryContent) {
         final Object factorized = factorize(theTerm);
         assignIndexes(factorized, 0);
-        if (factorized instanceof Struct && theLibraryContent != null) {
-            ((Struct) factorized).assignPrimitiveInfo(theLibraryContent);
+        if (factorized instanceof Struct) {
+            // Precompute the variables, for allocating its TermBindings
+            ((Struct) factorized).getVarTable();
+            if (theLibraryContent != null) {
+                ((Struct) factorized).assignPrimitiveInfo(theLibraryContent);
+            }
         }
         return factorized;
     }
@@ -455,6 +527,10 @@ public class TermApi {
                 if (remapper.containsKey(theStruct)) {
                     return remapper.get(theStruct);
                 }
+                if (theStruct.isGround()) {
+                    // Immutable, and nothing to remap within
+                    return theStruct;
+                }
                 final int arity = theStruct.getArity();
                 final Object[] elements = new Object[arity];
                 for (int i = 0; i < arity; i++) {
@@ -507,6 +583,12 @@ public class TermApi {
         };
     }
 
+    /**
+     * @param theTerm
+     * @param theBindings
+     * @param remapper Replacements of the {@link Var}iables, may be null. Ground {@link Struct}s are not cloned.
+     * @return A copy of theTerm.
+     */
     public static Object clone(Object theTerm, TermBindings theBindings, Map<Object, Object> remapper) {
         final Map<Object, Object> effectiveRemapper = remapper != null ? remapper : Collections.emptyMap();
         final Object cloned = accept(cloningVisitor(effectiveRemapper), theTerm, theBindings);
@@ -63,7 +63,7 @@ public final class Var extends Term {
      * @throws InvalidTermException if n is not a valid Prolog variable name
      */
     public Var(String theName) {
-        this.name = theName.intern();
+        this.name = Symbols.name(theName);
     }
 
     /**
@@ -73,6 +73,23 @@ public class Binding {
      */
     private Var referrer;
 
+    /**
+     * Extra information attached by a library, see {@link BindingAttribute}. Not reset by {@link #free()}.
+     */
+    private BindingAttribute attribute;
+
+    /**
+     * When this {@link Binding} was created for trying a clause: the number of marks on the trail at that time, so that it can be
+     * bound without being recorded on the trail while the most recent mark is the one of the attempt, since the binding is discarded when
+     * that mark is undone. NOT_OWNED when the binding must always be recorded.
+     */
+    private int creationDepth = NOT_OWNED;
+
+    /**
+     * Value of {@link #getCreationDepth()} for {@link Binding}s that are not discarded upon backtracking.
+     */
+    public static final int NOT_OWNED = -1;
+
     private Binding() {
         // Just forbid instantiation from outside - use static factory methods instead
     }
@@ -88,6 +105,7 @@ public class Binding {
         this.termBindings = originalToCopy.termBindings;
         this.link = originalToCopy.link;
         this.referrer = originalToCopy.referrer;
+        this.attribute = originalToCopy.attribute;
     }
 
     /**
@@ -171,7 +189,7 @@ public class Binding {
      * Modify this Binding's to link it to a target binding. It must be free to do that!
      * @param targetBinding
      */
-    private void linkTo(Binding targetBinding) {
+    public void linkTo(Binding targetBinding) {
       if (! this.isFree()) {
           throw new PrologNonSpecificError("Cannot overwrite a non-free Binding! Was trying to link existing " + this + " to " + targetBinding);
       }
@@ -181,6 +199,39 @@ public class Binding {
       this.link = targetBinding;
     }
     
+    /**
+     * @return A detached copy of the current state of this {@link Binding}, see {@link #restoreFrom(Binding)}.
+     */
+    public Binding copy() {
+        return new Binding(this);
+    }
+
+    /**
+     * Bring this free {@link Binding} back to a state previously obtained by {@link #copy()}.
+     * 
+     * @param theCopy
+     */
+    public void restoreFrom(Binding theCopy) {
+        if (!this.isFree()) {
+            throw new PrologNonSpecificError("Cannot overwrite a non-free Binding! Was trying to restore existing " + this + " to " + theCopy);
+        }
+        this.type = theCopy.type;
+        this.term = theCopy.term;
+        this.termBindings = theCopy.termBindings;
+        this.link = theCopy.link;
+    }
+
+    /**
+     * @return The number of marks on the trail when this {@link Binding} was created to try a clause, or {@link #NOT_OWNED}.
+     */
+    public int getCreationDepth() {
+        return this.creationDepth;
+    }
+
+    void setCreationDepth(int theCreationDepth) {
+        this.creationDepth = theCreationDepth;
+    }
+
     /**
      * Free the binding, i.e. revert a possibly bound variable to the {@value BindingType#FREE} state.
      */
@@ -243,6 +294,9 @@ public class Binding {
 
         @Override
         public Void visit(Struct theStruct, TermBindings theBindings) {
+          if (theStruct.isGround()) {
+            return null;
+          }
           // Recurse through children
           for (int i = 0; i < theStruct.getArity(); i++) {
             TermApi.accept(this, theStruct.getArg(i), theBindings);
@@ -317,6 +371,10 @@ public class Binding {
       }
       if (theTerm instanceof Struct) {
         final Struct struct = (Struct)theTerm;
+        if (struct.isGround()) {
+          // Nothing to substitute
+          return struct;
+        }
         final Object[] substArgs = new Object[struct.getArity()]; // All arguments after substitution
         boolean anyChildWasChanged = false;
         for (int i = 0; i < struct.getArity(); i++) {
@@ -373,6 +431,20 @@ public class Binding {
         this.referrer = theVar;
     }
 
+    public BindingAttribute getAttribute() {
+        return this.attribute;
+    }
+
+    /**
+     * Change the attribute without recording it on the trail - use {@link org.logic2j.core.impl.unify.BindingTrail#setAttribute(Binding, BindingAttribute)}
+     * from within inference.
+     * 
+     * @param theAttribute
+     */
+    public void setAttribute(BindingAttribute theAttribute) {
+        this.attribute = theAttribute;
+    }
+
     public boolean isFree() {
         return this.type == BindingType.FREE;
     }
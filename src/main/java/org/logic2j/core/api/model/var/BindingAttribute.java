@@ -0,0 +1,39 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.model.var;
+
+import org.logic2j.core.api.Unifier;
+import org.logic2j.core.impl.unify.BindingTrail;
+
+/**
+ * Extra information that a library may attach to a free {@link Binding}, for example the domain of a constrained variable. Attributes are
+ * changed with {@link BindingTrail#setAttribute(Binding, BindingAttribute)} so that their previous value is restored upon backtracking,
+ * and they remain attached when the {@link Binding} is bound and freed again.
+ */
+public interface BindingAttribute {
+
+    /**
+     * Invoked by the {@link Unifier} right after theBinding, which carries this attribute, was bound to a literal or linked to another
+     * {@link Binding}. Changes done here must be recorded on the {@link BindingTrail}: they are undone with the unification.
+     * 
+     * @param theBinding The {@link Binding} that was just bound
+     * @return false to make the unification fail.
+     */
+    boolean onBind(Binding theBinding);
+
+}
@@ -25,8 +25,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
-import org.logic2j.core.api.model.TermVisitor;
-import org.logic2j.core.api.model.TermVisitorBase;
+import org.logic2j.core.api.model.Clause;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.exception.PrologInternalError;
 import org.logic2j.core.api.model.exception.PrologNonSpecificError;
@@ -62,13 +61,25 @@ public class TermBindings {
      * All {@link Binding}s, one per instance of {@link Var}iable. There are as many bindings as the distinct number of variables in the
      * referrer Term, i.e. the length of bindings equals the maximum of all indexes in all {@link Var}s of the referrer, plus one. See also
      * {@link Var#getIndex()}. This array is never null, but may be empty (length=0) when the referrer Term does not contain any {@link Var}
-     * iable.
+     * iable. When {@link #template} is not null, the elements are only allocated on first access, see {@link #getBinding(int)}.
      */
     private final Binding[] bindings;
 
+    /**
+     * The free {@link Binding}s of a {@link Clause} that the elements of {@link #bindings} copy when first accessed, or null when all
+     * elements of {@link #bindings} are allocated. Unifying a goal with the head of a clause generally accesses only some of its
+     * variables, and often fails after a few of them.
+     */
+    private final Binding[] template;
+
+    /**
+     * See {@link Binding#getCreationDepth()}, assigned to the {@link Binding}s copied from {@link #template}.
+     */
+    private final int creationDepth;
+
     /**
      * Create a new {@link TermBindings} by just assign the 2 fields, we use this when deep-copying
-     * with a new array of {@link Binding}, or when shallow-copying with the same reference to the array.
+     * with a new array of {@link Binding}.
      * 
      * @param theNewReferrerTerm
      * @param theArrayOfBinding
@@ -76,18 +87,49 @@ public class TermBindings {
     private TermBindings(Object theNewReferrerTerm, Binding[] theArrayOfBinding) {
         this.referrer = theNewReferrerTerm;
         this.bindings = theArrayOfBinding;
+        this.template = null;
+        this.creationDepth = Binding.NOT_OWNED;
+    }
+
+    /**
+     * Shallow copy with the same {@link Binding}s as theOriginal.
+     * 
+     * @param theNewReferrerTerm
+     * @param theOriginal
+     */
+    private TermBindings(Object theNewReferrerTerm, TermBindings theOriginal) {
+        this.referrer = theNewReferrerTerm;
+        this.bindings = theOriginal.bindings;
+        this.template = theOriginal.template;
+        this.creationDepth = theOriginal.creationDepth;
+    }
+
+    /**
+     * Copy of theTemplate whose {@link Binding}s are allocated on first access.
+     * 
+     * @param theReferrer
+     * @param theTemplate
+     * @param theCreationDepth
+     */
+    private TermBindings(Object theReferrer, Binding[] theTemplate, int theCreationDepth) {
+        this.referrer = theReferrer;
+        this.bindings = new Binding[theTemplate.length];
+        this.template = theTemplate;
+        this.creationDepth = theCreationDepth;
     }
 
     /**
      * Allocate a {@link TermBindings} to hold the values of all {@link Var}iables of a given term,
      * named further the "referrer", which is ususally a {@link Struct}.
+     * The variables are found from {@link Struct#getVarTable()}, this does not traverse the referrer once it was normalized.
      * 
-     * @note This constructor needs quite a lot of processing - there should be ways to optimize it
      * @param theReferrer The Term whose {@link Var}iables's values are to be found in this object.
      * @see TermBindings#getReferrer() to further access theTerm
      */
     public TermBindings(Object theReferrer) {
         this.referrer = theReferrer;
+        this.template = null;
+        this.creationDepth = Binding.NOT_OWNED;
         if (!(theReferrer instanceof Term)) {
             // Will be no variables - used constant empty array
             this.bindings = EMPTY_BINDINGS_ARRAY;
@@ -118,12 +160,22 @@ public class TermBindings {
             // Allocate and initialize a Binding for every variable
             //
             this.bindings = new Binding[nbVars];
-            for (int varIndex = 0; varIndex < nbVars; varIndex++) {
-                final Binding binding = Binding.newFree();
-                this.bindings[varIndex] = binding;
-                // Assign Binding.var field
-                // TODO (issue) This is costly see https://github.com/ltettoni/logic2j/issues/26
-                TermApi.accept(new VisitorToAssignVarWithinBinding(binding, varIndex), theReferrer, this);
+            if (isVar) {
+                if (nbVars == 1) {
+                    final Binding binding = Binding.newFree();
+                    if (index == 0) {
+                        binding.setReferrer((Var) theReferrer);
+                    }
+                    this.bindings[0] = binding;
+                }
+            } else {
+                final Var[] vars = ((Struct) theReferrer).getVarTable();
+                for (int varIndex = 0; varIndex < nbVars; varIndex++) {
+                    final Binding binding = Binding.newFree();
+                    // Assign Binding.var field
+                    binding.setReferrer(vars[varIndex]);
+                    this.bindings[varIndex] = binding;
+                }
             }
         }
     }
@@ -141,13 +193,26 @@ public class TermBindings {
         return deepCopyWithNewReferrer(theOriginal.getReferrer(), theOriginal);
     }
 
+    /**
+     * Same as {@link #deepCopyWithSameReferrer(TermBindings)}, the copied {@link Binding}s will be discarded when the mark following
+     * theCreationDepth is undone from the trail, see {@link Binding#getCreationDepth()}. They are only allocated when first accessed,
+     * so theOriginal must not be bound afterwards: it is typically the {@link TermBindings} of a {@link Clause}.
+     * 
+     * @param theOriginal
+     * @param theCreationDepth The current number of marks on the trail
+     * @return A deep copy of theOriginal.
+     */
+    public static TermBindings deepCopyWithSameReferrer(TermBindings theOriginal, int theCreationDepth) {
+        return new TermBindings(theOriginal.getReferrer(), theOriginal.allBindings(), theCreationDepth);
+    }
+
     public static TermBindings createFromLiteralBinding(Binding theLiteralBinding) {
-        return new TermBindings(theLiteralBinding.getTerm(), theLiteralBinding.getTermBindings().bindings);
+        return new TermBindings(theLiteralBinding.getTerm(), theLiteralBinding.getTermBindings());
     }
 
     private static TermBindings deepCopyWithNewReferrer(Object theNewReferrer, TermBindings theOriginal) {
         // Deep cloning of the individual Binding
-        final Binding[] originalBindings = theOriginal.bindings;
+        final Binding[] originalBindings = theOriginal.allBindings();
         final int nbVars = originalBindings.length;
         final Binding[] copiedArrayOfBinding = new Binding[nbVars];
         // All bindings need cloning
@@ -191,7 +256,7 @@ public class TermBindings {
                 return finalBinding.createTermBindings();
             case FREE:
                 // Refocus on original var (we now know it is free), keep the same original bindings
-                return new TermBindings(originVar, this.bindings); // I wonder if we should not focus on the final var instead?
+                return new TermBindings(originVar, this); // I wonder if we should not focus on the final var instead?
             default:
                 throw new PrologInternalError("Should never have been here");
             }
@@ -207,7 +272,7 @@ public class TermBindings {
         }
 
         // will return a shallow-copy TermBindings with theTerm as referrer
-        return new TermBindings(theTerm, this.bindings);
+        return new TermBindings(theTerm, this);
     }
 
     /**
@@ -219,7 +284,7 @@ public class TermBindings {
      */
     public Map<String, Object> explicitBindings(FreeVarRepresentation theRepresentation) {
         final Map<String, Object> result = new TreeMap<String, Object>();
-        for (final Binding initialBinding : this.bindings) {
+        for (final Binding initialBinding : allBindings()) {
             final Var originalVar = initialBinding.getReferrer();
             if (originalVar == null) {
                 throw new PrologNonSpecificError("TermBindings not properly initialized: Binding " + initialBinding + " does not refer to Var (null)");
@@ -281,7 +346,7 @@ public class TermBindings {
         // For every Binding in this object, identify to which Var it initially refered (following linked bindings)
         // ending up with either null (on a literal), or a real Var (on a free var).
         final IdentityHashMap<Binding, Var> result = new IdentityHashMap<Binding, Var>();
-        for (final Binding initialBinding : this.bindings) {
+        for (final Binding initialBinding : allBindings()) {
             final Var initialVar = initialBinding.getReferrer();
             // Follow linked bindings
             final Binding finalBinding = initialBinding.followLinks();
@@ -295,7 +360,7 @@ public class TermBindings {
         // For every Binding in this object, identify to which Var it initially refered (following linked bindings)
         // ending up with either null (on a literal), or a real Var (on a free var).
         final IdentityHashMap<Var, Binding> result = new IdentityHashMap<Var, Binding>();
-        for (final Binding initialBinding : this.bindings) {
+        for (final Binding initialBinding : allBindings()) {
             final Var initialVar = initialBinding.getReferrer();
             // Follow linked bindings
             final Binding finalBinding = initialBinding.followLinks();
@@ -330,7 +395,7 @@ public class TermBindings {
     public TermBindings findBindings(Var theVar) {
         // Search root level
         int index = 0;
-        for (final Binding binding : this.bindings) {
+        for (final Binding binding : allBindings()) {
             // FIXME dubious use of == instead of structural equality
             if (binding.getReferrer() == theVar && index == theVar.getIndex()) {
                 return this;
@@ -338,7 +403,7 @@ public class TermBindings {
             index++;
         }
         // Not found: search deeper through bindings
-        for (final Binding binding : this.bindings) {
+        for (final Binding binding : allBindings()) {
             if (binding.getType() == BindingType.LITERAL) {
                 final TermBindings foundDeeper = binding.getTermBindings().findBindings(theVar);
                 if (foundDeeper != null) {
@@ -370,7 +435,32 @@ public class TermBindings {
      * @return The {@link Binding} at theIndex.
      */
     public Binding getBinding(int theIndex) {
-        return this.bindings[theIndex];
+        final Binding binding = this.bindings[theIndex];
+        if (binding != null) {
+            return binding;
+        }
+        return copyFromTemplate(theIndex);
+    }
+
+    private Binding copyFromTemplate(int theIndex) {
+        final Binding binding = new Binding(this.template[theIndex]);
+        binding.setCreationDepth(this.creationDepth);
+        this.bindings[theIndex] = binding;
+        return binding;
+    }
+
+    /**
+     * @return All {@link Binding}s, allocating those not yet accessed.
+     */
+    private Binding[] allBindings() {
+        if (this.template != null) {
+            for (int i = 0; i < this.bindings.length; i++) {
+                if (this.bindings[i] == null) {
+                    copyFromTemplate(i);
+                }
+            }
+        }
+        return this.bindings;
     }
 
     /**
@@ -400,7 +490,7 @@ public class TermBindings {
         final Binding[] array = new Binding[numberOfVars];
         int index = 0;
         for (final TermBindings element : distinctBindings) {
-            for (final Binding binding : element.bindings) {
+            for (final Binding binding : element.allBindings()) {
                 final Binding clonedBinding = new Binding(binding);
                 array[index] = clonedBinding;
                 final Var originalVar = clonedBinding.getReferrer();
@@ -430,7 +520,7 @@ public class TermBindings {
         }
         if (!isEmpty()) {
             // Just format with the Binding's toString() method, as a list (enclosed in brackets [])
-            sb.append(Arrays.asList(this.bindings));
+            sb.append(Arrays.asList(allBindings()));
         }
         // Referrer
         sb.append(':');
@@ -475,36 +565,4 @@ public class TermBindings {
 
     }
 
-    /**
-     * A {@link TermVisitor} used to assign a reference to the original {@link Var}iable into a {@link Binding}.
-     */
-    private static class VisitorToAssignVarWithinBinding extends TermVisitorBase<Var> {
-
-        private final Binding binding;
-        private final int index;
-
-        /**
-         * @param theBinding The {@link Binding} whose {@link Binding#setReferrer(Var)} needs to be initialized.
-         * @param theIndex Initialize only {@link Var} whose {@link Term#getIndex()} match this index value.
-         */
-        VisitorToAssignVarWithinBinding(Binding theBinding, int theIndex) {
-            this.binding = theBinding;
-            this.index = theIndex;
-        }
-
-        @Override
-        public Var visit(Var theVar, TermBindings theBindings) {
-            if (theVar.getIndex() == this.index) {
-                this.binding.setReferrer(theVar);
-                // Job done - there are no other variable to set for this index, since goals are always factorized (see def of factorized
-                // Term)
-                // Returning non-null will stop useless recursion
-                return theVar;
-            }
-            // Nothing done - continue visiting more
-            return null;
-        }
-
-    }
-
 }
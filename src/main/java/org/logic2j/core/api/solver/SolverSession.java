@@ -0,0 +1,82 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.solver;
+
+import org.logic2j.core.api.PLibrary;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.Unifier;
+import org.logic2j.core.impl.unify.BindingTrail;
+import org.logic2j.core.impl.util.ReportUtils;
+
+/**
+ * The state of solving goals that must not be shared by concurrent solves: the {@link BindingTrail} recording the bindings to undo when
+ * backtracking. A session is passed explicitly to {@link Solver}, {@link Unifier} and {@link PLibrary#dispatch}, so that the hot path of
+ * solving does not look it up.
+ * <p/>
+ * Each thread has a current session, used by the methods that take no session argument. A thread may interleave several independent
+ * solves (such as iterators over solutions that are resumed one after the other) by giving each its own session, and making it current
+ * with {@link #activate(SolverSession)} while resuming it, for primitives invoked by reflection.
+ */
+public final class SolverSession {
+
+    private static final ThreadLocal<SolverSession> sessionOfThisThread = new ThreadLocal<SolverSession>() {
+
+        @Override
+        protected SolverSession initialValue() {
+            return new SolverSession();
+        }
+    };
+
+    private final BindingTrail.StepInfo trail = BindingTrail.newTrail();
+
+    /**
+     * @return The session current for this thread.
+     */
+    public static SolverSession current() {
+        return sessionOfThisThread.get();
+    }
+
+    /**
+     * Make theSession current for this thread.
+     * 
+     * @param theSession
+     * @return The session that was current, to be activated again when done with theSession.
+     */
+    public static SolverSession activate(SolverSession theSession) {
+        final SolverSession previous = sessionOfThisThread.get();
+        sessionOfThisThread.set(theSession);
+        return previous;
+    }
+
+    /**
+     * @return The trail of bindings of this session.
+     */
+    public BindingTrail.StepInfo getTrail() {
+        return this.trail;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return ReportUtils.shortDescription(this);
+    }
+
+}
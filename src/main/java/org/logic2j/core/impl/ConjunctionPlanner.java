@@ -0,0 +1,203 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.ClauseStatistics;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.theory.TheoryManager;
+
+/**
+ * Reorder the conjuncts of a conjunction so that the most selective are solved first, from the statistics of the {@link ClauseProvider}s
+ * (see {@link ClauseStatistics}) and the arguments bound at the time the conjunction is solved.
+ * <p/>
+ * Only goals of predicates made of facts exclusively are moved, and only within runs of consecutive such goals: cuts, primitives
+ * (including \+), calls, variables, disjunctions and predicates having rules or tabled are barriers that no goal crosses. Within a run, the
+ * goal having the smallest estimated number of solutions is placed first, then its variables are considered bound to estimate the
+ * next one, and so on. Variables of the goals before the run (except negations) are considered bound as well. The solutions of the
+ * conjunction remain the same, but they may be found in another order.
+ */
+final class ConjunctionPlanner {
+
+    private final TheoryManager theoryManager;
+
+    ConjunctionPlanner(TheoryManager theTheoryManager) {
+        this.theoryManager = theTheoryManager;
+    }
+
+    /**
+     * @param theConjuncts
+     * @param theGoalBindings
+     * @return The conjuncts in the order to solve them, theConjuncts itself when the order does not change.
+     */
+    GoalNode[] plan(GoalNode[] theConjuncts, TermBindings theGoalBindings) {
+        final List<ClauseStatistics> statistics = statistics();
+        if (statistics == null) {
+            return theConjuncts;
+        }
+        final Set<Binding> boundVars = Collections.newSetFromMap(new IdentityHashMap<Binding, Boolean>());
+        final int nbConjuncts = theConjuncts.length;
+        GoalNode[] result = theConjuncts;
+        int start = 0;
+        while (start < nbConjuncts) {
+            // Determine the run of reorderable goals starting here
+            int end = start;
+            while (end < nbConjuncts && isReorderable(theConjuncts[end], theGoalBindings, statistics)) {
+                end++;
+            }
+            if (end - start > 1) {
+                final List<GoalNode> remaining = new ArrayList<GoalNode>();
+                for (int i = start; i < end; i++) {
+                    remaining.add(theConjuncts[i]);
+                }
+                for (int position = start; position < end; position++) {
+                    int best = 0;
+                    double bestEstimate = Double.MAX_VALUE;
+                    for (int i = 0; i < remaining.size(); i++) {
+                        final double estimate = estimateSolutions(remaining.get(i), theGoalBindings, boundVars, statistics);
+                        if (estimate < bestEstimate) {
+                            best = i;
+                            bestEstimate = estimate;
+                        }
+                    }
+                    final GoalNode chosen = remaining.remove(best);
+                    if (chosen != result[position]) {
+                        if (result == theConjuncts) {
+                            result = theConjuncts.clone();
+                        }
+                        result[position] = chosen;
+                    }
+                    addVariables(chosen.getStruct(), theGoalBindings, boundVars);
+                }
+            } else if (end > start) {
+                addVariables(theConjuncts[start].getStruct(), theGoalBindings, boundVars);
+            }
+            // Skip the barrier, its variables will be bound when solving the next run (unless it is a negation)
+            if (end < nbConjuncts && !isNegation(theConjuncts[end])) {
+                addVariables(theConjuncts[end].getTerm(), theGoalBindings, boundVars);
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @param theGoalNode
+     * @param theGoalBindings
+     * @return true if theGoalNode is a predicate whose clauses are all facts, according to the estimates of all clause providers: its
+     *         number of solutions is finite.
+     */
+    boolean hasFiniteSolutions(GoalNode theGoalNode, TermBindings theGoalBindings) {
+        final List<ClauseStatistics> statistics = statistics();
+        return statistics != null && isReorderable(theGoalNode, theGoalBindings, statistics);
+    }
+
+    /**
+     * @return The statistics of all clause providers, or null if some clauses cannot be estimated.
+     */
+    private List<ClauseStatistics> statistics() {
+        final List<ClauseStatistics> statistics = new ArrayList<ClauseStatistics>();
+        for (final ClauseProvider provider : this.theoryManager.getClauseProviders()) {
+            if (!(provider instanceof ClauseStatistics)) {
+                return null;
+            }
+            statistics.add((ClauseStatistics) provider);
+        }
+        return statistics;
+    }
+
+    private boolean isReorderable(GoalNode theGoalNode, TermBindings theGoalBindings, List<ClauseStatistics> theStatistics) {
+        if (theGoalNode.getKind() != GoalNode.Kind.PREDICATE || this.theoryManager.isTabled(theGoalNode.getStruct().getPredicateSignature())) {
+            return false;
+        }
+        final Set<Binding> noneBound = Collections.emptySet();
+        return estimateSolutions(theGoalNode, theGoalBindings, noneBound, theStatistics) != ClauseStatistics.UNKNOWN;
+    }
+
+    /**
+     * @param theGoalNode
+     * @param theGoalBindings
+     * @param theBoundVars Free variables that will be bound when theGoalNode is solved
+     * @param theStatistics
+     * @return The estimated number of solutions of theGoalNode, summed over all providers, or {@link ClauseStatistics#UNKNOWN}.
+     */
+    private static double estimateSolutions(GoalNode theGoalNode, TermBindings theGoalBindings, Set<Binding> theBoundVars,
+            List<ClauseStatistics> theStatistics) {
+        final Struct goal = theGoalNode.getStruct();
+        final int arity = goal.getArity();
+        final Object[] keys = TermApi.dereferencedArgumentKeys(goal, theGoalBindings);
+        final boolean[] boundArguments = new boolean[arity];
+        for (int i = 0; i < arity; i++) {
+            final Object arg = goal.getArg(i);
+            if ((keys == null || keys[i] == null) && arg instanceof Var && !((Var) arg).isAnonymous()) {
+                boundArguments[i] = theBoundVars.contains(((Var) arg).bindingWithin(theGoalBindings).followLinks());
+            }
+        }
+        double total = 0;
+        for (final ClauseStatistics statistics : theStatistics) {
+            final double estimate = statistics.estimateSolutions(goal.getPredicateSignature(), keys, boundArguments);
+            if (estimate == ClauseStatistics.UNKNOWN) {
+                return ClauseStatistics.UNKNOWN;
+            }
+            total += estimate;
+        }
+        return total;
+    }
+
+    /**
+     * @return true if theGoalNode is not/1 or \+/1, that never binds variables.
+     */
+    private static boolean isNegation(GoalNode theGoalNode) {
+        if (theGoalNode.getKind() != GoalNode.Kind.PRIMITIVE) {
+            return false;
+        }
+        final String signature = theGoalNode.getStruct().getPredicateSignature();
+        return "not/1".equals(signature) || "\\+/1".equals(signature);
+    }
+
+    /**
+     * Collect the free variables of theTerm, they will be bound by solving a fact.
+     */
+    private static void addVariables(Object theTerm, TermBindings theBindings, Set<Binding> theBoundVars) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (!var.isAnonymous()) {
+                final Binding binding = var.bindingWithin(theBindings).followLinks();
+                if (binding.isFree()) {
+                    theBoundVars.add(binding);
+                }
+            }
+        } else if (theTerm instanceof Struct) {
+            final Struct struct = (Struct) theTerm;
+            for (int i = 0; i < struct.getArity(); i++) {
+                addVariables(struct.getArg(i), theBindings, theBoundVars);
+            }
+        }
+    }
+
+}
@@ -17,7 +17,22 @@
  */
 package org.logic2j.core.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.ClauseStatistics;
 import org.logic2j.core.api.DataFactProvider;
 import org.logic2j.core.api.SolutionListener;
 import org.logic2j.core.api.Solver;
@@ -26,43 +41,232 @@ import org.logic2j.core.api.model.Clause;
 import org.logic2j.core.api.model.Continuation;
 import org.logic2j.core.api.model.DataFact;
 import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Term;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.impl.theory.AnswerTable;
+import org.logic2j.core.impl.theory.AnswerTables;
+import org.logic2j.core.impl.unify.BindingTrail;
+import org.logic2j.core.impl.util.GoalStackProfiler;
 import org.logic2j.core.impl.util.ReportUtils;
+import org.logic2j.core.impl.wam.WamSolver;
 import org.logic2j.core.library.mgmt.PrimitiveInfo;
 
 /**
  * Solve goals - that's the core of the engine.
+ * <p/>
+ * This solver interprets clauses. Compilation can be enabled with {@link #setCompilationEnabled(boolean)}: calls to each predicate are
+ * then counted, and once a predicate has been called more than {@link #getCompilationThreshold()} times, its calls are solved by a
+ * {@link WamSolver}, which compiles clauses to the instructions of an abstract machine; calls made from compiled code remain in compiled
+ * code. Counters and compiled code are discarded whenever the theory changes. Compilation is not used for calls that the
+ * {@link WamSolver} cannot compile, see {@link WamSolver#isCompilable(Object, TermBindings)}: among others when the theory has clause
+ * providers other than the theory manager, or for calls with variables that carry a {@link BindingAttribute}.
+ * Compilation is disabled by default: compiled predicates are not seen by {@link PredicateStatistics} nor by the {@link GoalStackProfiler},
+ * and some libraries are not yet solved the same way by compiled code.
+ * <p/>
+ * Optionally, conjunctions of facts are reordered before being solved, see {@link #setGoalReorderingEnabled(boolean)}, and conjunctions
+ * of independent goals are solved in parallel, see {@link #setConjunctionExecutor(ExecutorService)}.
  */
 public class DefaultSolver implements Solver {
     static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DefaultSolver.class);
     static final boolean isDebug = logger.isDebugEnabled();
 
+    /**
+     * Default number of calls to a predicate after which it is compiled.
+     */
+    public static final int DEFAULT_COMPILATION_THRESHOLD = 1000;
+
     private final PrologImplementation prolog;
 
     private boolean hasDataFactProviders;
 
+    private boolean hasTabledPredicates;
+
+    private boolean compilationEnabled = false;
+
+    private int compilationThreshold = DEFAULT_COMPILATION_THRESHOLD;
+
+    private boolean goalReorderingEnabled = false;
+
+    private ConjunctionPlanner conjunctionPlanner = null;
+
+    /**
+     * When true, solving stops as if aborted by the user once the current thread is interrupted, see {@link ParallelSolver}.
+     */
+    private boolean interruptible = false;
+
+    private ExecutorService conjunctionExecutor = null;
+
+    /**
+     * The solver of each thread of {@link #conjunctionExecutor}, null in other threads.
+     */
+    private final ThreadLocal<DefaultSolver> conjunctionWorker = new ThreadLocal<DefaultSolver>();
+
+    /**
+     * Number of calls by predicate signature, for the theory generation {@link #countedGeneration}.
+     */
+    private final ConcurrentMap<String, AtomicInteger> callCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private volatile int countedGeneration = -1;
+
+    /**
+     * A {@link WamSolver} must not be used by several threads at once.
+     */
+    private final ThreadLocal<WamSolver> compiledSolver = new ThreadLocal<WamSolver>();
+
     public DefaultSolver(PrologImplementation theProlog) {
         this.prolog = theProlog;
     }
 
+    @Override
+    public Continuation solveGoal(final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveGoal(SolverSession.current(), theGoalBindings, theSolutionListener);
+    }
+
     /**
-     * Just calls the recursive {@link #solveGoalRecursive(Object, TermBindings, SolutionListener)} method. The goal to solve
+     * Just calls the recursive {@link #solveGoalRecursive(SolverSession, Object, TermBindings, SolutionListener)} method. The goal to solve
      * is in the theGoalBindings's referrer.
      * 
+     * @param theSession
      * @param theSolutionListener
      * @param theGoalBindings
      */
     @Override
-    public Continuation solveGoal(final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+    public Continuation solveGoal(final SolverSession theSession, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        if (this.conjunctionExecutor != null) {
+            final DefaultSolver worker = this.conjunctionWorker.get();
+            if (worker != null) {
+                // Goal of a primitive within an independent conjunct
+                return worker.solveGoal(theSession, theGoalBindings, theSolutionListener);
+            }
+        }
         // Check if we will have to deal with DataFacts in this session of solving.
         // This slightly improves performance - we can bypass calling the method that deals with that
         this.hasDataFactProviders = this.prolog.getTheoryManager().hasDataFactProviders();
-        return solveGoalRecursive(theGoalBindings.getReferrer(), theGoalBindings, theSolutionListener);
+        this.hasTabledPredicates = this.prolog.getTheoryManager().hasTabledPredicates();
+        // Primitives trail their bindings within the current session
+        final SolverSession previous = SolverSession.activate(theSession);
+        try {
+            return solveGoalRecursive(theSession, theGoalBindings.getReferrer(), theGoalBindings, theSolutionListener);
+        } finally {
+            SolverSession.activate(previous);
+            // Once a top-level goal is solved, release what a huge goal may have allocated on the trail
+            BindingTrail.shrinkIfEmpty(theSession.getTrail());
+        }
+    }
+
+    /**
+     * Solve a compiled goal that is not necessarily the referrer of its bindings, such as the body of a {@link Clause}.
+     * 
+     * @param theSession
+     * @param theGoalNode
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    Continuation solveNode(final SolverSession theSession, final GoalNode theGoalNode, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        this.hasDataFactProviders = this.prolog.getTheoryManager().hasDataFactProviders();
+        this.hasTabledPredicates = this.prolog.getTheoryManager().hasTabledPredicates();
+        return solveNodeRecursive(theSession, theGoalNode, theGoalBindings, theSolutionListener);
+    }
+
+    /**
+     * Solve goalTerm. When the call is deterministic, i.e. the argument indexes leave a single clause that may match the goal, and this
+     * clause is a rule, its body is solved in the same invocation of this method (last-call optimization), by iterating instead of
+     * recursing: no iteration over clauses remains pending, and the bindings of the heads unified along the way are only deunified when
+     * returning. The same applies to the last candidate clause of a non-deterministic call.
+     * 
+     * @param theSession
+     * @param theGoalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    Continuation solveGoalRecursive(final SolverSession theSession, final Object theGoalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveRecursive(theSession, null, theGoalTerm, theGoalBindings, theSolutionListener);
     }
 
-    Continuation solveGoalRecursive(final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+    /**
+     * Same as {@link #solveGoalRecursive(SolverSession, Object, TermBindings, SolutionListener)} for a goal already compiled.
+     * 
+     * @param theSession
+     * @param theGoalNode
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    Continuation solveNodeRecursive(final SolverSession theSession, final GoalNode theGoalNode, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveRecursive(theSession, theGoalNode, null, theGoalBindings, theSolutionListener);
+    }
+
+    /**
+     * @param theSession
+     * @param theGoalNode The compiled goal to solve, or null to solve theGoalTerm
+     * @param theGoalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveRecursive(final SolverSession theSession, final GoalNode theGoalNode, final Object theGoalTerm, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener) {
+        int nbPendingDeunify = 0;
+        boolean cutPropagates = true;
+        final TailCall tailCall = new TailCall();
+        GoalNode goalNode = theGoalNode;
+        TermBindings goalBindings = theGoalBindings;
+        Continuation result = null;
+        try {
+            while (true) {
+                // Once a measured predicate left its last call, the solutions of the last call are also those of the predicate
+                final SolutionListener listener = (tailCall.measuring != null) ? tailCall.measuring : theSolutionListener;
+                if (goalNode != null) {
+                    result = solveOneNode(theSession, goalNode, goalBindings, listener, tailCall);
+                } else {
+                    result = solveOneGoal(theSession, theGoalTerm, goalBindings, listener, tailCall);
+                }
+                if (tailCall.goalNode == null) {
+                    break;
+                }
+                // Last call: continue with the body of the last clause in this same frame
+                nbPendingDeunify++;
+                cutPropagates &= tailCall.cutPropagates;
+                goalNode = tailCall.goalNode;
+                goalBindings = tailCall.goalBindings;
+                tailCall.goalNode = null;
+                tailCall.goalBindings = null;
+            }
+            if (nbPendingDeunify > 0 && result != Continuation.USER_ABORT && !(result == Continuation.CUT && cutPropagates)) {
+                // The body of a clause was a single goal: a cut within does not propagate (see solveAgainstClauseProviders())
+                result = Continuation.CONTINUE;
+            }
+        } finally {
+            for (int i = 0; i < nbPendingDeunify; i++) {
+                this.prolog.getUnifier().deunify(theSession);
+            }
+            if (tailCall.measuring != null) {
+                tailCall.measuring.exitAll(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Solve one goal, without looping on last calls.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @param theTailCall May receive the last call to be solved by the caller.
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveOneGoal(final SolverSession theSession, final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener, final TailCall theTailCall) {
         if (isDebug) {
             logger.debug(">> Entering solveRecursive(\"{}\") with {}", goalTerm, theGoalBindings);
         }
@@ -83,7 +287,10 @@ public class DefaultSolver implements Solver {
         final int arity = goalStruct.getArity();
 
         // Check if goal is a system predicate or a simple one to match against the theory
-        if (Struct.FUNCTOR_COMMA == functor) { // Names are {@link String#intern()}alized so OK to check by reference
+        if (Struct.FUNCTOR_COMMA == functor && (this.goalReorderingEnabled || this.conjunctionExecutor != null)) {
+            // Compile the conjunction to plan or parallelize it
+            result = solveOneNode(theSession, GoalNode.compile(goalStruct), theGoalBindings, theSolutionListener, theTailCall);
+        } else if (Struct.FUNCTOR_COMMA == functor) { // Names are {@link String#intern()}alized so OK to check by reference
             // Logical AND. Typically the arity=2 since "," is a binary predicate. But in logic2j we allow more.
             final SolutionListener[] listeners = new SolutionListener[arity];
             // The last listener is the one that called us (usually callbacks into the application)
@@ -105,13 +312,13 @@ public class DefaultSolver implements Solver {
                         }
                         final int nextIndex = index + 1;
                         final Object rhs = goalStruct.getArg(nextIndex); // Usually the right-hand-side of a binary ','
-                        final Continuation continuationFromSubGoal = solveGoalRecursive(rhs, theGoalBindings, listeners[nextIndex]);
+                        final Continuation continuationFromSubGoal = solveGoalRecursive(theSession, rhs, theGoalBindings, listeners[nextIndex]);
                         return continuationFromSubGoal;
                     }
                 };
             }
             // Solve the first goal, redirecting all solutions to the first listener defined above
-            result = solveGoalRecursive(lhs, theGoalBindings, listeners[0]);
+            result = solveGoalRecursive(theSession, lhs, theGoalBindings, listeners[0]);
         } else if (Struct.FUNCTOR_SEMICOLON == functor) { // Names are {@link String#intern()}alized so OK to check by reference
             if (isDebug) {
                 logger.debug("Handling OR, arity={}", arity);
@@ -125,7 +332,7 @@ public class DefaultSolver implements Solver {
             */
             for (int i = 0; i < arity; i++) {
                 // Solve all the left and right-and-sides, sequentially
-                result = solveGoalRecursive(goalStruct.getArg(i), theGoalBindings, theSolutionListener);
+                result = solveGoalRecursive(theSession, goalStruct.getArg(i), theGoalBindings, theSolutionListener);
                 if (result == Continuation.CUT) {
                     break;
                 }
@@ -145,7 +352,7 @@ public class DefaultSolver implements Solver {
             if (isDebug) {
                 logger.debug("Invoking call({})", target);
             }
-            result = solveGoalRecursive(target, effectiveGoalBindings, theSolutionListener);
+            result = solveGoalRecursive(theSession, target, effectiveGoalBindings, theSolutionListener);
         } else if (Struct.FUNCTOR_CUT == functor) {
             // This is a "native" implementation of CUT, which works as good as using the primitive in CoreLibrary
             // Doing it inline might improve performance a little although I did not measure much
@@ -156,56 +363,637 @@ public class DefaultSolver implements Solver {
             // Stopping there for this iteration
             result = Continuation.CUT;
         } else if (prim != null) {
-            // ---------------------------------------------------------------------------
-            // Primitive implemented in Java
-            // ---------------------------------------------------------------------------
-
-            final Object resultOfPrimitive = prim.invoke(goalStruct, theGoalBindings, theSolutionListener);
-            // Extract necessary objects from our current state
-
-            switch (prim.getType()) {
-            case PREDICATE:
-                result = (Continuation) resultOfPrimitive;
-                break;
-            case FUNCTOR:
-                if (isDebug) {
-                    logger.debug("Result of Functor {}: {}", goalStruct, resultOfPrimitive);
+            result = invokePrimitive(theSession, goalStruct, prim, theGoalBindings, theSolutionListener);
+        } else {
+            result = solvePredicate(theSession, goalTerm, goalStruct.getPredicateSignature(), theGoalBindings, theSolutionListener, theTailCall);
+        }
+        if (isDebug) {
+            logger.debug("<< Exit    solveGoalRecursive(\"{}\") with {}, continuation=" + result, goalTerm, theGoalBindings);
+        }
+        return result;
+    }
+
+    /**
+     * Solve one compiled goal, without looping on last calls. Same as
+     * {@link #solveOneGoal(SolverSession, Object, TermBindings, SolutionListener, TailCall)} but without dispatching on functors.
+     * 
+     * @param theSession
+     * @param theGoalNode
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @param theTailCall May receive the last call to be solved by the caller.
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveOneNode(final SolverSession theSession, final GoalNode theGoalNode, final TermBindings theGoalBindings, final SolutionListener theSolutionListener,
+            final TailCall theTailCall) {
+        if (isDebug) {
+            logger.debug(">> Entering solveOneNode(\"{}\") with {}", theGoalNode, theGoalBindings);
+        }
+        Continuation result = Continuation.CONTINUE;
+        switch (theGoalNode.getKind()) {
+        case CONJUNCTION:
+            GoalNode[] conjuncts = theGoalNode.getChildren();
+            if (this.goalReorderingEnabled && !this.hasDataFactProviders) {
+                conjuncts = conjunctionPlanner().plan(conjuncts, theGoalBindings);
+            }
+            if (this.conjunctionExecutor != null && !this.hasTabledPredicates && areIndependent(conjuncts, theGoalBindings)
+                    && haveFiniteSolutions(conjuncts, theGoalBindings)) {
+                result = solveIndependently(theSession, conjuncts, theGoalBindings, theSolutionListener);
+            } else {
+                result = solveConjunction(theSession, conjuncts, 0, theGoalBindings, theSolutionListener);
+            }
+            break;
+        case DISJUNCTION:
+            for (final GoalNode alternative : theGoalNode.getChildren()) {
+                result = solveNodeRecursive(theSession, alternative, theGoalBindings, theSolutionListener);
+                if (result == Continuation.CUT) {
+                    break;
+                }
+            }
+            break;
+        case CALL:
+            result = solveCall(theSession, theGoalNode.getStruct().getArg(0), theGoalBindings, theSolutionListener);
+            break;
+        case VARIABLE:
+            // A variable goal is the same as call/1
+            result = solveCall(theSession, theGoalNode.getTerm(), theGoalBindings, theSolutionListener);
+            break;
+        case CUT:
+            // Cut IS a valid solution in itself. We just ignore what the app tells us to do next.
+            theSolutionListener.onSolution();
+            result = Continuation.CUT;
+            break;
+        case PRIMITIVE:
+            result = invokePrimitive(theSession, theGoalNode.getStruct(), theGoalNode.getPrimitive(), theGoalBindings, theSolutionListener);
+            break;
+        case PREDICATE:
+            result = solvePredicate(theSession, theGoalNode.getTerm(), theGoalNode.getStruct().getPredicateSignature(), theGoalBindings, theSolutionListener,
+                    theTailCall);
+            break;
+        }
+        if (isDebug) {
+            logger.debug("<< Exit    solveOneNode(\"{}\") with {}, continuation=" + result, theGoalNode, theGoalBindings);
+        }
+        return result;
+    }
+
+    /**
+     * Solve the conjunction of theGoalNodes from theIndex: each solution of a conjunct triggers solving of the next one.
+     * 
+     * @param theSession
+     * @param theGoalNodes
+     * @param theIndex
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    Continuation solveConjunction(final SolverSession theSession, final GoalNode[] theGoalNodes, final int theIndex, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener) {
+        if (theIndex == theGoalNodes.length - 1) {
+            // The last conjunct notifies the listener that called us (usually callbacks into the application)
+            return solveNodeRecursive(theSession, theGoalNodes[theIndex], theGoalBindings, theSolutionListener);
+        }
+        return solveNodeRecursive(theSession, theGoalNodes[theIndex], theGoalBindings, new ConjunctionListener(theSession, theGoalNodes, theIndex + 1, theGoalBindings,
+                theSolutionListener));
+    }
+
+    /**
+     * Check at run-time if goals can be solved independently.
+     * 
+     * @param theGoalNodes
+     * @param theGoalBindings
+     * @return true if all of theGoalNodes are predicates, and no free variable is shared by two of them.
+     */
+    private static boolean areIndependent(final GoalNode[] theGoalNodes, final TermBindings theGoalBindings) {
+        final Map<Binding, GoalNode> owners = new IdentityHashMap<Binding, GoalNode>();
+        for (final GoalNode goalNode : theGoalNodes) {
+            if (goalNode.getKind() != GoalNode.Kind.PREDICATE || !registerFreeBindings(goalNode.getTerm(), theGoalBindings, goalNode, owners)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The goals after the first are solved to completion before their solutions are joined, so they must have a finite number of
+     * solutions.
+     * 
+     * @param theGoalNodes
+     * @param theGoalBindings
+     * @return true if all of theGoalNodes but the first are predicates made of facts only, see
+     *         {@link ConjunctionPlanner#hasFiniteSolutions(GoalNode, TermBindings)}.
+     */
+    private boolean haveFiniteSolutions(final GoalNode[] theGoalNodes, final TermBindings theGoalBindings) {
+        for (int i = 1; i < theGoalNodes.length; i++) {
+            if (!conjunctionPlanner().hasFiniteSolutions(theGoalNodes[i], theGoalBindings)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if a free variable of theTerm is already owned by another goal.
+     */
+    private static boolean registerFreeBindings(final Object theTerm, final TermBindings theBindings, final GoalNode theOwner,
+            final Map<Binding, GoalNode> theOwners) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                return true;
+            }
+            final Binding binding = var.bindingWithin(theBindings).followLinks();
+            if (binding.isFree()) {
+                final GoalNode owner = theOwners.put(binding, theOwner);
+                return owner == null || owner == theOwner;
+            }
+            return registerFreeBindings(binding.getTerm(), binding.getTermBindings(), theOwner, theOwners);
+        }
+        if (theTerm instanceof Struct) {
+            final Struct struct = (Struct) theTerm;
+            for (int i = 0; i < struct.getArity(); i++) {
+                if (!registerFreeBindings(struct.getArg(i), theBindings, theOwner, theOwners)) {
+                    return false;
                 }
-                logger.error("We should not pass here with functors!? Directive {} ignored", goalStruct);
-                break;
-            case DIRECTIVE:
-                logger.warn("Result of Directive {} not yet used", goalStruct);
-                break;
             }
+        }
+        return true;
+    }
 
-        } else {
-            result = solveAgainstClauseProviders(goalTerm, theGoalBindings, theSolutionListener);
+    /**
+     * Solve independent goals: all but the first are solved in parallel by the {@link #conjunctionExecutor}, on copies, while the first is
+     * solved by this thread. Each solution of the first goal is then joined with all combinations of answers of the others.
+     * 
+     * @param theSession
+     * @param theGoalNodes
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveIndependently(final SolverSession theSession, final GoalNode[] theGoalNodes, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener) {
+        final List<Future<List<Clause>>> answers = new ArrayList<Future<List<Clause>>>();
+        try {
+            for (int i = 1; i < theGoalNodes.length; i++) {
+                final Clause goal = TermCopier.copyAsClause(this.prolog, theGoalNodes[i].getTerm(), theGoalBindings);
+                answers.add(this.conjunctionExecutor.submit(new Callable<List<Clause>>() {
 
-            if (this.hasDataFactProviders && !(result == Continuation.USER_ABORT || result == Continuation.CUT)) {
-                solveAgainstDataProviders(goalTerm, theGoalBindings, theSolutionListener);
+                    @Override
+                    public List<Clause> call() {
+                        return conjunctionWorker().solveAll(goal);
+                    }
+                }));
+            }
+            return solveNodeRecursive(theSession, theGoalNodes[0], theGoalBindings, new SolutionListener() {
+
+                @Override
+                public Continuation onSolution() {
+                    return joinAnswers(theSession, theGoalNodes, 1, answers, theGoalBindings, theSolutionListener);
+                }
+            });
+        } finally {
+            for (final Future<List<Clause>> future : answers) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @param theGoal A normalized goal
+     * @return Copies of theGoal for all its solutions.
+     */
+    List<Clause> solveAll(final Clause theGoal) {
+        final List<Clause> answers = new ArrayList<Clause>();
+        final TermBindings goalBindings = theGoal.newUnificationBindings();
+        solveGoal(goalBindings, new SolutionListener() {
+
+            @Override
+            public Continuation onSolution() {
+                answers.add(TermCopier.copyAsClause(DefaultSolver.this.prolog, theGoal.getHead(), goalBindings));
+                return Continuation.CONTINUE;
+            }
+        });
+        return answers;
+    }
+
+    /**
+     * Unify the goal at theIndex with each of its answers, and recurse to the next goal; notify theSolutionListener after the last one.
+     */
+    Continuation joinAnswers(final SolverSession theSession, final GoalNode[] theGoalNodes, final int theIndex, final List<Future<List<Clause>>> theAnswers,
+            final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        if (theIndex == theGoalNodes.length) {
+            return theSolutionListener.onSolution();
+        }
+        final List<Clause> answers;
+        try {
+            answers = theAnswers.get(theIndex - 1).get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrologNonSpecificError("Interrupted while solving " + theGoalNodes[theIndex].getTerm());
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PrologNonSpecificError("Could not solve " + theGoalNodes[theIndex].getTerm(), e.getCause());
+        }
+        final Unifier unifier = this.prolog.getUnifier();
+        for (final Clause answer : answers) {
+            if (unifier.unify(theSession, theGoalNodes[theIndex].getTerm(), theGoalBindings, answer.getHead(), answer.newUnificationBindings())) {
+                final Continuation continuation;
+                try {
+                    continuation = joinAnswers(theSession, theGoalNodes, theIndex + 1, theAnswers, theGoalBindings, theSolutionListener);
+                } finally {
+                    unifier.deunify(theSession);
+                }
+                if (continuation == Continuation.CUT || continuation == Continuation.USER_ABORT) {
+                    return continuation;
+                }
             }
         }
+        return Continuation.CONTINUE;
+    }
+
+    /**
+     * @return The solver of the current thread of the {@link #conjunctionExecutor}, with the same settings as this one but solving
+     *         conjunctions sequentially.
+     */
+    DefaultSolver conjunctionWorker() {
+        DefaultSolver worker = this.conjunctionWorker.get();
+        if (worker == null) {
+            worker = new DefaultSolver(this.prolog);
+            worker.setCompilationEnabled(this.compilationEnabled);
+            worker.setCompilationThreshold(this.compilationThreshold);
+            worker.setGoalReorderingEnabled(this.goalReorderingEnabled);
+            worker.setInterruptible(true);
+            this.conjunctionWorker.set(worker);
+        }
+        return worker;
+    }
+
+    /**
+     * @param theSession
+     * @param theArgumentOfCall
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving call(theArgumentOfCall).
+     */
+    private Continuation solveCall(final SolverSession theSession, final Object theArgumentOfCall, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final TermBindings effectiveGoalBindings = theGoalBindings.narrow(theArgumentOfCall, Term.class);
+        if (effectiveGoalBindings == null || effectiveGoalBindings.getReferrer() instanceof Var) {
+            throw new InvalidTermException("Argument to primitive 'call' may not be a free variable, was " + theArgumentOfCall);
+        }
+        final Object target = effectiveGoalBindings.getReferrer();
         if (isDebug) {
-            logger.debug("<< Exit    solveGoalRecursive(\"{}\") with {}, continuation=" + result, goalTerm, theGoalBindings);
+            logger.debug("Invoking call({})", target);
+        }
+        return solveGoalRecursive(theSession, target, effectiveGoalBindings, theSolutionListener);
+    }
+
+    /**
+     * @param theSession
+     * @param theGoalStruct
+     * @param thePrimitive
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation invokePrimitive(final SolverSession theSession, final Struct theGoalStruct, final PrimitiveInfo thePrimitive, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener) {
+        // ---------------------------------------------------------------------------
+        // Primitive implemented in Java
+        // ---------------------------------------------------------------------------
+
+        final Object resultOfPrimitive = thePrimitive.invoke(theSession, theGoalStruct, theGoalBindings, theSolutionListener);
+        // Extract necessary objects from our current state
+
+        switch (thePrimitive.getType()) {
+        case PREDICATE:
+            return (Continuation) resultOfPrimitive;
+        case FUNCTOR:
+            if (isDebug) {
+                logger.debug("Result of Functor {}: {}", theGoalStruct, resultOfPrimitive);
+            }
+            logger.error("We should not pass here with functors!? Directive {} ignored", theGoalStruct);
+            break;
+        case DIRECTIVE:
+            logger.warn("Result of Directive {} not yet used", theGoalStruct);
+            break;
+        }
+        return Continuation.CONTINUE;
+    }
+
+    /**
+     * Solve a goal against the clauses and data facts, or its table of answers.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalSignature
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @param theTailCall May receive the last call to be solved by the caller.
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solvePredicate(final SolverSession theSession, final Object goalTerm, final String theGoalSignature, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener, final TailCall theTailCall) {
+        if (this.interruptible && Thread.currentThread().isInterrupted()) {
+            return Continuation.USER_ABORT;
+        }
+        final GoalStackProfiler profiler = this.prolog.getProfiler();
+        if (profiler != null) {
+            return solveProfiled(theSession, profiler.goalStack(), goalTerm, theGoalSignature, theGoalBindings, theSolutionListener);
+        }
+        if (PredicateStatistics.isEnabled) {
+            return solveMeasured(theSession, goalTerm, theGoalSignature, theGoalBindings, theSolutionListener, theTailCall);
+        }
+        return solveUnmeasured(theSession, goalTerm, theGoalSignature, theGoalBindings, theSolutionListener, theTailCall);
+    }
+
+    /**
+     * Solve a goal with its signature on the logical stack sampled by the {@link GoalStackProfiler} of the engine. The signature is removed
+     * while the solutions are consumed by theSolutionListener; the last call of a deterministic clause is solved here so that the
+     * signature remains while its body is solved.
+     * 
+     * @param theSession
+     * @param theGoalStack
+     * @param goalTerm
+     * @param theGoalSignature
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveProfiled(final SolverSession theSession, final GoalStackProfiler.GoalStack theGoalStack, final Object goalTerm, final String theGoalSignature,
+            final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final int depth = theGoalStack.push(theGoalSignature);
+        final SolutionListener profilingListener = new ProfilingListener(theGoalStack, depth, theGoalSignature, theSolutionListener);
+        final TailCall tailCall = new TailCall();
+        Continuation result = null;
+        try {
+            if (PredicateStatistics.isEnabled) {
+                result = solveMeasured(theSession, goalTerm, theGoalSignature, theGoalBindings, profilingListener, tailCall);
+            } else {
+                result = solveUnmeasured(theSession, goalTerm, theGoalSignature, theGoalBindings, profilingListener, tailCall);
+            }
+            result = solveTailCallInline(theSession, tailCall, result, (tailCall.measuring != null) ? tailCall.measuring : profilingListener);
+            return result;
+        } finally {
+            if (tailCall.measuring != null) {
+                tailCall.measuring.exitAll(result);
+            }
+            theGoalStack.popTo(depth);
+        }
+    }
+
+    /**
+     * Solve a goal while counting its ports and time in the {@link PredicateStatistics} of the engine. Solutions go through the
+     * {@link MeasuringListener} of theTailCall, that counts the exits and redos of all predicates measured in the same frame: when a
+     * deterministic clause leaves its last call, the caller solves it with that listener, so the solutions of the last call are also
+     * counted for this predicate, without solving it here. The fails and times are counted when the frame completes, see
+     * {@link MeasuringListener#exitAll(Continuation)}.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalSignature
+     * @param theGoalBindings
+     * @param theSolutionListener The listener of the frame, or its {@link MeasuringListener} when it already has one
+     * @param theTailCall Of the frame solving this goal, may receive the last call to be solved by the caller.
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveMeasured(final SolverSession theSession, final Object goalTerm, final String theGoalSignature, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener, final TailCall theTailCall) {
+        MeasuringListener measuringListener = theTailCall.measuring;
+        if (measuringListener == null) {
+            measuringListener = new MeasuringListener(theSolutionListener);
+            theTailCall.measuring = measuringListener;
+        }
+        measuringListener.enter(this.prolog.getPredicateStatistics().countersOf(theGoalSignature));
+        return solveUnmeasured(theSession, goalTerm, theGoalSignature, theGoalBindings, measuringListener, theTailCall);
+    }
+
+    /**
+     * Solve the last call left by solving a predicate, if any, instead of returning it to the caller.
+     * 
+     * @param theSession
+     * @param theTailCall
+     * @param theResult The {@link Continuation} of solving the predicate
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving the predicate and its last call.
+     */
+    private Continuation solveTailCallInline(final SolverSession theSession, final TailCall theTailCall, final Continuation theResult, final SolutionListener theSolutionListener) {
+        if (theTailCall.goalNode == null) {
+            return theResult;
+        }
+        final Continuation result;
+        try {
+            result = solveNodeRecursive(theSession, theTailCall.goalNode, theTailCall.goalBindings, theSolutionListener);
+        } finally {
+            this.prolog.getUnifier().deunify(theSession);
+        }
+        if (result != Continuation.USER_ABORT && !(result == Continuation.CUT && theTailCall.cutPropagates)) {
+            // Same as in solveRecursive()
+            return Continuation.CONTINUE;
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #solvePredicate(SolverSession, Object, String, TermBindings, SolutionListener, TailCall)} without statistics.
+     */
+    private Continuation solveUnmeasured(final SolverSession theSession, final Object goalTerm, final String theGoalSignature, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener, final TailCall theTailCall) {
+        if (this.hasTabledPredicates && this.prolog.getTheoryManager().isTabled(theGoalSignature)) {
+            return solveTabled(theSession, goalTerm, theGoalBindings, theSolutionListener);
+        }
+        if (this.compilationEnabled && !this.hasDataFactProviders && !this.hasTabledPredicates && isHot(theGoalSignature)
+                && compiledSolver().isCompilable(goalTerm, theGoalBindings)) {
+            return compiledSolver().solveGoal(goalTerm, theGoalBindings, theSolutionListener);
+        }
+        final Continuation result = solveAgainstClauseProviders(theSession, goalTerm, theGoalBindings, theSolutionListener, theTailCall);
+        if (theTailCall.goalNode != null) {
+            return result;
+        }
+        if (this.hasDataFactProviders && !(result == Continuation.USER_ABORT || result == Continuation.CUT)) {
+            solveAgainstDataProviders(theSession, goalTerm, theGoalBindings, theSolutionListener);
         }
         return result;
     }
 
-    private Continuation solveAgainstClauseProviders(final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+    /**
+     * Count one call to a predicate.
+     * 
+     * @param theGoalSignature
+     * @return true if the predicate was already called {@link #compilationThreshold} times since the theory last changed.
+     */
+    private boolean isHot(final String theGoalSignature) {
+        final int generation = this.prolog.getTheoryManager().getGeneration();
+        if (generation != this.countedGeneration) {
+            this.callCounts.clear();
+            this.countedGeneration = generation;
+        }
+        AtomicInteger count = this.callCounts.get(theGoalSignature);
+        if (count == null) {
+            final AtomicInteger created = new AtomicInteger();
+            count = this.callCounts.putIfAbsent(theGoalSignature, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        if (count.get() >= this.compilationThreshold) {
+            return true;
+        }
+        count.incrementAndGet();
+        return false;
+    }
+
+    private ConjunctionPlanner conjunctionPlanner() {
+        if (this.conjunctionPlanner == null) {
+            this.conjunctionPlanner = new ConjunctionPlanner(this.prolog.getTheoryManager());
+        }
+        return this.conjunctionPlanner;
+    }
+
+    private WamSolver compiledSolver() {
+        WamSolver solver = this.compiledSolver.get();
+        if (solver == null) {
+            solver = new WamSolver(this.prolog);
+            this.compiledSolver.set(solver);
+        }
+        return solver;
+    }
+
+    /**
+     * Solve a goal of a tabled predicate: answers are memoized per variant of the goal. The first call evaluates the clauses repeatedly
+     * until no new answer is found; variant calls met during this evaluation (for example with left recursion) only consume the answers
+     * found so far, so they terminate. Answers are then notified from the table.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveTabled(final SolverSession theSession, final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final AnswerTables tables = this.prolog.getTheoryManager().getAnswerTables();
+        final AnswerTable table = tables.tableFor(goalTerm, theGoalBindings);
+        // Evaluations share the stack of tables: one thread at a time
+        synchronized (tables) {
+            evaluateTabled(theSession, tables, table, goalTerm, theGoalBindings);
+        }
+        // Notify answers - while evaluating, the list may grow during iteration
+        final Unifier unifier = this.prolog.getUnifier();
+        for (int i = 0; i < table.getNbAnswers(); i++) {
+            final Clause answer = table.getAnswer(i);
+            final TermBindings answerVars = TermBindings.deepCopyWithSameReferrer(answer.getTermBindings());
+            if (unifier.unify(theSession, goalTerm, theGoalBindings, answer.getHead(), answerVars)) {
+                final Continuation continuation;
+                try {
+                    continuation = theSolutionListener.onSolution();
+                } finally {
+                    unifier.deunify(theSession);
+                }
+                if (continuation == Continuation.CUT || continuation == Continuation.USER_ABORT) {
+                    return continuation;
+                }
+            }
+        }
+        return Continuation.CONTINUE;
+    }
+
+    /**
+     * Evaluate theTable to its fixpoint, unless it is complete or already being evaluated.
+     */
+    private void evaluateTabled(final SolverSession theSession, final AnswerTables tables, final AnswerTable table, final Object goalTerm,
+            final TermBindings theGoalBindings) {
+        if (table.getStatus() == AnswerTable.Status.EVALUATING) {
+            // Variant call within its own evaluation
+            tables.consumeIncomplete(table);
+        } else if (table.getStatus() != AnswerTable.Status.COMPLETE) {
+            if (isDebug) {
+                logger.debug("Evaluating tabled goal {}", goalTerm);
+            }
+            final SolutionListener collector = new SolutionListener() {
+
+                @Override
+                public Continuation onSolution() {
+                    tables.addAnswer(table, goalTerm, theGoalBindings);
+                    return Continuation.CONTINUE;
+                }
+            };
+            tables.beginEvaluation(table);
+            boolean evaluated = false;
+            try {
+                long nbAnswersBefore;
+                do {
+                    nbAnswersBefore = tables.getNbAnswersAdded();
+                    solveClausesCompletely(theSession, goalTerm, theGoalBindings, collector);
+                } while (tables.getNbAnswersAdded() != nbAnswersBefore);
+                evaluated = true;
+            } finally {
+                if (evaluated) {
+                    tables.endEvaluation(table);
+                } else {
+                    tables.abandonEvaluation(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Solve goalTerm against all clauses and data facts, without leaving any pending last call.
+     * 
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     */
+    private void solveClausesCompletely(final SolverSession theSession, final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final TailCall tailCall = new TailCall();
+        final Continuation result = solveAgainstClauseProviders(theSession, goalTerm, theGoalBindings, theSolutionListener, tailCall);
+        if (tailCall.goalNode != null) {
+            try {
+                solveNodeRecursive(theSession, tailCall.goalNode, tailCall.goalBindings, theSolutionListener);
+            } finally {
+                this.prolog.getUnifier().deunify(theSession);
+            }
+        } else if (this.hasDataFactProviders && !(result == Continuation.USER_ABORT || result == Continuation.CUT)) {
+            solveAgainstDataProviders(theSession, goalTerm, theGoalBindings, theSolutionListener);
+        }
+    }
+
+    /**
+     * @param theSession
+     * @param goalTerm
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @param theTailCall Receives the body of the last clause that may match goalTerm, when this clause is a rule. In that case the head
+     *            of this clause remains unified, and the caller must solve the body then deunify.
+     * @return The {@link Continuation} of solving.
+     */
+    private Continuation solveAgainstClauseProviders(final SolverSession theSession, final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener,
+            final TailCall theTailCall) {
         // Simple "user-defined" goal to demonstrate - find matching goals in the theories loaded
         final Unifier unifier = this.prolog.getUnifier();
 
         Continuation result = Continuation.CONTINUE;
         // Now ready to iteratively try clause by clause, by first attempting to unify with its headTerm
 
-        final Iterable<ClauseProvider> providers = this.prolog.getTheoryManager().getClauseProviders();
-        for (final ClauseProvider provider : providers) {
+        // Determine which clauses can be skipped before any unification alters the goal's bindings
+        final String goalSignature = goalSignature(goalTerm);
+        final Object[] goalArgumentKeys = TermApi.dereferencedArgumentKeys(goalTerm, theGoalBindings);
+
+        final Iterator<ClauseProvider> providers = this.prolog.getTheoryManager().getClauseProviders().iterator();
+        while (providers.hasNext()) {
+            final ClauseProvider provider = providers.next();
             final Iterable<Clause> matchingClauses = provider.listMatchingClauses(goalTerm, theGoalBindings);
             if (matchingClauses == null) {
                 continue;
             }
+            final boolean isLastProvider = !providers.hasNext() && !this.hasDataFactProviders;
             // logger.info("matchingClauses: {}", ((List<?>) matchingClauses).size());
-            for (final Clause clause : matchingClauses) {
+            final Iterator<Clause> clauses = matchingClauses.iterator();
+            Clause nextClause = nextCandidate(clauses, goalSignature, goalArgumentKeys);
+            while (nextClause != null) {
+                final Clause clause = nextClause;
+                nextClause = nextCandidate(clauses, goalSignature, goalArgumentKeys);
                 if (result == Continuation.CUT) {
                     if (isDebug) {
                         logger.debug("Current status is {}: stop finding more clauses", result);
@@ -222,12 +1010,10 @@ public class DefaultSolver implements Solver {
                     logger.debug("Trying clause {}, current status={}", clause, result);
                 }
 
-                // Clone the variables so that we won't mutate our current clause's ones
-                final TermBindings immutableVars = clause.getTermBindings();
-
-                // TODO apparently we cannot afford a shallow copy?
-                // final TermBindings clauseVars = TermBindings.shallowCopyWithSameReferrer(immutableVars);
-                final TermBindings clauseVars = TermBindings.deepCopyWithSameReferrer(immutableVars);
+                // Clone the variables so that we won't mutate our current clause's ones - only now that the clause is known to
+                // be a candidate, and not for clauses without variables. They are discarded when the head unification is undone,
+                // so binding them needs no trailing
+                final TermBindings clauseVars = clause.newUnificationBindings(BindingTrail.getDepth(theSession.getTrail()));
 
                 final Object clauseHead = clause.getHead();
                 if (isDebug) {
@@ -239,12 +1025,23 @@ public class DefaultSolver implements Solver {
                 // the trailFrame will remember this.
                 // Solutions will be notified from within this method.
                 // As a consequence, deunification can happen immediately afterwards, in this method, not outside in the caller
-                final boolean headUnified = unifier.unify(goalTerm, theGoalBindings, clauseHead, clauseVars);
+                final boolean headUnified = unifier.unify(theSession, goalTerm, theGoalBindings, clauseHead, clauseVars);
                 if (isDebug) {
                     logger.debug(" headUnified=" + headUnified + ", now: goal {}, clause {}", theGoalBindings, clauseVars);
                 }
 
                 if (headUnified) {
+                    if (isLastProvider && nextClause == null && !clause.isFact() && clause.getCompiledBody().getKind() != GoalNode.Kind.VARIABLE) {
+                        // Deterministic call, no other clause may match: let the caller solve the body without nesting, and deunify
+                        // afterwards
+                        if (isDebug) {
+                            logger.debug("Last call to body {} of clause {}", clause.getBody(), clauseHead);
+                        }
+                        theTailCall.goalNode = clause.getCompiledBody();
+                        theTailCall.goalBindings = clauseVars;
+                        theTailCall.cutPropagates = !isSingleGoal(theTailCall.goalNode);
+                        return result;
+                    }
                     try {
                         final Continuation continuation;
                         if (clause.isFact()) {
@@ -258,12 +1055,12 @@ public class DefaultSolver implements Solver {
                             }
                         } else {
                             // Not a fact, it's a theorem - it has a body
-                            final Object newGoalTerm = clause.getBody();
+                            final GoalNode newGoalNode = clause.getCompiledBody();
                             if (isDebug) {
-                                logger.debug("Clause {} is a theorem whose body is {}", clauseHead, newGoalTerm);
+                                logger.debug("Clause {} is a theorem whose body is {}", clauseHead, newGoalNode);
                             }
                             // Solve the body in our current recursion context
-                            continuation = solveGoalRecursive(newGoalTerm, clauseVars, theSolutionListener);
+                            continuation = solveNodeRecursive(theSession, newGoalNode, clauseVars, theSolutionListener);
                             if (isDebug) {
                                 logger.debug("  back to clause {} with continuation={}", clause, continuation);
                             }
@@ -282,12 +1079,9 @@ public class DefaultSolver implements Solver {
                             // we deal with that here.
                             // Any other solution (much) welcome.
                             // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-                            if (newGoalTerm instanceof Struct) {
-                                final String bodyFunctor = ((Struct) newGoalTerm).getName();
-                                if (bodyFunctor == Struct.FUNCTOR_CUT || bodyFunctor == Struct.FUNCTOR_COMMA) {
-                                    if (continuation == Continuation.CUT) {
-                                        result = Continuation.CUT;
-                                    }
+                            if (newGoalNode.getKind() == GoalNode.Kind.CUT || newGoalNode.getKind() == GoalNode.Kind.CONJUNCTION) {
+                                if (continuation == Continuation.CUT) {
+                                    result = Continuation.CUT;
                                 }
                             }
                         }
@@ -295,7 +1089,7 @@ public class DefaultSolver implements Solver {
                     } finally {
                         // We have now fired our solution(s), we no longer need our bound bindings and can deunify
                         // Go to next solution: start by clearing our trailing bindings
-                        unifier.deunify();
+                        unifier.deunify(theSession);
                     }
                 }
             }
@@ -310,23 +1104,208 @@ public class DefaultSolver implements Solver {
         return result;
     }
 
-    private Continuation solveAgainstDataProviders(final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+    /**
+     * @param goalTerm
+     * @return The predicate signature of goalTerm, {@link String#intern()}alized.
+     */
+    static String goalSignature(Object goalTerm) {
+        if (goalTerm instanceof Struct) {
+            return ((Struct) goalTerm).getPredicateSignature();
+        }
+        return TermApi.getPredicateSignature(goalTerm);
+    }
+
+    /**
+     * @param theClauses
+     * @param theGoalSignature
+     * @param theGoalArgumentKeys
+     * @return The next clause whose head may unify with the goal (see {@link Clause#mayUnifyWith(String, Object[])}), or null when there
+     *         are no more.
+     */
+    private static Clause nextCandidate(Iterator<Clause> theClauses, String theGoalSignature, Object[] theGoalArgumentKeys) {
+        while (theClauses.hasNext()) {
+            final Clause clause = theClauses.next();
+            if (clause.mayUnifyWith(theGoalSignature, theGoalArgumentKeys)) {
+                return clause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param theBody
+     * @return True if theBody is a single goal, i.e. not a conjunction nor a cut whose {@link Continuation#CUT} should propagate.
+     */
+    private static boolean isSingleGoal(GoalNode theBody) {
+        final GoalNode.Kind kind = theBody.getKind();
+        return kind != GoalNode.Kind.CUT && kind != GoalNode.Kind.CONJUNCTION && kind != GoalNode.Kind.VARIABLE;
+    }
+
+    /**
+     * Triggers solving of the next conjunct upon each solution of the previous one.
+     */
+    private final class ConjunctionListener implements SolutionListener {
+        private final SolverSession session;
+        private final GoalNode[] goalNodes;
+        private final int nextIndex;
+        private final TermBindings goalBindings;
+        private final SolutionListener solutionListener;
+
+        ConjunctionListener(SolverSession theSession, GoalNode[] theGoalNodes, int theNextIndex, TermBindings theGoalBindings,
+                SolutionListener theSolutionListener) {
+            this.session = theSession;
+            this.goalNodes = theGoalNodes;
+            this.nextIndex = theNextIndex;
+            this.goalBindings = theGoalBindings;
+            this.solutionListener = theSolutionListener;
+        }
+
+        @Override
+        public Continuation onSolution() {
+            if (isDebug) {
+                logger.debug("AND's internal solution listener called for {} with {}", this.goalNodes[this.nextIndex - 1], this.goalBindings);
+            }
+            return solveConjunction(this.session, this.goalNodes, this.nextIndex, this.goalBindings, this.solutionListener);
+        }
+    }
+
+    /**
+     * The last call of a clause, to be solved by
+     * {@link DefaultSolver#solveGoalRecursive(SolverSession, Object, TermBindings, SolutionListener)} without nesting.
+     */
+    private static final class TailCall {
+        GoalNode goalNode;
+        TermBindings goalBindings;
+
+        /**
+         * Whether a {@link Continuation#CUT} resulting from solving the body is returned to the caller, as when the body is solved by
+         * {@link DefaultSolver#solveAgainstClauseProviders(SolverSession, Object, TermBindings, SolutionListener, TailCall)}.
+         */
+        boolean cutPropagates;
+
+        /**
+         * The listener counting the ports of the predicates measured in the frame owning this {@link TailCall}, null until one is measured.
+         */
+        MeasuringListener measuring;
+
+        TailCall() {
+            // Just allow instantiation without synthetic accessor
+        }
+    }
+
+    /**
+     * Relays the solutions of the predicates measured in one frame of
+     * {@link DefaultSolver#solveRecursive(SolverSession, GoalNode, Object, TermBindings, SolutionListener)}, counting exits and redos, and
+     * the time spent in the listener, which does not belong to the predicates. Each predicate entered after the first one is the last call
+     * of the previous one, so a solution is an exit of all of them. They all complete together with the frame.
+     */
+    private static final class MeasuringListener implements SolutionListener {
+        private final SolutionListener listener;
+        private final List<PredicateStatistics.Counters> counters = new ArrayList<PredicateStatistics.Counters>();
+
+        /**
+         * When each predicate was entered, and the value of {@link #nanosInListener} at that time.
+         */
+        private long[] startNanos = new long[4];
+        private long[] startNanosInListener = new long[4];
+        private long nanosInListener = 0;
+
+        MeasuringListener(SolutionListener theListener) {
+            this.listener = theListener;
+        }
+
+        void enter(PredicateStatistics.Counters theCounters) {
+            final int level = this.counters.size();
+            if (level == this.startNanos.length) {
+                this.startNanos = Arrays.copyOf(this.startNanos, level * 2);
+                this.startNanosInListener = Arrays.copyOf(this.startNanosInListener, level * 2);
+            }
+            theCounters.call();
+            this.counters.add(theCounters);
+            this.startNanosInListener[level] = this.nanosInListener;
+            this.startNanos[level] = System.nanoTime();
+        }
+
+        /**
+         * All predicates entered are done: count their time, and their fail unless the frame was cut or aborted.
+         * 
+         * @param theResult The {@link Continuation} of the frame, null if it completed with an exception
+         */
+        void exitAll(Continuation theResult) {
+            final long end = System.nanoTime();
+            for (int i = 0; i < this.counters.size(); i++) {
+                final PredicateStatistics.Counters predicateCounters = this.counters.get(i);
+                predicateCounters.addNanos(end - this.startNanos[i] - (this.nanosInListener - this.startNanosInListener[i]));
+                if (theResult == Continuation.CONTINUE) {
+                    predicateCounters.fail();
+                }
+            }
+            this.counters.clear();
+        }
+
+        @Override
+        public Continuation onSolution() {
+            final int nbCounters = this.counters.size();
+            for (int i = 0; i < nbCounters; i++) {
+                this.counters.get(i).exit();
+            }
+            final long start = System.nanoTime();
+            final Continuation continuation = this.listener.onSolution();
+            this.nanosInListener += System.nanoTime() - start;
+            if (continuation == Continuation.CONTINUE) {
+                for (int i = 0; i < nbCounters; i++) {
+                    this.counters.get(i).redo();
+                }
+            }
+            return continuation;
+        }
+    }
+
+    /**
+     * Relays the solutions of a predicate, removing it from the logical stack while the solution is consumed by the caller.
+     */
+    private static final class ProfilingListener implements SolutionListener {
+        private final GoalStackProfiler.GoalStack goalStack;
+        private final int depth;
+        private final String signature;
+        private final SolutionListener listener;
+
+        ProfilingListener(GoalStackProfiler.GoalStack theGoalStack, int theDepth, String theSignature, SolutionListener theListener) {
+            this.goalStack = theGoalStack;
+            this.depth = theDepth;
+            this.signature = theSignature;
+            this.listener = theListener;
+        }
+
+        @Override
+        public Continuation onSolution() {
+            final int top = this.goalStack.getDepth();
+            this.goalStack.popTo(this.depth);
+            try {
+                return this.listener.onSolution();
+            } finally {
+                this.goalStack.restore(this.depth, this.signature, top);
+            }
+        }
+    }
+
+    private Continuation solveAgainstDataProviders(final SolverSession theSession, final Object goalTerm, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
         final Unifier unifier = this.prolog.getUnifier();
         Continuation result = Continuation.CONTINUE;
         // Now fetch data
         final Iterable<DataFactProvider> dataProviders = this.prolog.getTheoryManager().getDataFactProviders();
         for (final DataFactProvider dataProvider : dataProviders) {
-            final Iterable<DataFact> matchingDataFacts = dataProvider.listMatchingDataFacts(goalTerm);
+            final Iterable<DataFact> matchingDataFacts = dataProvider.listMatchingDataFacts(goalTerm, theGoalBindings);
             for (final DataFact dataFact : matchingDataFacts) {
                 // We should probably try/finally between unification and deunification. However since we unify with data
                 // and need efficiency, and we won't call any user code, we can assume not to.
-                final boolean unifiedWithData = unifier.unify(goalTerm, theGoalBindings, dataFact);
+                final boolean unifiedWithData = unifier.unify(theSession, goalTerm, theGoalBindings, dataFact);
                 if (unifiedWithData) {
                     final Continuation continuation = theSolutionListener.onSolution();
                     if (continuation == Continuation.CUT || continuation == Continuation.USER_ABORT) {
                         result = continuation;
                     }
-                    unifier.deunify();
+                    unifier.deunify(theSession);
                 }
             }
             if (logger.isInfoEnabled()) {
@@ -336,6 +1315,67 @@ public class DefaultSolver implements Solver {
         return result;
     }
 
+    // ---------------------------------------------------------------------------
+    // Accessors
+    // ---------------------------------------------------------------------------
+
+    public boolean isCompilationEnabled() {
+        return this.compilationEnabled;
+    }
+
+    /**
+     * @param theCompilationEnabled When false (the default), all predicates are interpreted.
+     */
+    public void setCompilationEnabled(boolean theCompilationEnabled) {
+        this.compilationEnabled = theCompilationEnabled;
+    }
+
+    public int getCompilationThreshold() {
+        return this.compilationThreshold;
+    }
+
+    /**
+     * @param theCompilationThreshold Number of calls to a predicate after which it is compiled, 0 to compile all predicates at their first
+     *            call.
+     */
+    public void setCompilationThreshold(int theCompilationThreshold) {
+        this.compilationThreshold = theCompilationThreshold;
+    }
+
+    public boolean isGoalReorderingEnabled() {
+        return this.goalReorderingEnabled;
+    }
+
+    /**
+     * @param theGoalReorderingEnabled When true, the goals of conjunctions of facts are reordered so that the most selective are solved
+     *            first, see {@link ConjunctionPlanner}: solutions may then be found in another order. This requires all clause providers
+     *            to implement {@link ClauseStatistics}, and no data fact provider. Conjunctions within compiled predicates are not
+     *            reordered.
+     */
+    public void setGoalReorderingEnabled(boolean theGoalReorderingEnabled) {
+        this.goalReorderingEnabled = theGoalReorderingEnabled;
+    }
+
+    public ExecutorService getConjunctionExecutor() {
+        return this.conjunctionExecutor;
+    }
+
+    /**
+     * @param theConjunctionExecutor When not null, conjunctions of predicates that share no free variable when solved (such as
+     *            "lookup_a(K1, A), lookup_b(K2, B)" with K1 and K2 bound) are solved in parallel by the threads of this executor, and their
+     *            solutions joined. All goals but the first are solved to completion before being joined, so only conjunctions whose goals
+     *            after the first are made of facts are solved in parallel: this requires all clause providers to implement
+     *            {@link ClauseStatistics}, data facts are assumed finite. The executor must not be used to solve the goals it runs: these
+     *            are solved sequentially. Not used with tabled predicates.
+     */
+    public void setConjunctionExecutor(ExecutorService theConjunctionExecutor) {
+        this.conjunctionExecutor = theConjunctionExecutor;
+    }
+
+    void setInterruptible(boolean theInterruptible) {
+        this.interruptible = theInterruptible;
+    }
+
     @Override
     public String toString() {
         return ReportUtils.shortDescription(this);
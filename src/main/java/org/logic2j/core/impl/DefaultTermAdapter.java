@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import org.logic2j.core.api.TermAdapter;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.model.symbol.TermApi;
 
@@ -132,7 +133,7 @@ public class DefaultTermAdapter implements TermAdapter {
     public void setPredefinedAtoms(Map<String, Object> theAtoms) {
         this.predefinedAtoms = new IdentityHashMap<String, Object>(theAtoms.size());
         for (final Entry<String, Object> entry : theAtoms.entrySet()) {
-            this.predefinedAtoms.put(entry.getKey().intern(), entry.getValue());
+            this.predefinedAtoms.put(Symbols.name(entry.getKey()), entry.getValue());
         }
     }
 
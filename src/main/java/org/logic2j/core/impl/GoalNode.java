@@ -0,0 +1,188 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.library.mgmt.PrimitiveInfo;
+
+/**
+ * A goal compiled once for all, typically the body of a {@link Clause}: control constructs (",", ";", "call", "!") and
+ * primitives are resolved when compiling, so that the {@link DefaultSolver} can execute the tree without dispatching on functor names.
+ */
+public final class GoalNode {
+
+    /**
+     * What a {@link GoalNode} does when solved.
+     */
+    public enum Kind {
+        /**
+         * Solve all {@link GoalNode#getChildren()} in sequence.
+         */
+        CONJUNCTION,
+
+        /**
+         * Solve each of {@link GoalNode#getChildren()} in turn.
+         */
+        DISJUNCTION,
+
+        /**
+         * call/1 of the goal in the single argument of {@link GoalNode#getStruct()}.
+         */
+        CALL,
+
+        /**
+         * The cut.
+         */
+        CUT,
+
+        /**
+         * Invoke {@link GoalNode#getPrimitive()}.
+         */
+        PRIMITIVE,
+
+        /**
+         * A predicate to solve against clauses and data facts.
+         */
+        PREDICATE,
+
+        /**
+         * A variable, to solve as call/1 of its value.
+         */
+        VARIABLE
+    }
+
+    private final Kind kind;
+    private final Object term;
+    private final Struct struct;
+    private final PrimitiveInfo primitive;
+    private final GoalNode[] children;
+
+    private GoalNode(Kind theKind, Object theTerm, Struct theStruct, PrimitiveInfo thePrimitive, GoalNode[] theChildren) {
+        this.kind = theKind;
+        this.term = theTerm;
+        this.struct = theStruct;
+        this.primitive = thePrimitive;
+        this.children = theChildren;
+    }
+
+    /**
+     * Compile a goal.
+     *
+     * @param theGoal Must be normalized, so that primitives are already resolved.
+     * @return The {@link GoalNode} to solve theGoal.
+     */
+    public static GoalNode compile(Object theGoal) {
+        if (theGoal instanceof Var) {
+            return new GoalNode(Kind.VARIABLE, theGoal, null, null, null);
+        }
+        final Struct goalStruct;
+        if (theGoal instanceof String) {
+            goalStruct = new Struct((String) theGoal);
+        } else if (theGoal instanceof Struct) {
+            goalStruct = (Struct) theGoal;
+        } else {
+            throw new InvalidTermException("Cannot compile goal " + theGoal + ", not a callable term");
+        }
+        final String functor = goalStruct.getName();
+        final int arity = goalStruct.getArity();
+        // Names are {@link String#intern()}alized so OK to check by reference
+        if (Struct.FUNCTOR_COMMA == functor || Struct.FUNCTOR_SEMICOLON == functor) {
+            // Flatten right-nested operators: (a, (b, c)) is compiled as a single conjunction of 3 goals
+            final List<GoalNode> children = new ArrayList<GoalNode>();
+            Struct current = goalStruct;
+            while (true) {
+                final int lastIndex = current.getArity() - 1;
+                for (int i = 0; i < lastIndex; i++) {
+                    children.add(compile(current.getArg(i)));
+                }
+                final Object last = current.getArg(lastIndex);
+                if (last instanceof Struct && ((Struct) last).getName() == functor) {
+                    current = (Struct) last;
+                } else {
+                    children.add(compile(last));
+                    break;
+                }
+            }
+            return new GoalNode(Struct.FUNCTOR_COMMA == functor ? Kind.CONJUNCTION : Kind.DISJUNCTION, theGoal, goalStruct, null,
+                    children.toArray(new GoalNode[children.size()]));
+        }
+        if (Struct.FUNCTOR_CALL == functor) {
+            if (arity != 1) {
+                throw new InvalidTermException("Primitive 'call' accepts only one argument, got " + arity);
+            }
+            return new GoalNode(Kind.CALL, theGoal, goalStruct, null, null);
+        }
+        if (Struct.FUNCTOR_CUT == functor) {
+            return new GoalNode(Kind.CUT, theGoal, goalStruct, null, null);
+        }
+        final PrimitiveInfo prim = goalStruct.getPrimitiveInfo();
+        if (prim != null) {
+            return new GoalNode(Kind.PRIMITIVE, theGoal, goalStruct, prim, null);
+        }
+        return new GoalNode(Kind.PREDICATE, theGoal, goalStruct, null, null);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Accessors
+    // ---------------------------------------------------------------------------
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * @return The goal as it was compiled.
+     */
+    public Object getTerm() {
+        return this.term;
+    }
+
+    /**
+     * @return The goal as a {@link Struct}, or null for {@link Kind#VARIABLE}.
+     */
+    public Struct getStruct() {
+        return this.struct;
+    }
+
+    public PrimitiveInfo getPrimitive() {
+        return this.primitive;
+    }
+
+    /**
+     * @return The sub-goals of a {@link Kind#CONJUNCTION} or {@link Kind#DISJUNCTION}, null otherwise.
+     */
+    public GoalNode[] getChildren() {
+        return this.children;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return this.kind + ":" + this.term;
+    }
+
+}
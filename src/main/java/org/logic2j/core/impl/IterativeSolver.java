@@ -0,0 +1,591 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.DataFactProvider;
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.Unifier;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.DataFact;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Term;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.impl.unify.BindingTrail;
+import org.logic2j.core.impl.util.ReportUtils;
+import org.logic2j.core.library.mgmt.PrimitiveInfo;
+import org.logic2j.core.library.mgmt.PrimitiveInfo.PrimitiveType;
+
+/**
+ * A {@link Solver} whose goal stack and choicepoints are explicit heap data structures, instead of the Java stack used by the
+ * continuation-passing {@link DefaultSolver}. The depth of recursion is therefore only bounded by the heap, not by the thread's stack size
+ * (-Xss). Install it with {@link PrologReferenceImplementation#setSolver(Solver)}.
+ * <p/>
+ * Control constructs (",", ";", "->", "*->", call/1, "!", true, fail) and resolution against clauses and data facts are handled by the loop of this
+ * engine. Primitives implemented in Java still notify their solutions to a {@link SolutionListener}: these solutions are recorded as copies
+ * of the {@link Binding}s they made, and replayed one by one when backtracking. This assumes that primitives yield a finite number of
+ * solutions, which is the case for all primitives of the core library.
+ * <p/>
+ * Contrary to {@link DefaultSolver}, the cut within a disjunction is transparent: it cuts the clause that contains the disjunction.
+ */
+public class IterativeSolver implements Solver {
+    static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(IterativeSolver.class);
+    static final boolean isDebug = logger.isDebugEnabled();
+
+    private static final String FUNCTOR_IF_THEN = "->";
+    private static final String FUNCTOR_SOFT_IF_THEN = "*->";
+
+    private final PrologImplementation prolog;
+
+    public IterativeSolver(PrologImplementation theProlog) {
+        this.prolog = theProlog;
+    }
+
+    /**
+     * Solves the goal in theGoalBindings's referrer. This method is reentrant: primitives such as not/1 or findall/3 will solve their
+     * sub-goals with a nested, independent {@link Resolution}.
+     *
+     * @param theGoalBindings
+     * @param theSolutionListener
+     */
+    @Override
+    public Continuation solveGoal(final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveGoal(SolverSession.current(), theGoalBindings, theSolutionListener);
+    }
+
+    @Override
+    public Continuation solveGoal(final SolverSession theSession, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final Resolution resolution = new Resolution(theSession, theSolutionListener);
+        // Primitives trail their bindings within the current session
+        final SolverSession previous = SolverSession.activate(theSession);
+        try {
+            return resolution.run(theGoalBindings.getReferrer(), theGoalBindings);
+        } finally {
+            SolverSession.activate(previous);
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Data structures of the engine
+    // ---------------------------------------------------------------------------
+
+    /**
+     * One goal remaining to be solved, linked to the goals to be solved after it (the continuation). Immutable, so that a continuation can
+     * be shared by several {@link ChoicePoint}s.
+     */
+    static final class Goal {
+        final Object term;
+        final TermBindings bindings;
+
+        /**
+         * Height of the stack of {@link ChoicePoint}s to return to when a cut is executed within this goal.
+         */
+        final int cutBarrier;
+
+        final Goal next;
+
+        Goal(Object theTerm, TermBindings theBindings, int theCutBarrier, Goal theNext) {
+            this.term = theTerm;
+            this.bindings = theBindings;
+            this.cutBarrier = theCutBarrier;
+            this.next = theNext;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(this.term);
+        }
+    }
+
+    /**
+     * Remember where to resume inference when backtracking: the state of the {@link BindingTrail}, the continuation, and the remaining
+     * alternatives.
+     */
+    abstract static class ChoicePoint {
+        final BindingTrail.StepInfo trail;
+        final int trailDepth;
+        final Goal continuation;
+
+        ChoicePoint(BindingTrail.StepInfo theTrail, Goal theContinuation) {
+            this.trail = theTrail;
+            this.trailDepth = BindingTrail.getDepth(theTrail);
+            this.continuation = theContinuation;
+        }
+
+        /**
+         * Try the next alternative, the {@link BindingTrail} has already been restored to {@link #trailDepth}.
+         *
+         * @param theResolution
+         * @param theHeight Height of the choicepoint stack below this one
+         * @return true if an alternative was found, the goals to solve next were assigned into theResolution.
+         */
+        abstract boolean resume(Resolution theResolution, int theHeight);
+    }
+
+    /**
+     * The remaining branches of a disjunction.
+     */
+    static final class DisjunctionAlternatives extends ChoicePoint {
+        private final Struct disjunction;
+        private final TermBindings bindings;
+        private final int cutBarrier;
+        private int nextBranch = 1;
+
+        DisjunctionAlternatives(BindingTrail.StepInfo theTrail, Goal theGoal, Struct theDisjunction, TermBindings theBindings) {
+            super(theTrail, theGoal.next);
+            this.disjunction = theDisjunction;
+            this.bindings = theBindings;
+            this.cutBarrier = theGoal.cutBarrier;
+        }
+
+        /**
+         * The condition of an if-then-else succeeded: its other branches must not be tried.
+         */
+        void discard() {
+            this.nextBranch = this.disjunction.getArity();
+        }
+
+        @Override
+        boolean resume(Resolution theResolution, int theHeight) {
+            if (this.nextBranch >= this.disjunction.getArity()) {
+                theResolution.cutTo(theHeight);
+                return false;
+            }
+            final int branch = this.nextBranch++;
+            final boolean isLastBranch = this.nextBranch >= this.disjunction.getArity();
+            if (isLastBranch) {
+                theResolution.cutTo(theHeight);
+            }
+            theResolution.startBranch(this.disjunction.getArg(branch), this.bindings, this.cutBarrier, isLastBranch ? null : this, theHeight,
+                    this.continuation);
+            return true;
+        }
+    }
+
+    /**
+     * The term of the {@link Goal} solved after the condition of an if-then-else ("->" or "*->"), once per solution of the condition.
+     */
+    static final class Commit {
+        private final boolean isSoft;
+
+        /**
+         * Height of the stack of {@link ChoicePoint}s when the condition started, including {@link #elseBranches}.
+         */
+        private final int height;
+
+        /**
+         * The branches after the if-then-else within its disjunction, null if none.
+         */
+        private final DisjunctionAlternatives elseBranches;
+
+        Commit(boolean isSoft, int theHeight, DisjunctionAlternatives theElseBranches) {
+            this.isSoft = isSoft;
+            this.height = theHeight;
+            this.elseBranches = theElseBranches;
+        }
+
+        /**
+         * "->" only keeps the first solution of the condition and no other branch; "*->" keeps all solutions of the condition but no other
+         * branch.
+         *
+         * @param theResolution
+         */
+        void commit(Resolution theResolution) {
+            if (!this.isSoft) {
+                theResolution.cutTo(this.height);
+            } else if (this.elseBranches != null) {
+                this.elseBranches.discard();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.isSoft ? FUNCTOR_SOFT_IF_THEN : FUNCTOR_IF_THEN;
+        }
+    }
+
+    /**
+     * Solutions of a primitive, recorded as copies of the {@link Binding}s it made.
+     */
+    static final class RecordedSolutions extends ChoicePoint implements SolutionListener {
+        private final List<Binding[]> boundBindings = new ArrayList<Binding[]>();
+        private final List<Binding[]> boundStates = new ArrayList<Binding[]>();
+        private int nextSolution = 0;
+
+        RecordedSolutions(BindingTrail.StepInfo theTrail, Goal theContinuation) {
+            super(theTrail, theContinuation);
+        }
+
+        @Override
+        public Continuation onSolution() {
+            final Binding[] bound = BindingTrail.bindingsSinceDepth(this.trail, this.trailDepth);
+            final Binding[] states = new Binding[bound.length];
+            for (int i = 0; i < bound.length; i++) {
+                states[i] = bound[i].copy();
+            }
+            this.boundBindings.add(bound);
+            this.boundStates.add(states);
+            return Continuation.CONTINUE;
+        }
+
+        int size() {
+            return this.boundBindings.size();
+        }
+
+        @Override
+        boolean resume(Resolution theResolution, int theHeight) {
+            final int solution = this.nextSolution++;
+            if (this.nextSolution >= size()) {
+                theResolution.cutTo(theHeight);
+            }
+            final Binding[] bound = this.boundBindings.get(solution);
+            final Binding[] states = this.boundStates.get(solution);
+            final BindingTrail.StepInfo stepInfo = BindingTrail.markBeforeAddingBindings(this.trail);
+            for (int i = 0; i < bound.length; i++) {
+                bound[i].restoreFrom(states[i]);
+                BindingTrail.addBinding(stepInfo, bound[i]);
+            }
+            theResolution.goals = this.continuation;
+            return true;
+        }
+    }
+
+    /**
+     * The clauses (from all {@link ClauseProvider}s) then the {@link DataFact}s (from all {@link DataFactProvider}s) that may match a goal.
+     */
+    final class ClauseAlternatives extends ChoicePoint {
+        private final Object goalTerm;
+        private final TermBindings goalBindings;
+        private final String goalSignature;
+        private final Object[] goalArgumentKeys;
+        private final List<Iterator<Clause>> clauses = new ArrayList<Iterator<Clause>>();
+        private int currentProvider = 0;
+        private final Iterator<DataFactProvider> dataFactProviders;
+        private Iterator<DataFact> dataFacts;
+
+        ClauseAlternatives(BindingTrail.StepInfo theTrail, Goal theGoal, Object theGoalTerm, TermBindings theGoalBindings,
+                boolean withDataFacts) {
+            super(theTrail, theGoal.next);
+            this.goalTerm = theGoalTerm;
+            this.goalBindings = theGoalBindings;
+            this.goalSignature = DefaultSolver.goalSignature(theGoalTerm);
+            this.goalArgumentKeys = TermApi.dereferencedArgumentKeys(theGoalTerm, theGoalBindings);
+            // Obtain the candidate clauses before any unification may alter the goal's bindings
+            for (final ClauseProvider provider : IterativeSolver.this.prolog.getTheoryManager().getClauseProviders()) {
+                final Iterable<Clause> matchingClauses = provider.listMatchingClauses(theGoalTerm, theGoalBindings);
+                if (matchingClauses != null) {
+                    this.clauses.add(matchingClauses.iterator());
+                }
+            }
+            if (withDataFacts) {
+                this.dataFactProviders = IterativeSolver.this.prolog.getTheoryManager().getDataFactProviders().iterator();
+            } else {
+                this.dataFactProviders = null;
+            }
+        }
+
+        private boolean hasMoreClauses() {
+            while (this.currentProvider < this.clauses.size()) {
+                if (this.clauses.get(this.currentProvider).hasNext()) {
+                    return true;
+                }
+                this.currentProvider++;
+            }
+            return false;
+        }
+
+        private boolean hasMoreDataFacts() {
+            if (this.dataFactProviders == null) {
+                return false;
+            }
+            while (this.dataFacts == null || !this.dataFacts.hasNext()) {
+                if (!this.dataFactProviders.hasNext()) {
+                    return false;
+                }
+                this.dataFacts = this.dataFactProviders.next().listMatchingDataFacts(this.goalTerm, this.goalBindings).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        boolean resume(Resolution theResolution, int theHeight) {
+            final Unifier unifier = theResolution.unifier;
+            final SolverSession session = theResolution.session;
+            while (hasMoreClauses()) {
+                final Clause clause = this.clauses.get(this.currentProvider).next();
+                if (!clause.mayUnifyWith(this.goalSignature, this.goalArgumentKeys)) {
+                    continue;
+                }
+                if (isDebug) {
+                    logger.debug("Trying clause {}", clause);
+                }
+                // Discarded when backtracking to this choicepoint, so binding them needs no trailing
+                final TermBindings clauseVars = clause.newUnificationBindings(BindingTrail.getDepth(this.trail));
+                if (unifier.unify(session, this.goalTerm, this.goalBindings, clause.getHead(), clauseVars)) {
+                    if (!hasMoreClauses() && this.dataFactProviders == null) {
+                        // Last alternative: the resolution becomes deterministic, forget this choicepoint
+                        theResolution.cutTo(theHeight);
+                    }
+                    if (clause.isFact()) {
+                        theResolution.goals = this.continuation;
+                    } else {
+                        theResolution.goals = new Goal(clause.getBody(), clauseVars, theHeight, this.continuation);
+                    }
+                    return true;
+                }
+            }
+            while (hasMoreDataFacts()) {
+                final DataFact dataFact = this.dataFacts.next();
+                if (unifier.unify(session, this.goalTerm, this.goalBindings, dataFact)) {
+                    theResolution.goals = this.continuation;
+                    return true;
+                }
+            }
+            theResolution.cutTo(theHeight);
+            return false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // The engine
+    // ---------------------------------------------------------------------------
+
+    /**
+     * The state of solving one goal: the goals remaining to be solved, and the stack of {@link ChoicePoint}s.
+     */
+    final class Resolution {
+        final SolverSession session;
+        private final BindingTrail.StepInfo trail;
+        final SolutionListener listener;
+        final Unifier unifier = IterativeSolver.this.prolog.getUnifier();
+        private final boolean hasDataFactProviders = IterativeSolver.this.prolog.getTheoryManager().hasDataFactProviders();
+        private final ArrayList<ChoicePoint> choicePoints = new ArrayList<ChoicePoint>();
+        Goal goals;
+
+        Resolution(SolverSession theSession, SolutionListener theListener) {
+            this.session = theSession;
+            this.trail = theSession.getTrail();
+            this.listener = theListener;
+        }
+
+        Continuation run(Object theGoalTerm, TermBindings theGoalBindings) {
+            final int initialTrailDepth = BindingTrail.getDepth(this.trail);
+            this.goals = new Goal(theGoalTerm, theGoalBindings, 0, null);
+            try {
+                while (true) {
+                    final boolean proceed;
+                    if (this.goals == null) {
+                        // No more goals: that's a solution
+                        final Continuation continuation = this.listener.onSolution();
+                        if (continuation == Continuation.USER_ABORT || continuation == Continuation.CUT) {
+                            return continuation;
+                        }
+                        proceed = false;
+                    } else {
+                        final Goal goal = this.goals;
+                        this.goals = goal.next;
+                        proceed = step(goal);
+                    }
+                    if (!proceed && !backtrack()) {
+                        return Continuation.CONTINUE;
+                    }
+                }
+            } finally {
+                BindingTrail.undoBindingsUntilDepth(this.trail, initialTrailDepth);
+                BindingTrail.shrinkIfEmpty(this.trail);
+            }
+        }
+
+        /**
+         * Resume from the most recent {@link ChoicePoint} that still has an alternative.
+         *
+         * @return false when no alternative remains: the resolution is complete.
+         */
+        private boolean backtrack() {
+            while (!this.choicePoints.isEmpty()) {
+                final int height = this.choicePoints.size() - 1;
+                final ChoicePoint choicePoint = this.choicePoints.get(height);
+                BindingTrail.undoBindingsUntilDepth(this.trail, choicePoint.trailDepth);
+                if (choicePoint.resume(this, height)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Remove all {@link ChoicePoint}s above theHeight.
+         *
+         * @param theHeight
+         */
+        void cutTo(int theHeight) {
+            final int size = this.choicePoints.size();
+            if (size > theHeight) {
+                this.choicePoints.subList(theHeight, size).clear();
+            }
+        }
+
+        /**
+         * Solve one goal, this will either fail, or assign the next {@link #goals} to solve, possibly pushing {@link ChoicePoint}s.
+         *
+         * @param theGoal
+         * @return false if theGoal failed.
+         */
+        private boolean step(Goal theGoal) {
+            if (isDebug) {
+                logger.debug("Solving {} with {}", theGoal.term, theGoal.bindings);
+            }
+            final Object goalTerm = theGoal.term;
+            final TermBindings goalBindings = theGoal.bindings;
+            if (goalTerm instanceof Commit) {
+                ((Commit) goalTerm).commit(this);
+                return true;
+            }
+            if (goalTerm instanceof Var) {
+                // A variable goal is the same as call/1
+                final TermBindings effectiveGoalBindings = goalBindings.narrow(goalTerm, Term.class);
+                if (effectiveGoalBindings == null || effectiveGoalBindings.getReferrer() instanceof Var) {
+                    throw new InvalidTermException("Goal may not be a free variable, was " + goalTerm);
+                }
+                this.goals = new Goal(effectiveGoalBindings.getReferrer(), effectiveGoalBindings, this.choicePoints.size(), this.goals);
+                return true;
+            }
+            final Struct goalStruct;
+            if (goalTerm instanceof String) {
+                // Yet we are not capable of handing String below everywhere - so use a Struct still
+                goalStruct = new Struct((String) goalTerm);
+            } else {
+                goalStruct = (Struct) goalTerm;
+            }
+            final String functor = goalStruct.getName();
+            final int arity = goalStruct.getArity();
+
+            // Names are {@link String#intern()}alized so OK to check by reference
+            if (Struct.FUNCTOR_COMMA == functor) {
+                Goal conjunction = this.goals;
+                for (int i = arity - 1; i >= 0; i--) {
+                    conjunction = new Goal(goalStruct.getArg(i), goalBindings, theGoal.cutBarrier, conjunction);
+                }
+                this.goals = conjunction;
+                return true;
+            }
+            if (Struct.FUNCTOR_SEMICOLON == functor) {
+                final int height = this.choicePoints.size();
+                DisjunctionAlternatives alternatives = null;
+                if (arity > 1) {
+                    alternatives = new DisjunctionAlternatives(this.trail, theGoal, goalStruct, goalBindings);
+                    this.choicePoints.add(alternatives);
+                }
+                startBranch(goalStruct.getArg(0), goalBindings, theGoal.cutBarrier, alternatives, height, this.goals);
+                return true;
+            }
+            if (arity == 2 && (FUNCTOR_IF_THEN == functor || FUNCTOR_SOFT_IF_THEN == functor)) {
+                startBranch(goalStruct, goalBindings, theGoal.cutBarrier, null, this.choicePoints.size(), this.goals);
+                return true;
+            }
+            if (Struct.FUNCTOR_CALL == functor) {
+                if (arity != 1) {
+                    throw new InvalidTermException("Primitive 'call' accepts only one argument, got " + arity);
+                }
+                final TermBindings effectiveGoalBindings = goalBindings.narrow(goalStruct.getArg(0), Term.class);
+                if (effectiveGoalBindings == null) {
+                    throw new InvalidTermException("Argument to primitive 'call' may not be a free variable, was " + goalStruct.getArg(0));
+                }
+                // call/1 is opaque to cut
+                this.goals = new Goal(effectiveGoalBindings.getReferrer(), effectiveGoalBindings, this.choicePoints.size(), this.goals);
+                return true;
+            }
+            if (Struct.FUNCTOR_CUT == functor) {
+                cutTo(theGoal.cutBarrier);
+                return true;
+            }
+            if (arity == 0 && Struct.FUNCTOR_TRUE == functor) {
+                return true;
+            }
+            if (arity == 0 && (Struct.FUNCTOR_FALSE == functor || "fail" == functor)) {
+                return false;
+            }
+            final PrimitiveInfo prim = goalStruct.getPrimitiveInfo();
+            if (prim != null) {
+                return solvePrimitive(goalStruct, goalBindings, prim);
+            }
+            final int height = this.choicePoints.size();
+            final ClauseAlternatives alternatives = new ClauseAlternatives(this.trail, theGoal, goalTerm, goalBindings, this.hasDataFactProviders);
+            this.choicePoints.add(alternatives);
+            return alternatives.resume(this, height);
+        }
+
+        /**
+         * Start solving one branch of a disjunction, or an if-then without else.
+         *
+         * @param theBranch
+         * @param theBindings
+         * @param theCutBarrier Of the disjunction
+         * @param theOtherBranches The choicepoint of the branches after theBranch, null if none
+         * @param theHeight Height of the stack of {@link ChoicePoint}s below theOtherBranches
+         * @param theContinuation
+         */
+        void startBranch(Object theBranch, TermBindings theBindings, int theCutBarrier, DisjunctionAlternatives theOtherBranches, int theHeight,
+                Goal theContinuation) {
+            if (theBranch instanceof Struct && ((Struct) theBranch).getArity() == 2
+                    && (((Struct) theBranch).getName() == FUNCTOR_IF_THEN || ((Struct) theBranch).getName() == FUNCTOR_SOFT_IF_THEN)) {
+                final Struct ifThen = (Struct) theBranch;
+                final Commit commit = new Commit(ifThen.getName() == FUNCTOR_SOFT_IF_THEN, theHeight, theOtherBranches);
+                final Goal then = new Goal(ifThen.getArg(1), theBindings, theCutBarrier, theContinuation);
+                // The cut within the condition is local to the condition
+                this.goals = new Goal(ifThen.getArg(0), theBindings, this.choicePoints.size(), new Goal(commit, theBindings, theCutBarrier, then));
+            } else {
+                this.goals = new Goal(theBranch, theBindings, theCutBarrier, theContinuation);
+            }
+        }
+
+        private boolean solvePrimitive(Struct theGoalStruct, TermBindings theGoalBindings, PrimitiveInfo thePrimitive) {
+            final RecordedSolutions solutions = new RecordedSolutions(this.trail, this.goals);
+            thePrimitive.invoke(this.session, theGoalStruct, theGoalBindings, solutions);
+            if (thePrimitive.getType() != PrimitiveType.PREDICATE) {
+                logger.warn("Result of {} {} ignored", thePrimitive.getType(), theGoalStruct);
+                return false;
+            }
+            if (solutions.size() == 0) {
+                return false;
+            }
+            final int height = this.choicePoints.size();
+            if (solutions.size() > 1) {
+                this.choicePoints.add(solutions);
+            }
+            return solutions.resume(this, height);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return ReportUtils.shortDescription(this);
+    }
+
+}
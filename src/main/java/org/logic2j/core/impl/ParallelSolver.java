@@ -0,0 +1,556 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.Unifier;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.impl.theory.TheoryManager;
+import org.logic2j.core.impl.unify.BindingTrail;
+import org.logic2j.core.impl.util.ReportUtils;
+
+/**
+ * A {@link Solver} exploring the alternatives of a goal in parallel (OR-parallelism), on the threads of an {@link ExecutorService}.
+ * Install it with {@link PrologReferenceImplementation#setSolver(Solver)}.
+ * <p/>
+ * The goal is first split by the calling thread into alternatives, until there are enough of them to keep all threads busy. An
+ * alternative is a standalone {@link Clause} "Goal :- Remaining goals", where Goal is a copy of the goal being solved. The first remaining
+ * goal is split either by unfolding the clauses of its predicate (replacing it with their bodies), or by the branches of a disjunction.
+ * When this cannot be done, because the goal is a primitive, a disjunction with an if-then branch, or its predicate has clauses with a
+ * cut, it is solved right away and the alternative is replaced by one per solution, provided there are at most
+ * {@link #MAX_SPLIT_SOLUTIONS}. A goal containing a cut itself is never split, so that a cut only prunes the alternatives of the clause
+ * that contains it - even where the {@link DefaultSolver} would propagate it to the caller.
+ * <p/>
+ * Each alternative is then solved by a {@link DefaultSolver} of a worker thread, with its own bindings and trail. Solutions are copied and
+ * notified from the calling thread, in the same order as a sequential solver would: those of an alternative are buffered until all
+ * preceding alternatives are exhausted. When the {@link SolutionListener} returns {@link Continuation#CUT} or
+ * {@link Continuation#USER_ABORT}, or an alternative is aborted, all alternatives are cancelled. Cancelled alternatives stop at their next
+ * solution or call to an interpreted predicate, and are waited for before returning.
+ * <p/>
+ * Splitting solves some goals before the others, so this solver is meant for pure programs. Goals solved by primitives from a worker thread
+ * (not/1, findall/3...), and theories with tabled predicates, are solved sequentially. An instance of this class must not be used by
+ * several threads at once.
+ */
+public class ParallelSolver implements Solver {
+    static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ParallelSolver.class);
+
+    /**
+     * Number of alternatives to split a goal into, per thread.
+     */
+    static final int ALTERNATIVES_PER_THREAD = 4;
+
+    /**
+     * Maximal number of times all alternatives are split again.
+     */
+    static final int MAX_SPLIT_ROUNDS = 64;
+
+    /**
+     * Maximal number of solutions of a goal solved while splitting.
+     */
+    static final int MAX_SPLIT_SOLUTIONS = 256;
+
+    private static final String FUNCTOR_IF_THEN = "->";
+    private static final String FUNCTOR_SOFT_IF_THEN = "*->";
+
+    private final PrologImplementation prolog;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * Solves goals in the calling thread.
+     */
+    private final DefaultSolver sequential;
+
+    /**
+     * The solver of each worker thread, null in other threads.
+     */
+    private final ThreadLocal<DefaultSolver> workerSolver = new ThreadLocal<DefaultSolver>();
+
+    /**
+     * Use as many daemon threads as there are processors.
+     * 
+     * @param theProlog
+     */
+    public ParallelSolver(PrologImplementation theProlog) {
+        this(theProlog, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable theRunnable) {
+                final Thread thread = new Thread(theRunnable, ParallelSolver.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param theProlog
+     * @param theExecutor Runs the alternatives
+     * @param theParallelism Number of threads of theExecutor
+     */
+    public ParallelSolver(PrologImplementation theProlog, ExecutorService theExecutor, int theParallelism) {
+        this.prolog = theProlog;
+        this.executor = theExecutor;
+        this.parallelism = theParallelism;
+        this.sequential = new DefaultSolver(theProlog);
+    }
+
+    @Override
+    public Continuation solveGoal(final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveGoal(SolverSession.current(), theGoalBindings, theSolutionListener);
+    }
+
+    /**
+     * Alternatives are split and their answers notified within theSession; each worker thread solves alternatives within its own
+     * session.
+     */
+    @Override
+    public Continuation solveGoal(final SolverSession theSession, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final DefaultSolver worker = this.workerSolver.get();
+        if (worker != null) {
+            // Nested goal of a primitive within an alternative
+            return worker.solveGoal(theSession, theGoalBindings, theSolutionListener);
+        }
+        if (this.prolog.getTheoryManager().hasTabledPredicates()) {
+            return this.sequential.solveGoal(theSession, theGoalBindings, theSolutionListener);
+        }
+        // Answers are notified to primitives, which trail their bindings within the current session
+        final SolverSession previous = SolverSession.activate(theSession);
+        try {
+            return solveAlternatives(theSession, theGoalBindings, theSolutionListener);
+        } finally {
+            SolverSession.activate(previous);
+        }
+    }
+
+    private Continuation solveAlternatives(final SolverSession theSession, final TermBindings theGoalBindings,
+            final SolutionListener theSolutionListener) {
+        final Object goal = theGoalBindings.getReferrer();
+        final List<Clause> alternatives = split(theSession, goal, theGoalBindings);
+        if (alternatives.size() == 1) {
+            return solveAlternative(theSession, this.sequential, alternatives.get(0), new AnswerListener() {
+
+                @Override
+                public Continuation onAnswer(Clause theAnswer) {
+                    return notifyAnswer(theSession, goal, theGoalBindings, theAnswer, theSolutionListener);
+                }
+            });
+        }
+        return solveInParallel(theSession, goal, theGoalBindings, alternatives, theSolutionListener);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Splitting into alternatives
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @param theSession
+     * @param theGoal
+     * @param theGoalBindings
+     * @return The alternatives to solve theGoal, in the order of a sequential solver.
+     */
+    private List<Clause> split(SolverSession theSession, Object theGoal, TermBindings theGoalBindings) {
+        final List<Object[]> goals = new ArrayList<Object[]>();
+        goals.add(new Object[] { theGoal, theGoalBindings });
+        List<Clause> alternatives = new ArrayList<Clause>();
+        alternatives.add(alternative(theGoal, theGoalBindings, goals));
+        final int target = this.parallelism * ALTERNATIVES_PER_THREAD;
+        for (int round = 0; round < MAX_SPLIT_ROUNDS && alternatives.size() < target; round++) {
+            final List<Clause> next = new ArrayList<Clause>();
+            boolean changed = false;
+            for (final Clause alternative : alternatives) {
+                final List<Clause> split = split(theSession, alternative);
+                if (split == null) {
+                    next.add(alternative);
+                } else {
+                    next.addAll(split);
+                    changed = true;
+                }
+            }
+            alternatives = next;
+            if (!changed) {
+                break;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Goal {} split into {} alternatives", theGoal, alternatives.size());
+        }
+        return alternatives;
+    }
+
+    /**
+     * Split one alternative on its first remaining goal.
+     * 
+     * @param theSession
+     * @param theAlternative
+     * @return The alternatives replacing theAlternative, or null if it cannot be split.
+     */
+    private List<Clause> split(SolverSession theSession, Clause theAlternative) {
+        if (theAlternative.isFact() || containsCut(theAlternative.getCompiledBody())) {
+            return null;
+        }
+        final TermBindings bindings = theAlternative.newUnificationBindings();
+        final Object head = theAlternative.getHead();
+        final GoalNode body = theAlternative.getCompiledBody();
+        final GoalNode first;
+        final List<Object[]> rest = new ArrayList<Object[]>();
+        if (body.getKind() == GoalNode.Kind.CONJUNCTION) {
+            final GoalNode[] children = body.getChildren();
+            first = children[0];
+            for (int i = 1; i < children.length; i++) {
+                rest.add(new Object[] { children[i].getTerm(), bindings });
+            }
+        } else {
+            first = body;
+        }
+        final List<Clause> result = new ArrayList<Clause>();
+        if (first.getKind() == GoalNode.Kind.DISJUNCTION && !isIfThenElse(first)) {
+            for (final GoalNode branch : first.getChildren()) {
+                result.add(alternative(head, bindings, prepend(branch.getTerm(), bindings, rest)));
+            }
+            return result;
+        }
+        if (first.getKind() == GoalNode.Kind.PREDICATE && unfold(theSession, head, bindings, first.getTerm(), rest, result)) {
+            return result;
+        }
+        // Solve the first goal right away
+        final Continuation continuation = this.sequential.solveNode(theSession, first, bindings, new SolutionListener() {
+
+            @Override
+            public Continuation onSolution() {
+                if (result.size() == MAX_SPLIT_SOLUTIONS) {
+                    return Continuation.USER_ABORT;
+                }
+                result.add(alternative(head, bindings, rest));
+                return Continuation.CONTINUE;
+            }
+        });
+        if (continuation == Continuation.USER_ABORT) {
+            return null;
+        }
+        // A cut within the goal may have stopped its solutions, it does not apply to theAlternative
+        return result;
+    }
+
+    /**
+     * Replace theGoal by the body of each clause whose head unifies.
+     * 
+     * @return false if theGoal cannot be unfolded: its predicate has data facts, or clauses with a cut.
+     */
+    private boolean unfold(SolverSession theSession, Object theHead, TermBindings theBindings, Object theGoal, List<Object[]> theRest, List<Clause> theResult) {
+        final TheoryManager theoryManager = this.prolog.getTheoryManager();
+        if (theoryManager.hasDataFactProviders()) {
+            return false;
+        }
+        final List<Clause> candidates = new ArrayList<Clause>();
+        for (final ClauseProvider provider : theoryManager.getClauseProviders()) {
+            final Iterable<Clause> clauses = provider.listMatchingClauses(theGoal, theBindings);
+            if (clauses != null) {
+                for (final Clause clause : clauses) {
+                    if (!clause.isFact() && containsCut(clause.getCompiledBody())) {
+                        return false;
+                    }
+                    candidates.add(clause);
+                }
+            }
+        }
+        final Unifier unifier = this.prolog.getUnifier();
+        for (final Clause clause : candidates) {
+            final TermBindings clauseVars = clause.newUnificationBindings();
+            if (unifier.unify(theSession, theGoal, theBindings, clause.getHead(), clauseVars)) {
+                try {
+                    final List<Object[]> goals = clause.isFact() ? theRest : prepend(clause.getBody(), clauseVars, theRest);
+                    theResult.add(alternative(theHead, theBindings, goals));
+                } finally {
+                    unifier.deunify(theSession);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static List<Object[]> prepend(Object theGoal, TermBindings theBindings, List<Object[]> theGoals) {
+        final List<Object[]> goals = new ArrayList<Object[]>(theGoals.size() + 1);
+        goals.add(new Object[] { theGoal, theBindings });
+        goals.addAll(theGoals);
+        return goals;
+    }
+
+    /**
+     * @param theGoalNode
+     * @return true if theGoalNode contains a cut, other than within call/1 or a primitive.
+     */
+    private static boolean containsCut(GoalNode theGoalNode) {
+        if (theGoalNode.getKind() == GoalNode.Kind.CUT) {
+            return true;
+        }
+        if (theGoalNode.getChildren() != null) {
+            for (final GoalNode child : theGoalNode.getChildren()) {
+                if (containsCut(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param theGoalNode A {@link GoalNode.Kind#DISJUNCTION}
+     * @return true if a branch of theGoalNode is an if-then: its condition prunes the other branches, as a cut would.
+     */
+    private static boolean isIfThenElse(GoalNode theGoalNode) {
+        for (final GoalNode branch : theGoalNode.getChildren()) {
+            if (branch.getKind() == GoalNode.Kind.PREDICATE && branch.getStruct().getArity() == 2
+                    && (FUNCTOR_IF_THEN == branch.getStruct().getName() || FUNCTOR_SOFT_IF_THEN == branch.getStruct().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param theHead
+     * @param theHeadBindings
+     * @param theGoals Pairs of goal and bindings
+     * @return The standalone clause "theHead :- theGoals", with the current values of their variables.
+     */
+    private Clause alternative(Object theHead, TermBindings theHeadBindings, List<Object[]> theGoals) {
+        final TermCopier copier = new TermCopier();
+        final Object head = copier.copy(theHead, theHeadBindings);
+        Object body = Struct.ATOM_TRUE;
+        for (int i = theGoals.size() - 1; i >= 0; i--) {
+            final Object goal = copier.copy(theGoals.get(i)[0], (TermBindings) theGoals.get(i)[1]);
+            body = i == theGoals.size() - 1 ? goal : new Struct(Struct.FUNCTOR_COMMA, goal, body);
+        }
+        return new Clause(this.prolog, new Struct(Struct.FUNCTOR_CLAUSE, head, body));
+    }
+
+    // ---------------------------------------------------------------------------
+    // Solving alternatives
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Receives copies of the solutions of an alternative.
+     */
+    interface AnswerListener {
+        Continuation onAnswer(Clause theAnswer);
+    }
+
+    /**
+     * @param theSession
+     * @param theSolver
+     * @param theAlternative
+     * @param theAnswerListener Receives the head of theAlternative, copied with the values of each solution
+     * @return The {@link Continuation} of solving.
+     */
+    Continuation solveAlternative(SolverSession theSession, DefaultSolver theSolver, Clause theAlternative, final AnswerListener theAnswerListener) {
+        final TermBindings vars = theAlternative.newUnificationBindings();
+        final Object head = theAlternative.getHead();
+        if (theAlternative.isFact()) {
+            return theAnswerListener.onAnswer(TermCopier.copyAsClause(this.prolog, head, vars));
+        }
+        return theSolver.solveNode(theSession, theAlternative.getCompiledBody(), vars, new SolutionListener() {
+
+            @Override
+            public Continuation onSolution() {
+                return theAnswerListener.onAnswer(TermCopier.copyAsClause(ParallelSolver.this.prolog, head, vars));
+            }
+        });
+    }
+
+    /**
+     * Unify theGoal with an answer, and notify theSolutionListener. The variables of the answer are younger than those of theGoal, so
+     * that its free variables are bound to those of theGoal, as those of a clause are by the {@link DefaultSolver}.
+     */
+    Continuation notifyAnswer(SolverSession theSession, Object theGoal, TermBindings theGoalBindings, Clause theAnswer,
+            SolutionListener theSolutionListener) {
+        final Unifier unifier = this.prolog.getUnifier();
+        final TermBindings answerVars = theAnswer.newUnificationBindings(BindingTrail.getDepth(theSession.getTrail()));
+        if (!unifier.unify(theSession, theGoal, theGoalBindings, theAnswer.getHead(), answerVars)) {
+            return Continuation.CONTINUE;
+        }
+        try {
+            return theSolutionListener.onSolution();
+        } finally {
+            unifier.deunify(theSession);
+        }
+    }
+
+    private Continuation solveInParallel(SolverSession theSession, Object theGoal, TermBindings theGoalBindings, List<Clause> theAlternatives,
+            SolutionListener theSolutionListener) {
+        final Object lock = new Object();
+        final List<Task> tasks = new ArrayList<Task>(theAlternatives.size());
+        try {
+            for (final Clause alternative : theAlternatives) {
+                final Task task = new Task(alternative, lock);
+                tasks.add(task);
+                task.future = this.executor.submit(task);
+            }
+            for (final Task task : tasks) {
+                int next = 0;
+                while (true) {
+                    final Clause answer;
+                    synchronized (lock) {
+                        while (next == task.answers.size() && !task.done) {
+                            lock.wait();
+                        }
+                        if (next == task.answers.size()) {
+                            break;
+                        }
+                        answer = task.answers.set(next++, null);
+                    }
+                    final Continuation continuation = notifyAnswer(theSession, theGoal, theGoalBindings, answer, theSolutionListener);
+                    if (continuation == Continuation.CUT || continuation == Continuation.USER_ABORT) {
+                        return continuation;
+                    }
+                }
+                if (task.failure instanceof RuntimeException) {
+                    throw (RuntimeException) task.failure;
+                }
+                if (task.failure instanceof Error) {
+                    throw (Error) task.failure;
+                }
+                if (task.result == Continuation.USER_ABORT) {
+                    return task.result;
+                }
+            }
+            return Continuation.CONTINUE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrologNonSpecificError("Interrupted while solving " + theGoal);
+        } finally {
+            cancel(tasks, lock);
+        }
+    }
+
+    /**
+     * Cancel all tasks, and wait for those running.
+     */
+    private static void cancel(List<Task> theTasks, Object theLock) {
+        for (final Task task : theTasks) {
+            task.cancelled = true;
+            // Null when the task could not be submitted
+            if (task.future != null) {
+                task.future.cancel(true);
+            }
+        }
+        synchronized (theLock) {
+            for (final Iterator<Task> iter = theTasks.iterator(); iter.hasNext();) {
+                final Task task = iter.next();
+                while (task.started && !task.done) {
+                    try {
+                        theLock.wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private DefaultSolver workerSolver() {
+        DefaultSolver solver = this.workerSolver.get();
+        if (solver == null) {
+            solver = new DefaultSolver(this.prolog);
+            solver.setInterruptible(true);
+            this.workerSolver.set(solver);
+        }
+        return solver;
+    }
+
+    /**
+     * Solving of one alternative by a worker thread, its fields are guarded by the lock except {@link #cancelled}.
+     */
+    final class Task implements Runnable, AnswerListener {
+        private final Clause alternative;
+        private final Object lock;
+        final List<Clause> answers = new ArrayList<Clause>();
+        boolean started = false;
+        boolean done = false;
+        Continuation result = null;
+        Throwable failure = null;
+        volatile boolean cancelled = false;
+        Future<?> future;
+
+        Task(Clause theAlternative, Object theLock) {
+            this.alternative = theAlternative;
+            this.lock = theLock;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this.lock) {
+                if (this.cancelled) {
+                    return;
+                }
+                this.started = true;
+            }
+            Continuation continuation = null;
+            Throwable throwable = null;
+            final SolverSession session = SolverSession.current();
+            try {
+                continuation = solveAlternative(session, workerSolver(), this.alternative, this);
+            } catch (final Throwable e) {
+                throwable = e;
+            } finally {
+                // Threads of the pool must not retain what a huge alternative allocated on their trail
+                BindingTrail.shrinkIfEmpty(session.getTrail());
+                synchronized (this.lock) {
+                    this.result = continuation;
+                    this.failure = throwable;
+                    this.done = true;
+                    this.lock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public Continuation onAnswer(Clause theAnswer) {
+            if (this.cancelled) {
+                return Continuation.USER_ABORT;
+            }
+            synchronized (this.lock) {
+                this.answers.add(theAnswer);
+                this.lock.notifyAll();
+            }
+            return Continuation.CONTINUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return ReportUtils.shortDescription(this);
+    }
+
+}
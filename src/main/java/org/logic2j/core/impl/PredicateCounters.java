@@ -0,0 +1,88 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the {@link PredicateStatistics} of one predicate, with the ports of the box model: a call enters the predicate, an exit
+ * leaves it with a solution, a redo re-enters it for another solution, and a fail leaves it without further solutions.
+ */
+public final class PredicateCounters {
+    private final String signature;
+    private final long calls;
+    private final long exits;
+    private final long redos;
+    private final long fails;
+    private final long inclusiveNanos;
+
+    @ConstructorProperties({ "signature", "calls", "exits", "redos", "fails", "inclusiveNanos" })
+    public PredicateCounters(String theSignature, long theCalls, long theExits, long theRedos, long theFails, long theInclusiveNanos) {
+        this.signature = theSignature;
+        this.calls = theCalls;
+        this.exits = theExits;
+        this.redos = theRedos;
+        this.fails = theFails;
+        this.inclusiveNanos = theInclusiveNanos;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Accessors
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @return The predicate signature, such as "append/3".
+     */
+    public String getSignature() {
+        return this.signature;
+    }
+
+    public long getCalls() {
+        return this.calls;
+    }
+
+    public long getExits() {
+        return this.exits;
+    }
+
+    public long getRedos() {
+        return this.redos;
+    }
+
+    public long getFails() {
+        return this.fails;
+    }
+
+    /**
+     * @return The time spent solving the predicate, including the predicates it calls but not the goals that follow it.
+     */
+    public long getInclusiveNanos() {
+        return this.inclusiveNanos;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return this.signature + "{calls=" + this.calls + ", exits=" + this.exits + ", redos=" + this.redos + ", fails=" + this.fails + ", inclusiveNanos="
+                + this.inclusiveNanos + '}';
+    }
+
+}
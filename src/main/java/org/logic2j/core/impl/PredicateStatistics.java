@@ -0,0 +1,199 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+
+/**
+ * Counters of calls, exits, redos and fails, and inclusive time, of each predicate solved by the {@link DefaultSolver} of one engine.
+ * <p/>
+ * Collecting statistics is enabled for the whole JVM by the system property {@value #ENABLED_PROPERTY}=true; when it is not set, the
+ * constant {@link #isEnabled} lets the JIT remove the instrumentation from the solver altogether. Each thread accumulates into its own
+ * counters, which are only summed up by {@link #snapshot()}. Last calls remain optimized: their ports are also counted for the predicates
+ * they are the last call of. Calls from compiled code to compiled code (see {@link DefaultSolver#getCompilationThreshold()}) are not
+ * counted.
+ */
+public final class PredicateStatistics implements PredicateStatisticsMXBean {
+
+    public static final String ENABLED_PROPERTY = "org.logic2j.statistics";
+
+    public static final boolean isEnabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final int CALLS = 0;
+    private static final int EXITS = 1;
+    private static final int REDOS = 2;
+    private static final int FAILS = 3;
+    private static final int NANOS = 4;
+
+    /**
+     * The counters of every thread that solved goals, including threads that have since terminated.
+     */
+    private final List<Map<String, Counters>> countersOfAllThreads = new CopyOnWriteArrayList<Map<String, Counters>>();
+
+    private final ThreadLocal<Map<String, Counters>> countersOfThisThread = new ThreadLocal<Map<String, Counters>>() {
+
+        @Override
+        protected Map<String, Counters> initialValue() {
+            final Map<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+            PredicateStatistics.this.countersOfAllThreads.add(counters);
+            return counters;
+        }
+    };
+
+    private ObjectName objectName = null;
+
+    /**
+     * The counters of one predicate within one thread. Only that thread writes, so increments need no synchronization; lazySet() lets
+     * {@link PredicateStatistics#snapshot()} read consistent values from other threads.
+     */
+    static final class Counters {
+        private final AtomicLongArray values = new AtomicLongArray(5);
+
+        private void add(int theIndex, long theDelta) {
+            this.values.lazySet(theIndex, this.values.get(theIndex) + theDelta);
+        }
+
+        void call() {
+            add(CALLS, 1);
+        }
+
+        void exit() {
+            add(EXITS, 1);
+        }
+
+        void redo() {
+            add(REDOS, 1);
+        }
+
+        void fail() {
+            add(FAILS, 1);
+        }
+
+        void addNanos(long theNanos) {
+            add(NANOS, theNanos);
+        }
+    }
+
+    /**
+     * @param theSignature
+     * @return The counters of the predicate for the current thread.
+     */
+    Counters countersOf(String theSignature) {
+        final Map<String, Counters> counters = this.countersOfThisThread.get();
+        Counters result = counters.get(theSignature);
+        if (result == null) {
+            result = new Counters();
+            counters.put(theSignature, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The counters of all predicates called so far, summed over all threads, sorted by signature. Counters of goals being solved
+     *         are updated while they proceed.
+     */
+    public Map<String, PredicateCounters> snapshot() {
+        final Map<String, long[]> sums = new TreeMap<String, long[]>();
+        for (final Map<String, Counters> counters : this.countersOfAllThreads) {
+            for (final Map.Entry<String, Counters> entry : counters.entrySet()) {
+                long[] sum = sums.get(entry.getKey());
+                if (sum == null) {
+                    sum = new long[5];
+                    sums.put(entry.getKey(), sum);
+                }
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += entry.getValue().values.get(i);
+                }
+            }
+        }
+        final Map<String, PredicateCounters> result = new TreeMap<String, PredicateCounters>();
+        for (final Map.Entry<String, long[]> entry : sums.entrySet()) {
+            final long[] sum = entry.getValue();
+            result.put(entry.getKey(), new PredicateCounters(entry.getKey(), sum[CALLS], sum[EXITS], sum[REDOS], sum[FAILS], sum[NANOS]));
+        }
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Implementation of PredicateStatisticsMXBean
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    @Override
+    public Map<String, PredicateCounters> getPredicates() {
+        return snapshot();
+    }
+
+    @Override
+    public void reset() {
+        for (final Map<String, Counters> counters : this.countersOfAllThreads) {
+            counters.clear();
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // JMX registration
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Register this object in the platform MBean server, under the domain "org.logic2j".
+     * 
+     * @return The name registered.
+     */
+    public synchronized ObjectName registerMBean() {
+        if (this.objectName == null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                final ObjectName name = new ObjectName("org.logic2j:type=PredicateStatistics,id=" + Integer.toHexString(System.identityHashCode(this)));
+                server.registerMBean(this, name);
+                this.objectName = name;
+            } catch (final JMException e) {
+                throw new PrologNonSpecificError("Could not register MBean for " + this, e);
+            }
+        }
+        return this.objectName;
+    }
+
+    public synchronized void unregisterMBean() {
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (final JMException e) {
+                throw new PrologNonSpecificError("Could not unregister MBean " + this.objectName, e);
+            }
+            this.objectName = null;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link PredicateStatistics}, see {@link PredicateStatistics#registerMBean()}.
+ */
+public interface PredicateStatisticsMXBean {
+
+    /**
+     * @return true when the solver collects statistics, see {@link PredicateStatistics#isEnabled}.
+     */
+    boolean isEnabled();
+
+    /**
+     * @return The counters of all predicates called so far, by signature.
+     */
+    Map<String, PredicateCounters> getPredicates();
+
+    /**
+     * Forget all counters.
+     */
+    void reset();
+
+}
@@ -25,6 +25,7 @@ import org.logic2j.core.api.TermMarshaller;
 import org.logic2j.core.api.TermUnmarshaller;
 import org.logic2j.core.api.Unifier;
 import org.logic2j.core.api.model.OperatorManager;
+import org.logic2j.core.impl.util.GoalStackProfiler;
 
 /**
  * An interface that Prolog implementations must provide; this goes beyond the lighter facade interface {@link Prolog} intended for client
@@ -68,4 +69,9 @@ public interface PrologImplementation extends Prolog {
 
     void setTermAdapter(TermAdapter termAdapter);
 
+    /**
+     * @return The profiler sampling the goals being solved, or null when not profiling.
+     */
+    GoalStackProfiler getProfiler();
+
 }
@@ -31,6 +31,7 @@ import org.logic2j.core.impl.io.operator.DefaultOperatorManager;
 import org.logic2j.core.impl.theory.DefaultTheoryManager;
 import org.logic2j.core.impl.theory.TheoryManager;
 import org.logic2j.core.impl.unify.DefaultUnifier;
+import org.logic2j.core.impl.util.GoalStackProfiler;
 import org.logic2j.core.impl.util.ReportUtils;
 import org.logic2j.core.library.impl.core.CoreLibrary;
 import org.logic2j.core.library.impl.io.IOLibrary;
@@ -73,6 +74,8 @@ public class PrologReferenceImplementation implements PrologImplementation {
     private OperatorManager operatorManager = new DefaultOperatorManager();
     private Solver solver = new DefaultSolver(this);
     private Unifier unifier = new DefaultUnifier();
+    private final PredicateStatistics predicateStatistics = new PredicateStatistics();
+    private GoalStackProfiler profiler = null;
 
     /**
      * Default constructor will only provide an engine with the {@link CoreLibrary} loaded.
@@ -181,6 +184,23 @@ public class PrologReferenceImplementation implements PrologImplementation {
         this.unifier = theUnifier;
     }
 
+    @Override
+    public PredicateStatistics getPredicateStatistics() {
+        return this.predicateStatistics;
+    }
+
+    @Override
+    public GoalStackProfiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * @param theProfiler The profiler to sample the goals solved by this engine, or null to stop profiling it.
+     */
+    public void setProfiler(GoalStackProfiler theProfiler) {
+        this.profiler = theProfiler;
+    }
+
     // ---------------------------------------------------------------------------
     // Methods of java.lang.Object
     // ---------------------------------------------------------------------------
@@ -0,0 +1,84 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * Copy terms with the current values of their variables, so that the copies no longer depend on any {@link TermBindings}: they can be
+ * solved or unified by another thread. Free variables are replaced by new variables, the same for all terms copied by one instance.
+ */
+final class TermCopier {
+
+    private final Map<Binding, Var> vars = new IdentityHashMap<Binding, Var>();
+
+    /**
+     * @param theTerm
+     * @param theBindings
+     * @return A copy of theTerm with the current values of its variables, to be normalized before use.
+     */
+    Object copy(Object theTerm, TermBindings theBindings) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                return var;
+            }
+            final Binding binding = var.bindingWithin(theBindings).followLinks();
+            if (binding.isFree()) {
+                Var copy = this.vars.get(binding);
+                if (copy == null) {
+                    copy = new Var("_C" + this.vars.size());
+                    this.vars.put(binding, copy);
+                }
+                return copy;
+            }
+            return copy(binding.getTerm(), binding.getTermBindings());
+        }
+        if (theTerm instanceof Struct) {
+            final Struct struct = (Struct) theTerm;
+            final int arity = struct.getArity();
+            if (arity == 0) {
+                return struct;
+            }
+            final Object[] args = new Object[arity];
+            for (int i = 0; i < arity; i++) {
+                args[i] = copy(struct.getArg(i), theBindings);
+            }
+            return new Struct(struct.getName(), args);
+        }
+        return theTerm;
+    }
+
+    /**
+     * @param theProlog
+     * @param theTerm
+     * @param theBindings
+     * @return A normalized copy of theTerm, as a fact.
+     */
+    static Clause copyAsClause(PrologImplementation theProlog, Object theTerm, TermBindings theBindings) {
+        return new Clause(theProlog, new TermCopier().copy(theTerm, theBindings));
+    }
+
+}
@@ -31,6 +31,7 @@ public class DefaultOperatorManager extends OperatorManagerBase {
         addOperator(Struct.FUNCTOR_CLAUSE, Operator.FX, 1200); // Actually, query not clause // Any reason for this order - is registered in
                                                                // a LinkedMap...
         addOperator("?-", Operator.FX, 1200);
+        addOperator("table", Operator.FX, 1150); // Directive to declare tabled predicates
         addOperator(";", Operator.XFY, 1100); // OR
         addOperator("->", Operator.XFY, 1050);
         addOperator(Struct.FUNCTOR_COMMA, Operator.XFY, 1000); // AND
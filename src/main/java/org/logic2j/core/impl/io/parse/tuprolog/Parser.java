@@ -32,6 +32,7 @@ import org.logic2j.core.api.TermAdapter.FactoryMode;
 import org.logic2j.core.api.model.OperatorManager;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.impl.PrologImplementation;
@@ -377,7 +378,7 @@ public class Parser {
         }
 
         if (t1.isType(ATOM) || t1.isType(SQ_SEQUENCE) || t1.isType(DQ_SEQUENCE)) {
-            final String functor = t1.text.intern();
+            final String functor = Symbols.name(t1.text);
             if (!t1.isFunctor()) {
                 // We delegate the instantiation of the atom to our TermAdapter
                 final Object term = this.prolog.getTermAdapter().term(functor, FactoryMode.ATOM);
@@ -0,0 +1,131 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.theory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.logic2j.core.api.model.Clause;
+
+/**
+ * The answers to one call of a tabled predicate, and to all its variants (calls that are equal up to the renaming of their free
+ * variables). Answers are stored as {@link Clause}s (facts), so that they can be unified with goals like any fact of a theory.
+ */
+public final class AnswerTable {
+
+    /**
+     * The state of evaluation of an {@link AnswerTable}.
+     */
+    public enum Status {
+        /**
+         * Not being evaluated, but answers may be missing. The next call will (re)evaluate.
+         */
+        INCOMPLETE,
+
+        /**
+         * Being evaluated: a variant call consumes the answers found so far.
+         */
+        EVALUATING,
+
+        /**
+         * All answers are known: calls just consume them.
+         */
+        COMPLETE
+    }
+
+    private final String variantKey;
+    private final List<Clause> answers = new ArrayList<Clause>();
+    private final Set<String> answerKeys = new HashSet<String>();
+    private volatile Status status = Status.INCOMPLETE;
+
+    /**
+     * Position on the stack of evaluations, valid while {@link Status#EVALUATING}.
+     */
+    int stackIndex;
+
+    /**
+     * Lowest position on the stack of evaluations whose answers were consumed (possibly indirectly) by this evaluation. When it is lower
+     * than {@link #stackIndex}, this table cannot complete before the table at that position (the leader).
+     */
+    int leaderIndex;
+
+    /**
+     * Tables evaluated within this one but that could not be completed before it.
+     */
+    final List<AnswerTable> dependents = new ArrayList<AnswerTable>();
+
+    AnswerTable(String theVariantKey) {
+        this.variantKey = theVariantKey;
+    }
+
+    /**
+     * @param theAnswerKey The variant key of the answer
+     * @param theAnswer
+     * @return true if the answer was new and was added.
+     */
+    synchronized boolean addAnswer(String theAnswerKey, Clause theAnswer) {
+        if (!this.answerKeys.add(theAnswerKey)) {
+            return false;
+        }
+        this.answers.add(theAnswer);
+        return true;
+    }
+
+    void setStatus(Status theStatus) {
+        this.status = theStatus;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Accessors
+    // ---------------------------------------------------------------------------
+
+    public String getVariantKey() {
+        return this.variantKey;
+    }
+
+    /**
+     * @return The number of answers found so far. May grow while {@link Status#EVALUATING}.
+     */
+    public synchronized int getNbAnswers() {
+        return this.answers.size();
+    }
+
+    /**
+     * @param theIndex
+     * @return The answer found at position theIndex, in order of discovery.
+     */
+    public synchronized Clause getAnswer(int theIndex) {
+        return this.answers.get(theIndex);
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + '(' + this.status + ", " + this.answers + ')';
+    }
+
+}
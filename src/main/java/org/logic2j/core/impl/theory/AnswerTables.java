@@ -0,0 +1,231 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.theory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.PrologImplementation;
+import org.logic2j.core.impl.theory.AnswerTable.Status;
+
+/**
+ * The {@link AnswerTable}s of tabled predicates, by variant of their calls, and the bookkeeping of their evaluation. The solver evaluates
+ * a new call by iterating its clauses until no new answer is found (fixpoint); a variant call met during this evaluation (for example in
+ * left-recursive rules) only consumes the answers found so far instead of recursing. Tables that consumed answers from an evaluation still
+ * in progress form a strongly connected component with it, and complete only together with its leader.
+ *
+ * @note The evaluation stack is shared by all threads: solvers must hold the lock of this object while evaluating, so that evaluations
+ *       from several threads are serialized. Answers may be read concurrently.
+ */
+public class AnswerTables {
+
+    private final PrologImplementation prolog;
+    private final Map<String, AnswerTable> tables = new HashMap<String, AnswerTable>();
+    private final ArrayList<AnswerTable> evaluationStack = new ArrayList<AnswerTable>();
+    private long nbAnswersAdded = 0;
+
+    public AnswerTables(PrologImplementation theProlog) {
+        this.prolog = theProlog;
+    }
+
+    /**
+     * @param theGoal
+     * @param theGoalBindings
+     * @return The table of answers for theGoal's variant, created if needed.
+     */
+    public synchronized AnswerTable tableFor(Object theGoal, TermBindings theGoalBindings) {
+        final VariantCopy variant = new VariantCopy();
+        variant.copy(theGoal, theGoalBindings);
+        final String key = variant.key.toString();
+        AnswerTable table = this.tables.get(key);
+        if (table == null) {
+            table = new AnswerTable(key);
+            this.tables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * Record the current value of theGoal (with its bindings) as an answer of theTable.
+     *
+     * @param theTable
+     * @param theGoal
+     * @param theGoalBindings
+     * @return true if the answer was new.
+     */
+    public boolean addAnswer(AnswerTable theTable, Object theGoal, TermBindings theGoalBindings) {
+        final VariantCopy variant = new VariantCopy();
+        final Object answer = variant.copy(theGoal, theGoalBindings);
+        final boolean added = theTable.addAnswer(variant.key.toString(), new Clause(this.prolog, answer));
+        if (added) {
+            this.nbAnswersAdded++;
+        }
+        return added;
+    }
+
+    /**
+     * @return The total number of answers added to all tables, used to detect a fixpoint.
+     */
+    public long getNbAnswersAdded() {
+        return this.nbAnswersAdded;
+    }
+
+    /**
+     * Forget all answers, for example when the theory changes.
+     */
+    public synchronized void clear() {
+        this.tables.clear();
+        this.evaluationStack.clear();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Bookkeeping of evaluations
+    // ---------------------------------------------------------------------------
+
+    public void beginEvaluation(AnswerTable theTable) {
+        theTable.setStatus(Status.EVALUATING);
+        theTable.stackIndex = this.evaluationStack.size();
+        theTable.leaderIndex = theTable.stackIndex;
+        theTable.dependents.clear();
+        this.evaluationStack.add(theTable);
+    }
+
+    /**
+     * The evaluation on top of the stack consumes answers of theTable, itself being evaluated: they are in the same strongly connected
+     * component.
+     *
+     * @param theTable
+     */
+    public void consumeIncomplete(AnswerTable theTable) {
+        final AnswerTable top = this.evaluationStack.get(this.evaluationStack.size() - 1);
+        top.leaderIndex = Math.min(top.leaderIndex, theTable.stackIndex);
+    }
+
+    /**
+     * Evaluation of theTable reached its fixpoint.
+     *
+     * @param theTable Must be on top of the stack
+     * @return true if theTable (and the tables that depend on it) are now complete.
+     */
+    public boolean endEvaluation(AnswerTable theTable) {
+        this.evaluationStack.remove(theTable.stackIndex);
+        if (theTable.leaderIndex >= theTable.stackIndex) {
+            // Leader of its component: all is known
+            theTable.setStatus(Status.COMPLETE);
+            for (final AnswerTable dependent : theTable.dependents) {
+                dependent.setStatus(Status.COMPLETE);
+            }
+            theTable.dependents.clear();
+            return true;
+        }
+        // Will be completed together with its leader, further down the stack
+        theTable.setStatus(Status.INCOMPLETE);
+        final AnswerTable parent = this.evaluationStack.get(this.evaluationStack.size() - 1);
+        parent.leaderIndex = Math.min(parent.leaderIndex, theTable.leaderIndex);
+        parent.dependents.add(theTable);
+        parent.dependents.addAll(theTable.dependents);
+        theTable.dependents.clear();
+        return false;
+    }
+
+    /**
+     * Evaluation of theTable was interrupted (exception): its answers are kept but it remains incomplete.
+     *
+     * @param theTable Must be on top of the stack
+     */
+    public void abandonEvaluation(AnswerTable theTable) {
+        this.evaluationStack.remove(theTable.stackIndex);
+        theTable.setStatus(Status.INCOMPLETE);
+        for (final AnswerTable dependent : theTable.dependents) {
+            dependent.setStatus(Status.INCOMPLETE);
+        }
+        theTable.dependents.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + '(' + this.tables.size() + " tables)";
+    }
+
+    // ---------------------------------------------------------------------------
+    // Variants
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Copy a term with its bindings into a standalone term whose free variables are renamed in order of appearance, and compute its key:
+     * two terms are variants of each other if and only if they have the same key.
+     */
+    static final class VariantCopy {
+        final StringBuilder key = new StringBuilder();
+        private final Map<Binding, Var> vars = new IdentityHashMap<Binding, Var>();
+        private int nbVars = 0;
+
+        Object copy(Object theTerm, TermBindings theBindings) {
+            if (theTerm instanceof Var) {
+                final Var var = (Var) theTerm;
+                if (var.isAnonymous()) {
+                    return newVar();
+                }
+                final Binding binding = var.bindingWithin(theBindings).followLinks();
+                if (binding.isFree()) {
+                    Var copy = this.vars.get(binding);
+                    if (copy == null) {
+                        copy = newVar();
+                        this.vars.put(binding, copy);
+                    } else {
+                        this.key.append(copy.getName()).append(';');
+                    }
+                    return copy;
+                }
+                return copy(binding.getTerm(), binding.getTermBindings());
+            }
+            if (theTerm instanceof Struct) {
+                final Struct struct = (Struct) theTerm;
+                final String name = struct.getName();
+                final int arity = struct.getArity();
+                this.key.append('S').append(name.length()).append(':').append(name).append('/').append(arity).append('(');
+                final Object[] args = new Object[arity];
+                for (int i = 0; i < arity; i++) {
+                    args[i] = copy(struct.getArg(i), theBindings);
+                }
+                this.key.append(')');
+                if (arity == 0) {
+                    return struct;
+                }
+                return new Struct(name, args);
+            }
+            final String text = String.valueOf(theTerm);
+            this.key.append(theTerm.getClass().getSimpleName()).append(text.length()).append(':').append(text);
+            return theTerm;
+        }
+
+        private Var newVar() {
+            final Var var = new Var("_T" + this.nbVars++);
+            this.key.append(var.getName()).append(';');
+            return var;
+        }
+    }
+
+}
@@ -29,11 +29,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.ClauseStatistics;
 import org.logic2j.core.api.DataFactProvider;
 import org.logic2j.core.api.Solver;
 import org.logic2j.core.api.model.Clause;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+import org.logic2j.core.api.model.symbol.GroundTermTable;
+import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.var.TermBindings;
 import org.logic2j.core.impl.PrologImplementation;
 import org.logic2j.core.impl.io.parse.tuprolog.Parser;
@@ -44,13 +47,18 @@ import org.logic2j.core.impl.util.ReportUtils;
  * Prolog's most classic way of providing {@link Clause}s to the {@link Solver} inference engine: all clauses are parsed and normalized from
  * one or several theories' textual content managed by this class. TODO Does the name "Manager" make sense here?
  */
-public class DefaultTheoryManager implements TheoryManager {
+public class DefaultTheoryManager implements TheoryManager, ClauseStatistics {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DefaultTheoryManager.class);
 
+    private static final String DIRECTIVE_TABLE = "table";
+
     private final PrologImplementation prolog;
     private final TheoryContent wholeContent = new TheoryContent();
+    private final AnswerTables answerTables;
     private List<ClauseProvider> clauseProviders = new ArrayList<ClauseProvider>();
     private List<DataFactProvider> dataFactProviders = new ArrayList<DataFactProvider>();
+    private int generation = 0;
+    private GroundTermTable groundTerms = null;
 
     /**
      * Constructor
@@ -59,6 +67,7 @@ public class DefaultTheoryManager implements TheoryManager {
      */
     public DefaultTheoryManager(PrologImplementation theProlog) {
         this.prolog = theProlog;
+        this.answerTables = new AnswerTables(theProlog);
         this.clauseProviders.add(this);
     }
 
@@ -142,29 +151,86 @@ public class DefaultTheoryManager implements TheoryManager {
         Object clauseTerm = theParser.nextTerm(true);
         while (clauseTerm != null) {
             logger.debug("Parsed clause: {}", clauseTerm);
-            final Clause cl = new Clause(this.prolog, clauseTerm);
-            content.add(cl);
-              clauseTerm = theParser.nextTerm(true);
+            if (isTableDirective(clauseTerm)) {
+                loadTableDirective(content, ((Struct) ((Struct) clauseTerm).getArg(0)).getArg(0));
+            } else {
+                final Clause cl = new Clause(this.prolog, clauseTerm, this.groundTerms);
+                content.add(cl);
+            }
+            clauseTerm = theParser.nextTerm(true);
         }
         return content;
     }
 
+    /**
+     * @param theClauseTerm
+     * @return true if theClauseTerm is the directive ":- table Name/Arity, ...". Other directives are not interpreted, they go through
+     *         {@link Clause} like any other term.
+     */
+    private static boolean isTableDirective(Object theClauseTerm) {
+        if (!(theClauseTerm instanceof Struct) || ((Struct) theClauseTerm).getName() != Struct.FUNCTOR_CLAUSE || ((Struct) theClauseTerm).getArity() != 1) {
+            return false;
+        }
+        final Object directive = ((Struct) theClauseTerm).getArg(0);
+        return directive instanceof Struct && ((Struct) directive).getName() == DIRECTIVE_TABLE && ((Struct) directive).getArity() == 1;
+    }
+
+    /**
+     * Handle the directive ":- table Name/Arity, ...".
+     * 
+     * @param theContent
+     * @param theSpecs The predicate indicators, separated by commas
+     */
+    private void loadTableDirective(TheoryContent theContent, Object theSpecs) {
+        Object specs = theSpecs;
+        while (specs instanceof Struct && ((Struct) specs).getName() == Struct.FUNCTOR_COMMA && ((Struct) specs).getArity() == 2) {
+            theContent.addTabledPredicate(predicateIndicator(((Struct) specs).getArg(0)));
+            specs = ((Struct) specs).getArg(1);
+        }
+        theContent.addTabledPredicate(predicateIndicator(specs));
+    }
+
+    /**
+     * @param theIndicator Such as "name/2"
+     * @return The predicate signature, same as {@link Struct#getPredicateSignature()}
+     */
+    private static String predicateIndicator(Object theIndicator) {
+        if (theIndicator instanceof Struct) {
+            final Struct indicator = (Struct) theIndicator;
+            if (indicator.getName() == "/" && indicator.getArity() == 2 && indicator.getArg(0) instanceof String && indicator.getArg(1) instanceof Long) {
+                return indicator.getArg(0) + "/" + indicator.getArg(1);
+            }
+        }
+        throw new InvalidTermException("Predicate indicator must be of the form Name/Arity, was " + theIndicator);
+    }
+
     /**
      * @param theContent to add
      */
     @Override
     public void addTheory(TheoryContent theContent) {
         this.wholeContent.addAll(theContent);
+        contentChanged();
+    }
+
+    /**
+     * Clauses or providers changed: memoized answers and anything computed for the previous generation may no longer be valid.
+     */
+    private void contentChanged() {
+        this.answerTables.clear();
+        this.generation++;
     }
 
     @Override
     public void addClauseProvider(ClauseProvider theNewProvider) {
         this.clauseProviders.add(theNewProvider);
+        contentChanged();
     }
 
     @Override
     public void addDataFactProvider(DataFactProvider theNewProvider) {
         this.dataFactProviders.add(theNewProvider);
+        contentChanged();
     }
 
     // ---------------------------------------------------------------------------
@@ -179,6 +245,7 @@ public class DefaultTheoryManager implements TheoryManager {
 
     public void setClauseProviders(List<ClauseProvider> theClauseProviders) {
         this.clauseProviders = theClauseProviders;
+        contentChanged();
     }
 
     @Override
@@ -191,8 +258,46 @@ public class DefaultTheoryManager implements TheoryManager {
         return this.dataFactProviders;
     }
 
+    @Override
+    public boolean hasTabledPredicates() {
+        return this.wholeContent.hasTabledPredicates();
+    }
+
+    @Override
+    public boolean isTabled(String thePredicateSignature) {
+        return this.wholeContent.isTabled(thePredicateSignature);
+    }
+
+    @Override
+    public AnswerTables getAnswerTables() {
+        return this.answerTables;
+    }
+
+    @Override
+    public int getGeneration() {
+        return this.generation;
+    }
+
     public void setDataFactProviders(List<DataFactProvider> theDataFactProviders) {
         this.dataFactProviders = theDataFactProviders;
+        contentChanged();
+    }
+
+    public boolean isGroundTermSharing() {
+        return this.groundTerms != null;
+    }
+
+    /**
+     * @param theGroundTermSharing When true, equal ground subterms of the clauses loaded afterwards are shared, see
+     *            {@link GroundTermTable}. This saves memory for theories of facts repeating the same compound values, at the expense of
+     *            loading time.
+     */
+    public void setGroundTermSharing(boolean theGroundTermSharing) {
+        if (!theGroundTermSharing) {
+            this.groundTerms = null;
+        } else if (this.groundTerms == null) {
+            this.groundTerms = new GroundTermTable();
+        }
     }
 
     // ---------------------------------------------------------------------------
@@ -201,12 +306,21 @@ public class DefaultTheoryManager implements TheoryManager {
 
     /**
      * @param theGoal
-     * @param theGoalBindings Not used in this method
+     * @param theGoalBindings Used to dereference theGoal's arguments for selecting clauses by index
      * @return All {@link Clause}s from the {@link TheoryContent} that may match theGoal.
      */
     @Override
     public Iterable<Clause> listMatchingClauses(Object theGoal, TermBindings theGoalBindings) {
-        return this.wholeContent.find(theGoal);
+        return this.wholeContent.find(theGoal, theGoalBindings);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Implementation of ClauseStatistics
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public double estimateSolutions(String thePredicateSignature, Object[] theArgumentKeys, boolean[] theBoundArguments) {
+        return this.wholeContent.estimateSolutions(thePredicateSignature, theArgumentKeys, theBoundArguments);
     }
 
     // ---------------------------------------------------------------------------
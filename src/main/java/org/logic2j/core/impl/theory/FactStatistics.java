@@ -0,0 +1,120 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.theory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.logic2j.core.api.ClauseStatistics;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+
+/**
+ * Statistics of the {@link Clause}s of one predicate: their number, and for each argument position the number of clauses per index key
+ * (see {@link TermApi#indexKey(Object)}). Immutable once built.
+ */
+public final class FactStatistics {
+
+    private final int nbClauses;
+
+    /**
+     * True if all clauses are facts.
+     */
+    private final boolean onlyFacts;
+
+    /**
+     * By argument position, the number of clauses per index key.
+     */
+    private final List<Map<Object, Integer>> keyCounts;
+
+    /**
+     * By argument position, the number of clauses whose argument has no index key, they may match any value.
+     */
+    private final int[] nbUnkeyed;
+
+    /**
+     * @param theClauses All clauses of one predicate
+     * @param theArity Arity of the predicate
+     */
+    public FactStatistics(List<Clause> theClauses, int theArity) {
+        this.nbClauses = theClauses.size();
+        this.keyCounts = new ArrayList<Map<Object, Integer>>(theArity);
+        this.nbUnkeyed = new int[theArity];
+        for (int i = 0; i < theArity; i++) {
+            this.keyCounts.add(new HashMap<Object, Integer>());
+        }
+        boolean facts = true;
+        for (final Clause clause : theClauses) {
+            facts &= clause.isFact();
+            final Object head = clause.getHead();
+            for (int i = 0; i < theArity; i++) {
+                final Object key = head instanceof Struct ? TermApi.indexKey(((Struct) head).getArg(i)) : null;
+                if (key == null) {
+                    this.nbUnkeyed[i]++;
+                } else {
+                    final Integer count = this.keyCounts.get(i).get(key);
+                    this.keyCounts.get(i).put(key, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        this.onlyFacts = facts;
+    }
+
+    /**
+     * Estimate the number of solutions assuming that arguments are independent: each bound argument divides the number of clauses by its
+     * selectivity. When the value of an argument is known, its selectivity is exact; otherwise it is the number of distinct values.
+     * 
+     * @param theArgumentKeys
+     * @param theBoundArguments
+     * @return The estimated number of solutions, or {@link ClauseStatistics#UNKNOWN} if some clauses are rules.
+     * @see ClauseStatistics#estimateSolutions(String, Object[], boolean[])
+     */
+    public double estimateSolutions(Object[] theArgumentKeys, boolean[] theBoundArguments) {
+        if (!this.onlyFacts) {
+            return ClauseStatistics.UNKNOWN;
+        }
+        if (this.nbClauses == 0) {
+            return 0;
+        }
+        double estimate = this.nbClauses;
+        for (int i = 0; i < this.nbUnkeyed.length; i++) {
+            final Map<Object, Integer> counts = this.keyCounts.get(i);
+            final Object key = theArgumentKeys != null ? theArgumentKeys[i] : null;
+            if (key != null) {
+                final Integer count = counts.get(key);
+                estimate *= (double) ((count == null ? 0 : count) + this.nbUnkeyed[i]) / this.nbClauses;
+            } else if (theBoundArguments[i] && !counts.isEmpty()) {
+                final double keyed = this.nbClauses - this.nbUnkeyed[i];
+                estimate *= (keyed / counts.size() + this.nbUnkeyed[i]) / this.nbClauses;
+            }
+        }
+        return estimate;
+    }
+
+    public int getNbClauses() {
+        return this.nbClauses;
+    }
+
+    public boolean isOnlyFacts() {
+        return this.onlyFacts;
+    }
+
+}
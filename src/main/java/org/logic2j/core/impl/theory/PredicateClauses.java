@@ -0,0 +1,295 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.theory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * All {@link Clause}s of one predicate (same head signature), in order, with per-argument indexes built lazily. The first argument is
+ * indexed as soon as it is found bound in a goal, other arguments only once they have been found bound often enough (just-in-time
+ * indexing). Indexes are invalidated whenever a {@link Clause} is added.
+ */
+final class PredicateClauses {
+
+    /**
+     * Under this number of clauses, scanning is cheaper than indexing.
+     */
+    static final int MIN_CLAUSES_FOR_INDEXING = 8;
+
+    /**
+     * Number of calls with a bound argument (other than the first) before we build its index.
+     */
+    static final int JIT_INDEXING_THRESHOLD = 16;
+
+    private final List<Clause> clauses = new ArrayList<Clause>();
+
+    /**
+     * Indexes by argument position; an element is null until built. The array itself is replaced (never mutated) once published, so that
+     * concurrent readers always see consistent indexes.
+     */
+    private volatile ArgumentIndex[] indexes;
+
+    /**
+     * Number of calls having found each argument bound - not synchronized, an approximate count is good enough.
+     */
+    private int[] boundCounters;
+
+    /**
+     * Built lazily, null until then.
+     */
+    private volatile FactStatistics statistics;
+
+    void add(Clause theClause) {
+        this.clauses.add(theClause);
+        invalidateIndexes();
+    }
+
+    void addAll(PredicateClauses theOther) {
+        this.clauses.addAll(theOther.clauses);
+        invalidateIndexes();
+    }
+
+    private void invalidateIndexes() {
+        this.indexes = null;
+        this.boundCounters = null;
+        this.statistics = null;
+    }
+
+    /**
+     * @return All clauses, in order.
+     */
+    List<Clause> getClauses() {
+        return this.clauses;
+    }
+
+    /**
+     * Select the clauses that may match theGoal: when an argument of theGoal is bound, and its index is available, only the clauses whose
+     * argument at the same position may unify are returned (in their original order). Otherwise, all clauses.
+     *
+     * @param theGoal
+     * @param theGoalBindings
+     * @return The candidate clauses, never null.
+     */
+    Iterable<Clause> find(Object theGoal, TermBindings theGoalBindings) {
+        if (!(theGoal instanceof Struct) || theGoalBindings == null || this.clauses.size() < MIN_CLAUSES_FOR_INDEXING) {
+            return this.clauses;
+        }
+        final Struct goal = (Struct) theGoal;
+        final int arity = goal.getArity();
+        ArgumentIndex[] currentIndexes = this.indexes;
+        if (currentIndexes == null) {
+            currentIndexes = new ArgumentIndex[arity];
+            this.boundCounters = new int[arity];
+            this.indexes = currentIndexes;
+        }
+        final int[] counters = this.boundCounters;
+        ArgumentIndex bestIndex = null;
+        Object bestKey = null;
+        int bestCount = this.clauses.size();
+        for (int i = 0; i < arity; i++) {
+            final Object key = TermApi.dereferencedIndexKey(goal.getArg(i), theGoalBindings);
+            if (key == null) {
+                continue;
+            }
+            ArgumentIndex index = currentIndexes[i];
+            if (index == null) {
+                if (i > 0 && counters != null && ++counters[i] < JIT_INDEXING_THRESHOLD) {
+                    continue;
+                }
+                index = new ArgumentIndex(this.clauses, i);
+                currentIndexes = currentIndexes.clone();
+                currentIndexes[i] = index;
+                this.indexes = currentIndexes;
+            }
+            final int count = index.count(key);
+            if (count < bestCount) {
+                bestIndex = index;
+                bestKey = key;
+                bestCount = count;
+                if (count == 0) {
+                    break;
+                }
+            }
+        }
+        if (bestIndex == null) {
+            return this.clauses;
+        }
+        return bestIndex.select(bestKey);
+    }
+
+    /**
+     * @param theArgumentKeys
+     * @param theBoundArguments
+     * @return The estimated number of solutions of a goal, see {@link FactStatistics#estimateSolutions(Object[], boolean[])}.
+     */
+    double estimateSolutions(Object[] theArgumentKeys, boolean[] theBoundArguments) {
+        FactStatistics current = this.statistics;
+        if (current == null) {
+            current = new FactStatistics(this.clauses, theBoundArguments.length);
+            this.statistics = current;
+        }
+        return current.estimateSolutions(theArgumentKeys, theBoundArguments);
+    }
+
+    @Override
+    public String toString() {
+        return this.clauses.toString();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Index of clauses on one argument position
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Immutable once built. Clauses whose argument is a free variable (or not indexable) may match any key: they are kept once, in a list
+     * shared by all keys, and merged with the clauses of a key while iterating the selection. Ordering of clauses is preserved.
+     */
+    static final class ArgumentIndex {
+        private final Map<Object, Bucket> buckets = new HashMap<Object, Bucket>();
+        private final Bucket unkeyed;
+
+        ArgumentIndex(List<Clause> theClauses, int theArgumentPosition) {
+            final int nbClauses = theClauses.size();
+            final Object[] keys = new Object[nbClauses];
+            final Map<Object, int[]> counts = new HashMap<Object, int[]>();
+            int nbUnkeyed = 0;
+            for (int c = 0; c < nbClauses; c++) {
+                final Object head = theClauses.get(c).getHead();
+                if (head instanceof Struct) {
+                    keys[c] = TermApi.indexKey(((Struct) head).getArg(theArgumentPosition));
+                }
+                if (keys[c] == null) {
+                    nbUnkeyed++;
+                } else {
+                    final int[] count = counts.get(keys[c]);
+                    if (count == null) {
+                        counts.put(keys[c], new int[] { 1 });
+                    } else {
+                        count[0]++;
+                    }
+                }
+            }
+            for (final Map.Entry<Object, int[]> entry : counts.entrySet()) {
+                this.buckets.put(entry.getKey(), new Bucket(entry.getValue()[0]));
+            }
+            this.unkeyed = new Bucket(nbUnkeyed);
+            for (int c = 0; c < nbClauses; c++) {
+                final Bucket bucket = (keys[c] == null) ? this.unkeyed : this.buckets.get(keys[c]);
+                bucket.add(theClauses.get(c), c);
+            }
+        }
+
+        /**
+         * @param theKey
+         * @return The number of clauses whose argument has theKey or is unkeyed.
+         */
+        int count(Object theKey) {
+            final Bucket bucket = this.buckets.get(theKey);
+            return (bucket == null) ? this.unkeyed.positions.length : bucket.positions.length + this.unkeyed.positions.length;
+        }
+
+        /**
+         * @param theKey
+         * @return The clauses whose argument has theKey or is unkeyed, in their original order, without copying them.
+         */
+        Iterable<Clause> select(Object theKey) {
+            final Bucket bucket = this.buckets.get(theKey);
+            if (bucket == null) {
+                return this.unkeyed.clauses;
+            }
+            if (this.unkeyed.clauses.isEmpty()) {
+                return bucket.clauses;
+            }
+            return new MergedBuckets(bucket, this.unkeyed);
+        }
+    }
+
+    /**
+     * Clauses of one key of an {@link ArgumentIndex}, with their positions in the predicate.
+     */
+    private static final class Bucket {
+        final List<Clause> clauses;
+        final int[] positions;
+
+        Bucket(int theSize) {
+            this.clauses = new ArrayList<Clause>(theSize);
+            this.positions = new int[theSize];
+        }
+
+        void add(Clause theClause, int thePosition) {
+            this.positions[this.clauses.size()] = thePosition;
+            this.clauses.add(theClause);
+        }
+    }
+
+    /**
+     * The clauses of two {@link Bucket}s, iterated in order of their positions.
+     */
+    private static final class MergedBuckets implements Iterable<Clause> {
+        private final Bucket first;
+        private final Bucket second;
+
+        MergedBuckets(Bucket theFirst, Bucket theSecond) {
+            this.first = theFirst;
+            this.second = theSecond;
+        }
+
+        @Override
+        public Iterator<Clause> iterator() {
+            return new Iterator<Clause>() {
+                private int i = 0;
+                private int j = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return this.i < MergedBuckets.this.first.positions.length || this.j < MergedBuckets.this.second.positions.length;
+                }
+
+                @Override
+                public Clause next() {
+                    final Bucket firstBucket = MergedBuckets.this.first;
+                    final Bucket secondBucket = MergedBuckets.this.second;
+                    if (this.i < firstBucket.positions.length
+                            && (this.j >= secondBucket.positions.length || firstBucket.positions[this.i] < secondBucket.positions[this.j])) {
+                        return firstBucket.clauses.get(this.i++);
+                    }
+                    if (this.j < secondBucket.positions.length) {
+                        return secondBucket.clauses.get(this.j++);
+                    }
+                    throw new NoSuchElementException();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Clauses of an index are immutable");
+                }
+            };
+        }
+    }
+
+}
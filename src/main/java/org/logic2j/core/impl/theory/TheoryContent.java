@@ -17,14 +17,17 @@
  */
 package org.logic2j.core.impl.theory;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.logic2j.core.api.ClauseStatistics;
 import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Symbols;
 import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.var.TermBindings;
 
 /**
  * Storage of the content of a theory: an ordered collection of {@link Clause}s, with some indexing and structuring added for performance.
@@ -32,10 +35,16 @@ import org.logic2j.core.api.model.symbol.TermApi;
 public class TheoryContent {
 
     /**
-     * The data structure to hold our clauses: lists of {@link Clause}s by predicate key. Key: unique key for all clauses whose predicate
-     * head is a family, see {@link Clause#getPredicateKey()}. Value: ordered list of very very very immutable {@link Clause}s.
+     * The data structure to hold our clauses: {@link PredicateClauses} by predicate key. Key: unique key for all clauses whose predicate
+     * head is a family, see {@link Clause#getPredicateKey()}. Value: ordered list of very very very immutable {@link Clause}s, with their
+     * argument indexes.
      */
-    private final HashMap<String, List<Clause>> content = new HashMap<String, List<Clause>>();
+    private final HashMap<String, PredicateClauses> content = new HashMap<String, PredicateClauses>();
+
+    /**
+     * Signatures of the predicates declared with the "table" directive.
+     */
+    private final Set<String> tabledPredicates = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      * Add one {@link Clause}.
@@ -44,10 +53,10 @@ public class TheoryContent {
      */
     public void add(Clause theClause) {
         final String clauseFamilyKey = theClause.getPredicateKey();
-        List<Clause> family = this.content.get(clauseFamilyKey);
+        PredicateClauses family = this.content.get(clauseFamilyKey);
         if (family == null) {
             // No Clause yet defined in this family, create one
-            family = new ArrayList<Clause>();
+            family = new PredicateClauses();
             this.content.put(clauseFamilyKey, family);
         }
         family.add(theClause);
@@ -60,15 +69,37 @@ public class TheoryContent {
      * @param theExtraContent
      */
     public void addAll(TheoryContent theExtraContent) {
-        for (final Map.Entry<String, List<Clause>> extraEntry : theExtraContent.content.entrySet()) {
+        for (final Map.Entry<String, PredicateClauses> extraEntry : theExtraContent.content.entrySet()) {
             final String clauseFamilyKey = extraEntry.getKey();
-            final List<Clause> clausesToAdd = extraEntry.getValue();
-            if (this.content.containsKey(clauseFamilyKey)) {
-                this.content.get(clauseFamilyKey).addAll(clausesToAdd);
-            } else {
-                this.content.put(clauseFamilyKey, clausesToAdd);
+            PredicateClauses family = this.content.get(clauseFamilyKey);
+            if (family == null) {
+                family = new PredicateClauses();
+                this.content.put(clauseFamilyKey, family);
             }
+            family.addAll(extraEntry.getValue());
         }
+        this.tabledPredicates.addAll(theExtraContent.tabledPredicates);
+    }
+
+    /**
+     * Declare a tabled predicate: answers to its calls will be memoized.
+     * 
+     * @param thePredicateSignature As per {@link TermApi#getPredicateSignature(Object)}
+     */
+    public void addTabledPredicate(String thePredicateSignature) {
+        this.tabledPredicates.add(Symbols.name(thePredicateSignature));
+    }
+
+    /**
+     * @param thePredicateSignature
+     * @return true if the predicate was declared as tabled.
+     */
+    public boolean isTabled(String thePredicateSignature) {
+        return this.tabledPredicates.contains(thePredicateSignature);
+    }
+
+    public boolean hasTabledPredicates() {
+        return !this.tabledPredicates.isEmpty();
     }
 
     /**
@@ -79,12 +110,46 @@ public class TheoryContent {
      */
     public Iterable<Clause> find(Object theGoalTerm) {
         final String key = TermApi.getPredicateSignature(theGoalTerm);
-        final List<Clause> list = this.content.get(key);
-        if (list == null) {
+        final PredicateClauses family = this.content.get(key);
+        if (family == null) {
             // Predicate not registered in this theory content, return empty, it's not a failure condition
             return Collections.emptyList();
         }
-        return list;
+        return family.getClauses();
+    }
+
+    /**
+     * Retrieve clauses that may match theGoalTerm: same predicate's head name and arity, and when arguments of the goal are bound, only the
+     * clauses whose head arguments may unify with them, as determined by the argument indexes.
+     * 
+     * @param theGoalTerm
+     * @param theGoalBindings To dereference the goal's arguments
+     * @return An iterable for a foreach() loop, clauses are in the same order as in the theory.
+     */
+    public Iterable<Clause> find(Object theGoalTerm, TermBindings theGoalBindings) {
+        final String key = TermApi.getPredicateSignature(theGoalTerm);
+        final PredicateClauses family = this.content.get(key);
+        if (family == null) {
+            // Predicate not registered in this theory content, return empty, it's not a failure condition
+            return Collections.emptyList();
+        }
+        return family.find(theGoalTerm, theGoalBindings);
+    }
+
+    /**
+     * Estimate the number of solutions of a goal from the statistics of its predicate's clauses.
+     * 
+     * @param thePredicateSignature
+     * @param theArgumentKeys
+     * @param theBoundArguments
+     * @return The estimated number of solutions, see {@link ClauseStatistics#estimateSolutions(String, Object[], boolean[])}.
+     */
+    public double estimateSolutions(String thePredicateSignature, Object[] theArgumentKeys, boolean[] theBoundArguments) {
+        final PredicateClauses family = this.content.get(thePredicateSignature);
+        if (family == null) {
+            return 0;
+        }
+        return family.estimateSolutions(theArgumentKeys, theBoundArguments);
     }
 
     @Override
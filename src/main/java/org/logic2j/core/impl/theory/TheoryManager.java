@@ -71,8 +71,30 @@ public interface TheoryManager extends ClauseProvider {
 
     boolean hasDataFactProviders();
 
+    /**
+     * @return true if any predicate was declared with the "table" directive.
+     */
+    boolean hasTabledPredicates();
+
+    /**
+     * @param thePredicateSignature
+     * @return true if answers to the predicate are memoized in the {@link #getAnswerTables()}.
+     */
+    boolean isTabled(String thePredicateSignature);
+
+    /**
+     * @return The answers memoized for tabled predicates, they are cleared whenever a theory is added.
+     */
+    AnswerTables getAnswerTables();
+
     Iterable<DataFactProvider> getDataFactProviders();
 
+    /**
+     * @return A number that changes whenever clauses or providers are added, so that structures derived from the theory (such as
+     *         compiled code) know when they must be rebuilt.
+     */
+    int getGeneration();
+
     /**
      * @param theNewProvider
      */
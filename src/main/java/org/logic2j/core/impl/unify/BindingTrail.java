@@ -21,20 +21,37 @@ package org.logic2j.core.impl.unify;
 import java.util.Arrays;
 
 import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
+import org.logic2j.core.api.solver.SolverSession;
 
 /**
  * This class manages the deunification "trail" to undo what was previously unified while backtracking to other solutions.
  * TODO Explain the data structure used.
+ * <p/>
+ * Each trail belongs to a {@link SolverSession}. Methods taking a {@link StepInfo} work on that trail, the others on the trail of the
+ * session current for this thread, which costs a {@link ThreadLocal} lookup.
  */
 public final class BindingTrail {
 
     /**
-     * The number of elements in the {@link BindingTrail} to allocate at one time.
-     * 1000 looks like a reasonable value, actually solves all test cases in one chunk.
+     * The number of elements initially allocated in the {@link BindingTrail}, the stacks double their size when full, and shrink back to
+     * this size by {@link #shrinkIfEmpty(StepInfo)}.
+     * 1000 looks like a reasonable value, actually solves all test cases without growing.
      */
-    private static final int BINDING_STACK_CHUNK = 1000;
+    private static final int BINDING_STACK_BASELINE = 1000;
 
-    private static final int TRAIL_STACK_CHUNK = 1000;
+    private static final int TRAIL_STACK_BASELINE = 1000;
+
+    /**
+     * Recorded as the previous attribute of a {@link Binding} that had none, see {@link #setAttribute(Binding, BindingAttribute)}.
+     */
+    private static final BindingAttribute NO_ATTRIBUTE = new BindingAttribute() {
+
+        @Override
+        public boolean onBind(Binding theBinding) {
+            return true;
+        }
+    };
 
     public static class StepInfo {
 
@@ -51,32 +68,85 @@ public final class BindingTrail {
          */
         Binding[] bindingStack;
         int bindingSize;
+
+        /**
+         * In parallel to bindingStack: null when the {@link Binding} was bound and must be freed, otherwise its previous
+         * {@link BindingAttribute} to restore.
+         */
+        BindingAttribute[] attributeStack;
         int bindingTop;
 
-    }
+        /**
+         * The highest values of trailTop and bindingTop before they were lowered by undoing bindings.
+         */
+        int trailHighWaterMark = -1;
+        int bindingHighWaterMark = -1;
 
-    /**
-     * Keep the last StepInfo of our trail in a {@link ThreadLocal} so that we don't have to pass its reference as argument
-     * to all methods, everywhere. This reveals to have very little performance impact.
-     * Being a ThreadLocal variable, we won't have any issue of concurrent access, so no synchronization needed!
-     */
-    private static final ThreadLocal<StepInfo> stepInfoOfThisThread = new ThreadLocal<StepInfo>() {
+        int nbShrinks = 0;
+
+        /**
+         * @return The maximal number of marks this trail ever held.
+         */
+        public int getTrailHighWaterMark() {
+            return Math.max(this.trailHighWaterMark, this.trailTop) + 1;
+        }
+
+        /**
+         * @return The maximal number of bindings this trail ever held.
+         */
+        public int getBindingHighWaterMark() {
+            return Math.max(this.bindingHighWaterMark, this.bindingTop) + 1;
+        }
+
+        /**
+         * @return The number of marks this trail can hold without growing.
+         */
+        public int getTrailCapacity() {
+            return this.trailSize;
+        }
+
+        /**
+         * @return The number of bindings this trail can hold without growing.
+         */
+        public int getBindingCapacity() {
+            return this.bindingSize;
+        }
+
+        /**
+         * @return The number of times this trail was shrunk back to its baseline capacity.
+         */
+        public int getNbShrinks() {
+            return this.nbShrinks;
+        }
 
         @Override
-        protected StepInfo initialValue() {
-            final StepInfo si = new StepInfo();
-            // Trail stack
-            si.trailSize = TRAIL_STACK_CHUNK;
-            si.trailStack = new int[si.trailSize];
-            si.trailTop = -1; // Be ready for the first "markBeforeAddingBindings()"
-            // TermBindings stack
-            si.bindingSize = BINDING_STACK_CHUNK;
-            si.bindingStack = new Binding[si.bindingSize];
-            si.bindingTop = -1; // We will be pushing just after this index
-            return si;
+        public String toString() {
+            return this.getClass().getSimpleName() + "(marks=" + (this.trailTop + 1) + '/' + this.trailSize + ", bindings=" + (this.bindingTop + 1)
+                    + '/' + this.bindingSize + ", highWaterMarks=" + getTrailHighWaterMark() + '/' + getBindingHighWaterMark() + ", shrinks="
+                    + this.nbShrinks + ')';
         }
+    }
 
-    };
+    /**
+     * @return A new, empty trail, see {@link SolverSession#getTrail()}.
+     */
+    public static StepInfo newTrail() {
+        final StepInfo si = new StepInfo();
+        // Trail stack
+        si.trailSize = TRAIL_STACK_BASELINE;
+        si.trailStack = new int[si.trailSize];
+        si.trailTop = -1; // Be ready for the first "markBeforeAddingBindings()"
+        // TermBindings stack
+        si.bindingSize = BINDING_STACK_BASELINE;
+        si.bindingStack = new Binding[si.bindingSize];
+        si.attributeStack = new BindingAttribute[si.bindingSize];
+        si.bindingTop = -1; // We will be pushing just after this index
+        return si;
+    }
+
+    private static StepInfo currentTrail() {
+        return SolverSession.current().getTrail();
+    }
 
     /**
      * Register a valid new StepInfo on our trail, but with empty content.
@@ -84,11 +154,20 @@ public final class BindingTrail {
      * @return The new {@link StepInfo}.
      */
     public static StepInfo markBeforeAddingBindings() {
-        final StepInfo current = stepInfoOfThisThread.get();
+        return markBeforeAddingBindings(currentTrail());
+    }
+
+    /**
+     * Same as {@link #markBeforeAddingBindings()} on the trail of a {@link SolverSession}.
+     * 
+     * @param current
+     * @return current
+     */
+    public static StepInfo markBeforeAddingBindings(StepInfo current) {
         final int top = ++current.trailTop;
         if (top >= current.trailSize) {
             // OOps, need to reallocate more stack
-            current.trailSize += TRAIL_STACK_CHUNK;
+            current.trailSize *= 2;
             current.trailStack = Arrays.copyOf(current.trailStack, current.trailSize);
         }
         current.trailStack[top] = current.bindingTop;
@@ -101,8 +180,7 @@ public final class BindingTrail {
      * @param theBinding
      */
     public static void addBinding(Binding theBinding) {
-        final StepInfo current = stepInfoOfThisThread.get();
-        addBinding(current, theBinding);
+        addBinding(currentTrail(), theBinding);
     }
 
     /**
@@ -110,13 +188,49 @@ public final class BindingTrail {
      * @param theBinding
      */
     public static void addBinding(StepInfo current, Binding theBinding) {
+        push(current, theBinding, null);
+    }
+
+    /**
+     * Conditional trailing: same as {@link #addBinding(StepInfo, Binding)}, except for a {@link Binding} created to try the clause whose
+     * head is being unified under the most recent mark (see {@link Binding#getCreationDepth()}): undoing that mark discards it anyway.
+     * 
+     * @param current
+     * @param theBinding
+     */
+    public static void addBindingIfOlder(StepInfo current, Binding theBinding) {
+        if (theBinding.getCreationDepth() != current.trailTop) {
+            push(current, theBinding, null);
+        }
+    }
+
+    /**
+     * Change the {@link BindingAttribute} of theBinding, so that its previous value is restored by
+     * {@link #undoBindingsUntilPreviousMark()}.
+     * 
+     * @param theBinding
+     * @param theAttribute The new attribute, may be null
+     */
+    public static void setAttribute(Binding theBinding, BindingAttribute theAttribute) {
+        setAttribute(currentTrail(), theBinding, theAttribute);
+    }
+
+    public static void setAttribute(StepInfo current, Binding theBinding, BindingAttribute theAttribute) {
+        final BindingAttribute previous = theBinding.getAttribute();
+        push(current, theBinding, previous != null ? previous : NO_ATTRIBUTE);
+        theBinding.setAttribute(theAttribute);
+    }
+
+    private static void push(StepInfo current, Binding theBinding, BindingAttribute thePreviousAttribute) {
         final int top = ++current.bindingTop;
         if (top >= current.bindingSize) {
             // OOps, need to reallocate more stack
-            current.bindingSize += BINDING_STACK_CHUNK;
+            current.bindingSize *= 2;
             current.bindingStack = Arrays.copyOf(current.bindingStack, current.bindingSize);
+            current.attributeStack = Arrays.copyOf(current.attributeStack, current.bindingSize);
         }
         current.bindingStack[top] = theBinding;
+        current.attributeStack[top] = thePreviousAttribute;
     }
 
     /**
@@ -125,21 +239,105 @@ public final class BindingTrail {
      * @note An initial {@link #markBeforeAddingBindings()} should always be done.
      */
     public static void undoBindingsUntilPreviousMark() {
-        final StepInfo current = stepInfoOfThisThread.get();
-        undoBindingsUntilPreviousMark(current);
+        undoBindingsUntilPreviousMark(currentTrail());
     }
 
     public static void undoBindingsUntilPreviousMark(StepInfo current) {
         // Remove one level from the stack, then will process its content
         final int freeBindingsUntil = current.trailStack[current.trailTop];
+        if (current.bindingTop > current.bindingHighWaterMark) {
+            current.bindingHighWaterMark = current.bindingTop;
+        }
+        if (current.trailTop > current.trailHighWaterMark) {
+            current.trailHighWaterMark = current.trailTop;
+        }
         for (int i = current.bindingTop; i > freeBindingsUntil; i--) {
             final Binding binding = current.bindingStack[i];
-            binding.free();
+            final BindingAttribute previousAttribute = current.attributeStack[i];
+            if (previousAttribute == null) {
+                binding.free();
+            } else {
+                binding.setAttribute(previousAttribute != NO_ATTRIBUTE ? previousAttribute : null);
+                current.attributeStack[i] = null;
+            }
+            // Don't retain the Binding, nor what it referred to
+            current.bindingStack[i] = null;
         }
         current.bindingTop = freeBindingsUntil;
         current.trailTop--;
     }
 
+    /**
+     * Release the memory of a trail that grew beyond its baseline capacity, once it holds no more marks - typically when a top-level
+     * solve completes, so that a thread that once solved a huge goal does not retain large stacks.
+     * 
+     * @param current
+     * @return true if the trail was shrunk.
+     */
+    public static boolean shrinkIfEmpty(StepInfo current) {
+        if (current.trailTop >= 0 || current.bindingTop >= 0 || (current.trailSize <= TRAIL_STACK_BASELINE && current.bindingSize <= BINDING_STACK_BASELINE)) {
+            return false;
+        }
+        current.trailSize = TRAIL_STACK_BASELINE;
+        current.trailStack = new int[current.trailSize];
+        current.bindingSize = BINDING_STACK_BASELINE;
+        current.bindingStack = new Binding[current.bindingSize];
+        current.attributeStack = new BindingAttribute[current.bindingSize];
+        current.nbShrinks++;
+        return true;
+    }
+
+    /**
+     * @return The number of marks currently on the trail, to be used with {@link #undoBindingsUntilDepth(int)} for backtracking
+     *         several steps at once.
+     */
+    public static int getDepth() {
+        return getDepth(currentTrail());
+    }
+
+    public static int getDepth(StepInfo current) {
+        return current.trailTop + 1;
+    }
+
+    /**
+     * Reset all bindings that have been added since the trail had theDepth marks, and remove the marks above.
+     * 
+     * @param theDepth As previously obtained by {@link #getDepth()}
+     */
+    public static void undoBindingsUntilDepth(int theDepth) {
+        undoBindingsUntilDepth(currentTrail(), theDepth);
+    }
+
+    public static void undoBindingsUntilDepth(StepInfo current, int theDepth) {
+        while (current.trailTop >= theDepth) {
+            undoBindingsUntilPreviousMark(current);
+        }
+    }
+
+    /**
+     * @param theDepth As previously obtained by {@link #getDepth()}
+     * @return The {@link Binding}s added to the trail since it had theDepth marks, in the order they were bound. Changes of
+     *         {@link BindingAttribute}s are not included.
+     */
+    public static Binding[] bindingsSinceDepth(int theDepth) {
+        return bindingsSinceDepth(currentTrail(), theDepth);
+    }
+
+    public static Binding[] bindingsSinceDepth(StepInfo current, int theDepth) {
+        if (current.trailTop < theDepth) {
+            return new Binding[0];
+        }
+        final int from = current.trailStack[theDepth] + 1;
+        final Binding[] bound = new Binding[current.bindingTop + 1 - from];
+        int nbBound = 0;
+        for (int i = from; i <= current.bindingTop; i++) {
+            if (current.attributeStack[i] == null) {
+                bound[nbBound++] = current.bindingStack[i];
+            }
+        }
+        return nbBound == bound.length ? bound : Arrays.copyOf(bound, nbBound);
+    }
+
     /**
      * This method is part of white-box testing, it should not be needed in principle.
      * Use package scope there's a class in the test tree that is in the same package.
@@ -149,8 +347,7 @@ public final class BindingTrail {
     @Deprecated // Use only from test cases
     // Use only from test cases
     static void reset() {
-        stepInfoOfThisThread.remove();
-        // Any subsequent access such as get() will invoke method initialValue()
+        SolverSession.activate(new SolverSession());
     }
 
     /**
@@ -162,7 +359,7 @@ public final class BindingTrail {
      */
     @Deprecated // To be used only from test cases for low-level white-box unit testing of unification.
     static int nbBindings() {
-        final StepInfo current = stepInfoOfThisThread.get();
+        final StepInfo current = currentTrail();
         if (current.trailTop < 0) {
             return 0;
         }
@@ -179,7 +376,7 @@ public final class BindingTrail {
      */
     @Deprecated // Use only from test cases
     static int size() {
-        final StepInfo current = stepInfoOfThisThread.get();
+        final StepInfo current = currentTrail();
         return current.trailTop + 1;
     }
 
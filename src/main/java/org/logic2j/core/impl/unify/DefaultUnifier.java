@@ -22,7 +22,9 @@ import org.logic2j.core.api.model.DataFact;
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 import org.logic2j.core.impl.unify.BindingTrail.StepInfo;
 import org.logic2j.core.impl.util.ReportUtils;
 
@@ -33,8 +35,13 @@ public class DefaultUnifier implements Unifier {
 
     @Override
     public boolean unify(Object term1, TermBindings theBindings1, Object term2, TermBindings theBindings2) {
+        return unify(SolverSession.current(), term1, theBindings1, term2, theBindings2);
+    }
+
+    @Override
+    public boolean unify(SolverSession theSession, Object term1, TermBindings theBindings1, Object term2, TermBindings theBindings2) {
         // Remember where we were so that we can deunify
-        final StepInfo stepInfo = BindingTrail.markBeforeAddingBindings();
+        final StepInfo stepInfo = BindingTrail.markBeforeAddingBindings(theSession.getTrail());
         // Now attempt unifiation
         final boolean unified = unifyInternal(stepInfo, term1, theBindings1, term2, theBindings2);
         if (!unified) {
@@ -50,7 +57,9 @@ public class DefaultUnifier implements Unifier {
      * @param stepInfo
      * 
      * @note The Orientation of method arguments tends to be variables on term1 and literals on term2, but of course this method is
-     *       symmetric. In the case of 2 free vars, term1 is linked to term2.
+     *       symmetric. In the case of 2 free vars, term1 is linked to term2, unless term2 is younger (see
+     *       {@link Binding#getCreationDepth()}): linking the younger variable to the older one keeps chains of links short when the
+     *       variables of successive clauses are unified, and the younger binding often needs no trailing.
      * 
      * @param term1
      * @param theBindings1
@@ -59,10 +68,11 @@ public class DefaultUnifier implements Unifier {
      * @return true when unified, false when not (but partial changes might have been done to either {@link TermBindings})
      */
     private boolean unifyInternal(StepInfo stepInfo, Object term1, TermBindings theBindings1, Object term2, TermBindings theBindings2) {
-        if (term1 == term2 && theBindings1 == theBindings2) {
+        if (term1 == term2 && (theBindings1 == theBindings2 || (term1 instanceof Struct && ((Struct) term1).isGround()))) {
             // Atoms now share the same address - we can optimize their unification.
             // Notice that due to factorization, struct such as [H|T] may also share the same location
-            // so we can only assume they unify if the bindings are the same too
+            // so we can only assume they unify if the bindings are the same too, or if the struct is ground,
+            // such as the subterms shared between clauses by a GroundTermTable
             return true;
         }
         if (term2 instanceof Var && !(term1 instanceof Var)) {
@@ -81,13 +91,23 @@ public class DefaultUnifier implements Unifier {
             final Binding binding1 = var1.bindingWithin(theBindings1).followLinks();
             // Followed chain to the end until we hit either a FREE or LITERAL binding
             if (binding1.isFree()) {
-                // Should not bind to an anonymous variable
-                if ((term2 instanceof Var) && ((Var) term2).isAnonymous()) {
-                    return true;
+                if (term2 instanceof Var) {
+                    // Should not bind to an anonymous variable
+                    if (((Var) term2).isAnonymous()) {
+                        return true;
+                    }
+                    final Binding binding2 = ((Var) term2).bindingWithin(theBindings2).followLinks();
+                    if (binding2.isFree() && binding2.getCreationDepth() > binding1.getCreationDepth()) {
+                        // Link the younger to the older
+                        binding2.linkTo(binding1);
+                        BindingTrail.addBindingIfOlder(stepInfo, binding2);
+                        return notifyBound(binding2);
+                    }
                 }
                 // Bind the free var
                 if (binding1.bindTo(term2, theBindings2)) {
-                    BindingTrail.addBinding(binding1);
+                    BindingTrail.addBindingIfOlder(stepInfo, binding1);
+                    return notifyBound(binding1);
                 }
                 return true;
             } else if (binding1.isLiteral()) {
@@ -108,6 +128,10 @@ public class DefaultUnifier implements Unifier {
                 if (s1.getPredicateSignature() != s2.getPredicateSignature()) {
                     return false;
                 }
+                if (s1.isGround() && s2.isGround()) {
+                    // No variable to bind: unification is equality
+                    return s1.equals(s2);
+                }
                 final int arity = s1.getArity();
                 for (int i = 0; i < arity; i++) {
                     if (!unifyInternal(stepInfo, s1.getArg(i), theBindings1, s2.getArg(i), theBindings2)) {
@@ -128,6 +152,11 @@ public class DefaultUnifier implements Unifier {
 
     @Override
     public boolean unify(Object goalTerm, TermBindings theGoalBindings, DataFact dataFact) {
+        return unify(SolverSession.current(), goalTerm, theGoalBindings, dataFact);
+    }
+
+    @Override
+    public boolean unify(SolverSession theSession, Object goalTerm, TermBindings theGoalBindings, DataFact dataFact) {
         if (!(goalTerm instanceof Struct)) {
             // Only Struct could match a DataFact
             return false;
@@ -143,7 +172,7 @@ public class DefaultUnifier implements Unifier {
             // Arity must match as well
             return false;
         }
-        final StepInfo stepInfo = BindingTrail.markBeforeAddingBindings();
+        final StepInfo stepInfo = BindingTrail.markBeforeAddingBindings(theSession.getTrail());
         boolean unified = true;
         for (int i = 0; i < arity; i++) {
             final Object arg = s1.getArg(i);
@@ -190,7 +219,8 @@ public class DefaultUnifier implements Unifier {
                 // Bind the free var
                 if (binding1.bindTo(term2, theBindings1)) {
                     // We don't care about theBindings, it's a literal, so specify theBindings1
-                    BindingTrail.addBinding(stepInfo, binding1);
+                    BindingTrail.addBindingIfOlder(stepInfo, binding1);
+                    return notifyBound(binding1);
                 }
                 return true;
             } else if (binding1.isLiteral()) {
@@ -213,11 +243,27 @@ public class DefaultUnifier implements Unifier {
         }
     }
 
+    /**
+     * Let the {@link BindingAttribute} of a {@link Binding} that was just bound, if any, accept or refuse the binding.
+     * 
+     * @param theBinding
+     * @return true when the unification may proceed.
+     */
+    private static boolean notifyBound(Binding theBinding) {
+        final BindingAttribute attribute = theBinding.getAttribute();
+        return attribute == null || attribute.onBind(theBinding);
+    }
+
     @Override
     public void deunify() {
         BindingTrail.undoBindingsUntilPreviousMark();
     }
 
+    @Override
+    public void deunify(SolverSession theSession) {
+        BindingTrail.undoBindingsUntilPreviousMark(theSession.getTrail());
+    }
+
     // ---------------------------------------------------------------------------
     // Methods of java.lang.Object
     // ---------------------------------------------------------------------------
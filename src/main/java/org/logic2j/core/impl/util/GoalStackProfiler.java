@@ -0,0 +1,285 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.logic2j.core.impl.PrologReferenceImplementation;
+
+/**
+ * Samples the logical call stacks of the threads solving goals with an engine: the signatures of the predicates being solved, outermost
+ * first, instead of the deeply nested Java frames of the solver. Install it with
+ * {@link PrologReferenceImplementation#setProfiler(GoalStackProfiler)}, then {@link #start()} it.
+ * <p/>
+ * Samples are aggregated into collapsed stacks, one line per distinct stack such as "queens/2;queens3/3;attack/2 42", the format read by
+ * flame graph tools (see {@link #writeCollapsedStacks(Appendable)}). A predicate that produced a solution leaves the stack while the
+ * solution is consumed. While a profiler is installed, last calls are no longer optimized and deep recursions need more stack; the
+ * predicates called from within compiled predicates (see {@link org.logic2j.core.impl.DefaultSolver#getCompilationThreshold()}) do not
+ * appear.
+ */
+public class GoalStackProfiler {
+    static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(GoalStackProfiler.class);
+
+    private final long samplingIntervalMillis;
+
+    /**
+     * The stacks of every thread that solved goals while this profiler was installed.
+     */
+    private final List<GoalStack> goalStacks = new CopyOnWriteArrayList<GoalStack>();
+
+    private final ThreadLocal<GoalStack> goalStackOfThisThread = new ThreadLocal<GoalStack>() {
+
+        @Override
+        protected GoalStack initialValue() {
+            final GoalStack goalStack = new GoalStack();
+            GoalStackProfiler.this.goalStacks.add(goalStack);
+            return goalStack;
+        }
+    };
+
+    private final Map<String, Long> collapsedStacks = new TreeMap<String, Long>();
+
+    private Thread samplingThread = null;
+
+    /**
+     * @param theSamplingIntervalMillis Period of sampling once started
+     */
+    public GoalStackProfiler(long theSamplingIntervalMillis) {
+        if (theSamplingIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Sampling interval must be positive, was " + theSamplingIntervalMillis);
+        }
+        this.samplingIntervalMillis = theSamplingIntervalMillis;
+    }
+
+    /**
+     * The logical call stack of one thread. Only that thread pushes and pops; the sampling thread may read a stack being modified, and at
+     * worst counts one inconsistent sample.
+     */
+    public static final class GoalStack {
+        private volatile String[] frames = new String[64];
+        private volatile int top = 0;
+
+        GoalStack() {
+            // Only instantiated by the profiler
+        }
+
+        /**
+         * @param theSignature
+         * @return The depth before pushing, to {@link #popTo(int)} when the predicate is done.
+         */
+        public int push(String theSignature) {
+            final int depth = this.top;
+            set(depth, theSignature);
+            this.top = depth + 1;
+            return depth;
+        }
+
+        /**
+         * Remove the frame pushed at theDepth and all frames above it.
+         * 
+         * @param theDepth
+         */
+        public void popTo(int theDepth) {
+            this.top = theDepth;
+        }
+
+        /**
+         * @return The current depth.
+         */
+        public int getDepth() {
+            return this.top;
+        }
+
+        /**
+         * Restore a frame removed while a solution was being consumed.
+         * 
+         * @param theDepth
+         * @param theSignature
+         * @param theTop The depth to restore
+         */
+        public void restore(int theDepth, String theSignature, int theTop) {
+            set(theDepth, theSignature);
+            this.top = theTop;
+        }
+
+        private void set(int theIndex, String theSignature) {
+            String[] array = this.frames;
+            if (theIndex >= array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+                this.frames = array;
+            }
+            array[theIndex] = theSignature;
+        }
+
+        /**
+         * @return The collapsed representation of this stack, or null when no goal is being solved.
+         */
+        String collapse() {
+            final int depth = this.top;
+            if (depth == 0) {
+                return null;
+            }
+            final String[] array = this.frames;
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < depth && i < array.length; i++) {
+                if (i > 0) {
+                    sb.append(';');
+                }
+                appendFrame(sb, array[i]);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Semicolons separate frames and a space separates the count in the collapsed format, they must not appear in frames.
+         */
+        private static void appendFrame(StringBuilder sb, String theSignature) {
+            if (theSignature == null) {
+                sb.append('?');
+                return;
+            }
+            for (int i = 0; i < theSignature.length(); i++) {
+                final char c = theSignature.charAt(i);
+                sb.append(c == ';' || Character.isWhitespace(c) ? '_' : c);
+            }
+        }
+    }
+
+    /**
+     * @return The stack of the current thread, used by the solver.
+     */
+    public GoalStack goalStack() {
+        return this.goalStackOfThisThread.get();
+    }
+
+    // ---------------------------------------------------------------------------
+    // Sampling
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Start sampling with a daemon thread; does nothing if already started.
+     */
+    public synchronized void start() {
+        if (this.samplingThread != null) {
+            return;
+        }
+        final Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sample();
+                    try {
+                        Thread.sleep(GoalStackProfiler.this.samplingIntervalMillis);
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "logic2j-profiler");
+        thread.setDaemon(true);
+        this.samplingThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop sampling, and wait until the sampling thread has terminated. Collected stacks are kept.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = this.samplingThread;
+            this.samplingThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for the end of sampling");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Take one sample of the stacks of all threads solving goals now.
+     */
+    public void sample() {
+        for (final GoalStack goalStack : this.goalStacks) {
+            final String collapsed = goalStack.collapse();
+            if (collapsed != null) {
+                synchronized (this.collapsedStacks) {
+                    final Long count = this.collapsedStacks.get(collapsed);
+                    this.collapsedStacks.put(collapsed, count == null ? 1L : count + 1);
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Results
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @return A copy of the number of samples of each collapsed stack, sorted by stack.
+     */
+    public Map<String, Long> getCollapsedStacks() {
+        synchronized (this.collapsedStacks) {
+            return new TreeMap<String, Long>(this.collapsedStacks);
+        }
+    }
+
+    /**
+     * Write the collapsed stacks, one line of frames separated by semicolons then the number of samples, as read by flamegraph.pl and
+     * compatible tools.
+     * 
+     * @param theOutput
+     * @throws IOException
+     */
+    public void writeCollapsedStacks(Appendable theOutput) throws IOException {
+        for (final Map.Entry<String, Long> entry : getCollapsedStacks().entrySet()) {
+            theOutput.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Discard collected samples.
+     */
+    public void reset() {
+        synchronized (this.collapsedStacks) {
+            this.collapsedStacks.clear();
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return ReportUtils.shortDescription(this);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+/**
+ * Constants shared by the {@link WamCompiler} and the {@link WamMachine}: the encoding of cells, the opcodes and the builtins.
+ * <p/>
+ * A cell is a long whose 3 lowest bits are a tag, and the other bits a value:
+ * <ul>
+ * <li>{@link #REF}: reference to a heap address, a free variable refers to itself</li>
+ * <li>{@link #STR}: structure, the value is the heap address of its {@link #FUN} cell, followed by its arguments</li>
+ * <li>{@link #FUN}: functor, the value is an index in the functors of the {@link WamProgram}</li>
+ * <li>{@link #CON}: constant, the value is an index in the constants of the {@link WamProgram}</li>
+ * <li>{@link #INT}: an integer small enough to be stored in the value</li>
+ * <li>{@link #OBJ}: any other constant, the value is an index in the objects of the {@link WamMachine}</li>
+ * </ul>
+ */
+final class Wam {
+
+    // ---------------------------------------------------------------------------
+    // Cells
+    // ---------------------------------------------------------------------------
+
+    static final int REF = 0;
+    static final int STR = 1;
+    static final int FUN = 2;
+    static final int CON = 3;
+    static final int INT = 4;
+    static final int OBJ = 5;
+
+    private static final int TAG_BITS = 3;
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+
+    static long cell(int theTag, long theValue) {
+        return (theValue << TAG_BITS) | theTag;
+    }
+
+    static int tag(long theCell) {
+        return (int) (theCell & TAG_MASK);
+    }
+
+    static long value(long theCell) {
+        return theCell >> TAG_BITS;
+    }
+
+    static int address(long theCell) {
+        return (int) (theCell >> TAG_BITS);
+    }
+
+    /**
+     * @param theValue
+     * @return true if theValue can be stored as an {@link #INT} cell.
+     */
+    static boolean isInline(long theValue) {
+        return ((theValue << TAG_BITS) >> TAG_BITS) == theValue;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Opcodes, followed by their number of operands
+    // ---------------------------------------------------------------------------
+
+    static final int FAIL = 0; // 0
+    static final int SOLUTION = 1; // 0
+    static final int RETRY_SOLUTIONS = 2; // 0
+    static final int GET_VARIABLE_X = 3; // Xn, Ai
+    static final int GET_VARIABLE_Y = 4; // Yn, Ai
+    static final int GET_VALUE_X = 5; // Xn, Ai
+    static final int GET_VALUE_Y = 6; // Yn, Ai
+    static final int GET_CONSTANT = 7; // literal, Ai
+    static final int GET_STRUCTURE = 8; // functor, Ai
+    static final int UNIFY_VARIABLE_X = 9; // Xn
+    static final int UNIFY_VARIABLE_Y = 10; // Yn
+    static final int UNIFY_VALUE_X = 11; // Xn
+    static final int UNIFY_VALUE_Y = 12; // Yn
+    static final int UNIFY_CONSTANT = 13; // literal
+    static final int UNIFY_VOID = 14; // count
+    static final int PUT_VARIABLE_X = 15; // Xn, Ai
+    static final int PUT_VARIABLE_Y = 16; // Yn, Ai
+    static final int PUT_VALUE_X = 17; // Xn, Ai
+    static final int PUT_VALUE_Y = 18; // Yn, Ai
+    static final int PUT_CONSTANT = 19; // literal, Ai
+    static final int PUT_STRUCTURE = 20; // functor, Ai
+    static final int PUT_LEVEL = 21; // Ai
+    static final int ALLOCATE = 22; // number of permanent variables
+    static final int DEALLOCATE = 23; // 0
+    static final int CALL = 24; // predicate
+    static final int EXECUTE = 25; // predicate
+    static final int PROCEED = 26; // 0
+    static final int TRY = 27; // arity, label
+    static final int RETRY = 28; // arity, label
+    static final int TRUST = 29; // arity, label
+    static final int SWITCH_ON_TERM = 30; // switch table
+    static final int NECK_CUT = 31; // 0
+    static final int GET_LEVEL = 32; // Yn
+    static final int CUT = 33; // Yn
+    static final int BUILTIN = 34; // builtin
+    static final int BRIDGE = 35; // primitive, arity
+    static final int META_CALL = 36; // 0
+    static final int META_EXECUTE = 37; // 0
+
+    private static final String[] OPCODE_NAMES = { "fail", "solution", "retry_solutions", "get_variable_x", "get_variable_y", "get_value_x",
+            "get_value_y", "get_constant", "get_structure", "unify_variable_x", "unify_variable_y", "unify_value_x", "unify_value_y",
+            "unify_constant", "unify_void", "put_variable_x", "put_variable_y", "put_value_x", "put_value_y", "put_constant", "put_structure",
+            "put_level", "allocate", "deallocate", "call", "execute", "proceed", "try", "retry", "trust", "switch_on_term", "neck_cut",
+            "get_level", "cut", "builtin", "bridge", "meta_call", "meta_execute" };
+
+    private static final int[] OPCODE_SIZES = { 1, 1, 1, 3, 3, 3, 3, 3, 3, 2, 2, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 2, 2, 1, 2, 2, 1, 3, 3, 3, 2,
+            1, 2, 2, 2, 3, 1, 1 };
+
+    static String opcodeName(int theOpcode) {
+        return OPCODE_NAMES[theOpcode];
+    }
+
+    /**
+     * @param theOpcode
+     * @return The number of ints taken by the instruction, including its operands.
+     */
+    static int instructionSize(int theOpcode) {
+        return OPCODE_SIZES[theOpcode];
+    }
+
+    // ---------------------------------------------------------------------------
+    // Builtins: primitives of the core library executed by the machine itself, their arguments are in the first registers
+    // ---------------------------------------------------------------------------
+
+    static final int BUILTIN_FAIL = 0;
+    static final int BUILTIN_UNIFY = 1;
+    static final int BUILTIN_NOT_UNIFY = 2;
+    static final int BUILTIN_IS = 3;
+    static final int BUILTIN_EQ = 4;
+    static final int BUILTIN_NE = 5;
+    static final int BUILTIN_LT = 6;
+    static final int BUILTIN_GT = 7;
+    static final int BUILTIN_LE = 8;
+    static final int BUILTIN_GE = 9;
+    static final int BUILTIN_VAR = 10;
+    static final int BUILTIN_CUT_TO = 11;
+
+    // ---------------------------------------------------------------------------
+    // Arithmetic functors evaluated by the machine itself on integers
+    // ---------------------------------------------------------------------------
+
+    static final int ARITHMETIC_NONE = 0;
+    static final int ARITHMETIC_PLUS = 1;
+    static final int ARITHMETIC_MINUS = 2;
+    static final int ARITHMETIC_TIMES = 3;
+    static final int ARITHMETIC_NEGATE = 4;
+
+    private Wam() {
+        // Forbid instantiation
+    }
+
+}
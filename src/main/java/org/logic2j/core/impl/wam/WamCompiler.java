@@ -0,0 +1,629 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.library.mgmt.PrimitiveInfo;
+
+/**
+ * Compile clauses into the code area of a {@link WamProgram}.
+ * <p/>
+ * This is a reduced WAM: all variables live on the heap, environments only hold references to them, so there are no unsafe variables. A
+ * variable is permanent (kept in the environment) when it occurs in more than one chunk of the clause, a chunk ending at each call.
+ * Disjunctions, negations and call/1 of a known goal are compiled into auxiliary predicates; a cut within a disjunction cuts the clause
+ * containing it, by passing the choicepoint level at entry of the clause to the auxiliary predicate.
+ */
+final class WamCompiler {
+
+    /**
+     * Cut to the choicepoint level in its argument, only generated by the compiler.
+     */
+    private static final String CUT_TO = "$cut";
+
+    /**
+     * Fail, only generated by the compiler.
+     */
+    private static final String FAIL = "$fail";
+
+    /**
+     * Placeholder for the argument receiving the choicepoint level at entry of the clause.
+     */
+    private static final Object LEVEL = new Object();
+
+    private static final int GOAL_CUT = 0;
+    private static final int GOAL_BUILTIN = 1;
+    private static final int GOAL_CALL = 2;
+    private static final int GOAL_BRIDGE = 3;
+    private static final int GOAL_META = 4;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final WamProgram program;
+
+    // State of the clause being compiled
+    private final Map<Var, VarInfo> vars = new IdentityHashMap<Var, VarInfo>();
+    private int firstTemporary;
+    private int nextTemporary;
+    private int levelRegister;
+
+    WamCompiler(WamProgram theProgram) {
+        this.program = theProgram;
+    }
+
+    /**
+     * @param theName
+     * @param theArity
+     * @return true if a goal with theName and theArity is a control construct, compiled specifically.
+     */
+    static boolean isControl(String theName, int theArity) {
+        return (theArity >= 2 && (Struct.FUNCTOR_COMMA.equals(theName) || Struct.FUNCTOR_SEMICOLON.equals(theName)))
+                || (theArity == 0 && Struct.FUNCTOR_CUT.equals(theName)) || (theArity == 1 && Struct.FUNCTOR_CALL.equals(theName))
+                || CUT_TO.equals(theName) || FAIL.equals(theName);
+    }
+
+    /**
+     * Compile a clause at the end of the code area.
+     *
+     * @param theHead
+     * @param theBody Null for a fact
+     * @return The address of the clause's code.
+     */
+    int compileClause(Object theHead, Object theBody) {
+        this.vars.clear();
+        final Object[] headArgs = theHead instanceof Struct && ((Struct) theHead).getArity() > 0 ? ((Struct) theHead).getArgs() : NO_ARGS;
+        final List<Goal> goals = new ArrayList<Goal>();
+        if (theBody != null) {
+            flatten(theBody, goals);
+        }
+
+        // Classify variables by the chunks they occur in
+        int maxArity = headArgs.length;
+        int chunk = 0;
+        int nbCalls = 0;
+        boolean cutAfterCall = false;
+        for (final Object arg : headArgs) {
+            occurrences(arg, chunk);
+        }
+        for (final Goal goal : goals) {
+            maxArity = Math.max(maxArity, goal.args.length);
+            for (final Object arg : goal.args) {
+                occurrences(arg, chunk);
+                if (arg == LEVEL && chunk > 0) {
+                    cutAfterCall = true;
+                }
+            }
+            if (goal.kind == GOAL_CUT && chunk > 0) {
+                cutAfterCall = true;
+            }
+            if (goal.endsChunk()) {
+                chunk++;
+            }
+            if (goal.kind == GOAL_CALL || goal.kind == GOAL_META) {
+                nbCalls++;
+            }
+        }
+        int nbPermanent = 0;
+        this.levelRegister = -1;
+        if (cutAfterCall) {
+            this.levelRegister = nbPermanent++;
+        }
+        for (final VarInfo info : this.vars.values()) {
+            if (info.nbChunks > 1) {
+                info.permanent = true;
+                info.register = nbPermanent++;
+            }
+        }
+        final Goal last = goals.isEmpty() ? null : goals.get(goals.size() - 1);
+        final boolean lastCall = last != null && (last.kind == GOAL_CALL || last.kind == GOAL_META);
+        final boolean environment = nbPermanent > 0 || nbCalls > 1 || (nbCalls == 1 && !lastCall);
+        this.firstTemporary = maxArity;
+        this.nextTemporary = maxArity;
+
+        // Emit code
+        final int address = this.program.codeSize;
+        if (environment) {
+            this.program.emit(Wam.ALLOCATE, nbPermanent);
+            if (this.levelRegister >= 0) {
+                this.program.emit(Wam.GET_LEVEL, this.levelRegister);
+            }
+        }
+        for (int i = 0; i < headArgs.length; i++) {
+            headArgument(headArgs[i], i);
+        }
+        chunk = 0;
+        for (final Goal goal : goals) {
+            final boolean isLast = goal == last;
+            switch (goal.kind) {
+            case GOAL_CUT:
+                if (chunk == 0) {
+                    this.program.emit(Wam.NECK_CUT);
+                } else {
+                    this.program.emit(Wam.CUT, this.levelRegister);
+                }
+                break;
+            case GOAL_BUILTIN:
+                bodyArguments(goal.args, chunk);
+                this.program.emit(Wam.BUILTIN, goal.operand);
+                break;
+            case GOAL_BRIDGE:
+                bodyArguments(goal.args, chunk);
+                this.program.emit(Wam.BRIDGE, goal.operand, goal.args.length);
+                break;
+            case GOAL_CALL:
+            case GOAL_META:
+                bodyArguments(goal.args, chunk);
+                if (isLast) {
+                    if (environment) {
+                        this.program.emit(Wam.DEALLOCATE);
+                    }
+                    if (goal.kind == GOAL_CALL) {
+                        this.program.emit(Wam.EXECUTE, goal.operand);
+                    } else {
+                        this.program.emit(Wam.META_EXECUTE);
+                    }
+                } else if (goal.kind == GOAL_CALL) {
+                    this.program.emit(Wam.CALL, goal.operand);
+                } else {
+                    this.program.emit(Wam.META_CALL);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown kind of goal " + goal.kind);
+            }
+            if (goal.endsChunk()) {
+                chunk++;
+                this.nextTemporary = this.firstTemporary;
+            }
+        }
+        if (!lastCall) {
+            if (environment) {
+                this.program.emit(Wam.DEALLOCATE);
+            }
+            this.program.emit(Wam.PROCEED);
+        }
+        return address;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Goals of the body
+    // ---------------------------------------------------------------------------
+
+    /**
+     * A goal of the flattened body of a clause.
+     */
+    private static final class Goal {
+        final int kind;
+        final int operand;
+        final Object[] args;
+
+        Goal(int theKind, int theOperand, Object[] theArgs) {
+            this.kind = theKind;
+            this.operand = theOperand;
+            this.args = theArgs;
+        }
+
+        /**
+         * @return true if the registers are not preserved past this goal.
+         */
+        boolean endsChunk() {
+            return this.kind == GOAL_CALL || this.kind == GOAL_META || this.kind == GOAL_BRIDGE;
+        }
+    }
+
+    private void flatten(Object theGoal, List<Goal> theGoals) {
+        if (theGoal instanceof Var) {
+            if (((Var) theGoal).isAnonymous()) {
+                throw new InvalidTermException("Cannot call the anonymous variable");
+            }
+            theGoals.add(new Goal(GOAL_META, 0, new Object[] { theGoal }));
+            return;
+        }
+        final String name;
+        final Object[] args;
+        final PrimitiveInfo primitive;
+        if (theGoal instanceof String) {
+            name = (String) theGoal;
+            args = NO_ARGS;
+            primitive = null;
+        } else if (theGoal instanceof Struct) {
+            final Struct struct = (Struct) theGoal;
+            name = struct.getName();
+            args = struct.getArity() > 0 ? struct.getArgs() : NO_ARGS;
+            primitive = struct.getPrimitiveInfo();
+        } else {
+            throw new InvalidTermException("Cannot compile goal " + theGoal + ", not a callable term");
+        }
+        final int arity = args.length;
+        if (arity >= 2 && Struct.FUNCTOR_COMMA.equals(name)) {
+            for (final Object arg : args) {
+                flatten(arg, theGoals);
+            }
+        } else if (arity >= 2 && Struct.FUNCTOR_SEMICOLON.equals(name)) {
+            theGoals.add(disjunction((Struct) theGoal));
+        } else if (arity == 0 && Struct.FUNCTOR_CUT.equals(name)) {
+            theGoals.add(new Goal(GOAL_CUT, 0, NO_ARGS));
+        } else if (Struct.FUNCTOR_CALL.equals(name)) {
+            if (arity != 1) {
+                throw new InvalidTermException("Primitive 'call' accepts only one argument, got " + arity);
+            }
+            if (args[0] instanceof Var) {
+                flatten(args[0], theGoals);
+            } else {
+                theGoals.add(opaqueCall(args[0]));
+            }
+        } else if (arity == 1 && CUT_TO.equals(name)) {
+            theGoals.add(new Goal(GOAL_BUILTIN, Wam.BUILTIN_CUT_TO, args));
+        } else if (arity == 0 && FAIL.equals(name)) {
+            theGoals.add(new Goal(GOAL_BUILTIN, Wam.BUILTIN_FAIL, NO_ARGS));
+        } else if (primitive != null) {
+            final Integer builtin = this.program.builtin(primitive);
+            if (this.program.isNegation(primitive)) {
+                theGoals.add(negation(args[0]));
+            } else if (builtin != null) {
+                theGoals.add(new Goal(GOAL_BUILTIN, builtin, args));
+            } else if (!this.program.isTrue(primitive)) {
+                theGoals.add(new Goal(GOAL_BRIDGE, this.program.bridgeIndex(name), args));
+            }
+        } else {
+            theGoals.add(new Goal(GOAL_CALL, this.program.predicateIndex(name, arity), args));
+        }
+    }
+
+    /**
+     * (A ; B ; C) is compiled as a call to an auxiliary predicate with one clause per branch, taking as arguments all variables of the
+     * disjunction, plus the choicepoint level when a branch contains a cut.
+     */
+    private Goal disjunction(Struct theDisjunction) {
+        final List<Object> branches = new ArrayList<Object>();
+        Struct current = theDisjunction;
+        while (true) {
+            final int lastIndex = current.getArity() - 1;
+            for (int i = 0; i < lastIndex; i++) {
+                branches.add(current.getArg(i));
+            }
+            final Object last = current.getArg(lastIndex);
+            if (last instanceof Struct && Struct.FUNCTOR_SEMICOLON.equals(((Struct) last).getName()) && ((Struct) last).getArity() >= 2) {
+                current = (Struct) last;
+            } else {
+                branches.add(last);
+                break;
+            }
+        }
+        final Var level = containsCut(theDisjunction) ? new Var("Level") : null;
+        final List<Var> variables = new ArrayList<Var>();
+        collectVars(theDisjunction, variables);
+        final Object[] headArgs = auxiliaryArguments(variables, level);
+        final List<Object[]> clauses = new ArrayList<Object[]>();
+        for (final Object branch : branches) {
+            clauses.add(new Object[] { auxiliaryHead("$or", headArgs), level != null ? rewriteCut(branch, level) : branch });
+        }
+        final int predicate = this.program.defineAuxiliary("$or", headArgs.length, clauses);
+        return new Goal(GOAL_CALL, predicate, callArguments(headArgs, level));
+    }
+
+    /**
+     * \+ G is compiled as a call to an auxiliary predicate: p :- G, !, fail. p.
+     */
+    private Goal negation(Object theGoal) {
+        final Object goal = containsCut(theGoal) ? new Struct(Struct.FUNCTOR_CALL, theGoal) : theGoal;
+        final List<Var> variables = new ArrayList<Var>();
+        collectVars(goal, variables);
+        final Object[] headArgs = auxiliaryArguments(variables, null);
+        final List<Object[]> clauses = new ArrayList<Object[]>();
+        clauses.add(new Object[] { auxiliaryHead("$not", headArgs),
+                new Struct(Struct.FUNCTOR_COMMA, goal, new Struct(Struct.FUNCTOR_COMMA, Struct.ATOM_CUT, new Struct(FAIL))) });
+        clauses.add(new Object[] { auxiliaryHead("$not", headArgs), null });
+        final int predicate = this.program.defineAuxiliary("$not", headArgs.length, clauses);
+        return new Goal(GOAL_CALL, predicate, headArgs);
+    }
+
+    /**
+     * call(G) with G known is compiled as a call to an auxiliary predicate whose body is G: a cut within G is local to it.
+     */
+    private Goal opaqueCall(Object theGoal) {
+        final List<Var> variables = new ArrayList<Var>();
+        collectVars(theGoal, variables);
+        final Object[] headArgs = auxiliaryArguments(variables, null);
+        final List<Object[]> clauses = new ArrayList<Object[]>();
+        clauses.add(new Object[] { auxiliaryHead("$call", headArgs), theGoal });
+        final int predicate = this.program.defineAuxiliary("$call", headArgs.length, clauses);
+        return new Goal(GOAL_CALL, predicate, headArgs);
+    }
+
+    private static Object[] auxiliaryArguments(List<Var> theVariables, Var theLevel) {
+        final List<Object> args = new ArrayList<Object>(theVariables);
+        if (theLevel != null) {
+            args.add(theLevel);
+        }
+        return args.toArray();
+    }
+
+    private static Object auxiliaryHead(String theName, Object[] theArgs) {
+        return theArgs.length == 0 ? theName : new Struct(theName, theArgs);
+    }
+
+    private static Object[] callArguments(Object[] theHeadArgs, Var theLevel) {
+        final Object[] args = theHeadArgs.clone();
+        if (theLevel != null) {
+            args[args.length - 1] = LEVEL;
+        }
+        return args;
+    }
+
+    static boolean containsCut(Object theGoal) {
+        if (!(theGoal instanceof Struct)) {
+            return false;
+        }
+        final Struct struct = (Struct) theGoal;
+        if (struct.getArity() == 0) {
+            return Struct.FUNCTOR_CUT.equals(struct.getName());
+        }
+        if (struct.getArity() >= 2 && (Struct.FUNCTOR_COMMA.equals(struct.getName()) || Struct.FUNCTOR_SEMICOLON.equals(struct.getName()))) {
+            for (final Object arg : struct.getArgs()) {
+                if (containsCut(arg)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return theGoal where the transparent cuts are replaced by a cut to theLevel.
+     */
+    private static Object rewriteCut(Object theGoal, Var theLevel) {
+        if (!(theGoal instanceof Struct)) {
+            return theGoal;
+        }
+        final Struct struct = (Struct) theGoal;
+        if (struct.getArity() == 0 && Struct.FUNCTOR_CUT.equals(struct.getName())) {
+            return new Struct(CUT_TO, theLevel);
+        }
+        if (struct.getArity() >= 2 && (Struct.FUNCTOR_COMMA.equals(struct.getName()) || Struct.FUNCTOR_SEMICOLON.equals(struct.getName()))) {
+            final Object[] args = new Object[struct.getArity()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = rewriteCut(struct.getArg(i), theLevel);
+            }
+            return new Struct(struct.getName(), args);
+        }
+        return theGoal;
+    }
+
+    private static void collectVars(Object theTerm, List<Var> theVars) {
+        if (theTerm instanceof Var) {
+            if (!((Var) theTerm).isAnonymous() && !containsSame(theVars, theTerm)) {
+                theVars.add((Var) theTerm);
+            }
+        } else if (theTerm instanceof Struct && ((Struct) theTerm).getArity() > 0) {
+            for (final Object arg : ((Struct) theTerm).getArgs()) {
+                collectVars(arg, theVars);
+            }
+        }
+    }
+
+    private static boolean containsSame(List<Var> theVars, Object theVar) {
+        for (final Var var : theVars) {
+            if (var == theVar) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Variables
+    // ---------------------------------------------------------------------------
+
+    /**
+     * What the compiler knows about a variable of the clause.
+     */
+    private static final class VarInfo {
+        int nbOccurrences = 0;
+        int nbChunks = 0;
+        int lastChunk = -1;
+        boolean permanent = false;
+        boolean seen = false;
+        int register = -1;
+    }
+
+    private void occurrences(Object theTerm, int theChunk) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (var.isAnonymous()) {
+                return;
+            }
+            VarInfo info = this.vars.get(var);
+            if (info == null) {
+                info = new VarInfo();
+                this.vars.put(var, info);
+            }
+            info.nbOccurrences++;
+            if (info.lastChunk != theChunk) {
+                info.lastChunk = theChunk;
+                info.nbChunks++;
+            }
+        } else if (theTerm instanceof Struct && ((Struct) theTerm).getArity() > 0) {
+            for (final Object arg : ((Struct) theTerm).getArgs()) {
+                occurrences(arg, theChunk);
+            }
+        }
+    }
+
+    /**
+     * @return The information on theTerm if it is a variable occurring more than once, null otherwise (void variable).
+     */
+    private VarInfo variable(Object theTerm) {
+        final VarInfo info = this.vars.get(theTerm);
+        if (info == null || info.nbOccurrences < 2) {
+            return null;
+        }
+        return info;
+    }
+
+    private int newTemporary() {
+        final int register = this.nextTemporary++;
+        this.program.useRegisters(this.nextTemporary);
+        return register;
+    }
+
+    /**
+     * Registers the first occurrence of theInfo.
+     *
+     * @return true if it was the first occurrence.
+     */
+    private boolean firstOccurrence(VarInfo theInfo) {
+        if (theInfo.seen) {
+            return false;
+        }
+        theInfo.seen = true;
+        if (!theInfo.permanent) {
+            theInfo.register = newTemporary();
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Head
+    // ---------------------------------------------------------------------------
+
+    private void headArgument(Object theArg, int theRegister) {
+        if (theArg instanceof Var) {
+            final VarInfo info = variable(theArg);
+            if (info != null) {
+                final boolean first = firstOccurrence(info);
+                if (info.permanent) {
+                    this.program.emit(first ? Wam.GET_VARIABLE_Y : Wam.GET_VALUE_Y, info.register, theRegister);
+                } else {
+                    this.program.emit(first ? Wam.GET_VARIABLE_X : Wam.GET_VALUE_X, info.register, theRegister);
+                }
+            }
+        } else if (theArg instanceof Struct && ((Struct) theArg).getArity() > 0) {
+            // Breadth-first: nested structures are unified after their parent
+            final List<Object[]> pending = new ArrayList<Object[]>();
+            pending.add(new Object[] { theArg, theRegister });
+            for (int i = 0; i < pending.size(); i++) {
+                final Struct struct = (Struct) pending.get(i)[0];
+                final int register = (Integer) pending.get(i)[1];
+                this.program.emit(Wam.GET_STRUCTURE, functor(struct), register);
+                for (final Object arg : struct.getArgs()) {
+                    if (arg instanceof Struct && ((Struct) arg).getArity() > 0) {
+                        final int temporary = newTemporary();
+                        this.program.emit(Wam.UNIFY_VARIABLE_X, temporary);
+                        pending.add(new Object[] { arg, temporary });
+                    } else {
+                        unifyArgument(arg);
+                    }
+                }
+            }
+        } else {
+            this.program.emit(Wam.GET_CONSTANT, literal(theArg), theRegister);
+        }
+    }
+
+    /**
+     * Emit the unify instruction of an argument of a structure, except for nested structures.
+     */
+    private void unifyArgument(Object theArg) {
+        if (theArg instanceof Var) {
+            final VarInfo info = variable(theArg);
+            if (info == null) {
+                this.program.emit(Wam.UNIFY_VOID, 1);
+            } else {
+                final boolean first = firstOccurrence(info);
+                if (info.permanent) {
+                    this.program.emit(first ? Wam.UNIFY_VARIABLE_Y : Wam.UNIFY_VALUE_Y, info.register);
+                } else {
+                    this.program.emit(first ? Wam.UNIFY_VARIABLE_X : Wam.UNIFY_VALUE_X, info.register);
+                }
+            }
+        } else {
+            this.program.emit(Wam.UNIFY_CONSTANT, literal(theArg));
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Body
+    // ---------------------------------------------------------------------------
+
+    private void bodyArguments(Object[] theArgs, int theChunk) {
+        for (int i = 0; i < theArgs.length; i++) {
+            final Object arg = theArgs[i];
+            if (arg == LEVEL) {
+                if (theChunk == 0) {
+                    this.program.emit(Wam.PUT_LEVEL, i);
+                } else {
+                    this.program.emit(Wam.PUT_VALUE_Y, this.levelRegister, i);
+                }
+            } else if (arg instanceof Var) {
+                final VarInfo info = variable(arg);
+                if (info == null) {
+                    this.program.emit(Wam.PUT_VARIABLE_X, newTemporary(), i);
+                } else {
+                    final boolean first = firstOccurrence(info);
+                    if (info.permanent) {
+                        this.program.emit(first ? Wam.PUT_VARIABLE_Y : Wam.PUT_VALUE_Y, info.register, i);
+                    } else {
+                        this.program.emit(first ? Wam.PUT_VARIABLE_X : Wam.PUT_VALUE_X, info.register, i);
+                    }
+                }
+            } else if (arg instanceof Struct && ((Struct) arg).getArity() > 0) {
+                buildStructure((Struct) arg, i);
+            } else {
+                this.program.emit(Wam.PUT_CONSTANT, literal(arg), i);
+            }
+        }
+    }
+
+    /**
+     * Build theStruct on the heap, depth-first: nested structures are built first, in temporary registers.
+     */
+    private void buildStructure(Struct theStruct, int theRegister) {
+        final Object[] args = theStruct.getArgs();
+        final int[] nested = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Struct && ((Struct) args[i]).getArity() > 0) {
+                nested[i] = newTemporary();
+                buildStructure((Struct) args[i], nested[i]);
+            }
+        }
+        this.program.emit(Wam.PUT_STRUCTURE, functor(theStruct), theRegister);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Struct && ((Struct) args[i]).getArity() > 0) {
+                this.program.emit(Wam.UNIFY_VALUE_X, nested[i]);
+            } else {
+                unifyArgument(args[i]);
+            }
+        }
+    }
+
+    private int functor(Struct theStruct) {
+        return this.program.functorIndex(theStruct.getName(), theStruct.getArity());
+    }
+
+    private int literal(Object theAtomic) {
+        return this.program.literalIndex(this.program.atomicCell(theAtomic));
+    }
+
+}
@@ -0,0 +1,1069 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.library.mgmt.PrimitiveInfo;
+
+/**
+ * The register machine executing the code of a {@link WamProgram}. Its memory areas are arrays of primitive values, grown when needed:
+ * <ul>
+ * <li>the heap of cells, where all terms and variables live,</li>
+ * <li>the stack of environments: [previous environment, continuation, size, permanent variables...],</li>
+ * <li>the stack of choicepoints: [arity, arguments..., environment, continuation, previous choicepoint, alternative, trail top, heap top,
+ * top of the protected environments],</li>
+ * <li>the trail of the heap addresses to reset when backtracking,</li>
+ * <li>the registers, holding arguments and temporary variables.</li>
+ * </ul>
+ * A machine solves a single goal, see {@link #run(int, long[], SolutionListener)}, a primitive solving sub-goals (for example not/1 or
+ * findall/3) uses another machine.
+ */
+final class WamMachine {
+
+    // Offsets of the fields of a choicepoint, after its arguments
+    private static final int CHOICEPOINT_ENVIRONMENT = 0;
+    private static final int CHOICEPOINT_CONTINUATION = 1;
+    private static final int CHOICEPOINT_PREVIOUS = 2;
+    private static final int CHOICEPOINT_ALTERNATIVE = 3;
+    private static final int CHOICEPOINT_TRAIL = 4;
+    private static final int CHOICEPOINT_HEAP = 5;
+    private static final int CHOICEPOINT_ENVIRONMENT_TOP = 6;
+    private static final int CHOICEPOINT_FIELDS = 7;
+
+    private static final String VAR_PREFIX = "_G";
+
+    final WamProgram program;
+    private SolutionListener listener;
+
+    private long[] heap = new long[4096];
+    private int h = 0;
+    private long[] environments = new long[1024];
+    private long[] choicepoints = new long[1024];
+    private int[] trail = new int[1024];
+    private int tr = 0;
+    private long[] x;
+    private long[] pdl = new long[64];
+    private final List<Object> objects = new ArrayList<Object>();
+
+    private int pc; // Program counter
+    private int cp; // Continuation
+    private int e = -1; // Current environment
+    private int b = -1; // Last choicepoint
+    private int b0 = -1; // Choicepoint at entry of the current predicate, to cut to
+    private int hb = 0; // Heap top of the last choicepoint: older variables need trailing when bound
+    private int s; // Next argument of a structure being unified
+    private boolean write; // Structure being built (true) or read (false)
+
+    // Results of evaluate()
+    private long evaluatedLong;
+    private Object evaluatedObject;
+
+    WamMachine(WamProgram theProgram) {
+        this.program = theProgram;
+        this.x = new long[theProgram.maxRegisters + 8];
+    }
+
+    /**
+     * Empty all memory areas, to solve another goal.
+     */
+    void reset() {
+        this.h = 0;
+        this.tr = 0;
+        this.e = -1;
+        this.b = -1;
+        this.b0 = -1;
+        this.hb = 0;
+        this.objects.clear();
+    }
+
+    /**
+     * Solve a predicate: all solutions are notified to theListener, until it requests to stop.
+     *
+     * @param thePredicate
+     * @param theArguments Cells on the heap of this machine
+     * @param theListener
+     * @return {@link Continuation#CONTINUE} when all solutions were found, or the {@link Continuation} that stopped the search.
+     */
+    Continuation run(int thePredicate, long[] theArguments, SolutionListener theListener) {
+        this.listener = theListener;
+        ensureRegisters(theArguments.length);
+        System.arraycopy(theArguments, 0, this.x, 0, theArguments.length);
+        this.cp = WamProgram.SOLUTION_ADDRESS;
+        this.b0 = this.b;
+        this.pc = enter(thePredicate);
+        int[] code = this.program.code;
+        while (true) {
+            final int[] c = code;
+            final int pc = this.pc;
+            switch (c[pc]) {
+            case Wam.FAIL:
+                break;
+            case Wam.SOLUTION: {
+                final Continuation continuation = this.listener.onSolution();
+                if (continuation == Continuation.USER_ABORT || continuation == Continuation.CUT) {
+                    return continuation;
+                }
+                break;
+            }
+            case Wam.RETRY_SOLUTIONS:
+                if (retrySolutions()) {
+                    continue;
+                }
+                break;
+
+            // Head
+            case Wam.GET_VARIABLE_X:
+                this.x[c[pc + 1]] = this.x[c[pc + 2]];
+                this.pc = pc + 3;
+                continue;
+            case Wam.GET_VARIABLE_Y:
+                this.environments[this.e + 3 + c[pc + 1]] = this.x[c[pc + 2]];
+                this.pc = pc + 3;
+                continue;
+            case Wam.GET_VALUE_X:
+                if (unify(this.x[c[pc + 1]], this.x[c[pc + 2]])) {
+                    this.pc = pc + 3;
+                    continue;
+                }
+                break;
+            case Wam.GET_VALUE_Y:
+                if (unify(this.environments[this.e + 3 + c[pc + 1]], this.x[c[pc + 2]])) {
+                    this.pc = pc + 3;
+                    continue;
+                }
+                break;
+            case Wam.GET_CONSTANT:
+                if (unifyConstant(this.x[c[pc + 2]], this.program.literals[c[pc + 1]])) {
+                    this.pc = pc + 3;
+                    continue;
+                }
+                break;
+            case Wam.GET_STRUCTURE: {
+                final int functor = c[pc + 1];
+                final long cell = deref(this.x[c[pc + 2]]);
+                final int tag = Wam.tag(cell);
+                if (tag == Wam.REF) {
+                    ensureHeap(1 + this.program.functorArities[functor]);
+                    this.heap[this.h] = Wam.cell(Wam.FUN, functor);
+                    bind(Wam.address(cell), Wam.cell(Wam.STR, this.h));
+                    this.h++;
+                    this.write = true;
+                } else if (tag == Wam.STR && this.heap[Wam.address(cell)] == Wam.cell(Wam.FUN, functor)) {
+                    this.s = Wam.address(cell) + 1;
+                    this.write = false;
+                } else {
+                    break;
+                }
+                this.pc = pc + 3;
+                continue;
+            }
+            case Wam.UNIFY_VARIABLE_X:
+                this.x[c[pc + 1]] = unifyVariable();
+                this.pc = pc + 2;
+                continue;
+            case Wam.UNIFY_VARIABLE_Y:
+                this.environments[this.e + 3 + c[pc + 1]] = unifyVariable();
+                this.pc = pc + 2;
+                continue;
+            case Wam.UNIFY_VALUE_X:
+                if (unifyValue(this.x[c[pc + 1]])) {
+                    this.pc = pc + 2;
+                    continue;
+                }
+                break;
+            case Wam.UNIFY_VALUE_Y:
+                if (unifyValue(this.environments[this.e + 3 + c[pc + 1]])) {
+                    this.pc = pc + 2;
+                    continue;
+                }
+                break;
+            case Wam.UNIFY_CONSTANT:
+                if (this.write) {
+                    this.heap[this.h++] = this.program.literals[c[pc + 1]];
+                } else if (!unifyConstant(this.heap[this.s++], this.program.literals[c[pc + 1]])) {
+                    break;
+                }
+                this.pc = pc + 2;
+                continue;
+            case Wam.UNIFY_VOID:
+                if (this.write) {
+                    for (int i = c[pc + 1]; i > 0; i--) {
+                        this.heap[this.h] = Wam.cell(Wam.REF, this.h);
+                        this.h++;
+                    }
+                } else {
+                    this.s += c[pc + 1];
+                }
+                this.pc = pc + 2;
+                continue;
+
+            // Body
+            case Wam.PUT_VARIABLE_X:
+                this.x[c[pc + 2]] = this.x[c[pc + 1]] = newVariable();
+                this.pc = pc + 3;
+                continue;
+            case Wam.PUT_VARIABLE_Y:
+                this.x[c[pc + 2]] = this.environments[this.e + 3 + c[pc + 1]] = newVariable();
+                this.pc = pc + 3;
+                continue;
+            case Wam.PUT_VALUE_X:
+                this.x[c[pc + 2]] = this.x[c[pc + 1]];
+                this.pc = pc + 3;
+                continue;
+            case Wam.PUT_VALUE_Y:
+                this.x[c[pc + 2]] = this.environments[this.e + 3 + c[pc + 1]];
+                this.pc = pc + 3;
+                continue;
+            case Wam.PUT_CONSTANT:
+                this.x[c[pc + 2]] = this.program.literals[c[pc + 1]];
+                this.pc = pc + 3;
+                continue;
+            case Wam.PUT_STRUCTURE: {
+                final int functor = c[pc + 1];
+                ensureHeap(1 + this.program.functorArities[functor]);
+                this.heap[this.h] = Wam.cell(Wam.FUN, functor);
+                this.x[c[pc + 2]] = Wam.cell(Wam.STR, this.h);
+                this.h++;
+                this.write = true;
+                this.pc = pc + 3;
+                continue;
+            }
+            case Wam.PUT_LEVEL:
+                this.x[c[pc + 1]] = Wam.cell(Wam.INT, this.b0);
+                this.pc = pc + 2;
+                continue;
+
+            // Control
+            case Wam.ALLOCATE:
+                allocate(c[pc + 1]);
+                this.pc = pc + 2;
+                continue;
+            case Wam.DEALLOCATE:
+                this.cp = (int) this.environments[this.e + 1];
+                this.e = (int) this.environments[this.e];
+                this.pc = pc + 1;
+                continue;
+            case Wam.CALL:
+                this.cp = pc + 2;
+                this.b0 = this.b;
+                this.pc = enter(c[pc + 1]);
+                code = this.program.code;
+                continue;
+            case Wam.EXECUTE:
+                this.b0 = this.b;
+                this.pc = enter(c[pc + 1]);
+                code = this.program.code;
+                continue;
+            case Wam.PROCEED:
+                this.pc = this.cp;
+                continue;
+            case Wam.TRY:
+                pushChoicepoint(c[pc + 1], pc + 3);
+                this.pc = c[pc + 2];
+                continue;
+            case Wam.RETRY:
+                this.choicepoints[this.b + 1 + c[pc + 1] + CHOICEPOINT_ALTERNATIVE] = pc + 3;
+                this.pc = c[pc + 2];
+                continue;
+            case Wam.TRUST:
+                popChoicepoint();
+                this.pc = c[pc + 2];
+                continue;
+            case Wam.SWITCH_ON_TERM:
+                this.pc = switchOnTerm(this.program.switchTables[c[pc + 1]]);
+                continue;
+            case Wam.NECK_CUT:
+                cutTo(this.b0);
+                this.pc = pc + 1;
+                continue;
+            case Wam.GET_LEVEL:
+                this.environments[this.e + 3 + c[pc + 1]] = Wam.cell(Wam.INT, this.b0);
+                this.pc = pc + 2;
+                continue;
+            case Wam.CUT:
+                cutTo((int) Wam.value(this.environments[this.e + 3 + c[pc + 1]]));
+                this.pc = pc + 2;
+                continue;
+            case Wam.BUILTIN:
+                if (builtin(c[pc + 1])) {
+                    this.pc = pc + 2;
+                    continue;
+                }
+                break;
+            case Wam.BRIDGE: {
+                final boolean solved = bridge(c[pc + 1], c[pc + 2], pc + 3);
+                code = this.program.code;
+                if (solved) {
+                    continue;
+                }
+                break;
+            }
+            case Wam.META_CALL:
+                this.cp = pc + 1;
+                metaCall();
+                code = this.program.code;
+                continue;
+            case Wam.META_EXECUTE:
+                metaCall();
+                code = this.program.code;
+                continue;
+            default:
+                throw new IllegalStateException("Unknown opcode " + c[pc] + " at " + pc);
+            }
+            // Failure: resume at the alternative of the last choicepoint
+            if (!backtrack()) {
+                return Continuation.CONTINUE;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Memory areas
+    // ---------------------------------------------------------------------------
+
+    private void ensureHeap(int theSize) {
+        if (this.h + theSize > this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, Math.max(this.heap.length * 2, this.h + theSize));
+        }
+    }
+
+    /**
+     * @param thePredicate
+     * @return The entry point of thePredicate. Compiling it may require more registers than the clauses compiled before.
+     */
+    private int enter(int thePredicate) {
+        final int entry = this.program.entry(thePredicate);
+        ensureRegisters(this.program.maxRegisters);
+        return entry;
+    }
+
+    private void ensureRegisters(int theSize) {
+        if (theSize > this.x.length) {
+            this.x = Arrays.copyOf(this.x, theSize * 2);
+        }
+    }
+
+    private long newVariable() {
+        ensureHeap(1);
+        final long cell = Wam.cell(Wam.REF, this.h);
+        this.heap[this.h++] = cell;
+        return cell;
+    }
+
+    private long unifyVariable() {
+        if (this.write) {
+            final long cell = Wam.cell(Wam.REF, this.h);
+            this.heap[this.h++] = cell;
+            return cell;
+        }
+        return this.heap[this.s++];
+    }
+
+    private boolean unifyValue(long theCell) {
+        if (this.write) {
+            this.heap[this.h++] = theCell;
+            return true;
+        }
+        return unify(theCell, this.heap[this.s++]);
+    }
+
+    private int environmentTop() {
+        int top = this.e < 0 ? 0 : this.e + 3 + (int) this.environments[this.e + 2];
+        if (this.b >= 0) {
+            top = Math.max(top, (int) this.choicepoints[choicepointFields(this.b) + CHOICEPOINT_ENVIRONMENT_TOP]);
+        }
+        return top;
+    }
+
+    private void allocate(int theNbPermanent) {
+        final int newE = environmentTop();
+        if (newE + 3 + theNbPermanent > this.environments.length) {
+            this.environments = Arrays.copyOf(this.environments, Math.max(this.environments.length * 2, newE + 3 + theNbPermanent));
+        }
+        this.environments[newE] = this.e;
+        this.environments[newE + 1] = this.cp;
+        this.environments[newE + 2] = theNbPermanent;
+        this.e = newE;
+    }
+
+    private int choicepointFields(int theChoicepoint) {
+        return theChoicepoint + 1 + (int) this.choicepoints[theChoicepoint];
+    }
+
+    private void pushChoicepoint(int theArity, int theAlternative) {
+        final int newB = this.b < 0 ? 0 : choicepointFields(this.b) + CHOICEPOINT_FIELDS;
+        final int fields = newB + 1 + theArity;
+        if (fields + CHOICEPOINT_FIELDS > this.choicepoints.length) {
+            this.choicepoints = Arrays.copyOf(this.choicepoints, Math.max(this.choicepoints.length * 2, fields + CHOICEPOINT_FIELDS));
+        }
+        this.choicepoints[newB] = theArity;
+        System.arraycopy(this.x, 0, this.choicepoints, newB + 1, theArity);
+        this.choicepoints[fields + CHOICEPOINT_ENVIRONMENT] = this.e;
+        this.choicepoints[fields + CHOICEPOINT_CONTINUATION] = this.cp;
+        this.choicepoints[fields + CHOICEPOINT_PREVIOUS] = this.b;
+        this.choicepoints[fields + CHOICEPOINT_ALTERNATIVE] = theAlternative;
+        this.choicepoints[fields + CHOICEPOINT_TRAIL] = this.tr;
+        this.choicepoints[fields + CHOICEPOINT_HEAP] = this.h;
+        this.choicepoints[fields + CHOICEPOINT_ENVIRONMENT_TOP] = environmentTop();
+        this.b = newB;
+        this.hb = this.h;
+    }
+
+    private void popChoicepoint() {
+        this.b = (int) this.choicepoints[choicepointFields(this.b) + CHOICEPOINT_PREVIOUS];
+        this.hb = this.b < 0 ? 0 : (int) this.choicepoints[choicepointFields(this.b) + CHOICEPOINT_HEAP];
+    }
+
+    private void cutTo(int theLevel) {
+        if (this.b > theLevel) {
+            this.b = theLevel;
+            this.hb = this.b < 0 ? 0 : (int) this.choicepoints[choicepointFields(this.b) + CHOICEPOINT_HEAP];
+        }
+    }
+
+    /**
+     * Restore the state saved in the last choicepoint, and continue at its alternative.
+     *
+     * @return false if there is no choicepoint left.
+     */
+    private boolean backtrack() {
+        if (this.b < 0) {
+            return false;
+        }
+        final int arity = (int) this.choicepoints[this.b];
+        System.arraycopy(this.choicepoints, this.b + 1, this.x, 0, arity);
+        final int fields = this.b + 1 + arity;
+        this.e = (int) this.choicepoints[fields + CHOICEPOINT_ENVIRONMENT];
+        this.cp = (int) this.choicepoints[fields + CHOICEPOINT_CONTINUATION];
+        this.b0 = (int) this.choicepoints[fields + CHOICEPOINT_PREVIOUS];
+        this.pc = (int) this.choicepoints[fields + CHOICEPOINT_ALTERNATIVE];
+        undoTrail((int) this.choicepoints[fields + CHOICEPOINT_TRAIL]);
+        this.h = (int) this.choicepoints[fields + CHOICEPOINT_HEAP];
+        this.hb = this.h;
+        return true;
+    }
+
+    private void undoTrail(int theTrailTop) {
+        while (this.tr > theTrailTop) {
+            final int address = this.trail[--this.tr];
+            this.heap[address] = Wam.cell(Wam.REF, address);
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Unification
+    // ---------------------------------------------------------------------------
+
+    long deref(long theCell) {
+        long cell = theCell;
+        while (Wam.tag(cell) == Wam.REF) {
+            final long value = this.heap[Wam.address(cell)];
+            if (value == cell) {
+                return cell;
+            }
+            cell = value;
+        }
+        return cell;
+    }
+
+    private void bind(int theAddress, long theValue) {
+        this.heap[theAddress] = theValue;
+        if (theAddress < this.hb) {
+            if (this.tr == this.trail.length) {
+                this.trail = Arrays.copyOf(this.trail, this.tr * 2);
+            }
+            this.trail[this.tr++] = theAddress;
+        }
+    }
+
+    private boolean atomicEquals(long theCell1, long theCell2) {
+        if (theCell1 == theCell2) {
+            return true;
+        }
+        final int tag1 = Wam.tag(theCell1);
+        final int tag2 = Wam.tag(theCell2);
+        return (tag1 == Wam.CON || tag1 == Wam.OBJ) && (tag2 == Wam.CON || tag2 == Wam.OBJ) && object(theCell1).equals(object(theCell2));
+    }
+
+    private boolean unifyConstant(long theCell, long theConstant) {
+        final long cell = deref(theCell);
+        if (Wam.tag(cell) == Wam.REF) {
+            bind(Wam.address(cell), theConstant);
+            return true;
+        }
+        return atomicEquals(cell, theConstant);
+    }
+
+    boolean unify(long theCell1, long theCell2) {
+        int top = 0;
+        this.pdl[top++] = theCell1;
+        this.pdl[top++] = theCell2;
+        while (top > 0) {
+            final long cell1 = deref(this.pdl[--top]);
+            final long cell2 = deref(this.pdl[--top]);
+            if (cell1 == cell2) {
+                continue;
+            }
+            final int tag1 = Wam.tag(cell1);
+            final int tag2 = Wam.tag(cell2);
+            if (tag1 == Wam.REF) {
+                if (tag2 == Wam.REF && Wam.address(cell2) > Wam.address(cell1)) {
+                    // Bind the younger variable to the older one
+                    bind(Wam.address(cell2), cell1);
+                } else {
+                    bind(Wam.address(cell1), cell2);
+                }
+            } else if (tag2 == Wam.REF) {
+                bind(Wam.address(cell2), cell1);
+            } else if (tag1 == Wam.STR && tag2 == Wam.STR) {
+                final int address1 = Wam.address(cell1);
+                final int address2 = Wam.address(cell2);
+                if (this.heap[address1] != this.heap[address2]) {
+                    return false;
+                }
+                final int arity = this.program.functorArities[(int) Wam.value(this.heap[address1])];
+                if (top + 2 * arity > this.pdl.length) {
+                    this.pdl = Arrays.copyOf(this.pdl, Math.max(this.pdl.length * 2, top + 2 * arity));
+                }
+                for (int i = arity; i > 0; i--) {
+                    this.pdl[top++] = this.heap[address2 + i];
+                    this.pdl[top++] = this.heap[address1 + i];
+                }
+            } else if (tag1 == Wam.STR || tag2 == Wam.STR || !atomicEquals(cell1, cell2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Indexing
+    // ---------------------------------------------------------------------------
+
+    private int switchOnTerm(WamProgram.SwitchTable theTable) {
+        final long cell = deref(this.x[0]);
+        switch (Wam.tag(cell)) {
+        case Wam.REF:
+            return theTable.variableLabel;
+        case Wam.STR:
+            return theTable.label(this.heap[Wam.address(cell)]);
+        case Wam.OBJ: {
+            // The constant may have been registered in the program after this cell was created
+            final int index = this.program.existingConstantIndex(object(cell));
+            return index < 0 ? theTable.defaultLabel : theTable.label(Wam.cell(Wam.CON, index));
+        }
+        default:
+            return theTable.label(cell);
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Builtins
+    // ---------------------------------------------------------------------------
+
+    private boolean builtin(int theBuiltin) {
+        switch (theBuiltin) {
+        case Wam.BUILTIN_FAIL:
+            return false;
+        case Wam.BUILTIN_UNIFY:
+            return unify(this.x[0], this.x[1]);
+        case Wam.BUILTIN_NOT_UNIFY: {
+            // Trail all bindings to undo them
+            final int savedHb = this.hb;
+            final int savedTr = this.tr;
+            this.hb = this.h;
+            final boolean unified = unify(this.x[0], this.x[1]);
+            undoTrail(savedTr);
+            this.hb = savedHb;
+            return !unified;
+        }
+        case Wam.BUILTIN_IS:
+            if (evaluate(this.x[1])) {
+                return unify(this.x[0], Wam.cell(Wam.INT, this.evaluatedLong));
+            }
+            return this.evaluatedObject != null && unify(this.x[0], atomicCell(this.evaluatedObject));
+        case Wam.BUILTIN_VAR:
+            return Wam.tag(deref(this.x[0])) == Wam.REF;
+        case Wam.BUILTIN_CUT_TO:
+            cutTo((int) Wam.value(deref(this.x[0])));
+            return true;
+        default:
+            return compare(theBuiltin);
+        }
+    }
+
+    private boolean compare(int theBuiltin) {
+        final double value1;
+        final double value2;
+        if (evaluate(this.x[0])) {
+            value1 = this.evaluatedLong;
+        } else if (this.evaluatedObject instanceof Number) {
+            value1 = ((Number) this.evaluatedObject).doubleValue();
+        } else {
+            return false;
+        }
+        if (evaluate(this.x[1])) {
+            value2 = this.evaluatedLong;
+        } else if (this.evaluatedObject instanceof Number) {
+            value2 = ((Number) this.evaluatedObject).doubleValue();
+        } else {
+            return false;
+        }
+        switch (theBuiltin) {
+        case Wam.BUILTIN_EQ:
+            return value1 == value2;
+        case Wam.BUILTIN_NE:
+            return value1 != value2;
+        case Wam.BUILTIN_LT:
+            return value1 < value2;
+        case Wam.BUILTIN_GT:
+            return value1 > value2;
+        case Wam.BUILTIN_LE:
+            return value1 <= value2;
+        case Wam.BUILTIN_GE:
+            return value1 >= value2;
+        default:
+            throw new IllegalStateException("Unknown builtin " + theBuiltin);
+        }
+    }
+
+    /**
+     * Evaluate an arithmetic expression: integer operations of the core library are computed here, anything else by the library's
+     * functors, see {@link TermApi#evaluate(Object, TermBindings)}.
+     *
+     * @param theCell
+     * @return true if the result is in {@link #evaluatedLong}, false if it is in {@link #evaluatedObject} (null if the expression could not
+     *         be evaluated).
+     */
+    private boolean evaluate(long theCell) {
+        final long cell = deref(theCell);
+        final int tag = Wam.tag(cell);
+        if (tag == Wam.INT) {
+            this.evaluatedLong = Wam.value(cell);
+            return true;
+        }
+        if (tag == Wam.STR) {
+            final int address = Wam.address(cell);
+            final int functor = (int) Wam.value(this.heap[address]);
+            final int operation = this.program.functorArithmetic[functor];
+            if (operation != Wam.ARITHMETIC_NONE && evaluate(this.heap[address + 1])) {
+                final long value1 = this.evaluatedLong;
+                if (operation == Wam.ARITHMETIC_NEGATE) {
+                    return evaluated(-value1);
+                }
+                if (evaluate(this.heap[address + 2])) {
+                    switch (operation) {
+                    case Wam.ARITHMETIC_PLUS:
+                        return evaluated(value1 + this.evaluatedLong);
+                    case Wam.ARITHMETIC_MINUS:
+                        return evaluated(value1 - this.evaluatedLong);
+                    default:
+                        return evaluated(value1 * this.evaluatedLong);
+                    }
+                }
+            }
+        }
+        final Object term = TermApi.normalize(toTerm(cell, new HashMap<Integer, Var>()), this.program.libraryContent);
+        final Object result = TermApi.evaluate(term, new TermBindings(term));
+        if (result instanceof Long && Wam.isInline((Long) result)) {
+            return evaluated((Long) result);
+        }
+        this.evaluatedObject = result;
+        return false;
+    }
+
+    private boolean evaluated(long theValue) {
+        if (Wam.isInline(theValue)) {
+            this.evaluatedLong = theValue;
+            return true;
+        }
+        this.evaluatedObject = Long.valueOf(theValue);
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Primitives of libraries
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Invoke a primitive on the goal in the registers. Its solutions are recorded and the first one is unified with the goal; when there
+     * are several, a choicepoint is pushed to unify the next ones by {@link Wam#RETRY_SOLUTIONS}. This assumes that primitives have a
+     * finite number of solutions.
+     *
+     * @return false if the primitive had no solution.
+     */
+    private boolean bridge(int theBridge, int theArity, int theContinuation) {
+        final String name = this.program.bridgedNames.get(theBridge);
+        final Map<Integer, Var> vars = new HashMap<Integer, Var>();
+        final Object[] args = new Object[theArity];
+        for (int i = 0; i < theArity; i++) {
+            args[i] = toTerm(this.x[i], vars);
+        }
+        final Struct goal = (Struct) TermApi.normalize(theArity == 0 ? new Struct(name) : new Struct(name, args), this.program.libraryContent);
+        final TermBindings bindings = new TermBindings(goal);
+        final Var[] goalVars = new Var[bindings.getSize()];
+        collectVars(goal, goalVars);
+        final long[] goalCells = new long[goalVars.length];
+        final Map<Binding, Long> cells = new java.util.IdentityHashMap<Binding, Long>();
+        for (int i = 0; i < goalVars.length; i++) {
+            goalCells[i] = Wam.cell(Wam.REF, Integer.parseInt(goalVars[i].getName().substring(VAR_PREFIX.length())));
+            cells.put(goalVars[i].bindingWithin(bindings), goalCells[i]);
+        }
+        final List<long[]> solutions = new ArrayList<long[]>();
+        final PrimitiveInfo primitive = goal.getPrimitiveInfo();
+        primitive.invoke(goal, bindings, new SolutionListener() {
+            @Override
+            public Continuation onSolution() {
+                final long[] values = new long[goalVars.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = fromTerm(goalVars[i], bindings, cells);
+                }
+                solutions.add(values);
+                return Continuation.CONTINUE;
+            }
+        });
+        if (solutions.isEmpty()) {
+            return false;
+        }
+        final long goalTuple = tuple(goalCells);
+        final long first = tuple(solutions.get(0));
+        if (solutions.size() > 1) {
+            final long[] tuples = new long[solutions.size()];
+            tuples[0] = first;
+            for (int i = 1; i < tuples.length; i++) {
+                tuples[i] = tuple(solutions.get(i));
+            }
+            final int vector = this.h;
+            ensureHeap(1 + tuples.length);
+            this.heap[this.h++] = Wam.cell(Wam.INT, tuples.length);
+            System.arraycopy(tuples, 0, this.heap, this.h, tuples.length);
+            this.h += tuples.length;
+            ensureRegisters(4);
+            this.x[0] = goalTuple;
+            this.x[1] = Wam.cell(Wam.INT, 1);
+            this.x[2] = Wam.cell(Wam.STR, vector);
+            this.x[3] = Wam.cell(Wam.INT, theContinuation);
+            pushChoicepoint(4, WamProgram.RETRY_SOLUTIONS_ADDRESS);
+        }
+        this.pc = theContinuation;
+        return unify(goalTuple, first);
+    }
+
+    /**
+     * Unify the goal of a primitive with its next solution, see {@link #bridge(int, int, int)}.
+     */
+    private boolean retrySolutions() {
+        final int index = (int) Wam.value(this.x[1]);
+        final int vector = Wam.address(this.x[2]);
+        if (index + 1 >= Wam.value(this.heap[vector])) {
+            popChoicepoint();
+        } else {
+            this.choicepoints[this.b + 2] = Wam.cell(Wam.INT, index + 1);
+        }
+        this.pc = (int) Wam.value(this.x[3]);
+        return unify(this.x[0], this.heap[vector + 1 + index]);
+    }
+
+    /**
+     * @return A structure holding theCells, or a constant if there are none.
+     */
+    private long tuple(long[] theCells) {
+        if (theCells.length == 0) {
+            return Wam.cell(Wam.INT, 0);
+        }
+        final int address = this.h;
+        ensureHeap(1 + theCells.length);
+        this.heap[this.h++] = Wam.cell(Wam.FUN, this.program.functorIndex("$tuple", theCells.length));
+        for (final long cell : theCells) {
+            this.heap[this.h++] = cell;
+        }
+        return Wam.cell(Wam.STR, address);
+    }
+
+    private static void collectVars(Object theTerm, Var[] theVars) {
+        if (theTerm instanceof Var) {
+            final Var var = (Var) theTerm;
+            if (!var.isAnonymous()) {
+                theVars[var.getIndex()] = var;
+            }
+        } else if (theTerm instanceof Struct && ((Struct) theTerm).getArity() > 0) {
+            for (final Object arg : ((Struct) theTerm).getArgs()) {
+                collectVars(arg, theVars);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Calls of goals known at runtime only
+    // ---------------------------------------------------------------------------
+
+    private void metaCall() {
+        final long goal = deref(this.x[0]);
+        this.b0 = this.b;
+        if (Wam.tag(goal) == Wam.STR) {
+            final int address = Wam.address(goal);
+            final int functor = (int) Wam.value(this.heap[address]);
+            final int predicate = this.program.userPredicate(functor);
+            if (predicate >= 0) {
+                final int arity = this.program.functorArities[functor];
+                ensureRegisters(arity);
+                System.arraycopy(this.heap, address + 1, this.x, 0, arity);
+                this.pc = enter(predicate);
+                return;
+            }
+        }
+        // Control constructs and primitives: compile the structure of the goal, its arguments become parameters
+        final StringBuilder key = new StringBuilder();
+        final List<Var> parameters = new ArrayList<Var>();
+        final List<Long> arguments = new ArrayList<Long>();
+        final Object skeleton = skeleton(goal, key, parameters, arguments);
+        if (skeleton instanceof Struct) {
+            ((Struct) skeleton).assignPrimitiveInfo(this.program.libraryContent);
+        }
+        final int predicate = this.program.queryPredicate(key.toString(), parameters, skeleton);
+        ensureRegisters(arguments.size());
+        for (int i = 0; i < arguments.size(); i++) {
+            this.x[i] = arguments.get(i);
+        }
+        this.pc = enter(predicate);
+    }
+
+    private Object skeleton(long theCell, StringBuilder theKey, List<Var> theParameters, List<Long> theArguments) {
+        final long cell = deref(theCell);
+        switch (Wam.tag(cell)) {
+        case Wam.REF:
+            if (theArguments.isEmpty() && theKey.length() == 0) {
+                throw new InvalidTermException("Cannot call a free variable");
+            }
+            theKey.append('V');
+            return parameter(cell, theParameters, theArguments);
+        case Wam.STR: {
+            final int address = Wam.address(cell);
+            final int functor = (int) Wam.value(this.heap[address]);
+            final String name = this.program.functorNames[functor];
+            final int arity = this.program.functorArities[functor];
+            theKey.append('S').append(name.length()).append(':').append(name).append('/').append(arity).append('(');
+            final Object[] args = new Object[arity];
+            final boolean control = Struct.FUNCTOR_COMMA.equals(name) || Struct.FUNCTOR_SEMICOLON.equals(name);
+            for (int i = 0; i < arity; i++) {
+                if (control) {
+                    args[i] = skeleton(this.heap[address + 1 + i], theKey, theParameters, theArguments);
+                } else {
+                    args[i] = parameter(this.heap[address + 1 + i], theParameters, theArguments);
+                }
+            }
+            theKey.append(')');
+            return new Struct(name, args);
+        }
+        case Wam.CON:
+        case Wam.OBJ: {
+            final Object atom = object(cell);
+            if (atom instanceof String) {
+                theKey.append('A').append(((String) atom).length()).append(':').append(atom);
+                return atom;
+            }
+            if (atom instanceof Struct) {
+                final Struct struct = new Struct((Struct) atom);
+                theKey.append('S').append(struct.getName().length()).append(':').append(struct.getName()).append("/0()");
+                return struct;
+            }
+            throw new InvalidTermException("Cannot call " + atom + ", not a callable term");
+        }
+        default:
+            throw new InvalidTermException("Cannot call " + Wam.value(cell) + ", not a callable term");
+        }
+    }
+
+    private static Var parameter(long theCell, List<Var> theParameters, List<Long> theArguments) {
+        final Var parameter = new Var("P" + theParameters.size());
+        theParameters.add(parameter);
+        theArguments.add(theCell);
+        return parameter;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Conversion between cells and terms
+    // ---------------------------------------------------------------------------
+
+    private Object object(long theCell) {
+        if (Wam.tag(theCell) == Wam.CON) {
+            return this.program.constants[Wam.address(theCell)];
+        }
+        return this.objects.get(Wam.address(theCell));
+    }
+
+    /**
+     * @param theAtomic
+     * @return The cell of theAtomic, using the constants of the program when registered there.
+     */
+    private long atomicCell(Object theAtomic) {
+        if (theAtomic instanceof Long && Wam.isInline((Long) theAtomic)) {
+            return Wam.cell(Wam.INT, (Long) theAtomic);
+        }
+        final int index = this.program.existingConstantIndex(theAtomic);
+        if (index >= 0) {
+            return Wam.cell(Wam.CON, index);
+        }
+        this.objects.add(theAtomic);
+        return Wam.cell(Wam.OBJ, this.objects.size() - 1);
+    }
+
+    /**
+     * Copy a term onto the heap.
+     *
+     * @param theTerm
+     * @param theBindings
+     * @param theVars The cells of the free variables already copied, by their {@link Binding}; new ones are added.
+     * @return The cell of the term.
+     */
+    long fromTerm(Object theTerm, TermBindings theBindings, Map<Binding, Long> theVars) {
+        Object term = theTerm;
+        TermBindings bindings = theBindings;
+        long result = 0;
+        int hole = -1; // Where to store the cell of the current tail of a list
+        while (true) {
+            if (term instanceof Var) {
+                final Var var = (Var) term;
+                if (!var.isAnonymous()) {
+                    final Binding binding = var.bindingWithin(bindings).followLinks();
+                    if (binding.isLiteral()) {
+                        term = binding.getTerm();
+                        bindings = binding.getTermBindings();
+                        continue;
+                    }
+                    Long cell = theVars.get(binding);
+                    if (cell == null) {
+                        cell = newVariable();
+                        theVars.put(binding, cell);
+                    }
+                    return complete(result, hole, cell);
+                }
+                return complete(result, hole, newVariable());
+            }
+            if (!(term instanceof Struct) || ((Struct) term).getArity() == 0) {
+                return complete(result, hole, atomicCell(term));
+            }
+            final Struct struct = (Struct) term;
+            final int arity = struct.getArity();
+            final int address = this.h;
+            ensureHeap(1 + arity);
+            this.h += 1 + arity;
+            this.heap[address] = Wam.cell(Wam.FUN, this.program.functorIndex(struct.getName(), arity));
+            result = complete(result, hole, Wam.cell(Wam.STR, address));
+            final boolean list = arity == 2 && Struct.FUNCTOR_LIST == struct.getName();
+            final int last = list ? 1 : arity;
+            for (int i = 0; i < last; i++) {
+                this.heap[address + 1 + i] = fromTerm(struct.getArg(i), bindings, theVars);
+            }
+            if (!list) {
+                return result;
+            }
+            // Iterate over the tail of lists instead of recursing
+            hole = address + 2;
+            term = struct.getArg(1);
+        }
+    }
+
+    private long complete(long theResult, int theHole, long theCell) {
+        if (theHole < 0) {
+            return theCell;
+        }
+        this.heap[theHole] = theCell;
+        return theResult;
+    }
+
+    /**
+     * Copy a cell into a term.
+     *
+     * @param theCell
+     * @param theVars The variables already created, by heap address; new ones are added.
+     * @return The term.
+     */
+    Object toTerm(long theCell, Map<Integer, Var> theVars) {
+        final long cell = deref(theCell);
+        switch (Wam.tag(cell)) {
+        case Wam.REF: {
+            final int address = Wam.address(cell);
+            Var var = theVars.get(address);
+            if (var == null) {
+                var = new Var(VAR_PREFIX + address);
+                theVars.put(address, var);
+            }
+            return var;
+        }
+        case Wam.INT:
+            return Long.valueOf(Wam.value(cell));
+        case Wam.CON:
+        case Wam.OBJ: {
+            final Object atomic = object(cell);
+            return atomic instanceof Struct ? new Struct((Struct) atomic) : atomic;
+        }
+        case Wam.STR: {
+            // Collect the elements of lists instead of recursing over their tails
+            final List<Object> elements = new ArrayList<Object>();
+            long current = cell;
+            while (Wam.tag(current) == Wam.STR && Wam.value(this.heap[Wam.address(current)]) == this.program.listFunctor) {
+                elements.add(toTerm(this.heap[Wam.address(current) + 1], theVars));
+                current = deref(this.heap[Wam.address(current) + 2]);
+            }
+            Object term;
+            if (elements.isEmpty() || Wam.tag(current) == Wam.STR) {
+                final int address = Wam.address(current);
+                final int functor = (int) Wam.value(this.heap[address]);
+                final int arity = this.program.functorArities[functor];
+                final Object[] args = new Object[arity];
+                for (int i = 0; i < arity; i++) {
+                    args[i] = toTerm(this.heap[address + 1 + i], theVars);
+                }
+                term = new Struct(this.program.functorNames[functor], args);
+            } else {
+                term = toTerm(current, theVars);
+            }
+            for (int i = elements.size() - 1; i >= 0; i--) {
+                term = new Struct(Struct.FUNCTOR_LIST, elements.get(i), term);
+            }
+            return term;
+        }
+        default:
+            throw new IllegalStateException("Cannot convert cell " + theCell + " to a term");
+        }
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "(heap=" + this.h + ", trail=" + this.tr + ", pc=" + this.pc + ')';
+    }
+
+}
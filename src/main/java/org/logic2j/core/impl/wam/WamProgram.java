@@ -0,0 +1,684 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.PrologImplementation;
+import org.logic2j.core.library.mgmt.LibraryContent;
+import org.logic2j.core.library.mgmt.PrimitiveInfo;
+import org.logic2j.core.library.mgmt.PrimitiveInfo.PrimitiveType;
+
+/**
+ * The code area and symbol tables compiled from one generation of the theory (see
+ * {@link org.logic2j.core.impl.theory.TheoryManager#getGeneration()}). Predicates are compiled by the {@link WamCompiler} when they are
+ * first called, so that loading a large theory costs nothing until it is used.
+ * <p/>
+ * The code of a predicate is the code of its clauses, followed by its entry point: either the single clause, or a chain of try/retry/trust
+ * instructions, or a switch_on_term on the first argument leading to one chain per value of the first argument of the clauses.
+ */
+final class WamProgram {
+    static final int FAIL_ADDRESS = 0;
+    static final int SOLUTION_ADDRESS = 1;
+    static final int RETRY_SOLUTIONS_ADDRESS = 2;
+
+    /**
+     * Key of a clause whose first argument is a variable.
+     */
+    private static final long NO_KEY = -1L;
+
+    /**
+     * Marks a predicate that was not yet compiled.
+     */
+    private static final int NOT_COMPILED = -1;
+
+    private static final String QUERY_PREFIX = "$query";
+
+    private static final String FUNCTOR_IF_THEN = "->";
+    private static final String FUNCTOR_SOFT_IF_THEN = "*->";
+
+    final PrologImplementation prolog;
+    final LibraryContent libraryContent;
+    final int generation;
+    private final WamCompiler compiler;
+
+    // Code area
+    int[] code = new int[4096];
+    int codeSize = 0;
+    int maxRegisters = 8;
+
+    // Literals: cells of constants used as operands
+    long[] literals = new long[256];
+    private int nbLiterals = 0;
+    private final Map<Long, Integer> literalIndexes = new HashMap<Long, Integer>();
+
+    // Functors
+    String[] functorNames = new String[256];
+    int[] functorArities = new int[256];
+    int[] functorArithmetic = new int[256];
+    private int[] functorPredicates = new int[256];
+    private int nbFunctors = 0;
+    private final Map<String, Integer> functorIndexes = new HashMap<String, Integer>();
+    final int listFunctor;
+
+    // Constants other than small integers
+    Object[] constants = new Object[256];
+    private int nbConstants = 0;
+    private final Map<Object, Integer> constantIndexes = new HashMap<Object, Integer>();
+
+    // Predicates
+    String[] predicateNames = new String[256];
+    int[] predicateArities = new int[256];
+    int[] predicateEntries = new int[256];
+    private int nbPredicates = 0;
+    private final Map<String, Integer> predicateIndexes = new HashMap<String, Integer>();
+    private final Map<Integer, List<Object[]>> definitions = new HashMap<Integer, List<Object[]>>();
+    private final Map<String, Integer> queries = new HashMap<String, Integer>();
+    private final Map<Integer, Boolean> compilable = new HashMap<Integer, Boolean>();
+    private int nbAuxiliaries = 0;
+
+    // Indexing of first arguments
+    SwitchTable[] switchTables = new SwitchTable[64];
+    private int nbSwitchTables = 0;
+
+    // Primitives
+    private final Map<PrimitiveInfo, Integer> builtins = new IdentityHashMap<PrimitiveInfo, Integer>();
+    private final PrimitiveInfo truePrimitive;
+    private final Map<PrimitiveInfo, Boolean> negationPrimitives = new IdentityHashMap<PrimitiveInfo, Boolean>();
+    final List<String> bridgedNames = new ArrayList<String>();
+
+    WamProgram(PrologImplementation theProlog, int theGeneration) {
+        this.prolog = theProlog;
+        this.libraryContent = theProlog.getLibraryManager().wholeContent();
+        this.generation = theGeneration;
+        this.compiler = new WamCompiler(this);
+        Arrays.fill(this.functorPredicates, NOT_COMPILED);
+        // Fixed prologue
+        emit(Wam.FAIL);
+        emit(Wam.SOLUTION);
+        emit(Wam.RETRY_SOLUTIONS);
+        this.listFunctor = functorIndex(Struct.FUNCTOR_LIST, 2);
+        // Primitives of the core library executed natively
+        registerBuiltin("fail/0", Wam.BUILTIN_FAIL);
+        registerBuiltin("=/2", Wam.BUILTIN_UNIFY);
+        registerBuiltin("\\=/2", Wam.BUILTIN_NOT_UNIFY);
+        registerBuiltin("is/2", Wam.BUILTIN_IS);
+        registerBuiltin("=:=/2", Wam.BUILTIN_EQ);
+        registerBuiltin("=\\=/2", Wam.BUILTIN_NE);
+        registerBuiltin("</2", Wam.BUILTIN_LT);
+        registerBuiltin(">/2", Wam.BUILTIN_GT);
+        registerBuiltin("=</2", Wam.BUILTIN_LE);
+        registerBuiltin(">=/2", Wam.BUILTIN_GE);
+        registerBuiltin("var/1", Wam.BUILTIN_VAR);
+        this.truePrimitive = predicatePrimitive("true/0");
+        // Synonyms are registered as distinct primitives
+        for (final String signature : new String[] { "not/1", "\\+/1" }) {
+            final PrimitiveInfo primitive = predicatePrimitive(signature);
+            if (primitive != null) {
+                this.negationPrimitives.put(primitive, Boolean.TRUE);
+            }
+        }
+        registerArithmetic("+", 2, Wam.ARITHMETIC_PLUS);
+        registerArithmetic("-", 2, Wam.ARITHMETIC_MINUS);
+        registerArithmetic("*", 2, Wam.ARITHMETIC_TIMES);
+        registerArithmetic("-", 1, Wam.ARITHMETIC_NEGATE);
+    }
+
+    private PrimitiveInfo predicatePrimitive(String theSignature) {
+        final PrimitiveInfo primitive = this.libraryContent.getPrimitive(theSignature);
+        if (primitive == null || primitive.getType() != PrimitiveType.PREDICATE) {
+            return null;
+        }
+        return primitive;
+    }
+
+    private void registerBuiltin(String theSignature, int theBuiltin) {
+        final PrimitiveInfo primitive = predicatePrimitive(theSignature);
+        if (primitive != null) {
+            this.builtins.put(primitive, theBuiltin);
+        }
+    }
+
+    private void registerArithmetic(String theName, int theArity, int theOperation) {
+        final PrimitiveInfo primitive = this.libraryContent.getPrimitive(theName + '/' + theArity);
+        if (primitive != null && primitive.getType() == PrimitiveType.FUNCTOR) {
+            this.functorArithmetic[functorIndex(theName, theArity)] = theOperation;
+        }
+    }
+
+    /**
+     * @param thePrimitive
+     * @return The builtin executing thePrimitive, null if none.
+     */
+    Integer builtin(PrimitiveInfo thePrimitive) {
+        return this.builtins.get(thePrimitive);
+    }
+
+    boolean isTrue(PrimitiveInfo thePrimitive) {
+        return thePrimitive == this.truePrimitive;
+    }
+
+    boolean isNegation(PrimitiveInfo thePrimitive) {
+        return this.negationPrimitives.containsKey(thePrimitive);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Code area
+    // ---------------------------------------------------------------------------
+
+    int emit(int theOpcode, int... theOperands) {
+        final int address = this.codeSize;
+        ensureCode(1 + theOperands.length);
+        this.code[this.codeSize++] = theOpcode;
+        for (final int operand : theOperands) {
+            this.code[this.codeSize++] = operand;
+        }
+        return address;
+    }
+
+    private void ensureCode(int theSize) {
+        if (this.codeSize + theSize > this.code.length) {
+            this.code = Arrays.copyOf(this.code, Math.max(this.code.length * 2, this.codeSize + theSize));
+        }
+    }
+
+    void useRegisters(int theNumber) {
+        this.maxRegisters = Math.max(this.maxRegisters, theNumber);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Symbol tables
+    // ---------------------------------------------------------------------------
+
+    int functorIndex(String theName, int theArity) {
+        final String key = theName + '/' + theArity;
+        Integer index = this.functorIndexes.get(key);
+        if (index == null) {
+            index = this.nbFunctors;
+            if (index == this.functorNames.length) {
+                final int newLength = index * 2;
+                this.functorNames = Arrays.copyOf(this.functorNames, newLength);
+                this.functorArities = Arrays.copyOf(this.functorArities, newLength);
+                this.functorArithmetic = Arrays.copyOf(this.functorArithmetic, newLength);
+                this.functorPredicates = Arrays.copyOf(this.functorPredicates, newLength);
+                Arrays.fill(this.functorPredicates, index, newLength, NOT_COMPILED);
+            }
+            this.functorNames[index] = Symbols.name(theName);
+            this.functorArities[index] = theArity;
+            this.nbFunctors++;
+            this.functorIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param theConstant
+     * @return The index of theConstant, registered if needed.
+     */
+    int constantIndex(Object theConstant) {
+        Integer index = this.constantIndexes.get(theConstant);
+        if (index == null) {
+            index = this.nbConstants;
+            if (index == this.constants.length) {
+                this.constants = Arrays.copyOf(this.constants, index * 2);
+            }
+            this.constants[index] = theConstant;
+            this.nbConstants++;
+            this.constantIndexes.put(theConstant, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param theConstant
+     * @return The index of theConstant, or -1 if it is not registered.
+     */
+    int existingConstantIndex(Object theConstant) {
+        final Integer index = this.constantIndexes.get(theConstant);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param theAtomic A {@link Number}, a {@link String} or a {@link Struct} of arity zero
+     * @return The cell of theAtomic, its constant is registered if needed.
+     */
+    long atomicCell(Object theAtomic) {
+        if (theAtomic instanceof Long && Wam.isInline((Long) theAtomic)) {
+            return Wam.cell(Wam.INT, (Long) theAtomic);
+        }
+        return Wam.cell(Wam.CON, constantIndex(theAtomic));
+    }
+
+    int literalIndex(long theCell) {
+        Integer index = this.literalIndexes.get(theCell);
+        if (index == null) {
+            index = this.nbLiterals;
+            if (index == this.literals.length) {
+                this.literals = Arrays.copyOf(this.literals, index * 2);
+            }
+            this.literals[index] = theCell;
+            this.nbLiterals++;
+            this.literalIndexes.put(theCell, index);
+        }
+        return index;
+    }
+
+    int predicateIndex(String theName, int theArity) {
+        final String key = theName + '/' + theArity;
+        Integer index = this.predicateIndexes.get(key);
+        if (index == null) {
+            index = this.nbPredicates;
+            if (index == this.predicateNames.length) {
+                this.predicateNames = Arrays.copyOf(this.predicateNames, index * 2);
+                this.predicateArities = Arrays.copyOf(this.predicateArities, index * 2);
+                this.predicateEntries = Arrays.copyOf(this.predicateEntries, index * 2);
+            }
+            this.predicateNames[index] = theName;
+            this.predicateArities[index] = theArity;
+            this.predicateEntries[index] = NOT_COMPILED;
+            this.nbPredicates++;
+            this.predicateIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Define an auxiliary predicate, not visible from the theory, such as the branches of a disjunction.
+     *
+     * @param thePrefix
+     * @param theArity
+     * @param theClauses Pairs of head and body (null for facts)
+     * @return The predicate index
+     */
+    int defineAuxiliary(String thePrefix, int theArity, List<Object[]> theClauses) {
+        final int index = predicateIndex(thePrefix + '_' + this.nbAuxiliaries++, theArity);
+        this.definitions.put(index, theClauses);
+        return index;
+    }
+
+    /**
+     * @param theKey Identifies the structure of a query, see {@link WamMachine} and {@link WamSolver}
+     * @param theParameters
+     * @param theGoal Whose arguments are theParameters
+     * @return The predicate solving theGoal with theParameters as arguments.
+     */
+    int queryPredicate(String theKey, List<Var> theParameters, Object theGoal) {
+        Integer index = this.queries.get(theKey);
+        if (index == null) {
+            final Object head = theParameters.isEmpty() ? QUERY_PREFIX : new Struct(QUERY_PREFIX, theParameters.toArray());
+            final List<Object[]> clauses = new ArrayList<Object[]>();
+            clauses.add(new Object[] { head, theGoal });
+            index = defineAuxiliary(QUERY_PREFIX, theParameters.size(), clauses);
+            this.queries.put(theKey, index);
+        }
+        return index;
+    }
+
+    /**
+     * @param theFunctor
+     * @return The predicate to call for a goal with theFunctor, or -1 if the goal is a control construct or a primitive.
+     */
+    int userPredicate(int theFunctor) {
+        int predicate = this.functorPredicates[theFunctor];
+        if (predicate == NOT_COMPILED) {
+            final String name = this.functorNames[theFunctor];
+            final int arity = this.functorArities[theFunctor];
+            if (WamCompiler.isControl(name, arity) || this.libraryContent.getPrimitive(name + '/' + arity) != null
+                    || this.libraryContent.getPrimitive(name + '/' + Struct.VARARG_ARITY_SIGNATURE) != null) {
+                predicate = -1;
+            } else {
+                predicate = predicateIndex(name, arity);
+            }
+            this.functorPredicates[theFunctor] = predicate;
+        }
+        return predicate;
+    }
+
+    int bridgeIndex(String theName) {
+        this.bridgedNames.add(theName);
+        return this.bridgedNames.size() - 1;
+    }
+
+    // ---------------------------------------------------------------------------
+    // What can be compiled
+    // ---------------------------------------------------------------------------
+
+    /**
+     * The compiled code does not implement if-then-else, its cut within a disjunction is transparent, and its negation does not behave as
+     * the one of the interpreter; goals using them, directly or through the predicates they call, are left to the interpreter. So are the
+     * calls of goals known at runtime only, since they could lead to such predicates.
+     *
+     * @param theGoal
+     * @param theBindings Bindings of theGoal, null for the body of a clause
+     * @return true if theGoal and all the predicates it may call can be compiled.
+     */
+    boolean isCompilable(Object theGoal, TermBindings theBindings) {
+        final Set<Integer> visited = new HashSet<Integer>();
+        if (!isCompilable(theGoal, theBindings, visited)) {
+            return false;
+        }
+        for (final Integer predicate : visited) {
+            this.compilable.put(predicate, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    /**
+     * @param theVisited Predicates being checked: a recursive call is assumed compilable, only the outermost call may conclude that all
+     *            visited predicates are.
+     */
+    private boolean isCompilable(Object theGoal, TermBindings theBindings, Set<Integer> theVisited) {
+        Object goal = theGoal;
+        TermBindings bindings = theBindings;
+        if (goal instanceof Var) {
+            if (bindings == null || ((Var) goal).isAnonymous()) {
+                return false;
+            }
+            final Binding binding = ((Var) goal).bindingWithin(bindings).followLinks();
+            if (binding.isFree()) {
+                return false;
+            }
+            goal = binding.getTerm();
+            bindings = binding.getTermBindings();
+        }
+        final String name;
+        final int arity;
+        if (goal instanceof String) {
+            name = (String) goal;
+            arity = 0;
+        } else if (goal instanceof Struct) {
+            name = ((Struct) goal).getName();
+            arity = ((Struct) goal).getArity();
+        } else {
+            return false;
+        }
+        if (arity >= 2 && (Struct.FUNCTOR_COMMA.equals(name) || Struct.FUNCTOR_SEMICOLON.equals(name))) {
+            final boolean isDisjunction = Struct.FUNCTOR_SEMICOLON.equals(name);
+            for (final Object arg : ((Struct) goal).getArgs()) {
+                if ((isDisjunction && WamCompiler.containsCut(arg)) || !isCompilable(arg, bindings, theVisited)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (arity == 2 && (FUNCTOR_IF_THEN.equals(name) || FUNCTOR_SOFT_IF_THEN.equals(name))) {
+            return false;
+        }
+        if (arity == 0 && Struct.FUNCTOR_CUT.equals(name)) {
+            return true;
+        }
+        if (Struct.FUNCTOR_CALL.equals(name)) {
+            return arity == 1 && isCompilable(((Struct) goal).getArg(0), bindings, theVisited);
+        }
+        final PrimitiveInfo primitive = primitive(name, arity);
+        if (primitive != null) {
+            return !isNegation(primitive);
+        }
+        return isCompilable(predicateIndex(name, arity), theVisited);
+    }
+
+    private boolean isCompilable(int thePredicate, Set<Integer> theVisited) {
+        final Boolean known = this.compilable.get(thePredicate);
+        if (known != null) {
+            return known;
+        }
+        if (!theVisited.add(thePredicate)) {
+            return true;
+        }
+        List<Object[]> clauses = this.definitions.get(thePredicate);
+        if (clauses == null) {
+            clauses = clausesOf(this.predicateNames[thePredicate], this.predicateArities[thePredicate]);
+            this.definitions.put(thePredicate, clauses);
+        }
+        for (final Object[] clause : clauses) {
+            if (clause[1] != null && !isCompilable(clause[1], null, theVisited)) {
+                this.compilable.put(thePredicate, Boolean.FALSE);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PrimitiveInfo primitive(String theName, int theArity) {
+        final PrimitiveInfo primitive = this.libraryContent.getPrimitive(theName + '/' + theArity);
+        if (primitive != null) {
+            return primitive;
+        }
+        return this.libraryContent.getPrimitive(theName + '/' + Struct.VARARG_ARITY_SIGNATURE);
+    }
+
+    // ---------------------------------------------------------------------------
+    // Compilation of predicates
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @param thePredicate
+     * @return The address where to jump to call thePredicate, compiled if needed.
+     */
+    int entry(int thePredicate) {
+        final int entry = this.predicateEntries[thePredicate];
+        if (entry != NOT_COMPILED) {
+            return entry;
+        }
+        return compile(thePredicate);
+    }
+
+    private int compile(int thePredicate) {
+        final String name = this.predicateNames[thePredicate];
+        final int arity = this.predicateArities[thePredicate];
+        List<Object[]> clauses = this.definitions.get(thePredicate);
+        if (clauses == null) {
+            clauses = clausesOf(name, arity);
+        }
+        final int nbClauses = clauses.size();
+        final int[] addresses = new int[nbClauses];
+        final long[] keys = new long[nbClauses];
+        for (int i = 0; i < nbClauses; i++) {
+            final Object head = clauses.get(i)[0];
+            addresses[i] = this.compiler.compileClause(head, clauses.get(i)[1]);
+            keys[i] = arity == 0 ? NO_KEY : firstArgumentKey(((Struct) head).getArg(0));
+        }
+        final int entry = index(arity, addresses, keys);
+        this.predicateEntries[thePredicate] = entry;
+        this.definitions.remove(thePredicate);
+        return entry;
+    }
+
+    private List<Object[]> clausesOf(String theName, int theArity) {
+        final Object goal;
+        if (theArity == 0) {
+            goal = theName;
+        } else {
+            final Object[] args = new Object[theArity];
+            for (int i = 0; i < theArity; i++) {
+                args[i] = new Var("A" + i);
+            }
+            goal = TermApi.normalize(new Struct(theName, args), null);
+        }
+        final TermBindings goalBindings = new TermBindings(goal);
+        final List<Object[]> result = new ArrayList<Object[]>();
+        for (final ClauseProvider provider : this.prolog.getTheoryManager().getClauseProviders()) {
+            for (final Clause clause : provider.listMatchingClauses(goal, goalBindings)) {
+                final Object head = clause.getHead();
+                final boolean sameName = head instanceof Struct ? ((Struct) head).getName().equals(theName) : theName.equals(head);
+                final int headArity = head instanceof Struct ? ((Struct) head).getArity() : 0;
+                if (sameName && headArity == theArity) {
+                    result.add(new Object[] { head, clause.isFact() ? null : clause.getBody() });
+                }
+            }
+        }
+        return result;
+    }
+
+    private long firstArgumentKey(Object theArgument) {
+        if (theArgument instanceof Var) {
+            return NO_KEY;
+        }
+        if (theArgument instanceof Struct && ((Struct) theArgument).getArity() > 0) {
+            final Struct struct = (Struct) theArgument;
+            return Wam.cell(Wam.FUN, functorIndex(struct.getName(), struct.getArity()));
+        }
+        return atomicCell(theArgument);
+    }
+
+    private int index(int theArity, int[] theAddresses, long[] theKeys) {
+        final int nbClauses = theAddresses.length;
+        if (nbClauses == 0) {
+            return FAIL_ADDRESS;
+        }
+        if (nbClauses == 1) {
+            return theAddresses[0];
+        }
+        // Group clauses by key of their first argument, clauses with a variable belong to all groups
+        final Map<Long, List<Integer>> groups = new LinkedHashMap<Long, List<Integer>>();
+        final List<Integer> variables = new ArrayList<Integer>();
+        final List<Integer> all = new ArrayList<Integer>();
+        for (int i = 0; i < nbClauses; i++) {
+            all.add(theAddresses[i]);
+            if (theKeys[i] == NO_KEY) {
+                variables.add(theAddresses[i]);
+                for (final List<Integer> group : groups.values()) {
+                    group.add(theAddresses[i]);
+                }
+            } else {
+                List<Integer> group = groups.get(theKeys[i]);
+                if (group == null) {
+                    group = new ArrayList<Integer>(variables);
+                    groups.put(theKeys[i], group);
+                }
+                group.add(theAddresses[i]);
+            }
+        }
+        final int chainOfAll = chain(theArity, all);
+        if (groups.isEmpty()) {
+            return chainOfAll;
+        }
+        final long[] keys = new long[groups.size()];
+        final int[] labels = new int[groups.size()];
+        int i = 0;
+        for (final Map.Entry<Long, List<Integer>> group : groups.entrySet()) {
+            keys[i] = group.getKey();
+            labels[i] = chain(theArity, group.getValue());
+            i++;
+        }
+        final SwitchTable table = new SwitchTable(chainOfAll, chain(theArity, variables), keys, labels);
+        if (this.nbSwitchTables == this.switchTables.length) {
+            this.switchTables = Arrays.copyOf(this.switchTables, this.nbSwitchTables * 2);
+        }
+        this.switchTables[this.nbSwitchTables] = table;
+        return emit(Wam.SWITCH_ON_TERM, this.nbSwitchTables++);
+    }
+
+    /**
+     * @return The address of a chain of try/retry/trust instructions over theClauses.
+     */
+    private int chain(int theArity, List<Integer> theClauses) {
+        final int nbClauses = theClauses.size();
+        if (nbClauses == 0) {
+            return FAIL_ADDRESS;
+        }
+        if (nbClauses == 1) {
+            return theClauses.get(0);
+        }
+        final int address = emit(Wam.TRY, theArity, theClauses.get(0));
+        for (int i = 1; i < nbClauses - 1; i++) {
+            emit(Wam.RETRY, theArity, theClauses.get(i));
+        }
+        emit(Wam.TRUST, theArity, theClauses.get(nbClauses - 1));
+        return address;
+    }
+
+    // ---------------------------------------------------------------------------
+    // Methods of java.lang.Object
+    // ---------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + "(generation=" + this.generation + ", " + this.nbPredicates + " predicates, " + this.codeSize
+                + " words of code)";
+    }
+
+    // ---------------------------------------------------------------------------
+    // Indexing
+    // ---------------------------------------------------------------------------
+
+    /**
+     * The operand of {@link Wam#SWITCH_ON_TERM}: labels by the cell of the first argument, in an open-addressing hash table.
+     */
+    static final class SwitchTable {
+        final int variableLabel;
+        final int defaultLabel;
+        private final long[] keys;
+        private final int[] labels;
+        private final int mask;
+
+        SwitchTable(int theVariableLabel, int theDefaultLabel, long[] theKeys, int[] theLabels) {
+            this.variableLabel = theVariableLabel;
+            this.defaultLabel = theDefaultLabel;
+            int capacity = 4;
+            while (capacity < theKeys.length * 2) {
+                capacity *= 2;
+            }
+            this.keys = new long[capacity];
+            this.labels = new int[capacity];
+            Arrays.fill(this.labels, -1);
+            this.mask = capacity - 1;
+            for (int i = 0; i < theKeys.length; i++) {
+                int slot = hash(theKeys[i]) & this.mask;
+                while (this.labels[slot] >= 0) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.keys[slot] = theKeys[i];
+                this.labels[slot] = theLabels[i];
+            }
+        }
+
+        int label(long theKey) {
+            int slot = hash(theKey) & this.mask;
+            while (this.labels[slot] >= 0) {
+                if (this.keys[slot] == theKey) {
+                    return this.labels[slot];
+                }
+                slot = (slot + 1) & this.mask;
+            }
+            return this.defaultLabel;
+        }
+
+        private static int hash(long theKey) {
+            final int h = (int) (theKey ^ (theKey >>> 32)) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+}
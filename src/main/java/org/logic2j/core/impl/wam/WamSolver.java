@@ -0,0 +1,357 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.symbol.Var;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.impl.DefaultSolver;
+import org.logic2j.core.impl.PrologImplementation;
+import org.logic2j.core.impl.PrologReferenceImplementation;
+import org.logic2j.core.impl.theory.TheoryManager;
+
+/**
+ * A {@link Solver} that compiles clauses into the instructions of a Warren Abstract Machine, and executes them on arrays of cells instead
+ * of {@link Binding}s. Install it with {@link PrologReferenceImplementation#setSolver(Solver)}.
+ * <p/>
+ * Predicates are compiled when first called, with indexing on their first argument; the compiled code is discarded whenever the theory
+ * changes (see {@link TheoryManager#getGeneration()}). Disjunctions and negations are compiled into auxiliary predicates. The unification,
+ * arithmetic and comparison primitives of the core library are executed by the machine itself, other primitives are invoked with terms
+ * converted from the cells and their solutions are converted back; as in {@link org.logic2j.core.impl.IterativeSolver} this assumes that
+ * primitives yield a finite number of solutions.
+ * <p/>
+ * Goals that cannot be compiled, see {@link #isCompilable(Object, TermBindings)}, are solved by a {@link DefaultSolver}. An instance of
+ * this class must not be used by several threads at once.
+ */
+public class WamSolver implements Solver {
+    static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WamSolver.class);
+
+    private static final String ANSWER = "$answer";
+
+    private final PrologImplementation prolog;
+    private final Solver fallback;
+    private WamProgram program = null;
+    private WamMachine idleMachine = null;
+
+    public WamSolver(PrologImplementation theProlog) {
+        this.prolog = theProlog;
+        this.fallback = new DefaultSolver(theProlog);
+    }
+
+    /**
+     * Solves the goal in theGoalBindings's referrer. This method is reentrant: primitives such as not/1 or findall/3 will solve their
+     * sub-goals with a nested, independent {@link WamMachine}.
+     *
+     * @param theGoalBindings
+     * @param theSolutionListener
+     */
+    @Override
+    public Continuation solveGoal(final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        return solveGoal(SolverSession.current(), theGoalBindings, theSolutionListener);
+    }
+
+    /**
+     * The machine keeps its own trail within its cells, theSession is made current for the primitives it invokes, and used by the fallback
+     * {@link DefaultSolver}.
+     *
+     * @param theSession
+     * @param theGoalBindings
+     * @param theSolutionListener
+     */
+    @Override
+    public Continuation solveGoal(final SolverSession theSession, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        if (!isCompilable(theGoalBindings.getReferrer(), theGoalBindings)) {
+            return this.fallback.solveGoal(theSession, theGoalBindings, theSolutionListener);
+        }
+        final SolverSession previous = SolverSession.activate(theSession);
+        try {
+            return solveGoal(theGoalBindings.getReferrer(), theGoalBindings, theSolutionListener);
+        } finally {
+            SolverSession.activate(previous);
+        }
+    }
+
+    /**
+     * Compiled code only sees the clauses of the theory as they were when compiled, and its cells cannot represent the attributes of
+     * variables. A goal can be compiled if the only clause provider is the {@link TheoryManager} itself, without data fact providers nor
+     * tabled predicates, if none of its free variables carries a {@link org.logic2j.core.api.model.var.BindingAttribute}, and if neither
+     * the goal nor the predicates it may call use if-then-else, negation, a cut within a disjunction, or call a goal known at runtime only.
+     * 
+     * @param theGoal
+     * @param theGoalBindings
+     * @return true if theGoal can be solved by {@link #solveGoal(Object, TermBindings, SolutionListener)}.
+     */
+    public boolean isCompilable(final Object theGoal, final TermBindings theGoalBindings) {
+        final TheoryManager theoryManager = this.prolog.getTheoryManager();
+        if (theoryManager.hasDataFactProviders() || theoryManager.hasTabledPredicates()) {
+            return false;
+        }
+        for (final ClauseProvider provider : theoryManager.getClauseProviders()) {
+            if (provider != theoryManager) {
+                return false;
+            }
+        }
+        if (hasAttributedVariables(theGoal, theGoalBindings)) {
+            return false;
+        }
+        return currentProgram(theoryManager.getGeneration()).isCompilable(theGoal, theGoalBindings);
+    }
+
+    /**
+     * Solve a goal that is not necessarily the referrer of its bindings, typically a goal within the body of a clause being interpreted.
+     * The goal must be compilable, see {@link #isCompilable(Object, TermBindings)}.
+     * 
+     * @param theGoal
+     * @param theGoalBindings
+     * @param theSolutionListener
+     * @return The {@link Continuation} of solving.
+     */
+    public Continuation solveGoal(final Object theGoal, final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        final WamProgram currentProgram = currentProgram(this.prolog.getTheoryManager().getGeneration());
+        final WamMachine machine = acquireMachine(currentProgram);
+        try {
+            return solveGoal(currentProgram, machine, theGoal, theGoalBindings, theSolutionListener);
+        } finally {
+            this.idleMachine = machine;
+        }
+    }
+
+    private Continuation solveGoal(final WamProgram currentProgram, final WamMachine machine, final Object theGoal,
+            final TermBindings theGoalBindings, final SolutionListener theSolutionListener) {
+        // Compile the structure of the goal, its arguments become the parameters of a query predicate
+        final StringBuilder key = new StringBuilder();
+        final List<Var> parameters = new ArrayList<Var>();
+        final List<Object[]> actuals = new ArrayList<Object[]>();
+        final Object goal = skeleton(theGoal, theGoalBindings, key, parameters, actuals, true);
+        if (goal instanceof Struct) {
+            ((Struct) goal).assignPrimitiveInfo(currentProgram.libraryContent);
+        }
+        final int predicate = currentProgram.queryPredicate(key.toString(), parameters, goal);
+
+        final Map<Binding, Long> cells = new IdentityHashMap<Binding, Long>();
+        final long[] arguments = new long[actuals.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = machine.fromTerm(actuals.get(i)[0], (TermBindings) actuals.get(i)[1], cells);
+        }
+        final Binding[] freeBindings = cells.keySet().toArray(new Binding[cells.size()]);
+        final long[] freeCells = new long[freeBindings.length];
+        for (int i = 0; i < freeCells.length; i++) {
+            freeCells[i] = cells.get(freeBindings[i]);
+        }
+
+        final SolutionListener answers = new SolutionListener() {
+
+            @Override
+            public Continuation onSolution() {
+                if (freeBindings.length == 0) {
+                    return theSolutionListener.onSolution();
+                }
+                return notifyAnswer(currentProgram, machine, freeBindings, freeCells, theSolutionListener);
+            }
+        };
+        return machine.run(predicate, arguments, answers);
+    }
+
+    /**
+     * Reuse the machine of the last goal solved, unless a goal is being solved by it (primitives such as not/1 solve goals from within
+     * another goal), so that calling compiled predicates from interpreted code does not allocate new memory areas each time.
+     */
+    private WamMachine acquireMachine(WamProgram theProgram) {
+        final WamMachine machine = this.idleMachine;
+        this.idleMachine = null;
+        if (machine != null && machine.program == theProgram) {
+            machine.reset();
+            return machine;
+        }
+        return new WamMachine(theProgram);
+    }
+
+    private WamProgram currentProgram(int theGeneration) {
+        if (this.program == null || this.program.generation != theGeneration) {
+            this.program = new WamProgram(this.prolog, theGeneration);
+        }
+        return this.program;
+    }
+
+    /**
+     * Bind the free variables of the goal to the values of their cells, notify the solution, then free them again. Cells still free are
+     * not bound: the first variable referring to such a cell remains free, and the others are linked to it.
+     */
+    static Continuation notifyAnswer(WamProgram theProgram, WamMachine theMachine, Binding[] theBindings, long[] theCells,
+            SolutionListener theSolutionListener) {
+        final Map<Integer, Var> vars = new HashMap<Integer, Var>();
+        final Map<String, Binding> owners = new HashMap<String, Binding>();
+        final List<Object> values = new ArrayList<Object>();
+        final List<Binding> toBind = new ArrayList<Binding>();
+        for (int i = 0; i < theBindings.length; i++) {
+            final long cell = theMachine.deref(theCells[i]);
+            final Object value = theMachine.toTerm(cell, vars);
+            if (Wam.tag(cell) == Wam.REF && !owners.containsKey(((Var) value).getName())) {
+                owners.put(((Var) value).getName(), theBindings[i]);
+            } else {
+                values.add(value);
+                toBind.add(theBindings[i]);
+            }
+        }
+        if (values.isEmpty()) {
+            return theSolutionListener.onSolution();
+        }
+        final Struct answer = (Struct) TermApi.normalize(new Struct(ANSWER, values.toArray()), theProgram.libraryContent);
+        final TermBindings answerBindings = new TermBindings(answer);
+        for (int i = 0; i < answerBindings.getSize(); i++) {
+            final Binding binding = answerBindings.getBinding(i);
+            final Binding owner = owners.get(binding.getReferrer().getName());
+            if (owner != null) {
+                binding.linkTo(owner);
+            }
+        }
+        final List<Binding> bound = new ArrayList<Binding>(toBind.size());
+        try {
+            for (int i = 0; i < toBind.size(); i++) {
+                if (toBind.get(i).bindTo(answer.getArg(i), answerBindings)) {
+                    bound.add(toBind.get(i));
+                }
+            }
+            return theSolutionListener.onSolution();
+        } finally {
+            for (final Binding binding : bound) {
+                binding.free();
+            }
+        }
+    }
+
+    /**
+     * Abstract a goal: control constructs are kept, the arguments of other goals are replaced by parameters.
+     *
+     * @param theTerm
+     * @param theBindings
+     * @param theKey Receives a description of the structure, to reuse the query predicate of goals of the same structure
+     * @param theParameters Receives the parameters
+     * @param theActuals Receives the actual term and bindings of each parameter
+     * @param isTopLevel
+     * @return The structure of theTerm.
+     */
+    private static Object skeleton(Object theTerm, TermBindings theBindings, StringBuilder theKey, List<Var> theParameters,
+            List<Object[]> theActuals, boolean isTopLevel) {
+        Object term = theTerm;
+        TermBindings bindings = theBindings;
+        if (term instanceof Var) {
+            final Var var = (Var) term;
+            if (var.isAnonymous()) {
+                throw new InvalidTermException("Cannot call the anonymous variable");
+            }
+            final Binding binding = var.bindingWithin(bindings).followLinks();
+            if (binding.isFree()) {
+                if (isTopLevel) {
+                    throw new InvalidTermException("Cannot call free variable " + var);
+                }
+                theKey.append('V');
+                return parameter(term, bindings, theParameters, theActuals);
+            }
+            term = binding.getTerm();
+            bindings = binding.getTermBindings();
+        }
+        if (term instanceof String) {
+            final String atom = (String) term;
+            theKey.append('A').append(atom.length()).append(':').append(atom);
+            return atom;
+        }
+        if (!(term instanceof Struct)) {
+            throw new InvalidTermException("Cannot call " + term + ", not a callable term");
+        }
+        final Struct struct = (Struct) term;
+        final String name = struct.getName();
+        final int arity = struct.getArity();
+        theKey.append('S').append(name.length()).append(':').append(name).append('/').append(arity).append('(');
+        final Struct result;
+        if (arity == 0) {
+            result = new Struct(struct);
+        } else {
+            final boolean control = arity >= 2 && (Struct.FUNCTOR_COMMA == name || Struct.FUNCTOR_SEMICOLON == name);
+            final Object[] args = new Object[arity];
+            for (int i = 0; i < arity; i++) {
+                if (control) {
+                    args[i] = skeleton(struct.getArg(i), bindings, theKey, theParameters, theActuals, false);
+                } else {
+                    args[i] = parameter(struct.getArg(i), bindings, theParameters, theActuals);
+                }
+            }
+            result = new Struct(name, args);
+        }
+        theKey.append(')');
+        return result;
+    }
+
+    /**
+     * @param theTerm
+     * @param theBindings
+     * @return true if a free variable of theTerm carries a {@link org.logic2j.core.api.model.var.BindingAttribute}.
+     */
+    private static boolean hasAttributedVariables(Object theTerm, TermBindings theBindings) {
+        Object term = theTerm;
+        TermBindings bindings = theBindings;
+        while (true) {
+            if (term instanceof Var) {
+                final Var var = (Var) term;
+                if (var.isAnonymous()) {
+                    return false;
+                }
+                final Binding binding = var.bindingWithin(bindings).followLinks();
+                if (binding.isFree()) {
+                    return binding.getAttribute() != null;
+                }
+                term = binding.getTerm();
+                bindings = binding.getTermBindings();
+            } else if (term instanceof Struct && ((Struct) term).getArity() > 0) {
+                final Struct struct = (Struct) term;
+                final int last = struct.getArity() - 1;
+                for (int i = 0; i < last; i++) {
+                    if (hasAttributedVariables(struct.getArg(i), bindings)) {
+                        return true;
+                    }
+                }
+                // Iterate rather than recurse on the last argument, which is the tail of lists
+                term = struct.getArg(last);
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private static Var parameter(Object theTerm, TermBindings theBindings, List<Var> theParameters, List<Object[]> theActuals) {
+        final Var parameter = new Var("P" + theParameters.size());
+        theParameters.add(parameter);
+        theActuals.add(new Object[] { theTerm, theBindings });
+        return parameter;
+    }
+
+}
@@ -26,6 +26,7 @@ import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 import org.logic2j.core.impl.FinalVarTermMarshaller;
 import org.logic2j.core.impl.PrologImplementation;
 
@@ -50,9 +51,12 @@ public class LibraryBase implements PLibrary {
      * @param theGoalStruct Regular argument for invoking a primitive
      * @param theTermBindings Regular argument for invoking a primitive
      * @param theListener Regular argument for invoking a primitive
+     * @param theSession To be passed to {@link #unify(SolverSession, Object, TermBindings, Object, TermBindings)} and the solver, avoiding
+     *            the lookup of the current session
      */
     @Override
-    public Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener) {
+    public Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener,
+            SolverSession theSession) {
         return PLibrary.NO_DIRECT_INVOCATION_USE_REFLECTION;
     }
 
@@ -73,6 +77,17 @@ public class LibraryBase implements PLibrary {
         this.prolog.getUnifier().deunify();
     }
 
+    /**
+     * Same as {@link #unify(Object, TermBindings, Object, TermBindings)} within theSession.
+     */
+    protected boolean unify(SolverSession theSession, Object t1, TermBindings theBindings1, Object t2, TermBindings theBindings2) {
+        return this.prolog.getUnifier().unify(theSession, t1, theBindings1, t2, theBindings2);
+    }
+
+    protected void deunify(SolverSession theSession) {
+        this.prolog.getUnifier().deunify(theSession);
+    }
+
     /**
      * Notify theSolutionListener that a solution has been found.
      * 
@@ -106,6 +121,23 @@ public class LibraryBase implements PLibrary {
         return continuation;
     }
 
+    /**
+     * Same as {@link #notifyIfUnified(boolean, SolutionListener)} within theSession.
+     */
+    protected Continuation notifyIfUnified(SolverSession theSession, boolean unified, SolutionListener theListener) {
+        final Continuation continuation;
+        if (unified) {
+            try {
+                continuation = notifySolution(theListener);
+            } finally {
+                deunify(theSession);
+            }
+        } else {
+            continuation = Continuation.CONTINUE;
+        }
+        return continuation;
+    }
+
     /**
      * Make sure a {@link TermBindings} does not have a {@link TermBindings#getReferrer()} that is a free {@link Var}.
      * 
@@ -30,6 +30,7 @@ import org.logic2j.core.api.model.symbol.TermApi;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.Binding;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 import org.logic2j.core.api.solver.listener.SolutionListenerBase;
 import org.logic2j.core.impl.DefaultSolver;
 import org.logic2j.core.impl.PrologImplementation;
@@ -132,14 +133,15 @@ public class CoreLibrary extends LibraryBase {
     }
 
     @Override
-    public Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener) {
+    public Object dispatch(String theMethodName, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener,
+            SolverSession theSession) {
         final Object result;
         // Argument methodName is {@link String#intern()}alized so OK to check by reference
         final int arity = theGoalStruct.getArity();
         if (arity == 1) {
             final Object arg0 = theGoalStruct.getArg(0);
             if (theMethodName == "not") {
-                result = not(theListener, theTermBindings, arg0);
+                result = not(theSession, theListener, theTermBindings, arg0);
             } else if (theMethodName == "var") {
                 result = var(theListener, theTermBindings, arg0);
             } else {
@@ -149,7 +151,7 @@ public class CoreLibrary extends LibraryBase {
             final Object arg0 = theGoalStruct.getArg(0);
             final Object arg1 = theGoalStruct.getArg(1);
             if (theMethodName == "unify") {
-                result = unify(theListener, theTermBindings, arg0, arg1);
+                result = unify(theSession, theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "expression_greater_equal_than") {
                 result = expression_greater_equal_than(theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "expression_greater_than") {
@@ -161,7 +163,7 @@ public class CoreLibrary extends LibraryBase {
             } else if (theMethodName == "expression_equals") {
                 result = expression_equals(theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "is") {
-                result = is(theListener, theTermBindings, arg0, arg1);
+                result = is(theSession, theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "plus") {
                 result = plus(theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "minus") {
@@ -169,7 +171,7 @@ public class CoreLibrary extends LibraryBase {
             } else if (theMethodName == "multiply") {
                 result = multiply(theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "notUnify") {
-                result = notUnify(theListener, theTermBindings, arg0, arg1);
+                result = notUnify(theSession, theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "clause") {
                 result = clause(theListener, theTermBindings, arg0, arg1);
             } else if (theMethodName == "predicate2PList") {
@@ -184,7 +186,7 @@ public class CoreLibrary extends LibraryBase {
             final Object arg1 = theGoalStruct.getArg(1);
             final Object arg2 = theGoalStruct.getArg(2);
             if (theMethodName == "findall") {
-                result = findall(theListener, theTermBindings, arg0, arg1, arg2);
+                result = findall(theSession, theListener, theTermBindings, arg0, arg1, arg2);
             } else {
                 result = NO_DIRECT_INVOCATION_USE_REFLECTION;
             }
@@ -269,20 +271,28 @@ public class CoreLibrary extends LibraryBase {
 
     @Primitive(name = "=")
     public Continuation unify(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
-        final boolean unified = unify(t1, theTermBindings, t2, theTermBindings);
-        return notifyIfUnified(unified, theListener);
+        return unify(SolverSession.current(), theListener, theTermBindings, t1, t2);
+    }
+
+    private Continuation unify(SolverSession theSession, SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        final boolean unified = unify(theSession, t1, theTermBindings, t2, theTermBindings);
+        return notifyIfUnified(theSession, unified, theListener);
     }
 
     @Primitive(name = "\\=")
     public Continuation notUnify(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
-        final boolean unified = unify(t1, theTermBindings, t2, theTermBindings);
+        return notUnify(SolverSession.current(), theListener, theTermBindings, t1, t2);
+    }
+
+    private Continuation notUnify(SolverSession theSession, SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        final boolean unified = unify(theSession, t1, theTermBindings, t2, theTermBindings);
         Continuation continuation = Continuation.CONTINUE;
         if (!unified) {
             continuation = notifySolution(theListener);
         }
         // TODO Why not "else"?
         if (unified) {
-            deunify();
+            deunify(theSession);
         }
         return continuation;
     }
@@ -301,6 +311,10 @@ public class CoreLibrary extends LibraryBase {
     @Primitive(synonyms = "\\+")
     // Surprisingly enough the operator \+ means "not provable".
     public Continuation not(final SolutionListener theListener, TermBindings theTermBindings, Object theGoal) {
+        return not(SolverSession.current(), theListener, theTermBindings, theGoal);
+    }
+
+    private Continuation not(SolverSession theSession, final SolutionListener theListener, TermBindings theTermBindings, Object theGoal) {
         final TermBindings subGoalBindings = theTermBindings.narrow(theGoal, Object.class);
         ensureBindingIsNotAFreeVar(subGoalBindings, "\\+/1");
 
@@ -318,7 +332,7 @@ public class CoreLibrary extends LibraryBase {
         final NegationListener callListener = new NegationListener();
         // The following line seems to work OK but unsure if we can afford this I doubt
         // getProlog().getSolver().solveGoal(subGoalBindings, callListener);
-        getProlog().getSolver().solveGoal(subGoalBindings, callListener);
+        getProlog().getSolver().solveGoal(theSession, subGoalBindings, callListener);
         if (!callListener.found) {
             theListener.onSolution();
         }
@@ -327,6 +341,11 @@ public class CoreLibrary extends LibraryBase {
 
     @Primitive
     public Continuation findall(SolutionListener theListener, final TermBindings theTermBindings, final Object theTemplate, final Object theGoal, final Object theResult) {
+        return findall(SolverSession.current(), theListener, theTermBindings, theTemplate, theGoal, theResult);
+    }
+
+    private Continuation findall(SolverSession theSession, SolutionListener theListener, final TermBindings theTermBindings, final Object theTemplate,
+            final Object theGoal, final Object theResult) {
         final TermBindings subGoalBindings = theTermBindings.narrow(theGoal, Object.class);
         ensureBindingIsNotAFreeVar(subGoalBindings, "findall/3");
 
@@ -349,7 +368,7 @@ public class CoreLibrary extends LibraryBase {
         };
 
         // Now solve the target sub goal
-        getProlog().getSolver().solveGoal(subGoalBindings, listenerForSubGoal);
+        getProlog().getSolver().solveGoal(theSession, subGoalBindings, listenerForSubGoal);
 
         // Convert all results into a prolog list structure
         // Note on var indexes: all variables present in the projection term will be
@@ -359,8 +378,8 @@ public class CoreLibrary extends LibraryBase {
         final Struct plist = Struct.createPList(javaResults);
 
         // And unify with result
-        final boolean unified = unify(theResult, theTermBindings, plist, theTermBindings);
-        return notifyIfUnified(unified, theListener);
+        final boolean unified = unify(theSession, theResult, theTermBindings, plist, theTermBindings);
+        return notifyIfUnified(theSession, unified, theListener);
     }
 
     /**
@@ -394,7 +413,7 @@ public class CoreLibrary extends LibraryBase {
         }
         final Struct realHead = ReflectUtils.safeCastNotNull("dereferencing argumnent for clause/2", dereferencedBinding.getTerm(), Struct.class);
         for (final ClauseProvider cp : getProlog().getTheoryManager().getClauseProviders()) {
-            for (final Clause clause : cp.listMatchingClauses(realHead, theTermBindings)) {
+            for (final Clause clause : cp.listMatchingClauses(realHead, dereferencedBinding.getTermBindings())) {
                 // Clone the clause so that we can unify against its bindings
                 final Clause clauseToUnify = new Clause(clause);
                 final boolean headUnified = unify(clauseToUnify.getHead(), clauseToUnify.getTermBindings(), realHead, dereferencedBinding.getTermBindings());
@@ -450,12 +469,16 @@ public class CoreLibrary extends LibraryBase {
 
     @Primitive
     public Continuation is(SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
+        return is(SolverSession.current(), theListener, theTermBindings, t1, t2);
+    }
+
+    private Continuation is(SolverSession theSession, SolutionListener theListener, TermBindings theTermBindings, Object t1, Object t2) {
         final Object evaluated = TermApi.evaluate(t2, theTermBindings);
         if (evaluated == null) {
             return Continuation.CONTINUE;
         }
-        final boolean unified = unify(t1, theTermBindings, evaluated, theTermBindings);
-        return notifyIfUnified(unified, theListener);
+        final boolean unified = unify(theSession, t1, theTermBindings, evaluated, theTermBindings);
+        return notifyIfUnified(theSession, unified, theListener);
     }
 
     // ---------------------------------------------------------------------------
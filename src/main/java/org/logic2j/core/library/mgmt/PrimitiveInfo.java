@@ -26,7 +26,9 @@ import org.logic2j.core.api.SolutionListener;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.exception.RecursionException;
 import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Symbols;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 
 /**
  * Describe a {@link Primitive}, which is either a:
@@ -72,12 +74,24 @@ public class PrimitiveInfo {
         this.library = theLibrary;
         this.name = theName;
         this.method = theMethod;
-        this.methodName = theMethod.getName().intern();
+        this.methodName = Symbols.name(theMethod.getName());
         this.isVarargs = theVarargs;
     }
 
     public Object invoke(Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener) {
-        final Object result = this.library.dispatch(this.methodName, theGoalStruct, theTermBindings, theListener);
+        return invoke(SolverSession.current(), theGoalStruct, theTermBindings, theListener);
+    }
+
+    /**
+     * @param theSession Passed to {@link PLibrary#dispatch(String, Struct, TermBindings, SolutionListener, SolverSession)}; primitives invoked
+     *            by reflection work within the session current for this thread.
+     * @param theGoalStruct
+     * @param theTermBindings
+     * @param theListener
+     * @return The result of the primitive.
+     */
+    public Object invoke(SolverSession theSession, Struct theGoalStruct, TermBindings theTermBindings, SolutionListener theListener) {
+        final Object result = this.library.dispatch(this.methodName, theGoalStruct, theTermBindings, theListener, theSession);
         if (result != PLibrary.NO_DIRECT_INVOCATION_USE_REFLECTION) {
             return result;
         }
@@ -30,7 +30,9 @@ import org.logic2j.core.api.model.symbol.Struct;
 import org.logic2j.core.api.model.symbol.Term;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.BindingAttribute;
 import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
 import org.logic2j.core.impl.unify.BindingTrail;
 
 /**
@@ -145,6 +147,8 @@ public class DelegatingUnifier implements Unifier {
             // Bind the free var
             if (binding1.bindTo(term2, theBindings2)) {
                 BindingTrail.addBinding(binding1);
+                final BindingAttribute attribute = binding1.getAttribute();
+                return attribute == null || attribute.onBind(binding1);
             }
             return true;
         } else if (binding1.isLiteral()) {
@@ -166,4 +170,27 @@ public class DelegatingUnifier implements Unifier {
     public boolean unify(Object goalTerm, TermBindings theGoalBindings, DataFact dataFact) {
         throw new PrologNonSpecificError("Not implemented");
     }
+
+    /**
+     * The unification methods invoked by reflection use the trail of the current session, so make theSession current meanwhile.
+     */
+    @Override
+    public boolean unify(SolverSession theSession, Object term1, TermBindings theBindings1, Object term2, TermBindings theBindings2) {
+        final SolverSession previous = SolverSession.activate(theSession);
+        try {
+            return unify(term1, theBindings1, term2, theBindings2);
+        } finally {
+            SolverSession.activate(previous);
+        }
+    }
+
+    @Override
+    public boolean unify(SolverSession theSession, Object goalTerm, TermBindings theGoalBindings, DataFact dataFact) {
+        throw new PrologNonSpecificError("Not implemented");
+    }
+
+    @Override
+    public void deunify(SolverSession theSession) {
+        BindingTrail.undoBindingsUntilPreviousMark(theSession.getTrail());
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.library.clpfd;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.impl.PrologReferenceImplementation.InitLevel;
+
+public class FiniteDomainLibraryTest extends PrologTestBase {
+
+    @Override
+    protected InitLevel initLevel() {
+        return InitLevel.L2_BASE_LIBRARIES;
+    }
+
+    @Before
+    public void loadFiniteDomainLibrary() {
+        loadLibrary(new FiniteDomainLibrary(this.prolog));
+    }
+
+    @Test
+    public void domains() {
+        assertEquals(term("1..3"), assertOneSolution("X in 1..3, fd_dom(X, D)").binding("D"));
+        assertEquals(term("1..2\\/4..5"), assertOneSolution("X in 1..5, X #\\= 3, fd_dom(X, D)").binding("D"));
+        assertEquals(term("inf..sup"), assertOneSolution("fd_dom(X, D)").binding("D"));
+        assertOneSolution("X in 1..3, X = 2");
+        assertNoSolution("X in 1..3, X = 4");
+        assertNoSolution("X in 1..3, X in 4..6");
+        assertOneSolution("3 in 1..5");
+        assertNoSolution("[X, Y] ins 1..2, X = 0");
+    }
+
+    @Test
+    public void propagation() {
+        assertEquals(term("4..7"), assertOneSolution("X in 0..10, Y in 3..6, X #= Y + 1, fd_dom(X, D)").binding("D"));
+        assertEquals(term(4), assertOneSolution("X in 1..5, X #> 3, X #< 5").binding("X"));
+        assertEquals(term(7), assertOneSolution("X #= 3 * Y + 1, Y = 2").binding("X"));
+        assertEquals(term(2), assertOneSolution("7 #= 3 * Y + 1").binding("Y"));
+        assertNoSolution("X in 1..3, Y in 1..3, X #< Y, Y #< X");
+        assertNoSolution("X #= Y, X in 1..2, Y in 3..4");
+        assertEquals(term(2), assertOneSolution("X in 1..2, Y in 2..3, X = Y").binding("X"));
+        // Undone upon backtracking
+        assertEquals(termList("4..5", "3..5", "2..5"), this.prolog.solve("member(X, [3, 2, 1]), Y in 1..5, Y #> X, fd_dom(Y, D)").all().binding("D"));
+    }
+
+    @Test
+    public void allDifferentAndLabel() {
+        assertNSolutions(6, "L = [X, Y, Z], L ins 1..3, all_different(L), label(L)");
+        assertEquals(term("[1, 2]"), assertOneSolution("L = [X, Y], L ins 1..2, X #< Y, label(L)").binding("L"));
+        assertNoSolution("L = [X, Y, Z], L ins 1..2, all_different(L), label(L)");
+        assertNSolutions(4, "X in 0..3, label([X])");
+    }
+
+    @Test(expected = InvalidTermException.class)
+    public void labelInfiniteDomain() {
+        assertOneSolution("X #> 3, label([X])");
+    }
+
+    @Test(expected = InvalidTermException.class)
+    public void nonLinear() {
+        assertOneSolution("X * Y #= 6");
+    }
+
+    @Test
+    public void queens() {
+        loadTheoryFromTestResourcesDir("clpfd/queens.pl");
+        assertEquals(term("[2, 4, 1, 3]"), this.prolog.solve("queens_fd(4, Qs)").all().binding("Qs").get(0));
+        assertNSolutions(2, "queens_fd(4, _)");
+        assertNSolutions(92, "queens_fd(8, _)");
+    }
+
+}
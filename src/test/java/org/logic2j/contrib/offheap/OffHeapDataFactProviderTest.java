@@ -0,0 +1,89 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.contrib.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.exception.InvalidTermException;
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+import org.logic2j.core.api.model.symbol.Struct;
+
+public class OffHeapDataFactProviderTest extends PrologTestBase {
+
+    private OffHeapDataFactProvider provider;
+
+    @Before
+    public void addFacts() {
+        this.provider = new OffHeapDataFactProvider();
+        for (int i = 0; i < 5000; i++) {
+            this.provider.addFact("order", i, "customer" + (i % 50), i % 7 == 0 ? "open" : "closed", i * 1.5);
+        }
+        this.provider.addFact("big", Long.MAX_VALUE);
+        getProlog().getTheoryManager().addDataFactProvider(this.provider);
+    }
+
+    @Test
+    public void storage() {
+        assertEquals(5001, this.provider.getNbFacts());
+        assertTrue(this.provider.getOffHeapBytes() >= 5000 * 4 * 8);
+    }
+
+    @Test
+    public void unboundGoal() {
+        assertNSolutions(5000, "order(_, _, _, _)");
+    }
+
+    @Test
+    public void boundArguments() {
+        assertNSolutions(100, "order(_, customer3, _, _)");
+        assertNSolutions(14, "order(_, customer3, open, _)");
+        assertEquals("customer21", assertOneSolution("order(4321, X, _, _)").binding("X"));
+        assertEquals(Double.valueOf(15.0), assertOneSolution("order(10, _, _, X)").binding("X"));
+        assertOneSolution("order(14, customer14, open, _)");
+        assertNoSolution("order(11, customer10, _, _)");
+        assertNoSolution("order(_, nobody, _, _)");
+        assertNoSolution("order(_, _, _, _, _)");
+        assertOneSolution("big(X), X > 0");
+    }
+
+    @Test
+    public void argumentsBoundByUnification() {
+        assertNSolutions(100, "X = customer3, order(_, X, _, _)");
+        assertNSolutions(14, "member(S, [open]), order(N, customer3, S, _), N > 0");
+    }
+
+    @Test
+    public void bufferSize() {
+        assertEquals(1 << 30, OffHeapDataFactProvider.bufferSize(1 << 26, 16));
+    }
+
+    @Test(expected = PrologNonSpecificError.class)
+    public void bufferSizeBeyondByteBuffer() {
+        OffHeapDataFactProvider.bufferSize(1 << 27, 16);
+    }
+
+    @Test(expected = InvalidTermException.class)
+    public void onlyAtomicArguments() {
+        this.provider.addFact("order", new Struct("f", "x"));
+    }
+
+}
@@ -39,6 +39,7 @@ import org.logic2j.core.api.solver.holder.UniqueSolutionHolder;
 import org.logic2j.core.impl.PrologImplementation;
 import org.logic2j.core.impl.PrologReferenceImplementation;
 import org.logic2j.core.impl.PrologReferenceImplementation.InitLevel;
+import org.logic2j.core.impl.theory.DefaultTheoryManager;
 import org.logic2j.core.impl.theory.TheoryContent;
 import org.logic2j.core.impl.theory.TheoryManager;
 import org.logic2j.core.impl.unify.BindingTrailTestUtils;
@@ -241,6 +242,16 @@ public abstract class PrologTestBase {
         }
     }
 
+    /**
+     * Load a theory from its text, and add it to the current one.
+     * 
+     * @param theTheoryText
+     */
+    protected void loadTheoryText(CharSequence theTheoryText) {
+        final DefaultTheoryManager manager = (DefaultTheoryManager) this.prolog.getTheoryManager();
+        manager.addTheory(manager.load(theTheoryText));
+    }
+
     protected File[] allTheoryFilesFromTestResourceDir() {
         final FilenameFilter filesOnly = new FilenameFilter() {
 
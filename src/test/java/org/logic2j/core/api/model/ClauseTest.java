@@ -0,0 +1,93 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.TermApi;
+import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * Check the pre-unification test of {@link Clause}s.
+ */
+public class ClauseTest extends PrologTestBase {
+
+    private boolean mayUnify(String theClause, String theGoal) {
+        final Clause clause = new Clause(getProlog(), unmarshall(theClause));
+        final Object goal = unmarshall(theGoal);
+        final Object[] keys = TermApi.dereferencedArgumentKeys(goal, new TermBindings(goal));
+        return clause.mayUnifyWith(TermApi.getPredicateSignature(goal).intern(), keys);
+    }
+
+    @Test
+    public void mayUnifyWith() {
+        assertTrue(mayUnify("country(ch, switzerland)", "country(X, Y)"));
+        assertTrue(mayUnify("country(ch, switzerland)", "country(ch, Y)"));
+        assertTrue(mayUnify("country(ch, switzerland)", "country(X, switzerland)"));
+        assertTrue(mayUnify("country(X, f(Y))", "country(1, f(2))"));
+        assertTrue(mayUnify("country(ch, switzerland) :- true", "country(ch, switzerland)"));
+        assertFalse(mayUnify("country(ch, switzerland)", "country(X, france)"));
+        assertFalse(mayUnify("country(ch, switzerland)", "country(1, Y)"));
+        assertFalse(mayUnify("country(X, f(Y))", "country(1, g(2))"));
+        assertFalse(mayUnify("country(X, f(Y))", "country(1, f(2, 3))"));
+        assertFalse(mayUnify("country(ch, switzerland)", "country(ch)"));
+        assertFalse(mayUnify("country(ch, switzerland)", "state(ch, switzerland)"));
+    }
+
+    @Test
+    public void noKeysWhenNoArgumentBound() {
+        final Object goal = unmarshall("country(X, Y)");
+        assertNull(TermApi.dereferencedArgumentKeys(goal, new TermBindings(goal)));
+    }
+
+    @Test
+    public void bindingsSharedOnlyWithoutVariables() {
+        final Clause fact = new Clause(getProlog(), unmarshall("country(ch, switzerland)"));
+        assertSame(fact.getTermBindings(), fact.newUnificationBindings());
+        final Clause rule = new Clause(getProlog(), unmarshall("country(X, Y) :- city(X, Y)"));
+        assertNotSame(rule.getTermBindings(), rule.newUnificationBindings());
+    }
+
+    @Test
+    public void unificationBindingsCopiedOnAccess() {
+        final Clause rule = new Clause(getProlog(), unmarshall("country(X, Y) :- city(X, Y)"));
+        final TermBindings vars = rule.newUnificationBindings(3);
+        final Binding x = vars.getBinding(0);
+        assertNotSame(rule.getTermBindings().getBinding(0), x);
+        assertSame(x, vars.getBinding(0));
+        assertEquals(3, x.getCreationDepth());
+        assertEquals(Binding.NOT_OWNED, rule.getTermBindings().getBinding(0).getCreationDepth());
+        // Shallow copies share the bindings, even those not accessed yet
+        final TermBindings head = vars.narrow(rule.getHead(), Struct.class);
+        assertSame(x, head.getBinding(0));
+        assertSame(head.getBinding(1), vars.getBinding(1));
+        assertTrue(x.bindTo("ch", new TermBindings("ch")));
+        assertTrue(rule.getTermBindings().getBinding(0).isFree());
+        assertEquals("{X=ch}", vars.explicitBindings(TermBindings.FreeVarRepresentation.SKIPPED).toString());
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.api.model.symbol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+/**
+ * Check the canonical instances returned by {@link Symbols}.
+ */
+public class SymbolsTest {
+
+    @Test
+    public void sameInstanceAsLiterals() {
+        assertSame("true", Symbols.name(new String("true")));
+        assertSame(Struct.FUNCTOR_COMMA, Symbols.name(new StringBuilder(",").toString()));
+    }
+
+    @Test
+    public void signatures() {
+        final String name = Symbols.name(new String("symbolsTest"));
+        assertEquals("symbolsTest/3", Symbols.signature(name, 3));
+        assertSame(Symbols.signature(name, 3), Symbols.signature(new String("symbolsTest"), 3));
+        assertSame(Symbols.signature(name, 0), Symbols.signature(name, 0));
+        assertSame(Symbols.name("symbolsTest/3"), Symbols.signature(name, 3));
+        final Struct struct = new Struct("symbolsTest", "a", "b", "c");
+        assertSame(Symbols.signature(name, 3), struct.getPredicateSignature());
+        assertSame(Symbols.signature(name, 0), TermApi.getPredicateSignature("symbolsTest"));
+    }
+
+    @Test
+    public void unusedNamesAreCollected() throws InterruptedException {
+        // Not a literal, which would remain referred to by this class
+        final String text = "symbolsTest" + System.nanoTime();
+        final WeakReference<String> signature = new WeakReference<String>(Symbols.signature(new String(text), 2));
+        for (int i = 0; i < 50 && signature.get() != null; i++) {
+            // Removing the collected functor releases its signatures
+            Symbols.size();
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(signature.get());
+        assertEquals(text + "/2", Symbols.signature(new String(text), 2));
+    }
+
+}
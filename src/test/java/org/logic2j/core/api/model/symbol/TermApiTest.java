@@ -23,6 +23,7 @@ import org.junit.Test;
 import org.logic2j.core.PrologTestBase;
 import org.logic2j.core.api.model.exception.InvalidTermException;
 import org.logic2j.core.api.model.var.Binding;
+import org.logic2j.core.api.model.var.TermBindings;
 import org.logic2j.core.impl.PrologReferenceImplementation.InitLevel;
 
 /**
@@ -106,6 +107,43 @@ public class TermApiTest extends PrologTestBase {
         assertEquals(0, nbVars);
     }
 
+    @Test
+    public void isGround() {
+        final Struct term = (Struct) TermApi.normalize(new Struct("f", new Struct("g", "a", Long.valueOf(1)), new Struct("h", new Var("X")),
+                new Struct("k", new Var("_"))), null);
+        assertFalse(term.isGround());
+        assertTrue(((Struct) term.getArg(0)).isGround());
+        assertFalse(((Struct) term.getArg(1)).isGround());
+        assertFalse(((Struct) term.getArg(2)).isGround());
+        assertTrue(((Struct) TermApi.normalize(new Struct("f", "a"), null)).isGround());
+        // Not known before normalization
+        assertFalse(new Struct("f", "a").isGround());
+    }
+
+    @Test
+    public void varTable() {
+        final Struct term = (Struct) TermApi.normalize(new Struct("f", new Var("X"), new Struct("g", new Var("Y")), new Var("_"), new Var("X")),
+                null);
+        final Var[] vars = term.getVarTable();
+        assertEquals(2, vars.length);
+        assertSame(term.getArg(0), vars[0]);
+        assertSame(((Struct) term.getArg(1)).getArg(0), vars[1]);
+        // Variables of a subterm keep their index within the whole term
+        final Var[] subVars = ((Struct) term.getArg(1)).getVarTable();
+        assertEquals(2, subVars.length);
+        assertNull(subVars[0]);
+        assertSame(vars[1], subVars[1]);
+        // Used for allocating bindings
+        final TermBindings bindings = new TermBindings(term);
+        assertEquals(2, bindings.getSize());
+        assertSame(vars[0], bindings.getBinding(0).getReferrer());
+        assertSame(vars[1], bindings.getBinding(1).getReferrer());
+        // Ground terms share the same empty table
+        final Struct ground = (Struct) TermApi.normalize(new Struct("f", "a"), null);
+        assertEquals(0, ground.getVarTable().length);
+        assertSame(ground.getVarTable(), ((Struct) TermApi.normalize(new Struct("g", "b"), null)).getVarTable());
+    }
+
     @Test
     public void selectTerm() {
         final Object term = unmarshall("a(b(c,c2),b2)");
@@ -220,6 +258,17 @@ public class TermApiTest extends PrologTestBase {
         assertTrue(orig.sameAs(subst));
     }
 
+    @Test
+    public void substituteStructWithGroundArgument() throws Exception {
+        final Binding orig = unmarshallAsBinding("f(g(a, b), X)");
+        final Binding target = unmarshallAsBinding("targetAtom");
+        orig.getTermBindings().getBinding(0).bindTo(target.getTerm(), target.getTermBindings());
+        //
+        final Binding subst = orig.substitute();
+        assertEquals("f(g(a, b), targetAtom)", subst.getTerm().toString());
+        assertSame(((Struct) orig.getTerm()).getArg(0), ((Struct) subst.getTerm()).getArg(0));
+    }
+
     @Test
     public void substituteStructWithFreeVar() throws Exception {
         final Binding orig = unmarshallAsBinding("f(a,X)");
@@ -20,13 +20,17 @@ package org.logic2j.core.functional;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Ignore;
 import org.junit.Test;
 import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.TermAdapter.FactoryMode;
 import org.logic2j.core.api.model.Solution;
 import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.solver.holder.MultipleSolutionsHolder;
 import org.logic2j.core.benchmark.BenchmarkTest;
 import org.logic2j.core.impl.PrologImplementation;
@@ -42,6 +46,8 @@ import org.logic2j.core.library.impl.io.IOLibrary;
 public class HigherLevelTest extends PrologTestBase {
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HigherLevelTest.class);
 
+    private static final int LONG_LIST_SIZE = 5000;
+
     @Override
     protected InitLevel initLevel() {
         return InitLevel.L2_BASE_LIBRARIES;
@@ -61,6 +67,22 @@ public class HigherLevelTest extends PrologTestBase {
         assertOneSolution("move(5, left, right, center)"); // Watch out 7 is the limit with Java's ridiculous default stack size
     }
 
+    /**
+     * Tail-recursive predicates over long lists must not consume the Java stack at each recursion: the body of the last clause is
+     * solved without nesting (last-call optimization).
+     */
+    @Test
+    public void lastCallOverLongList() {
+        final List<Long> elements = new ArrayList<Long>();
+        for (long i = 0; i < LONG_LIST_SIZE; i++) {
+            elements.add(i);
+        }
+        final Struct longList = Struct.createPList(elements);
+        assertEquals(1, this.prolog.solve(this.prolog.getTermAdapter().term("reverse", FactoryMode.ANY_TERM, longList, new Var("R"))).number());
+        assertEquals(1, this.prolog.solve(this.prolog.getTermAdapter().term("append", FactoryMode.ANY_TERM, longList, Struct.EMPTY_LIST, longList)).number());
+        assertEquals(1, this.prolog.solve(this.prolog.getTermAdapter().term("member", FactoryMode.ANY_TERM, Long.valueOf(LONG_LIST_SIZE - 1), longList)).number());
+    }
+
     /**
      * This simple Prolog program checks or generates change adding up to a dollar consisting of half-dollars, quarters, dimes, nickels, and
      * pennies.
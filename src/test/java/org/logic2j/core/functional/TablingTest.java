@@ -0,0 +1,135 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.logic2j.contrib.offheap.OffHeapDataFactProvider;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.exception.PrologNonSpecificError;
+
+/**
+ * Test predicates declared with the ":- table Name/Arity." directive.
+ */
+public class TablingTest extends PrologTestBase {
+
+    private static final String FIBONACCI = ":- table fib/2. " //
+            + "fib(0, 0). fib(1, 1). fib(N, R) :- N >= 2, N1 is N-1, N2 is N-2, fib(N1, R1), fib(N2, R2), R is R1+R2.";
+
+    private static final String PATH = ":- table path/2. " //
+            + "edge(a, b). edge(b, c). edge(c, a). edge(c, d). " //
+            + "path(X, Y) :- path(X, Z), edge(Z, Y). " //
+            + "path(X, Y) :- edge(X, Y).";
+
+    @Test
+    public void tableDirective() {
+        loadTheoryText(PATH);
+        assertTrue(this.prolog.getTheoryManager().hasTabledPredicates());
+        assertTrue(this.prolog.getTheoryManager().isTabled("path/2"));
+        assertFalse(this.prolog.getTheoryManager().isTabled("edge/2"));
+    }
+
+    /**
+     * Only the "table" directive is interpreted, other directives are not supported as clauses and are not silently ignored.
+     */
+    @Test(expected = PrologNonSpecificError.class)
+    public void otherDirectivesNotIgnored() {
+        loadTheoryText(":- dynamic(foo/1). " + PATH);
+    }
+
+    /**
+     * Without tabling, fib(30) would take over a million inferences and overflow the stack.
+     */
+    @Test
+    public void fibonacci() {
+        loadTheoryText(FIBONACCI);
+        assertEquals(term(832040), assertOneSolution("fib(30, X)").binding("X"));
+        assertOneSolution("fib(30, 832040)");
+        assertNoSolution("fib(30, 0)");
+    }
+
+    @Test
+    public void leftRecursionOverCycles() {
+        loadTheoryText(PATH);
+        assertEquals("[a, b, c, d]", sorted(assertNSolutions(4, "path(a, X)").binding("X").toString()));
+        assertNSolutions(3, "path(d, X) ; path(X, d)");
+        assertNSolutions(12, "path(X, Y)");
+        assertNSolutions(1, "path(a, d)", "path(a, X), !");
+        assertNoSolution("path(d, X)");
+    }
+
+    @Test
+    public void tablesClearedWhenTheoryChanges() {
+        loadTheoryText(PATH);
+        assertNSolutions(4, "path(a, X)");
+        loadTheoryText("edge(d, e).");
+        assertNSolutions(5, "path(a, X)");
+    }
+
+    @Test
+    public void tablesClearedWhenProviderAdded() {
+        loadTheoryText(PATH);
+        assertNSolutions(4, "path(a, X)");
+        final OffHeapDataFactProvider provider = new OffHeapDataFactProvider();
+        provider.addFact("edge", "d", "e");
+        this.prolog.getTheoryManager().addDataFactProvider(provider);
+        assertNSolutions(5, "path(a, X)");
+    }
+
+    @Test
+    public void concurrentEvaluations() throws Exception {
+        loadTheoryText(PATH);
+        loadTheoryText(FIBONACCI);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                final String goal = (i % 2 == 0) ? "path(X, Y)" : "fib(" + (20 + i) + ", X)";
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return String.valueOf(TablingTest.this.prolog.solve(goal).all().number());
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals((i % 2 == 0) ? "12" : "1", results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String sorted(String theList) {
+        final String[] elements = theList.substring(1, theList.length() - 1).split(", ");
+        Arrays.sort(elements);
+        return Arrays.toString(elements);
+    }
+
+}
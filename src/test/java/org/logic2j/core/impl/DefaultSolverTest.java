@@ -0,0 +1,184 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.api.solver.SolverSession;
+import org.logic2j.core.api.solver.listener.FirstSolutionListener;
+import org.logic2j.core.api.solver.listener.SolutionListenerBase;
+
+/**
+ * Deterministic calls, compilation of hot predicates, reordering and parallel solving of conjunctions by the {@link DefaultSolver}.
+ */
+public class DefaultSolverTest extends SolverTestBase {
+
+    @Override
+    protected Solver newSolver() {
+        return new DefaultSolver(this.prolog);
+    }
+
+    private DefaultSolver installSolver(boolean isCompilationEnabled, int theThreshold) {
+        final DefaultSolver solver = new DefaultSolver(this.prolog);
+        solver.setCompilationEnabled(isCompilationEnabled);
+        solver.setCompilationThreshold(theThreshold);
+        ((PrologReferenceImplementation) this.prolog).setSolver(solver);
+        return solver;
+    }
+
+    @Test
+    public void deterministicCalls() {
+        installSolver(false, 0);
+        loadTheoryText("first(X) :- member(X, [1,2,3]), !. twice(X) :- first(X), first(X). "
+                + "g :- first(_), !, true. g :- true.");
+        assertNSolutions(1, "first(X)", "twice(X)", "g");
+    }
+
+    /**
+     * Bindings made by primitives must be undone within the session given to the solver, not within the session of the thread.
+     */
+    @Test
+    public void explicitSession() {
+        loadTheoryText("p(R) :- (atom_length(abc, N) ; N = 5), R = N.");
+        for (final Solver solver : new Solver[] { new DefaultSolver(this.prolog), new IterativeSolver(this.prolog) }) {
+            final SolutionListenerBase listener = new SolutionListenerBase();
+            solver.solveGoal(new SolverSession(), new TermBindings(term("p(R)")), listener);
+            assertEquals(solver.toString(), 2, listener.getCounter());
+        }
+    }
+
+    @Test
+    public void compilationIsOptIn() {
+        assertFalse(new DefaultSolver(this.prolog).isCompilationEnabled());
+    }
+
+    @Test
+    public void sameSolutionsWhenCompiled() {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        for (final boolean isCompilationEnabled : new boolean[] { false, true }) {
+            installSolver(isCompilationEnabled, 0);
+            assertEquals("[[3,1,4,2], [2,4,1,3]]", this.prolog.solve("queens(4, Positions)").all().binding("Positions").toString());
+            assertNSolutions(92, "queens(8, _)");
+        }
+    }
+
+    @Test
+    public void sameSolutionsWithControlConstructsWhenCompiled() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryText("t2(X) :- (X = 1 ; X = 2, ! ; X = 3). t3(X) :- member(X, [1,2,3]), \\+ X = 2.");
+        for (final boolean isCompilationEnabled : new boolean[] { false, true }) {
+            installSolver(isCompilationEnabled, 0);
+            assertEquals("[negative]", this.prolog.solve("sign4(-5, X)").all().binding("X").toString());
+            assertEquals("[zero]", this.prolog.solve("sign4(0, X)").all().binding("X").toString());
+            assertEquals("[1, 2]", this.prolog.solve("t2(X)").all().binding("X").toString());
+            assertEquals("[1, 3]", this.prolog.solve("t3(X)").all().binding("X").toString());
+        }
+    }
+
+    @Test
+    public void compiledAfterThreshold() {
+        installSolver(true, 3);
+        loadTheoryText("p(1). p(2). q(X) :- p(X).");
+        for (int i = 0; i < 5; i++) {
+            assertNSolutions(2, "q(X)");
+            assertEquals(term("2"), assertOneSolution("q(X), X > 1").binding("X"));
+        }
+    }
+
+    @Test
+    public void recompiledWhenTheoryChanges() {
+        installSolver(true, 0);
+        loadTheoryText("p(1).");
+        assertNSolutions(1, "p(X)");
+        loadTheoryText("p(2).");
+        assertNSolutions(2, "p(X)");
+    }
+
+    @Test
+    public void goalReordering() {
+        final StringBuilder theory = new StringBuilder("small(3). small(1). tiny(Y) :- small(Y). join(X) :- big(X, Y), small(Y). ");
+        for (int i = 1; i <= 12; i++) {
+            theory.append("big(").append(i).append(", ").append(i % 4).append("). ");
+        }
+        loadTheoryText(theory);
+        final DefaultSolver solver = installSolver(false, 0);
+        assertEquals("[1, 3, 5, 7, 9, 11]", this.prolog.solve("big(X, Y), small(Y)").all().binding("X").toString());
+        solver.setGoalReorderingEnabled(true);
+        // The smaller predicate is solved first
+        assertEquals("[3, 7, 11, 1, 5, 9]", this.prolog.solve("big(X, Y), small(Y)").all().binding("X").toString());
+        assertEquals("[3, 7, 11, 1, 5, 9]", this.prolog.solve("join(X)").all().binding("X").toString());
+        // Goals are not moved across a cut, nor are predicates having rules
+        assertEquals(term("1"), assertOneSolution("big(X, Y), !, small(Y)").binding("X"));
+        assertEquals("[1, 3, 5, 7, 9, 11]", this.prolog.solve("big(X, Y), tiny(Y)").all().binding("X").toString());
+    }
+
+    /**
+     * Variables bound by a goal that is not moved make the goals after it more selective.
+     */
+    @Test
+    public void goalReorderingAfterBarrier() {
+        final StringBuilder theory = new StringBuilder("three(1). three(2). three(3). first(K) :- K = 1. ");
+        for (int i = 1; i <= 6; i++) {
+            theory.append("pair(").append(i).append(", a). pair(").append(i).append(", b). ");
+        }
+        loadTheoryText(theory);
+        final DefaultSolver solver = installSolver(false, 0);
+        solver.setGoalReorderingEnabled(true);
+        // With K bound, pair/2 has 2 solutions and three/1 has 3: pair/2 is solved first
+        assertEquals("[a, a, a, b, b, b]", this.prolog.solve("first(K), pair(K, V), three(Z)").all().binding("V").toString());
+        assertEquals("[a, a, a, b, b, b]", this.prolog.solve("K = 2, pair(K, V), three(Z)").all().binding("V").toString());
+    }
+
+    @Test
+    public void independentConjunctions() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryText("pair(X, Y) :- a(X), b(Y). chain(X, Z) :- ab(X, Y), Z = Y. nat(0). nat(N) :- nat(M), N is M + 1.");
+        final DefaultSolver solver = installSolver(false, 0);
+        final String[] goals = { "a(X), b(Y)", "pair(X, Y)", "a(X), ab(X, Y)", "chain(X, Y)", "a(X), b(Y), c(Z)" };
+        final List<String> sequentialSolutions = new ArrayList<String>();
+        for (final String goal : goals) {
+            sequentialSolutions.add(this.prolog.solve(goal).all().bindings().toString());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            solver.setConjunctionExecutor(executor);
+            for (int i = 0; i < goals.length; i++) {
+                assertEquals(sequentialSolutions.get(i), this.prolog.solve(goals[i]).all().bindings().toString());
+            }
+            assertNSolutions(1, "a(X), b(Y), !");
+            assertNSolutions(0, "a(X), b(4)");
+            // Infinitely many solutions after the first goal: solved sequentially
+            final TermBindings bindings = new TermBindings(term("a(X), nat(Y)"));
+            final FirstSolutionListener listener = new FirstSolutionListener(bindings);
+            solver.solveGoal(bindings, listener);
+            assertEquals(1, listener.getNbSolutions());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
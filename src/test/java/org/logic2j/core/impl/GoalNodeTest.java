@@ -0,0 +1,73 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.impl.GoalNode.Kind;
+import org.logic2j.core.impl.theory.DefaultTheoryManager;
+
+/**
+ * Check compilation of {@link Clause} bodies into {@link GoalNode}s, and solving them.
+ */
+public class GoalNodeTest extends PrologTestBase {
+
+    private GoalNode compiledBody(String theClause) {
+        return new Clause(getProlog(), unmarshall(theClause)).getCompiledBody();
+    }
+
+    @Test
+    public void compile() {
+        assertNull(compiledBody("a(1)"));
+        assertNull(compiledBody("a(1) :- true"));
+        final GoalNode body = compiledBody("a(X) :- b(X), (X > 1 ; !), call(c(X)), X");
+        assertEquals(Kind.CONJUNCTION, body.getKind());
+        assertEquals(4, body.getChildren().length);
+        assertEquals(Kind.PREDICATE, body.getChildren()[0].getKind());
+        final GoalNode disjunction = body.getChildren()[1];
+        assertEquals(Kind.DISJUNCTION, disjunction.getKind());
+        assertEquals(Kind.PRIMITIVE, disjunction.getChildren()[0].getKind());
+        assertNotNull(disjunction.getChildren()[0].getPrimitive());
+        assertEquals(Kind.CUT, disjunction.getChildren()[1].getKind());
+        assertEquals(Kind.CALL, body.getChildren()[2].getKind());
+        assertEquals(Kind.VARIABLE, body.getChildren()[3].getKind());
+    }
+
+    @Test
+    public void solveCompiledBodies() {
+        final DefaultTheoryManager manager = (DefaultTheoryManager) this.prolog.getTheoryManager();
+        final CharSequence theory = "n(1). n(2). n(3). " //
+                + "pair(X, Y) :- n(X), n(Y), X < Y. " //
+                + "first(X) :- n(X), !. " //
+                + "either(X) :- X = a ; X = b ; n(X). " //
+                + "apply(G) :- G. " //
+                + "apply_first(G) :- call(G), !.";
+        manager.addTheory(manager.load(theory));
+        assertNSolutions(3, "pair(X, Y)");
+        assertNSolutions(1, "first(X)", "apply_first(n(X))");
+        assertNSolutions(5, "either(X)");
+        assertNSolutions(3, "apply(n(X))");
+        assertNSolutions(2, "apply(pair(1, Y))");
+    }
+
+}
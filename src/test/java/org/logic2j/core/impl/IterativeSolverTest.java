@@ -0,0 +1,95 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.logic2j.core.api.Solver;
+
+/**
+ * Run goals with the {@link IterativeSolver}, in particular those that would overflow the Java stack with the {@link DefaultSolver}.
+ */
+public class IterativeSolverTest extends SolverTestBase {
+
+    @Override
+    protected Solver newSolver() {
+        return new IterativeSolver(this.prolog);
+    }
+
+    /**
+     * Unlike the {@link DefaultSolver}, a bound variable may be solved as a goal without call/1.
+     */
+    @Test
+    public void variableGoalsWithoutCall() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertNSolutions(3, "G = a(X), G", "G = (a(X), true), G");
+        assertNSolutions(0, "G = fail, G");
+    }
+
+    /**
+     * Same solutions as the {@link DefaultSolver}: the else branch is only tried when the condition fails.
+     */
+    @Test
+    public void sameSolutionsAsDefaultSolver() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryText("ite(X, R) :- (X > 0 -> R = pos ; R = nonpos).");
+        final String[] goals = { "ite(1, R)", "ite(0, R)", "(a(X) -> true ; X = none)", "findall(X-Y, (a(X), ite(X, Y)), L)",
+                "(fail -> X = 1 ; X = 2)", "(a(X) -> Y = 1)", "(fail -> X = 1)", "(X = 1, fail -> Y = a ; X = 2 -> Y = b ; Y = c)",
+                "(a(X), X > 1 -> Y = X ; Y = 0), b(Z)" };
+        final IterativeSolver iterativeSolver = (IterativeSolver) this.prolog.getSolver();
+        for (final String goal : goals) {
+            ((PrologReferenceImplementation) this.prolog).setSolver(new DefaultSolver(this.prolog));
+            final String expected = this.prolog.solve(goal).all().bindings().toString();
+            ((PrologReferenceImplementation) this.prolog).setSolver(iterativeSolver);
+            assertEquals(goal, expected, this.prolog.solve(goal).all().bindings().toString());
+        }
+        // The condition only prunes itself and the else branch, not the goals before it (the DefaultSolver also prunes a(X) here)
+        assertEquals("[small, big, big]", this.prolog.solve("a(X), (X > 1 -> Y = big ; Y = small)").all().binding("Y").toString());
+        // Soft-cut ("*->" is not an operator): all solutions of the condition, the else branch only when it has none
+        assertNSolutions(3, "'*->'(a(X), true) ; X = none", "'*->'(a(X), true)");
+        assertEquals(term(2), assertOneSolution("'*->'(fail, X = 1) ; X = 2").binding("X"));
+    }
+
+    @Test
+    public void queens() {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        assertEquals("[[3,1,4,2], [2,4,1,3]]", this.prolog.solve("queens(4, Positions)").all().binding("Positions").toString());
+        assertNSolutions(92, "queens(8, _)");
+    }
+
+    /**
+     * With the {@link DefaultSolver}, 7 is the limit with the default stack size.
+     */
+    @Test
+    public void hanoi() {
+        loadTheoryFromTestResourcesDir("hanoi.pl");
+        assertOneSolution("move(14,left,right,center)");
+    }
+
+    @Test
+    public void deepRecursion() {
+        loadTheoryText("count(0). count(N) :- N > 0, M is N - 1, count(M). "
+                + "nat_list(0, []). nat_list(N, [N|T]) :- N > 0, M is N - 1, nat_list(M, T). "
+                + "last([X], X). last([_|T], X) :- last(T, X).");
+        assertOneSolution("count(200000)");
+        // Only count solutions, extracting the long lists bound to variables would itself recurse deeply
+        assertNSolutions(1, "nat_list(100000, L), append(L, [end], L2), reverse(L2, [end|R]), last(L, 1)");
+    }
+
+}
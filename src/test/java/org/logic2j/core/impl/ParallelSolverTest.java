@@ -0,0 +1,94 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.logic2j.core.api.SolutionListener;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.model.Continuation;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * Run goals with the {@link ParallelSolver}: solutions must be the same, and in the same order, as with the {@link DefaultSolver}.
+ */
+public class ParallelSolverTest extends SolverTestBase {
+
+    private ExecutorService executor;
+
+    @Override
+    protected Solver newSolver() {
+        this.executor = Executors.newFixedThreadPool(4);
+        return new ParallelSolver(this.prolog, this.executor, 4);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void freeVariablesOfAnswers() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        final String goal = "member(X, [f(Y), g(Z)]) ; X = h(Y, _)";
+        final String parallelSolutions = this.prolog.solve(goal).all().bindings().toString();
+        ((PrologReferenceImplementation) this.prolog).setSolver(new DefaultSolver(this.prolog));
+        assertEquals(this.prolog.solve(goal).all().bindings().toString(), parallelSolutions);
+    }
+
+    @Test
+    public void queens() {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        assertEquals("[[3,1,4,2], [2,4,1,3]]", this.prolog.solve("queens(4, Positions)").all().binding("Positions").toString());
+        final String parallelSolutions = this.prolog.solve("queens(6, Positions)").all().binding("Positions").toString();
+        ((PrologReferenceImplementation) this.prolog).setSolver(new DefaultSolver(this.prolog));
+        assertEquals(this.prolog.solve("queens(6, Positions)").all().binding("Positions").toString(), parallelSolutions);
+        ((PrologReferenceImplementation) this.prolog).setSolver(new ParallelSolver(this.prolog, this.executor, 4));
+        assertNSolutions(92, "queens(8, _)");
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectedAlternatives() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        this.executor.shutdown();
+        this.prolog.solve("a(X) ; b(Y)").number();
+    }
+
+    @Test
+    public void userAbortCancelsAlternatives() {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        final int[] counter = new int[1];
+        final Continuation continuation = this.prolog.getSolver().solveGoal(new TermBindings(term("queens(8, Positions)")), new SolutionListener() {
+
+            @Override
+            public Continuation onSolution() {
+                counter[0]++;
+                return counter[0] == 3 ? Continuation.USER_ABORT : Continuation.CONTINUE;
+            }
+        });
+        assertEquals(Continuation.USER_ABORT, continuation);
+        assertEquals(3, counter[0]);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.TermAdapter.FactoryMode;
+import org.logic2j.core.api.model.symbol.Struct;
+
+/**
+ * Counting of predicate ports is only active when the JVM runs with -Dorg.logic2j.statistics=true, as configured for surefire in the pom;
+ * otherwise, such as when run from an IDE, the tests of counters are skipped.
+ */
+public class PredicateStatisticsTest extends PrologTestBase {
+
+    @Test
+    public void countPorts() {
+        Assume.assumeTrue(PredicateStatistics.isEnabled);
+        assertNSolutions(3, "member(X, [a,b,c])");
+        final PredicateCounters member = getProlog().getPredicateStatistics().snapshot().get("member/2");
+        // One call per element and one for the empty list
+        assertEquals(4, member.getCalls());
+        // Each solution exits from every nested call
+        assertEquals(6, member.getExits());
+        assertEquals(6, member.getRedos());
+        assertEquals(4, member.getFails());
+        assertTrue(member.getInclusiveNanos() > 0);
+    }
+
+    /**
+     * The body of the last clause is solved as a last call by the caller, but its ports are still those of the predicate.
+     */
+    @Test
+    public void countPortsOfLastCalls() {
+        Assume.assumeTrue(PredicateStatistics.isEnabled);
+        loadTheoryText("walk([]). walk([_|T]) :- walk(T).");
+        assertNSolutions(1, "walk([a,b,c])");
+        final PredicateCounters walk = getProlog().getPredicateStatistics().snapshot().get("walk/1");
+        assertEquals(4, walk.getCalls());
+        assertEquals(4, walk.getExits());
+        assertEquals(4, walk.getRedos());
+        assertEquals(4, walk.getFails());
+        // Last calls are still optimized: no stack overflow
+        final List<Long> elements = new ArrayList<Long>();
+        for (long i = 0; i < 2000; i++) {
+            elements.add(i);
+        }
+        final Object goal = getProlog().getTermAdapter().term("walk", FactoryMode.ANY_TERM, Struct.createPList(elements));
+        assertEquals(1, getProlog().solve(goal).number());
+    }
+
+    @Test
+    public void reset() {
+        Assume.assumeTrue(PredicateStatistics.isEnabled);
+        assertNSolutions(3, "member(X, [a,b,c])");
+        final PredicateStatistics statistics = getProlog().getPredicateStatistics();
+        assertFalse(statistics.snapshot().isEmpty());
+        statistics.reset();
+        assertNull(statistics.getPredicates().get("member/2"));
+    }
+
+    @Test
+    public void mbean() throws Exception {
+        final PredicateStatistics statistics = getProlog().getPredicateStatistics();
+        final ObjectName name = statistics.registerMBean();
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            assertEquals(PredicateStatistics.isEnabled, server.getAttribute(name, "Enabled"));
+            assertTrue(server.getAttribute(name, "Predicates") instanceof javax.management.openmbean.TabularData);
+        } finally {
+            statistics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void snapshotIsDetached() {
+        final Map<String, PredicateCounters> snapshot = getProlog().getPredicateStatistics().snapshot();
+        assertNSolutions(1, "member(b, [a,b,c])");
+        assertTrue(snapshot.isEmpty());
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.Solver;
+
+/**
+ * Behaviour expected from every {@link Solver}: subclasses provide the {@link Solver} under test, and add goals specific to it.
+ */
+public abstract class SolverTestBase extends PrologTestBase {
+
+    /**
+     * @return The {@link Solver} to install before each test method.
+     */
+    protected abstract Solver newSolver();
+
+    @Before
+    public void installSolver() {
+        ((PrologReferenceImplementation) this.prolog).setSolver(newSolver());
+    }
+
+    @Test
+    public void conjunctionsAndDisjunctions() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertNSolutions(9, "a(X), b(Y)");
+        assertNSolutions(27, "','(a(X), b(Y), c(Z))");
+        assertNSolutions(6, "a(X) ; b(Y)");
+        assertNSolutions(0, "fail", "a(X), fail", "true, false");
+        assertEquals("[1, 2, 3, 4]", this.prolog.solve("member(X, [1,2,3]) ; X = 4").all().binding("X").toString());
+    }
+
+    @Test
+    public void variableGoals() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertNSolutions(3, "call(a(X))", "G = a(X), call(G)", "G = (a(X), true), call(G)", "G = (a(X) ; fail), call(G)");
+        assertNSolutions(0, "G = (a(X), fail), call(G)");
+        assertEquals("[1, 2, 3]", this.prolog.solve("G = a(X), call(G)").all().binding("X").toString());
+        assertGoalMustFail("call(X)");
+    }
+
+    @Test
+    public void cut() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertNSolutions(1, "!; true", "a(X), !", "cut1(X)");
+        assertNSolutions(2, "true; !; true", "cut2(X)");
+        assertNSolutions(3, "a(X), !, b(Y)", "a(X), call(!), !, b(Y)");
+        assertNSolutions(4, "cut4", "cut4b");
+        assertEquals(term("negative"), assertOneSolution("sign(-5,X)").binding("X"));
+    }
+
+    @Test
+    public void ifThenElse() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryText("ite(X, R) :- (X > 0 -> R = pos ; R = nonpos).");
+        assertNSolutions(1, "ite(1, R)", "ite(0, R)", "(a(X) -> true ; X = none)", "(fail -> X = 1 ; X = 2)", "(a(X) -> Y = 1)",
+                "X = 2, (X > 1 -> Y = big ; Y = small)");
+        assertNSolutions(0, "(fail -> X = 1)");
+        assertEquals(term("pos"), assertOneSolution("ite(1, R)").binding("R"));
+        assertEquals(term(2), assertOneSolution("(fail -> X = 1 ; X = 2)").binding("X"));
+        assertEquals(term("b"), assertOneSolution("(X = 1, fail -> Y = a ; X = 2 -> Y = b ; Y = c)").binding("Y"));
+        assertEquals(term("negative"), assertOneSolution("sign4(-5,X)").binding("X"));
+        assertEquals(term("zero"), assertOneSolution("sign4(0,X)").binding("X"));
+        assertEquals("[pos, pos, pos]", this.prolog.solve("findall(R, (a(X), ite(X, R)), L), member(R, L)").all().binding("R").toString());
+    }
+
+    @Test
+    public void primitives() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertNSolutions(1, "X is 2+3, X=5", "findall(X, a(X), L), L=[1,2,3]", "not(a(4))", "\\+ a(4)");
+        assertNSolutions(0, "not(a(1))", "X is 2+3, X=6");
+        assertNSolutions(2, "clause(cut2(X), true)");
+        assertNSolutions(3, "member(X, [a,b,c])");
+        assertNSolutions(4, "append(X, Y, [1,2,3])");
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.theory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.var.TermBindings;
+
+/**
+ * Check selection of {@link Clause}s by argument indexing in {@link TheoryContent}.
+ */
+public class TheoryContentTest extends PrologTestBase {
+
+    private static final String THEORY = "country(ch, switzerland). country(fr, france). country(de, germany). country(it, italy). "
+            + "country(X, unknown). country(at, austria). country(be, belgium). country(nl, netherlands). "
+            + "country(f(1), 'a struct'). country(1, 'a number'). country(ch, helvetia). country(es, spain).";
+
+    private TheoryContent content;
+
+    @Before
+    public void loadContent() {
+        final DefaultTheoryManager manager = (DefaultTheoryManager) getProlog().getTheoryManager();
+        this.content = manager.load((CharSequence) THEORY);
+        manager.addTheory(this.content);
+    }
+
+    private List<String> selected(String theGoal) {
+        final Object goal = unmarshall(theGoal);
+        final List<String> result = new ArrayList<String>();
+        for (final Clause clause : this.content.find(goal, new TermBindings(goal))) {
+            result.add(clause.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void unboundFirstArgumentReturnsAll() {
+        assertEquals(12, selected("country(X, Y)").size());
+    }
+
+    @Test
+    public void boundFirstArgumentSelectsByIndex() {
+        assertEquals("[country(ch, switzerland), country(X, unknown), country(ch, helvetia)]", selected("country(ch, Y)").toString());
+        assertEquals("[country(X, unknown), country(f(1), a struct)]", selected("country(f(Z), Y)").toString());
+        assertEquals("[country(X, unknown), country(1, a number)]", selected("country(1, Y)").toString());
+        assertEquals("[country(X, unknown)]", selected("country(zz, Y)").toString());
+    }
+
+    @Test
+    public void unkeyedClausesKeptOnce() {
+        final Object goal1 = unmarshall("country(zz, Y)");
+        final Object goal2 = unmarshall("country(yy, Y)");
+        assertSame(this.content.find(goal1, new TermBindings(goal1)), this.content.find(goal2, new TermBindings(goal2)));
+        assertEquals("[country(ch, switzerland), country(X, unknown), country(ch, helvetia)]", selected("country(ch, Y)").toString());
+        // Merged while iterating, not copied into a new list
+        final Object goal3 = unmarshall("country(ch, Y)");
+        assertFalse(this.content.find(goal3, new TermBindings(goal3)) instanceof List);
+    }
+
+    @Test
+    public void secondArgumentIndexedJustInTime() {
+        for (int i = 0; i < PredicateClauses.JIT_INDEXING_THRESHOLD - 1; i++) {
+            assertEquals(12, selected("country(X, spain)").size());
+        }
+        assertEquals("[country(es, spain)]", selected("country(X, spain)").toString());
+    }
+
+    @Test
+    public void indexInvalidatedWhenAddingClauses() {
+        assertEquals(3, selected("country(ch, Y)").size());
+        final DefaultTheoryManager manager = (DefaultTheoryManager) getProlog().getTheoryManager();
+        this.content.addAll(manager.load((CharSequence) "country(ch, confoederatio)."));
+        assertEquals(4, selected("country(ch, Y)").size());
+    }
+
+    @Test
+    public void solutionsThroughIndex() {
+        assertNSolutions(3, "country(ch, Y)", "Z=ch, country(Z, Y)");
+        assertNSolutions(1, "country(zz, Y)", "country(1, 'a number')", "country(X, spain)");
+        assertNSolutions(2, "country(f(1), Y)");
+        assertNSolutions(12, "country(X, Y)");
+    }
+
+    @Test
+    public void groundTermsSharedBetweenClauses() {
+        final DefaultTheoryManager manager = (DefaultTheoryManager) getProlog().getTheoryManager();
+        manager.setGroundTermSharing(true);
+        final TheoryContent addresses = manager.load((CharSequence) ("address(1, city(geneva, zip(1200))). "
+                + "address(2, city(geneva, zip(1200))). address(X, city(X, zip(1200)))."));
+        manager.addTheory(addresses);
+        final Object goal = unmarshall("address(A, B)");
+        final List<Struct> cities = new ArrayList<Struct>();
+        for (final Clause clause : addresses.find(goal, new TermBindings(goal))) {
+            cities.add((Struct) ((Struct) clause.getHead()).getArg(1));
+        }
+        assertEquals(3, cities.size());
+        assertSame(cities.get(0), cities.get(1));
+        assertSame(cities.get(0).getArg(1), cities.get(2).getArg(1));
+        assertEquals(0, cities.get(0).getIndex());
+        assertNSolutions(3, "address(X, city(Y, zip(1200)))");
+        assertOneSolution("address(1, C), address(2, C)");
+        assertNoSolution("address(1, C), address(3, C)");
+    }
+
+    @Test
+    public void groundTermsSharedByOrderOfArguments() {
+        final DefaultTheoryManager manager = (DefaultTheoryManager) getProlog().getTheoryManager();
+        manager.setGroundTermSharing(true);
+        manager.addTheory(manager.load((CharSequence) "pair(p(a, b)). pair(p(b, a)). pair(p(a, b)). pair(p(c, c)). pair(p(d, d))."));
+        assertEquals("[p(a, b), p(b, a), p(a, b), p(c, c), p(d, d)]", getProlog().solve("pair(X)").all().binding("X").toString());
+        assertNSolutions(2, "pair(p(a, b))");
+        assertOneSolution("pair(p(d, d))");
+    }
+
+}
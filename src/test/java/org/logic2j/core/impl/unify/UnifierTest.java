@@ -18,6 +18,9 @@
 package org.logic2j.core.impl.unify;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -31,6 +34,7 @@ import org.logic2j.core.api.model.symbol.TermApi;
 import org.logic2j.core.api.model.symbol.Var;
 import org.logic2j.core.api.model.var.TermBindings;
 import org.logic2j.core.api.model.var.TermBindings.FreeVarRepresentation;
+import org.logic2j.core.api.solver.SolverSession;
 import org.logic2j.core.impl.PrologImplementation;
 import org.logic2j.core.impl.PrologReferenceImplementation.InitLevel;
 
@@ -275,6 +279,97 @@ public class UnifierTest extends PrologTestBase {
         }
     }
 
+    @Test
+    public void interleavedSessions() {
+        final SolverSession session1 = new SolverSession();
+        final SolverSession session2 = new SolverSession();
+        final Object term1 = unmarshall("f(X)");
+        final Object term2 = unmarshall("f(Y)");
+        final TermBindings bindings1 = new TermBindings(term1);
+        final TermBindings bindings2 = new TermBindings(term2);
+        assertTrue(this.unifier.unify(session1, term1, bindings1, unmarshall("f(a)"), new TermBindings(unmarshall("f(a)"))));
+        assertTrue(this.unifier.unify(session2, term2, bindings2, unmarshall("f(b)"), new TermBindings(unmarshall("f(b)"))));
+        assertEquals(1, BindingTrail.getDepth(session1.getTrail()));
+        assertEquals(1, BindingTrail.getDepth(session2.getTrail()));
+        // Undoing the first session leaves the bindings of the second one
+        this.unifier.deunify(session1);
+        assertEquals("f(X)", TermApi.substitute(term1, bindings1).toString());
+        assertEquals("f(b)", TermApi.substitute(term2, bindings2).toString());
+        this.unifier.deunify(session2);
+        assertEquals("f(Y)", TermApi.substitute(term2, bindings2).toString());
+    }
+
+    @Test
+    public void trailGrowsAndShrinks() {
+        final BindingTrail.StepInfo trail = new SolverSession().getTrail();
+        final int baseline = trail.getBindingCapacity();
+        final int nbBindings = 5 * baseline;
+        BindingTrail.markBeforeAddingBindings(trail);
+        for (int i = 0; i < nbBindings; i++) {
+            final TermBindings bindings = new TermBindings(unmarshall("f(X)"));
+            assertTrue(bindings.getBinding(0).bindTo("a", null));
+            BindingTrail.addBinding(trail, bindings.getBinding(0));
+        }
+        assertTrue(trail.getBindingCapacity() >= nbBindings);
+        assertFalse(BindingTrail.shrinkIfEmpty(trail));
+        BindingTrail.undoBindingsUntilPreviousMark(trail);
+        for (int i = 0; i < nbBindings; i++) {
+            assertNull(trail.bindingStack[i]);
+        }
+        assertEquals(nbBindings, trail.getBindingHighWaterMark());
+        assertEquals(1, trail.getTrailHighWaterMark());
+        assertTrue(BindingTrail.shrinkIfEmpty(trail));
+        assertEquals(baseline, trail.getBindingCapacity());
+        assertEquals(1, trail.getNbShrinks());
+        assertEquals(nbBindings, trail.getBindingHighWaterMark());
+        assertFalse(BindingTrail.shrinkIfEmpty(trail));
+    }
+
+    @Test
+    public void conditionalTrailing() {
+        final SolverSession session = new SolverSession();
+        final BindingTrail.StepInfo trail = session.getTrail();
+        final Object goal = unmarshall("p(a, X)");
+        final TermBindings goalVars = new TermBindings(goal);
+        final Object head = unmarshall("p(Y, b)");
+        final TermBindings clauseVars = TermBindings.deepCopyWithSameReferrer(new TermBindings(head), BindingTrail.getDepth(trail));
+        assertTrue(this.unifier.unify(session, goal, goalVars, head, clauseVars));
+        assertEquals("p(a, b)", TermApi.substitute(head, clauseVars).toString());
+        // Only X of the goal was trailed, Y of the clause will be discarded
+        assertEquals(1, trail.getBindingHighWaterMark());
+        this.unifier.deunify(session);
+        assertEquals("p(a, X)", TermApi.substitute(goal, goalVars).toString());
+        // Under a more recent mark, the clause's variables are trailed as any other
+        final TermBindings clauseVars2 = TermBindings.deepCopyWithSameReferrer(new TermBindings(head), BindingTrail.getDepth(trail));
+        BindingTrail.markBeforeAddingBindings(trail);
+        assertTrue(this.unifier.unify(session, head, clauseVars2, goal, goalVars));
+        this.unifier.deunify(session);
+        assertEquals("p(Y, b)", TermApi.substitute(head, clauseVars2).toString());
+    }
+
+    @Test
+    public void youngerLinkedToOlder() {
+        final SolverSession session = new SolverSession();
+        final BindingTrail.StepInfo trail = session.getTrail();
+        final Object goal = unmarshall("p(X)");
+        final TermBindings goalVars = new TermBindings(goal);
+        final Object head = unmarshall("p(Y)");
+        // Variables of successive clauses, as when solving p(X) with p(Y) :- q(Y), q(Z) :- ...
+        final TermBindings clauseVars1 = TermBindings.deepCopyWithSameReferrer(new TermBindings(head), BindingTrail.getDepth(trail));
+        assertTrue(this.unifier.unify(session, goal, goalVars, head, clauseVars1));
+        final TermBindings clauseVars2 = TermBindings.deepCopyWithSameReferrer(new TermBindings(head), BindingTrail.getDepth(trail));
+        assertTrue(this.unifier.unify(session, head, clauseVars1, head, clauseVars2));
+        // Nothing needed trailing, the variable of the goal remains free
+        assertEquals(0, trail.getBindingHighWaterMark());
+        assertTrue(goalVars.getBinding(0).isFree());
+        assertSame(goalVars.getBinding(0), clauseVars2.getBinding(0).followLinks());
+        // Not through the variable of the first clause
+        clauseVars1.getBinding(0).free();
+        assertSame(goalVars.getBinding(0), clauseVars2.getBinding(0).followLinks());
+        this.unifier.deunify(session);
+        this.unifier.deunify(session);
+    }
+
     public void assertStaticallyEquals(CharSequence expectedStr, Object theActual) {
         final Object theExpected = unmarshall(expectedStr);
         if (!TermApi.structurallyEquals(theExpected, theActual)) {
@@ -0,0 +1,91 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.logic2j.core.PrologTestBase;
+import org.logic2j.core.api.DataFactProvider;
+import org.logic2j.core.api.model.DataFact;
+import org.logic2j.core.api.model.symbol.Struct;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.PrologReferenceImplementation;
+
+public class GoalStackProfilerTest extends PrologTestBase {
+
+    @Test
+    public void goalStack() {
+        final GoalStackProfiler profiler = new GoalStackProfiler(10);
+        final GoalStackProfiler.GoalStack goalStack = profiler.goalStack();
+        assertNull(goalStack.collapse());
+        assertEquals(0, goalStack.push("a/1"));
+        assertEquals(1, goalStack.push("b;c/2"));
+        assertEquals("a/1;b_c/2", goalStack.collapse());
+        profiler.sample();
+        profiler.sample();
+        goalStack.popTo(1);
+        profiler.sample();
+        goalStack.popTo(0);
+        profiler.sample();
+        final Map<String, Long> collapsedStacks = profiler.getCollapsedStacks();
+        assertEquals(2, collapsedStacks.size());
+        assertEquals(Long.valueOf(2), collapsedStacks.get("a/1;b_c/2"));
+        assertEquals(Long.valueOf(1), collapsedStacks.get("a/1"));
+        profiler.reset();
+        assertTrue(profiler.getCollapsedStacks().isEmpty());
+    }
+
+    @Test
+    public void profileQueens() throws IOException {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        final GoalStackProfiler profiler = new GoalStackProfiler(1);
+        ((PrologReferenceImplementation) getProlog()).setProfiler(profiler);
+        // Sample from within solving rather than with the sampling thread, so that samples do not depend on scheduling: data fact
+        // providers are consulted while the goal is on the stack
+        getProlog().getTheoryManager().addDataFactProvider(new DataFactProvider() {
+
+            @Override
+            public Iterable<DataFact> listMatchingDataFacts(Object theGoal, TermBindings theGoalBindings) {
+                if (theGoal instanceof Struct && ((Struct) theGoal).getName() == "attack") {
+                    profiler.sample();
+                }
+                return Collections.emptyList();
+            }
+        });
+        assertNSolutions(4, "queens(6, X)");
+        // One sample per call of attack/2, always within the top-level goal
+        final Map<String, Long> collapsedStacks = profiler.getCollapsedStacks();
+        assertEquals(Long.valueOf(6), collapsedStacks.get("queens/2;queens3/3;attack/2"));
+        for (final String stack : collapsedStacks.keySet()) {
+            assertTrue(stack, stack.startsWith("queens/2;queens3/3;") && stack.endsWith(";attack/2"));
+        }
+        final StringBuilder sb = new StringBuilder();
+        profiler.writeCollapsedStacks(sb);
+        assertTrue(sb.toString().matches("(?s)(queens/2[^ \\n]* \\d+\\n)+"));
+        // Nothing is left on the stack after solving
+        assertNull(profiler.goalStack().collapse());
+    }
+
+}
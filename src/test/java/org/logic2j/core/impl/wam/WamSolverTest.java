@@ -0,0 +1,133 @@
+/*
+ * logic2j - "Bring Logic to your Java" - Copyright (C) 2011 Laurent.Tettoni@gmail.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.logic2j.core.impl.wam;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.logic2j.core.api.ClauseProvider;
+import org.logic2j.core.api.Solver;
+import org.logic2j.core.api.model.Clause;
+import org.logic2j.core.api.model.var.TermBindings;
+import org.logic2j.core.impl.DefaultSolver;
+import org.logic2j.core.impl.PrologReferenceImplementation;
+import org.logic2j.core.impl.SolverTestBase;
+
+/**
+ * Run goals with the {@link WamSolver}.
+ */
+public class WamSolverTest extends SolverTestBase {
+
+    @Override
+    protected Solver newSolver() {
+        return new WamSolver(this.prolog);
+    }
+
+    @Test
+    public void queens() {
+        loadTheoryFromTestResourcesDir("queens.pl");
+        assertEquals("[[3,1,4,2], [2,4,1,3]]", this.prolog.solve("queens(4, Positions)").all().binding("Positions").toString());
+        assertNSolutions(92, "queens(8, _)");
+    }
+
+    @Test
+    public void hanoi() {
+        loadTheoryFromTestResourcesDir("hanoi.pl");
+        assertOneSolution("move(14,left,right,center)");
+    }
+
+    @Test
+    public void deepRecursion() {
+        loadTheoryText("count(0). count(N) :- N > 0, M is N - 1, count(M). "
+                + "nat_list(0, []). nat_list(N, [N|T]) :- N > 0, M is N - 1, nat_list(M, T). "
+                + "last([X], X). last([_|T], X) :- last(T, X). "
+                + "lists :- nat_list(100000, L), append(L, [end], L2), reverse(L2, [end|R]), last(L, 1).");
+        assertOneSolution("count(200000)");
+        assertOneSolution("lists");
+    }
+
+    @Test
+    public void bindings() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        assertEquals(term("f(Y)"), assertOneSolution("X = f(Y)").binding("X"));
+        assertEquals(term("[1,2,3]"), assertOneSolution("append([1], [2,3], L)").binding("L"));
+        assertEquals(term("5"), assertOneSolution("X is 2 * 3 - 1").binding("X"));
+    }
+
+    @Test
+    public void registersOfPredicatesCompiledLater() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryFromTestResourcesDir("dollar.pl");
+        assertNSolutions(3, "a(X)");
+        assertNSolutions(292, "change([H,Q,D,N,P])");
+    }
+
+    /**
+     * If-then-else, negation and cuts within disjunctions are left to the interpreter: the solutions must be the same as without
+     * compilation.
+     */
+    @Test
+    public void sameSolutionsAsInterpreter() {
+        loadTheoryFromTestResourcesDir("test-functional.pl");
+        loadTheoryText("t2(X) :- (X = 1 ; X = 2, ! ; X = 3). " //
+                + "t3(X) :- member(X, [1,2,3]), \\+ X = 2. " //
+                + "t4(X) :- t2(X) ; X = 4. " //
+                + "t5(X) :- G = t2(X), call(G).");
+        final String[] goals = { "sign3(-5,X)", "sign4(-5,X)", "sign4(5,X)", "sign4(0,X)", "cut2(X)", "t2(X)", "t3(X)", "t4(X)", "t5(X)",
+                "(a(X) -> true ; X = none)", "member(X, [1,2]), (X > 1 -> true ; fail)" };
+        final List<String> compiled = new ArrayList<String>();
+        for (final String goal : goals) {
+            compiled.add(this.prolog.solve(goal).all().binding("X").toString());
+        }
+        ((PrologReferenceImplementation) this.prolog).setSolver(new DefaultSolver(this.prolog));
+        for (int i = 0; i < goals.length; i++) {
+            assertEquals(goals[i], this.prolog.solve(goals[i]).all().binding("X").toString(), compiled.get(i));
+        }
+    }
+
+    /**
+     * Clauses of other providers may change without the theory changing: they are not compiled.
+     */
+    @Test
+    public void clausesOfOtherProviders() {
+        final List<Clause> clauses = new ArrayList<Clause>();
+        clauses.add(new Clause(this.prolog, term("q(1)")));
+        this.prolog.getTheoryManager().addClauseProvider(new ClauseProvider() {
+
+            @Override
+            public Iterable<Clause> listMatchingClauses(Object theGoal, TermBindings theGoalBindings) {
+                return clauses;
+            }
+        });
+        assertNSolutions(1, "q(X)");
+        clauses.add(new Clause(this.prolog, term("q(2)")));
+        assertNSolutions(2, "q(X)");
+    }
+
+    @Test
+    public void theoryChanges() {
+        loadTheoryText("p(1).");
+        assertNSolutions(1, "p(X)");
+        loadTheoryText("p(2).");
+        assertNSolutions(2, "p(X)");
+    }
+
+}
@@ -0,0 +1,18 @@
+% N-Queens problem with finite-domain constraints: domains are pruned as queens are placed, instead of testing complete placements
+% Requires the FiniteDomainLibrary
+
+queens_fd(N, Qs) :- fd_list(N, Qs), Qs ins 1..N, safe_queens(Qs), label(Qs).
+
+fd_list(0, []).
+fd_list(N, [Q|L]) :- N > 0, N1 is N-1, fd_list(N1, L).
+
+safe_queens([]).
+safe_queens([Q|Qs]) :- safe_queens(Qs, Q, 1), safe_queens(Qs).
+
+safe_queens([], _, _).
+safe_queens([Q|Qs], Q0, D0) :-
+  Q0 #\= Q,
+  Q0 #\= Q + D0,
+  Q0 #\= Q - D0,
+  D1 is D0 + 1,
+  safe_queens(Qs, Q0, D1).